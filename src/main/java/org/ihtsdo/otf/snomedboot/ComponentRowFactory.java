@@ -0,0 +1,73 @@
+package org.ihtsdo.otf.snomedboot;
+
+import org.ihtsdo.otf.snomedboot.domain.rf2.*;
+import org.ihtsdo.otf.snomedboot.factory.ComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
+
+/**
+ * A component factory that turns each callback into a typed row.
+ */
+abstract class ComponentRowFactory implements ComponentFactory {
+
+	abstract void accept(ComponentRow row);
+
+	/**
+	 * @return null so that the loading profile given to the importer is used.
+	 */
+	@Override
+	public LoadingProfile getLoadingProfile() {
+		return null;
+	}
+
+	@Override
+	public void preprocessingContent() {
+	}
+
+	@Override
+	public void loadingComponentsStarting() {
+	}
+
+	@Override
+	public void loadingComponentsCompleted() {
+	}
+
+	@Override
+	public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
+		accept(new ConceptRow(conceptId, effectiveTime, active, moduleId, definitionStatusId));
+	}
+
+	@Override
+	public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode,
+			String typeId, String term, String caseSignificanceId) {
+
+		accept(new DescriptionRow(id, effectiveTime, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId));
+	}
+
+	@Override
+	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId,
+			String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+
+		accept(new RelationshipRow(id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId));
+	}
+
+	@Override
+	public void newConcreteRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String value,
+			String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+
+		accept(new ConcreteRelationshipRow(id, effectiveTime, active, moduleId, sourceId, value, relationshipGroup, typeId, characteristicTypeId, modifierId));
+	}
+
+	@Override
+	public void newReferenceSetMemberState(String filename, String[] fieldNames, String id, String effectiveTime, String active, String moduleId,
+			String refsetId, String referencedComponentId, String... otherValues) {
+
+		accept(new RefsetMemberRow(filename, fieldNames, id, effectiveTime, active, moduleId, refsetId, referencedComponentId, otherValues));
+	}
+
+	@Override
+	public void newIdentifierState(String alternateIdentifier, String effectiveTime, String active, String moduleId, String identifierSchemeId,
+			String referencedComponentId) {
+
+		accept(new IdentifierRow(alternateIdentifier, effectiveTime, active, moduleId, identifierSchemeId, referencedComponentId));
+	}
+}
@@ -0,0 +1,177 @@
+package org.ihtsdo.otf.snomedboot;
+
+import org.ihtsdo.otf.snomedboot.domain.rf2.ComponentRow;
+import org.ihtsdo.otf.snomedboot.factory.ComponentFactory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Publishes the rows of a release import to one subscriber, created by the publish methods of ReleaseImporter.
+ * The import starts when the subscriber subscribes and runs through the same loading profile and component filters as the component factory API.
+ *
+ * Rows are passed to onNext only as the subscriber requests them. While there is no demand the threads reading the release files wait,
+ * so reading goes no faster than the subscriber. Calls to onNext are made one at a time but may come from different reading threads.
+ * Cancelling the subscription cancels the import. A failure of the import is passed to onError.
+ * onComplete and onError are signalled only once every reading thread has stopped, no row is passed to onNext after them.
+ */
+public final class ComponentRowPublisher implements Flow.Publisher<ComponentRow> {
+
+	private final Function<ComponentFactory, ReleaseImport> importStarter;
+	private final AtomicBoolean subscribed = new AtomicBoolean();
+
+	ComponentRowPublisher(Function<ComponentFactory, ReleaseImport> importStarter) {
+		this.importStarter = importStarter;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super ComponentRow> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("Subscriber is null.");
+		}
+		if (!subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new Flow.Subscription() {
+				@Override
+				public void request(long n) {
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException("The rows of a release import can only be published to one subscriber."));
+			return;
+		}
+		RowSubscription subscription = new RowSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+		subscription.start();
+	}
+
+	private final class RowSubscription extends ComponentRowFactory implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super ComponentRow> subscriber;
+		// Keeps signals to the subscriber one at a time
+		private final ReentrantLock signalLock = new ReentrantLock();
+		private final Object demandMonitor = new Object();
+		private final AtomicBoolean terminated = new AtomicBoolean();
+		private long demand;
+		private volatile boolean cancelled;
+		// Set by a request that is not positive, signalled once the import has stopped
+		private volatile Throwable requestError;
+		private volatile ReleaseImport releaseImport;
+
+		private RowSubscription(Flow.Subscriber<? super ComponentRow> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		private void start() {
+			if (cancelled) {
+				// No import was started, so nothing is reading
+				terminate(null);
+				return;
+			}
+			releaseImport = importStarter.apply(this);
+			if (cancelled) {
+				releaseImport.cancel();
+			}
+			// The future completes only after every reading task has stopped
+			releaseImport.getFuture().whenComplete((result, throwable) -> terminate(throwable));
+		}
+
+		private void terminate(Throwable importFailure) {
+			Throwable error = requestError;
+			if (error == null && cancelled) {
+				return;
+			}
+			if (!terminated.compareAndSet(false, true)) {
+				return;
+			}
+			signalLock.lock();
+			try {
+				if (error != null) {
+					subscriber.onError(error);
+				} else if (importFailure == null) {
+					subscriber.onComplete();
+				} else {
+					subscriber.onError(importFailure instanceof CompletionException && importFailure.getCause() != null ? importFailure.getCause() : importFailure);
+				}
+			} finally {
+				signalLock.unlock();
+			}
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				if (requestError == null && !cancelled) {
+					requestError = new IllegalArgumentException("Requested " + n + " rows, the number requested must be positive.");
+				}
+				cancel();
+				return;
+			}
+			synchronized (demandMonitor) {
+				demand += n;
+				if (demand < 0) {
+					// Overflow means unbounded demand
+					demand = Long.MAX_VALUE;
+				}
+				demandMonitor.notifyAll();
+			}
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			synchronized (demandMonitor) {
+				demandMonitor.notifyAll();
+			}
+			ReleaseImport releaseImport = this.releaseImport;
+			if (releaseImport != null) {
+				releaseImport.cancel();
+			}
+		}
+
+		/**
+		 * Waits for demand then passes the row to the subscriber.
+		 * @throws CancellationException to stop the reading thread if the subscription is cancelled or the subscriber has been signalled to stop.
+		 */
+		@Override
+		void accept(ComponentRow row) {
+			signalLock.lock();
+			try {
+				synchronized (demandMonitor) {
+					while (demand == 0 && !cancelled && !terminated.get()) {
+						try {
+							demandMonitor.wait();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new CancellationException("Interrupted while waiting for the subscriber to request rows.");
+						}
+					}
+					if (cancelled) {
+						throw new CancellationException("Subscription cancelled.");
+					}
+					if (terminated.get()) {
+						throw new CancellationException("Subscriber already signalled onComplete or onError.");
+					}
+					if (demand != Long.MAX_VALUE) {
+						demand--;
+					}
+				}
+				try {
+					subscriber.onNext(row);
+				} catch (RuntimeException | Error e) {
+					// A subscriber that throws is treated as having cancelled
+					cancel();
+					throw e;
+				}
+			} finally {
+				signalLock.unlock();
+			}
+		}
+	}
+}
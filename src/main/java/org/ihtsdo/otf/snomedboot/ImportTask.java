@@ -0,0 +1,99 @@
+package org.ihtsdo.otf.snomedboot;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A loading task submitted to the executor of an import. A thread that waits for the task runs it itself if no executor thread
+ * has started it, so waiting never needs a free executor thread and a busy bounded executor can not leave the import waiting forever.
+ * Unlike Future.get, which returns as soon as a task is cancelled, awaitStopped waits until the thread running the task has left it.
+ */
+class ImportTask<T> extends FutureTask<T> {
+
+	private final AtomicBoolean started = new AtomicBoolean();
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	ImportTask(Callable<T> callable) {
+		super(callable);
+	}
+
+	static <T> ImportTask<T> submit(Executor executor, Callable<T> callable) {
+		ImportTask<T> task = new ImportTask<>(callable);
+		executor.execute(task);
+		return task;
+	}
+
+	@Override
+	public void run() {
+		runIfNotStarted();
+	}
+
+	/**
+	 * Runs the task on this thread unless another thread has started it.
+	 * @return false if another thread started the task.
+	 */
+	boolean runIfNotStarted() {
+		if (!started.compareAndSet(false, true)) {
+			return false;
+		}
+		try {
+			super.run();
+		} finally {
+			stopped.countDown();
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the task on this thread if no thread has started it, then waits for its result.
+	 */
+	T join() throws InterruptedException, ExecutionException {
+		runIfNotStarted();
+		return get();
+	}
+
+	/**
+	 * Stops the task from running if no thread has started it.
+	 * @return true if the task will never run.
+	 */
+	boolean preempt() {
+		if (!started.compareAndSet(false, true)) {
+			return false;
+		}
+		cancel(false);
+		stopped.countDown();
+		return true;
+	}
+
+	/**
+	 * Cancels the task, interrupting the thread running it, then waits until that thread has left it. A task that no thread has started never runs.
+	 */
+	void stop() {
+		cancel(true);
+		awaitStopped();
+	}
+
+	/**
+	 * Waits until no thread is running the task, preventing it from running if no thread has started it.
+	 * Interrupts of this thread are deferred until the wait is over.
+	 */
+	void awaitStopped() {
+		preempt();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				stopped.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package org.ihtsdo.otf.snomedboot;
+
+import org.ihtsdo.otf.snomedboot.domain.rf2.ComponentRow;
+import org.ihtsdo.otf.snomedboot.parser.RF2Reader;
+import org.ihtsdo.otf.snomedboot.parser.RF2Row;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Reads the rows of several RF2 files of one component type as typed rows.
+ * Splitting hands over half of the files not yet started or, when one file remains, the first half of its rows.
+ * Files are split on line boundaries so that each part can be parsed on its own, as when a large file is read in parallel ranges.
+ * Files that are not on the default file system can not be split and are read by one spliterator.
+ */
+final class RF2RowSpliterator<T extends ComponentRow> implements Spliterator<T> {
+
+	static final long DEFAULT_MIN_SPLIT_BYTES = 1024 * 1024;
+	private static final int ESTIMATED_BYTES_PER_ROW = 128;
+
+	private final Class<T> rowType;
+	private final long minSplitBytes;
+	private final Deque<FileRange> ranges;
+	private RowFile rowFile;
+	private RF2Reader reader;
+	private RowHandler rowHandler;
+	private String rangeName;
+	private long linesRead;
+	private T next;
+
+	/**
+	 * @param minSplitBytes ranges smaller than this are not split further.
+	 */
+	RF2RowSpliterator(Class<T> rowType, List<RowFile> rowFiles, long minSplitBytes) {
+		this(rowType, minSplitBytes, new ArrayDeque<>());
+		for (RowFile rowFile : rowFiles) {
+			ranges.add(new FileRange(rowFile, -1, -1));
+		}
+	}
+
+	private RF2RowSpliterator(Class<T> rowType, long minSplitBytes, Deque<FileRange> ranges) {
+		this.rowType = rowType;
+		this.minSplitBytes = minSplitBytes;
+		this.ranges = ranges;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		try {
+			while (true) {
+				if (reader == null && !openNextRange()) {
+					return false;
+				}
+				RF2Row row = reader.nextRow();
+				if (row == null) {
+					closeReader();
+					continue;
+				}
+				linesRead++;
+				rowHandler.handle(row, linesRead, rangeName);
+				if (next != null) {
+					T typedRow = next;
+					next = null;
+					action.accept(typedRow);
+					return true;
+				}
+			}
+		} catch (IOException e) {
+			closeReader();
+			throw new UncheckedIOException(e);
+		} catch (ReleaseImportException e) {
+			closeReader();
+			throw new UncheckedReleaseImportException(e);
+		}
+	}
+
+	@Override
+	public Spliterator<T> trySplit() {
+		try {
+			if (ranges.size() > 1) {
+				Deque<FileRange> prefix = new ArrayDeque<>();
+				for (int i = ranges.size() / 2; i > 0; i--) {
+					prefix.add(ranges.poll());
+				}
+				return new RF2RowSpliterator<>(rowType, minSplitBytes, prefix);
+			}
+			FileRange range = ranges.peek();
+			if (range == null || !range.rowFile.isSplittable()) {
+				return null;
+			}
+			long start = range.start;
+			long end = range.end;
+			if (start < 0) {
+				start = range.rowFile.getRowsStart();
+				end = range.rowFile.size();
+			}
+			if (end - start < minSplitBytes * 2) {
+				return null;
+			}
+			long boundary = range.rowFile.findNextLineStart(start + (end - start) / 2);
+			if (boundary <= start || boundary >= end) {
+				return null;
+			}
+			ranges.poll();
+			ranges.add(new FileRange(range.rowFile, boundary, end));
+			Deque<FileRange> prefix = new ArrayDeque<>();
+			prefix.add(new FileRange(range.rowFile, start, boundary));
+			return new RF2RowSpliterator<>(rowType, minSplitBytes, prefix);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return An estimate from the bytes not yet read, the rows of the file being read are not counted.
+	 */
+	@Override
+	public long estimateSize() {
+		long bytes = 0;
+		for (FileRange range : ranges) {
+			bytes += range.start < 0 ? range.rowFile.size() : range.end - range.start;
+		}
+		return bytes / ESTIMATED_BYTES_PER_ROW;
+	}
+
+	@Override
+	public int characteristics() {
+		return NONNULL;
+	}
+
+	private boolean openNextRange() throws IOException, ReleaseImportException {
+		FileRange range = ranges.poll();
+		if (range == null) {
+			return false;
+		}
+		rowFile = range.rowFile;
+		reader = range.start < 0 ? rowFile.open() : rowFile.open(range.start, range.end);
+		rowHandler = rowFile.newRowHandler(row -> next = rowType.cast(row));
+		rangeName = range.start < 0 ? rowFile.getName() : String.format("%s (bytes %s-%s)", rowFile.getName(), range.start, range.end);
+		linesRead = 0;
+		return true;
+	}
+
+	private void closeReader() {
+		if (reader != null) {
+			try {
+				rowFile.close(reader);
+			} catch (IOException e) {
+				// Only read from
+			}
+			reader = null;
+		}
+	}
+
+	/**
+	 * An RF2 file that can be read whole or in byte ranges.
+	 */
+	interface RowFile {
+
+		String getName();
+
+		/**
+		 * @return The size of the file in bytes.
+		 */
+		long size();
+
+		boolean isSplittable();
+
+		/**
+		 * @return The position of the first line after the header.
+		 */
+		long getRowsStart() throws IOException;
+
+		long findNextLineStart(long position) throws IOException;
+
+		/**
+		 * @return A reader of the whole file, positioned after the header.
+		 */
+		RF2Reader open() throws IOException, ReleaseImportException;
+
+		/**
+		 * @return A reader of a range of the file that starts on a line boundary after the header.
+		 */
+		RF2Reader open(long start, long end) throws IOException, ReleaseImportException;
+
+		/**
+		 * Closes a reader opened by this file once its rows have been read.
+		 */
+		void close(RF2Reader reader) throws IOException;
+
+		/**
+		 * @param rowConsumer receives the rows that pass the loading profile and component filters.
+		 */
+		RowHandler newRowHandler(Consumer<ComponentRow> rowConsumer);
+	}
+
+	interface RowHandler {
+		void handle(RF2Row row, long linesRead, String rangeName) throws ReleaseImportException;
+	}
+
+	private record FileRange(RowFile rowFile, long start, long end) {
+	}
+}
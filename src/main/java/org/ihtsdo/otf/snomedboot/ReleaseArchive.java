@@ -0,0 +1,199 @@
+package org.ihtsdo.otf.snomedboot;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * RF2 files read directly from a release zip, without extracting them to disk.
+ * When the zip is available as a file it is opened as a zip file system which gives random access to the entries.
+ * Each archive opens its own file system so the same zip can be read by overlapping imports.
+ * When only a stream is available the entries that will be loaded are inflated into memory, each into one array of its size.
+ * Reading fails if the entries do not fit within the memory limit. Alternatively the caller can have the compressed stream copied
+ * to a temporary file first, the only case in which a stream uses temporary space.
+ */
+class ReleaseArchive implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReleaseArchive.class);
+	// Buffer for an entry whose size is not recorded in the zip, grown as needed
+	private static final int UNKNOWN_SIZE_BUFFER_SIZE = 1024 * 1024;
+	private static final int MAX_ENTRY_SIZE = Integer.MAX_VALUE - 8;
+
+	private final List<Path> files = new ArrayList<>();
+	private final Map<Path, byte[]> memoryContent = new HashMap<>();
+	private FileSystem zipFileSystem;
+	private File tempZipFile;
+
+	private ReleaseArchive() {
+	}
+
+	static boolean isZipFile(Path path) {
+		return Files.isRegularFile(path) && path.getFileName().toString().toLowerCase().endsWith(".zip");
+	}
+
+	/**
+	 * Opens a zip file for random access to its entries.
+	 */
+	static ReleaseArchive openZip(Path zipFile) throws IOException {
+		ReleaseArchive archive = new ReleaseArchive();
+		archive.openZipFileSystem(zipFile);
+		return archive;
+	}
+
+	/**
+	 * Reads a release zip stream. The stream is closed.
+	 * @param entryFilter only entries accepted by this are kept
+	 * @param memoryLimitBytes reading fails with an IOException if the entries held in memory would exceed this many bytes
+	 * @param useTempFile copy the compressed stream to a temporary file rather than holding the matching entries in memory
+	 */
+	static ReleaseArchive read(InputStream releaseZip, Predicate<Path> entryFilter, long memoryLimitBytes, boolean useTempFile) throws IOException {
+		ReleaseArchive archive = new ReleaseArchive();
+		try (InputStream zipStream = releaseZip) {
+			if (useTempFile) {
+				archive.tempZipFile = Files.createTempFile("rf2-release", ".zip").toFile();
+				try (OutputStream out = new FileOutputStream(archive.tempZipFile)) {
+					IOUtils.copy(zipStream, out);
+				}
+				archive.openZipFileSystem(archive.tempZipFile.toPath());
+			} else {
+				archive.readIntoMemory(new ZipInputStream(zipStream), entryFilter, memoryLimitBytes);
+			}
+		} catch (IOException e) {
+			archive.close();
+			throw e;
+		}
+		return archive;
+	}
+
+	List<Path> getFiles() {
+		return files;
+	}
+
+	boolean isInMemory(Path path) {
+		return memoryContent.containsKey(path);
+	}
+
+	/**
+	 * @return The number of bytes of an entry that is held in memory.
+	 */
+	long size(Path path) {
+		byte[] content = memoryContent.get(path);
+		return content != null ? content.length : 0;
+	}
+
+	/**
+	 * @return A read only buffer over an entry that is held in memory.
+	 */
+	ByteBuffer getContent(Path path) throws IOException {
+		byte[] content = memoryContent.get(path);
+		if (content == null) {
+			throw new FileNotFoundException("No release archive entry held in memory for " + path);
+		}
+		return ByteBuffer.wrap(content).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Open an entry that is held in memory.
+	 */
+	InputStream open(Path path) throws IOException {
+		byte[] content = memoryContent.get(path);
+		if (content == null) {
+			throw new FileNotFoundException("No release archive entry held in memory for " + path);
+		}
+		return new ByteArrayInputStream(content);
+	}
+
+	@Override
+	public void close() {
+		memoryContent.clear();
+		if (zipFileSystem != null) {
+			try {
+				zipFileSystem.close();
+			} catch (IOException e) {
+				logger.warn("Failed to close release zip file system", e);
+			}
+		}
+		if (tempZipFile != null && !tempZipFile.delete()) {
+			logger.warn("Failed to remove temp file {}", tempZipFile.getAbsolutePath());
+		}
+	}
+
+	private void openZipFileSystem(Path zipFile) throws IOException {
+		logger.info("Reading release files directly from {}", zipFile);
+		// Not registered by URI, unlike a jar: file system, so every call gets its own instance
+		zipFileSystem = FileSystems.newFileSystem(zipFile, (ClassLoader) null);
+		for (Path root : zipFileSystem.getRootDirectories()) {
+			Files.walkFileTree(root, new SimpleFileVisitor<>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					files.add(file);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+	}
+
+	private void readIntoMemory(ZipInputStream zipInputStream, Predicate<Path> entryFilter, long memoryLimitBytes) throws IOException {
+		long memoryUsed = 0;
+		ZipEntry zipEntry;
+		while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+			String zipEntryName = zipEntry.getName();
+			Path path = Paths.get(zipEntryName);
+			if (zipEntry.isDirectory() || !entryFilter.test(path)) {
+				continue;
+			}
+			byte[] content = readEntry(zipInputStream, zipEntry.getSize(), memoryLimitBytes - memoryUsed);
+			if (content == null) {
+				throw new IOException(String.format("Release zip entry %s does not fit in the release zip memory buffer of %s bytes. " +
+						"Use ReleaseImporter.setSpoolReleaseZipToTempFile(true) to read the release zip from a temporary file instead.",
+						zipEntryName, memoryLimitBytes));
+			}
+			logger.info("Read zip entry {} into memory", zipEntryName);
+			memoryContent.put(path, content);
+			memoryUsed += content.length;
+			files.add(path);
+		}
+	}
+
+	/**
+	 * @param size size of the entry, or -1 if the zip does not record it before the entry
+	 * @return The content of the entry, or null if it is larger than the remaining bytes or than an array can hold.
+	 */
+	private static byte[] readEntry(InputStream entryStream, long size, long remainingBytes) throws IOException {
+		long limit = Math.min(remainingBytes, MAX_ENTRY_SIZE);
+		if (size > limit) {
+			return null;
+		}
+		if (size >= 0) {
+			byte[] content = new byte[(int) size];
+			IOUtils.readFully(entryStream, content);
+			return content;
+		}
+		byte[] content = new byte[(int) Math.min(UNKNOWN_SIZE_BUFFER_SIZE, limit)];
+		int length = 0;
+		while (true) {
+			if (length == content.length) {
+				int newLength = (int) Math.min((long) content.length * 2, limit);
+				if (newLength == length) {
+					// At the limit, which is only allowed if the entry ends here
+					return entryStream.read() == -1 ? content : null;
+				}
+				content = Arrays.copyOf(content, newLength);
+			}
+			int read = entryStream.read(content, length, content.length - length);
+			if (read == -1) {
+				return length == content.length ? content : Arrays.copyOf(content, length);
+			}
+			length += read;
+		}
+	}
+}
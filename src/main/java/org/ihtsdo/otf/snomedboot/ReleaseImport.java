@@ -0,0 +1,201 @@
+package org.ihtsdo.otf.snomedboot;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A release import running in the background, started by one of the asynchronous load methods of ReleaseImporter.
+ *
+ * The future completes when every file has been loaded and the component factory has been told loading is complete.
+ * If loading any file fails the other file loading tasks are stopped and the future completes exceptionally with the first failure,
+ * a ReleaseImportException. Cancelling the import, or its future, stops the file loading tasks within a few thousand rows.
+ * Whether the import completes, fails or is cancelled, the future only completes once every loading task has stopped,
+ * so the component factory receives no more rows after that. Progress can be read while the import runs.
+ */
+public final class ReleaseImport {
+
+	private final CompletableFuture<Void> future = new ImportFuture();
+	private final CountDownLatch terminated = new CountDownLatch(1);
+	private final AtomicInteger filesRead = new AtomicInteger();
+	private final AtomicInteger splitRangesRead = new AtomicInteger();
+	private final LongAdder rowsRead = new LongAdder();
+	private final LongAdder pipelineRows = new LongAdder();
+	private final LongAdder pipelineReaderWaitNanos = new LongAdder();
+	private final LongAdder pipelineHandlerWaitNanos = new LongAdder();
+	private final LongAdder pipelineBatchesFilled = new LongAdder();
+	private final LongAdder pipelineQueuedBatchesTotal = new LongAdder();
+	private final AtomicInteger pipelineMaxQueuedBatches = new AtomicInteger();
+	private volatile boolean cancelled;
+	private Thread thread;
+	private boolean finished;
+
+	ReleaseImport() {
+	}
+
+	public CompletableFuture<Void> getFuture() {
+		return future;
+	}
+
+	/**
+	 * Stops the import. The future completes with a CancellationException once every loading task has stopped.
+	 * @return false if the import had already completed.
+	 */
+	public boolean cancel() {
+		return future.cancel(true);
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Waits for the import thread to finish, whether the import completed, failed or was cancelled.
+	 * @return false if the timeout elapsed first.
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return terminated.await(timeout, unit);
+	}
+
+	/**
+	 * @return The number of release files read so far. A file split by release version during a Full import counts once per version.
+	 */
+	public int getFilesRead() {
+		return filesRead.get();
+	}
+
+	/**
+	 * @return The number of byte ranges read so far from files split for parallel parsing, see ReleaseImporter.setFileSplitThresholdBytes.
+	 */
+	public int getSplitRangesRead() {
+		return splitRangesRead.get();
+	}
+
+	/**
+	 * @return The approximate number of rows read so far, updated every few thousand rows of each file.
+	 */
+	public long getRowsRead() {
+		return rowsRead.sum();
+	}
+
+	/**
+	 * @return The number of rows passed through a pipeline, see ReleaseImporter.setPipelineBatches. Updated as each file or range finishes.
+	 */
+	public long getPipelineRows() {
+		return pipelineRows.sum();
+	}
+
+	/**
+	 * @return The total time threads reading files waited for an empty pipeline batch. A large value means the component factory is the bottleneck.
+	 */
+	public long getPipelineReaderWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(pipelineReaderWaitNanos.sum());
+	}
+
+	/**
+	 * @return The total time threads handling rows waited for a filled pipeline batch. A large value means reading is the bottleneck.
+	 */
+	public long getPipelineHandlerWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(pipelineHandlerWaitNanos.sum());
+	}
+
+	/**
+	 * @return The mean number of filled batches waiting to be handled, sampled each time a batch is filled, over every pipeline.
+	 */
+	public double getPipelineMeanQueuedBatches() {
+		long batchesFilled = pipelineBatchesFilled.sum();
+		return batchesFilled == 0 ? 0 : (double) pipelineQueuedBatchesTotal.sum() / batchesFilled;
+	}
+
+	/**
+	 * @return The most filled batches seen waiting to be handled in any one pipeline.
+	 */
+	public int getPipelineMaxQueuedBatches() {
+		return pipelineMaxQueuedBatches.get();
+	}
+
+	void run(ImportAction action) {
+		synchronized (this) {
+			thread = Thread.currentThread();
+		}
+		Throwable failure = null;
+		try {
+			if (!cancelled) {
+				action.run(this);
+			}
+		} catch (Throwable e) {
+			failure = e;
+		} finally {
+			synchronized (this) {
+				thread = null;
+				// Cancelling now would be too late to change the outcome
+				finished = true;
+			}
+			if (cancelled) {
+				// Do not leave an interrupt from stop on a thread of a shared executor
+				Thread.interrupted();
+			}
+		}
+		if (cancelled) {
+			future.completeExceptionally(new CancellationException("Release import cancelled."));
+		} else if (failure != null) {
+			future.completeExceptionally(failure);
+		} else {
+			future.complete(null);
+		}
+		terminated.countDown();
+	}
+
+	void fileRead() {
+		filesRead.incrementAndGet();
+	}
+
+	void splitRangeRead() {
+		splitRangesRead.incrementAndGet();
+	}
+
+	void rowsRead(long rows) {
+		rowsRead.add(rows);
+	}
+
+	void pipelineFinished(RowPipeline pipeline) {
+		pipelineRows.add(pipeline.getRows());
+		pipelineReaderWaitNanos.add(pipeline.getReaderWaitNanos());
+		pipelineHandlerWaitNanos.add(pipeline.getHandlerWaitNanos());
+		pipelineBatchesFilled.add(pipeline.getBatchesFilled());
+		pipelineQueuedBatchesTotal.add(pipeline.getQueuedBatchesTotal());
+		pipelineMaxQueuedBatches.accumulateAndGet(pipeline.getMaxQueuedBatches(), Math::max);
+	}
+
+	/**
+	 * @return false if the import has finished.
+	 */
+	private synchronized boolean stop() {
+		if (finished) {
+			return false;
+		}
+		cancelled = true;
+		if (thread != null) {
+			thread.interrupt();
+		}
+		return true;
+	}
+
+	/**
+	 * Cancelling stops the import, the future completes when it has stopped.
+	 */
+	private final class ImportFuture extends CompletableFuture<Void> {
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return stop();
+		}
+	}
+
+	interface ImportAction {
+		void run(ReleaseImport releaseImport) throws ReleaseImportException;
+	}
+}
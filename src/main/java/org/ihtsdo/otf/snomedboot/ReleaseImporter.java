@@ -1,37 +1,65 @@
 package org.ihtsdo.otf.snomedboot;
 
 import com.google.common.collect.Lists;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.ihtsdo.otf.snomedboot.domain.ConceptConstants;
 import org.ihtsdo.otf.snomedboot.domain.rf2.*;
+import org.ihtsdo.otf.snomedboot.factory.BatchComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.ComponentBatch;
 import org.ihtsdo.otf.snomedboot.factory.ComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.ComponentFactoryProvider;
+import org.ihtsdo.otf.snomedboot.factory.ConceptBatch;
+import org.ihtsdo.otf.snomedboot.factory.DescriptionBatch;
 import org.ihtsdo.otf.snomedboot.factory.HistoryAwareComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
+import org.ihtsdo.otf.snomedboot.factory.PrimitiveComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.RelationshipBatch;
 import org.ihtsdo.otf.snomedboot.factory.filter.LatestEffectiveDateComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.filter.LatestEffectiveDateFilter;
 import org.ihtsdo.otf.snomedboot.factory.filter.ModuleEffectiveTimeFilter;
 import org.ihtsdo.otf.snomedboot.factory.filter.ModuleFilter;
+import org.ihtsdo.otf.snomedboot.factory.implementation.FanOutComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.implementation.HighLevelComponentFactoryAdapterImpl;
 import org.ihtsdo.otf.snomedboot.factory.implementation.ListComponentFactoryProvider;
+import org.ihtsdo.otf.snomedboot.factory.implementation.standard.ComponentStore;
+import org.ihtsdo.otf.snomedboot.factory.implementation.standard.ComponentStoreComponentFactoryImpl;
+import org.ihtsdo.otf.snomedboot.parser.RF2Reader;
+import org.ihtsdo.otf.snomedboot.parser.RF2Row;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32C;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 import static java.lang.String.format;
 
@@ -40,17 +68,181 @@ public class ReleaseImporter {
 	public static final Charset UTF_8 = StandardCharsets.UTF_8;
 	private static final Logger logger = LoggerFactory.getLogger(ReleaseImporter.class);
 	private static final String IDENTIFIERS_TYPE = "identifiers";
+	// Progress is recorded and cancellation checked every 4096 rows
+	private static final long PROGRESS_ROWS_MASK = 4096 - 1;
+	private static final long DEFAULT_FULL_IMPORT_MEMORY_BUFFER_BYTES = 256L * 1024 * 1024;
+
+	private long fullImportMemoryBufferBytes = DEFAULT_FULL_IMPORT_MEMORY_BUFFER_BYTES;
+	private long releaseZipMemoryBufferBytes = Long.MAX_VALUE;
+	private long fileSplitThresholdBytes;
+	private boolean spoolReleaseZipToTempFile;
+	private File effectiveTimeIndexDirectory;
+	private int fanOutQueueSize;
+	private int pipelineBatches;
+	private boolean refsetsAfterCoreComponents = true;
+	private ExecutorService executorService;
+	private boolean virtualThreads;
+	private int parallelism;
 
+	/**
+	 * @param releaseDirPath Directory containing the release files or the path of a release zip file.
+	 *                       A zip file is read in place without extracting the entries.
+	 */
 	public void loadFullReleaseFiles(String releaseDirPath, LoadingProfile loadingProfile, HistoryAwareComponentFactory componentFactory, boolean multiThreaded) throws ReleaseImportException {
-		new ImportRun(componentFactory).doLoadReleaseFiles(releaseDirPath, loadingProfile, ImportType.FULL, multiThreaded);
+		new ImportRun(componentFactory, this).doLoadReleaseFiles(releaseDirPath, loadingProfile, ImportType.FULL, multiThreaded);
 	}
 
 	public void loadSnapshotReleaseFiles(String releaseDirPath, LoadingProfile loadingProfile, ComponentFactory componentFactory, boolean multiThreaded) throws ReleaseImportException {
-		new ImportRun(componentFactory).doLoadReleaseFiles(releaseDirPath, loadingProfile, ImportType.SNAPSHOT, multiThreaded);
+		new ImportRun(componentFactory, this).doLoadReleaseFiles(releaseDirPath, loadingProfile, ImportType.SNAPSHOT, multiThreaded);
 	}
 
 	public void loadDeltaReleaseFiles(String releaseDirPath, LoadingProfile loadingProfile, ComponentFactory componentFactory, boolean multiThreaded) throws ReleaseImportException {
-		new ImportRun(componentFactory).doLoadReleaseFiles(releaseDirPath, loadingProfile, ImportType.DELTA, multiThreaded);
+		new ImportRun(componentFactory, this).doLoadReleaseFiles(releaseDirPath, loadingProfile, ImportType.DELTA, multiThreaded);
+	}
+
+	/**
+	 * Starts loading the Full release files in the background.
+	 * @return The running import, its future completes when loading is complete.
+	 */
+	public ReleaseImport loadFullReleaseFilesAsync(String releaseDirPath, LoadingProfile loadingProfile, HistoryAwareComponentFactory componentFactory, boolean multiThreaded) {
+		return startImport(releaseImport -> new ImportRun(componentFactory, this, releaseImport).doLoadReleaseFiles(releaseDirPath, loadingProfile, ImportType.FULL, multiThreaded));
+	}
+
+	/**
+	 * Starts loading the Snapshot release files in the background.
+	 * @return The running import, its future completes when loading is complete.
+	 */
+	public ReleaseImport loadSnapshotReleaseFilesAsync(String releaseDirPath, LoadingProfile loadingProfile, ComponentFactory componentFactory, boolean multiThreaded) {
+		return startImport(releaseImport -> new ImportRun(componentFactory, this, releaseImport).doLoadReleaseFiles(releaseDirPath, loadingProfile, ImportType.SNAPSHOT, multiThreaded));
+	}
+
+	/**
+	 * Starts loading the Delta release files in the background.
+	 * @return The running import, its future completes when loading is complete.
+	 */
+	public ReleaseImport loadDeltaReleaseFilesAsync(String releaseDirPath, LoadingProfile loadingProfile, ComponentFactory componentFactory, boolean multiThreaded) {
+		return startImport(releaseImport -> new ImportRun(componentFactory, this, releaseImport).doLoadReleaseFiles(releaseDirPath, loadingProfile, ImportType.DELTA, multiThreaded));
+	}
+
+	/**
+	 * Publishes the rows of the Snapshot release files to one subscriber. The files are read only as fast as the subscriber requests rows.
+	 */
+	public ComponentRowPublisher publishSnapshotReleaseFiles(String releaseDirPath, LoadingProfile loadingProfile, boolean multiThreaded) {
+		return new ComponentRowPublisher(componentFactory -> loadSnapshotReleaseFilesAsync(releaseDirPath, loadingProfile, componentFactory, multiThreaded));
+	}
+
+	/**
+	 * Publishes the rows of the Delta release files to one subscriber. The files are read only as fast as the subscriber requests rows.
+	 */
+	public ComponentRowPublisher publishDeltaReleaseFiles(String releaseDirPath, LoadingProfile loadingProfile, boolean multiThreaded) {
+		return new ComponentRowPublisher(componentFactory -> loadDeltaReleaseFilesAsync(releaseDirPath, loadingProfile, componentFactory, multiThreaded));
+	}
+
+	/**
+	 * Load snapshot release files into a ComponentStore using a binary image of the store to start up faster.
+	 * If imageDirectory holds an image of the same release files loaded with the same loading profile, the store is read from that image
+	 * rather than from the release files. Otherwise the release files are loaded and an image of the store is written to imageDirectory.
+	 * Images are keyed by the name, size and checksum of every release file, so an image is not used once the release files change.
+	 * @param releaseDirPath Directory containing the release files or the path of a release zip file.
+	 */
+	public void loadSnapshotReleaseFiles(String releaseDirPath, LoadingProfile loadingProfile, ComponentStoreComponentFactoryImpl componentFactory,
+			File imageDirectory, boolean multiThreaded) throws ReleaseImportException {
+
+		loadReleaseFilesUsingImage(releaseDirPath, null, loadingProfile, componentFactory, imageDirectory, multiThreaded);
+	}
+
+	/**
+	 * Load snapshot release files into a ComponentStore and apply delta release files to it, using binary images of the store.
+	 * The snapshot is read from an image, or loaded and an image written, as by loadSnapshotReleaseFiles. Only the components in the
+	 * delta are then updated, see ComponentStoreComponentFactoryImpl, and an image of the updated store is written.
+	 * Later loads of the same snapshot and delta read that image directly, a new delta is applied to the snapshot image.
+	 * @param snapshotDirPath Directory containing the snapshot release files or the path of a release zip file.
+	 * @param deltaDirPath Directory containing the delta release files or the path of a release zip file.
+	 */
+	public void loadSnapshotAndDeltaReleaseFiles(String snapshotDirPath, String deltaDirPath, LoadingProfile loadingProfile,
+			ComponentStoreComponentFactoryImpl componentFactory, File imageDirectory, boolean multiThreaded) throws ReleaseImportException {
+
+		loadReleaseFilesUsingImage(snapshotDirPath, deltaDirPath, loadingProfile, componentFactory, imageDirectory, multiThreaded);
+	}
+
+	private void loadReleaseFilesUsingImage(String snapshotDirPath, String deltaDirPath, LoadingProfile loadingProfile,
+			ComponentStoreComponentFactoryImpl componentStoreFactory, File imageDirectory, boolean multiThreaded) throws ReleaseImportException {
+
+		// Parents, children, attribute maps and FSNs are populated by the high level callbacks
+		ComponentFactory componentFactory = new HighLevelComponentFactoryAdapterImpl(loadingProfile, componentStoreFactory, componentStoreFactory);
+		ComponentStore componentStore = componentStoreFactory.getComponentStore();
+		// Separate runs so that the files of a snapshot zip are not mistaken for delta files
+		ImportRun snapshotRun = new ImportRun(componentFactory, this);
+		ImportRun deltaRun = deltaDirPath != null ? new ImportRun(componentFactory, this) : null;
+		try {
+			ReleaseFiles snapshotFiles = snapshotRun.findFiles(Collections.singletonList(snapshotDirPath), ImportType.SNAPSHOT, loadingProfile);
+			byte[] snapshotKey = snapshotRun.createComponentStoreImageKey(snapshotFiles, loadingProfile);
+			ReleaseFiles deltaFiles = null;
+			byte[] deltaKey = null;
+			if (deltaRun != null) {
+				deltaFiles = deltaRun.findFiles(Collections.singletonList(deltaDirPath), ImportType.DELTA, loadingProfile);
+				deltaKey = deltaRun.createReleaseFilesKey(deltaFiles, "delta on " + HexFormat.of().formatHex(snapshotKey));
+				if (readComponentStoreImage(componentFactory, componentStore, imageDirectory, deltaKey)) {
+					return;
+				}
+			}
+
+			if (!readComponentStoreImage(componentFactory, componentStore, imageDirectory, snapshotKey)) {
+				snapshotRun.doLoadReleaseFiles(snapshotFiles, loadingProfile, ImportType.SNAPSHOT, multiThreaded);
+				writeComponentStoreImage(componentStore, imageDirectory, snapshotKey);
+			}
+			if (deltaRun != null) {
+				// The delta updates the concepts of the snapshot
+				componentStoreFactory.setUpdating(loadingProfile);
+				try {
+					deltaRun.doLoadReleaseFiles(deltaFiles, loadingProfile, ImportType.DELTA, multiThreaded);
+				} finally {
+					componentStoreFactory.setUpdating(null);
+				}
+				writeComponentStoreImage(componentStore, imageDirectory, deltaKey);
+			}
+		} catch (IOException e) {
+			throw new ReleaseImportException("Failed to find release files during release import process.", e);
+		} finally {
+			snapshotRun.close();
+			if (deltaRun != null) {
+				deltaRun.close();
+			}
+		}
+	}
+
+	/**
+	 * @return false if there is no image with this key or it could not be read, leaving the store unchanged.
+	 */
+	private boolean readComponentStoreImage(ComponentFactory componentFactory, ComponentStore componentStore, File imageDirectory, byte[] key) throws ReleaseImportException {
+		Path imageFile = getComponentStoreImageFile(imageDirectory, key);
+		try {
+			if (!componentStore.readImage(imageFile, key)) {
+				return false;
+			}
+		} catch (IOException e) {
+			logger.warn("Failed to read component store image {}, loading the release files instead.", imageFile, e);
+			return false;
+		}
+		logger.info("Component store read from image {}.", imageFile);
+		componentFactory.preprocessingContent();
+		componentFactory.loadingComponentsStarting();
+		componentFactory.loadingComponentsCompleted();
+		return true;
+	}
+
+	private void writeComponentStoreImage(ComponentStore componentStore, File imageDirectory, byte[] key) {
+		Path imageFile = getComponentStoreImageFile(imageDirectory, key);
+		try {
+			componentStore.writeImage(imageFile, key);
+			logger.info("Component store image written to {}.", imageFile);
+		} catch (IOException e) {
+			logger.warn("Failed to write component store image {}, the release files will be loaded again next time.", imageFile, e);
+		}
+	}
+
+	private Path getComponentStoreImageFile(File imageDirectory, byte[] key) {
+		return imageDirectory.toPath().resolve("component-store-" + HexFormat.of().formatHex(key, 0, 16) + ".img");
 	}
 
 	/**
@@ -68,7 +260,27 @@ public class ReleaseImporter {
 	public void loadEffectiveSnapshotReleaseFiles(Set<String> releaseDirPaths, LoadingProfile loadingProfile,
 			ComponentFactoryProvider componentFactoryProvider, boolean multiThreaded) throws ReleaseImportException {
 
-		new ImportRun(componentFactoryProvider).doLoadReleaseFiles(new ArrayList<>(releaseDirPaths), loadingProfile.withEffectiveComponentFilter(), ImportType.SNAPSHOT, multiThreaded);
+		new ImportRun(componentFactoryProvider, this).doLoadReleaseFiles(new ArrayList<>(releaseDirPaths), loadingProfile.withEffectiveComponentFilter(), ImportType.SNAPSHOT, multiThreaded);
+	}
+
+	/**
+	 * Starts loading only the effective components from multiple snapshots in the background.
+	 * @return The running import, its future completes when loading is complete.
+	 */
+	public ReleaseImport loadEffectiveSnapshotReleaseFilesAsync(Set<String> releaseDirPaths, LoadingProfile loadingProfile,
+			ComponentFactoryProvider componentFactoryProvider, boolean multiThreaded) {
+
+		return startImport(releaseImport -> new ImportRun(componentFactoryProvider, this, releaseImport)
+				.doLoadReleaseFiles(new ArrayList<>(releaseDirPaths), loadingProfile.withEffectiveComponentFilter(), ImportType.SNAPSHOT, multiThreaded));
+	}
+
+	/**
+	 * Publishes the rows of only the effective components from multiple snapshots to one subscriber.
+	 * The files are read only as fast as the subscriber requests rows.
+	 */
+	public ComponentRowPublisher publishEffectiveSnapshotReleaseFiles(Set<String> releaseDirPaths, LoadingProfile loadingProfile, boolean multiThreaded) {
+		return new ComponentRowPublisher(componentFactory -> loadEffectiveSnapshotReleaseFilesAsync(releaseDirPaths, loadingProfile,
+				new ListComponentFactoryProvider(componentFactory), multiThreaded));
 	}
 
 	/**
@@ -78,19 +290,15 @@ public class ReleaseImporter {
 	 * This is useful when loading Extension archives in combination with the International Edition.
 	 */
 	public void loadEffectiveSnapshotAndDeltaReleaseFiles(Set<String> releaseDirPaths, LoadingProfile loadingProfile, ComponentFactory componentFactory, boolean multiThreaded) throws ReleaseImportException {
-		new ImportRun(componentFactory).doLoadReleaseFiles(new ArrayList<>(releaseDirPaths), loadingProfile.withEffectiveComponentFilter(), ImportType.SNAPSHOT_AND_DELTA, multiThreaded);
+		new ImportRun(componentFactory, this).doLoadReleaseFiles(new ArrayList<>(releaseDirPaths), loadingProfile.withEffectiveComponentFilter(), ImportType.SNAPSHOT_AND_DELTA, multiThreaded);
 	}
 
 	public void loadFullReleaseFiles(InputStream releaseZip, LoadingProfile loadingProfile, HistoryAwareComponentFactory componentFactory, boolean multiThreaded) throws ReleaseImportException {
-		File releaseDir = unzipRelease(releaseZip, ImportType.FULL);
-		loadFullReleaseFiles(releaseDir.getAbsolutePath(), loadingProfile, componentFactory, multiThreaded);
-		deleteDirectory(releaseDir);
+		new ImportRun(componentFactory, this).doLoadReleaseFiles(readReleaseArchive(releaseZip, ImportType.FULL, loadingProfile, componentFactory), loadingProfile, ImportType.FULL, multiThreaded);
 	}
 
 	public void loadSnapshotReleaseFiles(InputStream releaseZip, LoadingProfile loadingProfile, ComponentFactory componentFactory, boolean multiThreaded) throws ReleaseImportException {
-		File releaseDir = unzipRelease(releaseZip, ImportType.SNAPSHOT);
-		loadSnapshotReleaseFiles(releaseDir.getAbsolutePath(), loadingProfile, componentFactory, multiThreaded);
-		deleteDirectory(releaseDir);
+		new ImportRun(componentFactory, this).doLoadReleaseFiles(readReleaseArchive(releaseZip, ImportType.SNAPSHOT, loadingProfile, componentFactory), loadingProfile, ImportType.SNAPSHOT, multiThreaded);
 	}
 
 	public void loadEffectiveSnapshotReleaseFileStreams(Set<InputStream> releaseZips, LoadingProfile loadingProfile,
@@ -110,23 +318,251 @@ public class ReleaseImporter {
 
 		File tempDir = createTempDir();
 		int a = 1;
-		for (InputStream releaseZip : releaseZips) {
-			File releaseTempDir = new File(tempDir, a++ + "");
-			releaseTempDir.mkdirs();
-			unzipRelease(releaseZip, ImportType.SNAPSHOT, releaseTempDir);
+		try {
+			for (InputStream releaseZip : releaseZips) {
+				File releaseTempDir = new File(tempDir, a++ + "");
+				releaseTempDir.mkdirs();
+				unzipRelease(releaseZip, ImportType.SNAPSHOT, releaseTempDir);
+			}
+			loadEffectiveSnapshotReleaseFiles(Collections.singleton(tempDir.getAbsolutePath()), loadingProfile, componentFactoryProvider, multiThreaded);
+		} finally {
+			deleteDirectory(tempDir);
 		}
-		loadEffectiveSnapshotReleaseFiles(Collections.singleton(tempDir.getAbsolutePath()), loadingProfile, componentFactoryProvider, multiThreaded);
-		deleteDirectory(tempDir);
 	}
 
 	public void loadDeltaReleaseFiles(InputStream releaseZip, LoadingProfile loadingProfile, ComponentFactory componentFactory, boolean multiThreaded) throws ReleaseImportException {
-		File releaseDir = unzipRelease(releaseZip, ImportType.DELTA);
-		loadDeltaReleaseFiles(releaseDir.getAbsolutePath(), loadingProfile, componentFactory, multiThreaded);
-		deleteDirectory(releaseDir);
+		new ImportRun(componentFactory, this).doLoadReleaseFiles(readReleaseArchive(releaseZip, ImportType.DELTA, loadingProfile, componentFactory), loadingProfile, ImportType.DELTA, multiThreaded);
+	}
+
+	/**
+	 * Full release rows are grouped by effectiveTime in memory while the files are read.
+	 * When more than this number of bytes are buffered the rows are written to temporary files.
+	 */
+	public ReleaseImporter setFullImportMemoryBufferBytes(long fullImportMemoryBufferBytes) {
+		this.fullImportMemoryBufferBytes = fullImportMemoryBufferBytes;
+		return this;
+	}
+
+	public long getFullImportMemoryBufferBytes() {
+		return fullImportMemoryBufferBytes;
+	}
+
+	/**
+	 * When loading multi-threaded, RF2 files larger than this number of bytes are split into byte ranges,
+	 * aligned on line boundaries, that are parsed on separate threads. Zero, the default, disables splitting.
+	 * Rows of one file are then passed to the component factory concurrently so the factory must be thread safe.
+	 * Parallel streams of rows split files into ranges no smaller than this, or 1 MB when zero.
+	 */
+	public ReleaseImporter setFileSplitThresholdBytes(long fileSplitThresholdBytes) {
+		this.fileSplitThresholdBytes = fileSplitThresholdBytes;
+		return this;
+	}
+
+	public long getFileSplitThresholdBytes() {
+		return fileSplitThresholdBytes;
+	}
+
+	/**
+	 * Release zip streams are read without extracting the entries to disk. By default the entries the loading profile will load are
+	 * inflated into memory, which for an International Edition is several GB. When enabled the compressed stream is copied to a temporary
+	 * file instead and the entries are read from there, which uses less memory for large releases.
+	 */
+	public ReleaseImporter setSpoolReleaseZipToTempFile(boolean spoolReleaseZipToTempFile) {
+		this.spoolReleaseZipToTempFile = spoolReleaseZipToTempFile;
+		return this;
+	}
+
+	public boolean isSpoolReleaseZipToTempFile() {
+		return spoolReleaseZipToTempFile;
+	}
+
+	/**
+	 * Limit on the bytes of release zip stream entries held in memory, no limit by default. Entries the loading profile will not load
+	 * are skipped. Loading a stream whose entries exceed the limit fails, unless the stream is spooled to a temporary file.
+	 */
+	public ReleaseImporter setReleaseZipMemoryBufferBytes(long releaseZipMemoryBufferBytes) {
+		this.releaseZipMemoryBufferBytes = releaseZipMemoryBufferBytes;
+		return this;
+	}
+
+	public long getReleaseZipMemoryBufferBytes() {
+		return releaseZipMemoryBufferBytes;
+	}
+
+	/**
+	 * Loading only effective components normally reads the release files twice, first to gather the latest effectiveTime of each component.
+	 * When this directory is set the gathered effectiveTimes are written to an index file there. Later loads of the same release files,
+	 * with the same loading profile, memory map that index instead of reading the files a first time.
+	 * Index files are keyed by the name, size and checksum of every release file. Null, the default, disables the index.
+	 */
+	public ReleaseImporter setEffectiveTimeIndexDirectory(File effectiveTimeIndexDirectory) {
+		this.effectiveTimeIndexDirectory = effectiveTimeIndexDirectory;
+		return this;
+	}
+
+	public File getEffectiveTimeIndexDirectory() {
+		return effectiveTimeIndexDirectory;
+	}
+
+	/**
+	 * When greater than zero, all the factories of a ComponentFactoryProvider are taken up front and loaded in one pass over the release files
+	 * using a FanOutComponentFactory with queues of this size. Each factory is then called from its own thread.
+	 * The factories must share the same loading profile, or have none. Zero, the default, loads the release files into each factory in turn.
+	 */
+	public ReleaseImporter setFanOutQueueSize(int fanOutQueueSize) {
+		this.fanOutQueueSize = fanOutQueueSize;
+		return this;
+	}
+
+	public int getFanOutQueueSize() {
+		return fanOutQueueSize;
+	}
+
+	/**
+	 * When greater than zero, each file is read and tokenized on one thread while its rows are passed to the component factory on another.
+	 * Rows are handed over in batches of about a thousand, using a ring of this many batches per file. This keeps reading going while the
+	 * component factory is busy. The time each thread waited for the other and the number of batches queued are logged for each file
+	 * and totalled by the ReleaseImport of an asynchronous load, to show which side is the bottleneck. Zero, the default, reads and handles the rows of a file on one thread.
+	 */
+	public ReleaseImporter setPipelineBatches(int pipelineBatches) {
+		this.pipelineBatches = pipelineBatches;
+		return this;
+	}
+
+	public int getPipelineBatches() {
+		return pipelineBatches;
+	}
+
+	/**
+	 * When loading multi-threaded, each file is loaded as soon as the files it depends on are loaded, largest files first.
+	 * Concepts are always loaded before any other component. By default, the default being true, reference set members are only loaded
+	 * once all other core components are loaded. When false reference set members are loaded alongside the other core components,
+	 * which shortens the load when the component factory only needs the referenced concepts to exist.
+	 */
+	public ReleaseImporter setRefsetsAfterCoreComponents(boolean refsetsAfterCoreComponents) {
+		this.refsetsAfterCoreComponents = refsetsAfterCoreComponents;
+		return this;
+	}
+
+	public boolean isRefsetsAfterCoreComponents() {
+		return refsetsAfterCoreComponents;
+	}
+
+	/**
+	 * Executor to run the loading tasks of every import, instead of a new thread pool per import. It is not shut down by the importer.
+	 * The asynchronous load methods also run the import itself on this executor.
+	 * A bounded executor, such as a fixed thread pool shared with other work, may be used. A loading task that waits for another,
+	 * for example when pipelining or splitting files, runs that task itself if no executor thread has started it.
+	 * Use setParallelism to limit the number of threads reading rows at once. Null, the default, creates a thread pool for each import.
+	 */
+	public ReleaseImporter setExecutorService(ExecutorService executorService) {
+		this.executorService = executorService;
+		return this;
+	}
+
+	public ExecutorService getExecutorService() {
+		return executorService;
+	}
+
+	/**
+	 * When true, and no executor is set, the loading tasks of each import run on virtual threads.
+	 * Virtual threads need Java 21 or later, on earlier versions a warning is logged and platform threads are used.
+	 */
+	public ReleaseImporter setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+		return this;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * When loading multi-threaded, the maximum number of files and ranges of split files read at once across the whole import,
+	 * and of ranges a split file is read in. Also the number of entries unzipped at once when a release zip is extracted.
+	 * Lower values leave processors free for other work on the same host. Zero, the default, reads every file that is ready at once
+	 * and splits files into up to one range per available processor.
+	 */
+	public ReleaseImporter setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Streams the rows of one component type from the release files. The loading profile selects files and rows as when loading into
+	 * a component factory, including the module and effective component filters. Files on the default file system larger than twice the
+	 * file split threshold, 1 MB by default, are split on line boundaries so that a parallel stream parses them on several threads.
+	 * Close the stream, for example with try-with-resources, to release the release files.
+	 * @param rowType ConceptRow, DescriptionRow, RelationshipRow, ConcreteRelationshipRow, IdentifierRow or RefsetMemberRow.
+	 * @throws UncheckedReleaseImportException from the stream if the content is not valid RF2.
+	 */
+	public <T extends ComponentRow> Stream<T> streamReleaseFiles(String releaseDirPath, ImportType importType, LoadingProfile loadingProfile,
+			Class<T> rowType) throws ReleaseImportException {
+
+		return new ImportRun(new ListComponentFactoryProvider(Collections.emptyList()), this)
+				.streamRows(Collections.singletonList(releaseDirPath), loadingProfile, importType, rowType);
+	}
+
+	/**
+	 * Streams the rows of one component type of only the effective components from multiple snapshots.
+	 * @see #streamReleaseFiles(String, ImportType, LoadingProfile, Class)
+	 */
+	public <T extends ComponentRow> Stream<T> streamEffectiveSnapshotReleaseFiles(Set<String> releaseDirPaths, LoadingProfile loadingProfile,
+			Class<T> rowType) throws ReleaseImportException {
+
+		return new ImportRun(new ListComponentFactoryProvider(Collections.emptyList()), this)
+				.streamRows(new ArrayList<>(releaseDirPaths), loadingProfile.withEffectiveComponentFilter(), ImportType.SNAPSHOT, rowType);
+	}
+
+	/**
+	 * Runs the import on the executor if one is set, otherwise on a new thread.
+	 */
+	private ReleaseImport startImport(ReleaseImport.ImportAction action) {
+		ReleaseImport releaseImport = new ReleaseImport();
+		if (executorService != null) {
+			executorService.execute(() -> releaseImport.run(action));
+		} else {
+			new Thread(() -> releaseImport.run(action), "release-import").start();
+		}
+		return releaseImport;
 	}
 
+	/**
+	 * Extracts the release files of the given type from a zip into a new temp directory, without directory nesting.
+	 * The caller must delete the directory. It is removed if extraction fails.
+	 */
 	public File unzipRelease(InputStream releaseZip, ImportType filenameFilter) throws ReleaseImportException {
-		return unzipRelease(releaseZip, filenameFilter, createTempDir());
+		File tempDir = createTempDir();
+		boolean unzipped = false;
+		try {
+			unzipRelease(releaseZip, filenameFilter, tempDir);
+			unzipped = true;
+			return tempDir;
+		} finally {
+			if (!unzipped) {
+				deleteDirectory(tempDir);
+			}
+		}
+	}
+
+	private ReleaseArchive readReleaseArchive(InputStream releaseZip, ImportType importType, LoadingProfile loadingProfile,
+			ComponentFactory componentFactory) throws ReleaseImportException {
+
+		// The loading profile of the factory, if it has one, is used in place of the given one.
+		// Files that list the release versions of a Full import are kept even if not loaded.
+		LoadingProfile factoryLoadingProfile = componentFactory.getLoadingProfile();
+		Predicate<Path> entryFilter = path -> ImportRun.isLoadedFile(path, importType, loadingProfile)
+				|| (factoryLoadingProfile != null && ImportRun.isLoadedFile(path, importType, factoryLoadingProfile))
+				|| (importType == ImportType.FULL && ImportRun.isVersionListingFile(path, importType));
+		try {
+			return ReleaseArchive.read(releaseZip, entryFilter, releaseZipMemoryBufferBytes, spoolReleaseZipToTempFile);
+		} catch (IOException e) {
+			throw new ReleaseImportException("Failed to read Snomed " + importType.getFilenamePart() + " release file.", e);
+		}
 	}
 
 	private void deleteDirectory(File file) {
@@ -147,33 +583,34 @@ public class ReleaseImporter {
 
 	private File unzipRelease(InputStream releaseZip, ImportType filenameFilter, File tempDir) throws ReleaseImportException {
 		try {
-			try (InputStream snomedReleaseZipStream = releaseZip) {
-				File zipFile = new File(tempDir, "release.zip");
-				try (FileOutputStream out = new FileOutputStream(zipFile)) {
-					IOUtils.copy(snomedReleaseZipStream, out);
-				}
-
-				try (ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(zipFile))) {
-					ZipEntry zipEntry;
-					int filesUnzipped = 0;
-					while ((zipEntry = zipInputStream.getNextEntry()) != null) {
-						String zipEntryName = zipEntry.getName();
-						if (zipEntryName.contains(filenameFilter.getFilenamePart()) && !zipEntry.isDirectory()) {
-							// Create file without directory nesting
-							File file = new File(tempDir, new File(zipEntryName).getName());
-							logger.info("Unzipping file to {}", file.getAbsolutePath());
-							if (!file.createNewFile()) {
-								logger.error("Failed to create file {}", file.getAbsolutePath());
-							}
-							try (FileOutputStream entryOutputStream = new FileOutputStream(file)) {
-								IOUtils.copy(zipInputStream, entryOutputStream);
-								filesUnzipped++;
-							}
+			File zipFile = new File(tempDir, "release.zip");
+			try (InputStream snomedReleaseZipStream = releaseZip;
+				 FileOutputStream out = new FileOutputStream(zipFile)) {
+				IOUtils.copy(snomedReleaseZipStream, out);
+			}
+
+			try (ZipFile releaseZipFile = new ZipFile(zipFile)) {
+				// Create files without directory nesting, the last entry with a given name wins
+				Map<String, ZipEntry> entriesToUnzip = new LinkedHashMap<>();
+				Enumeration<? extends ZipEntry> entries = releaseZipFile.entries();
+				while (entries.hasMoreElements()) {
+					ZipEntry zipEntry = entries.nextElement();
+					String zipEntryName = zipEntry.getName();
+					if (zipEntryName.contains(filenameFilter.getFilenamePart()) && !zipEntry.isDirectory()) {
+						String fileName = new File(zipEntryName).getName();
+						if (entriesToUnzip.remove(fileName) != null) {
+							logger.error("Multiple zip entries named {}, only the last will be used.", fileName);
 						}
+						entriesToUnzip.put(fileName, zipEntry);
 					}
-					if (filesUnzipped == 0) {
-						throw new IllegalStateException("No " + filenameFilter.getFilenamePart() + " files found in archive: " + zipFile.getAbsolutePath());
-					}
+				}
+				if (entriesToUnzip.isEmpty()) {
+					throw new IllegalStateException("No " + filenameFilter.getFilenamePart() + " files found in archive: " + zipFile.getAbsolutePath());
+				}
+				unzipEntries(releaseZipFile, entriesToUnzip, tempDir);
+			} finally {
+				if (!zipFile.delete()) {
+					logger.warn("Failed to remove temp file {}", zipFile.getAbsolutePath());
 				}
 			}
 			return tempDir;
@@ -182,6 +619,41 @@ public class ReleaseImporter {
 		}
 	}
 
+	/**
+	 * Inflate entries on a bounded pool. ZipFile gives each entry its own stream so entries are independent.
+	 */
+	private void unzipEntries(ZipFile releaseZipFile, Map<String, ZipEntry> entriesToUnzip, File tempDir) throws IOException, ReleaseImportException {
+		int threads = Math.min(entriesToUnzip.size(), parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+		ExecutorService unzipExecutor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (Map.Entry<String, ZipEntry> entryToUnzip : entriesToUnzip.entrySet()) {
+				futures.add(unzipExecutor.submit(() -> {
+					File file = new File(tempDir, entryToUnzip.getKey());
+					logger.info("Unzipping file to {}", file.getAbsolutePath());
+					try (InputStream entryInputStream = releaseZipFile.getInputStream(entryToUnzip.getValue());
+						 FileOutputStream entryOutputStream = new FileOutputStream(file)) {
+						IOUtils.copy(entryInputStream, entryOutputStream);
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ReleaseImportException("Interrupted while unzipping release file.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new ReleaseImportException("Failed to unzip release file.", e.getCause());
+		} finally {
+			unzipExecutor.shutdownNow();
+		}
+	}
+
 	public enum ImportType {
 
 		DELTA("Delta"), SNAPSHOT("Snapshot"), FULL("Full"), SNAPSHOT_AND_DELTA(null);
@@ -207,33 +679,185 @@ public class ReleaseImporter {
 	static final class ImportRun {
 
 		private final ComponentFactoryProvider componentFactoryProvider;
+		private final ReleaseImporter releaseImporter;
 
 		private final ExecutorService executorService;
-		private final List<Exception> loadingExceptions;
+		private final boolean ownExecutorService;
+		private final ReleaseImport releaseImport;
+		private final List<ReleaseArchive> releaseArchives = new ArrayList<>();
+		private final Set<RF2Reader> streamedReaders = ConcurrentHashMap.newKeySet();
+		// Limits the files and ranges read at once to the parallelism of the importer, null if not limited
+		private final Semaphore readPermits;
+		private ReleaseVersionSplitter releaseVersionSplitter;
+		private FanOutComponentFactory fanOutComponentFactory;
+		private boolean multiThreaded;
+		// Set when a file loading task fails so that the others stop reading
+		private volatile boolean stopped;
+
+		private ImportRun(ComponentFactoryProvider componentFactoryProvider, ReleaseImporter releaseImporter, ReleaseImport releaseImport) {
+			ownExecutorService = releaseImporter.getExecutorService() == null;
+			if (!ownExecutorService) {
+				executorService = releaseImporter.getExecutorService();
+			} else if (releaseImporter.isVirtualThreads()) {
+				executorService = newVirtualThreadExecutor();
+			} else {
+				executorService = Executors.newCachedThreadPool();
+			}
+			readPermits = releaseImporter.getParallelism() > 0 ? new Semaphore(releaseImporter.getParallelism(), true) : null;
+			this.componentFactoryProvider = componentFactoryProvider;
+			this.releaseImporter = releaseImporter;
+			this.releaseImport = releaseImport;
+		}
 
-		private static final Pattern DATE_EXTRACT_PATTERN = Pattern.compile("[^\\t]*\\t([^\\t]*)\t.*");
-		private static final Pattern LEGACY_IDENTIFIER_DATE_EXTRACT_PATTERN = Pattern.compile("[^\\t]*\\t[^\\t]*\\t([^\\t]*)\t.*");
+		private ImportRun(ComponentFactoryProvider componentFactoryProvider, ReleaseImporter releaseImporter) {
+			this(componentFactoryProvider, releaseImporter, new ReleaseImport());
+		}
 
-		private ImportRun(ComponentFactoryProvider componentFactoryProvider) {
-			executorService = Executors.newCachedThreadPool();
-			this.componentFactoryProvider = componentFactoryProvider;
-			loadingExceptions = new ArrayList<>();
+		private ImportRun(ComponentFactory componentFactory, ReleaseImporter releaseImporter, ReleaseImport releaseImport) {
+			this(new ListComponentFactoryProvider(componentFactory), releaseImporter, releaseImport);
 		}
 
-		private ImportRun(ComponentFactory componentFactory) {
-			this(new ListComponentFactoryProvider(componentFactory));
+		private ImportRun(ComponentFactory componentFactory, ReleaseImporter releaseImporter) {
+			this(componentFactory, releaseImporter, new ReleaseImport());
 		}
 
 		private void doLoadReleaseFiles(String releaseDirPath, LoadingProfile loadingProfile, ImportType importType, boolean multiThreaded) throws ReleaseImportException {
 			doLoadReleaseFiles(Collections.singletonList(releaseDirPath), loadingProfile, importType, multiThreaded);
 		}
 
+		private void doLoadReleaseFiles(ReleaseArchive releaseArchive, LoadingProfile loadingProfile, ImportType importType, boolean multiThreaded) throws ReleaseImportException {
+			releaseArchives.add(releaseArchive);
+			doLoadReleaseFiles(Collections.emptyList(), loadingProfile, importType, multiThreaded);
+		}
+
 		private void doLoadReleaseFiles(List<String> releaseDirPaths, LoadingProfile loadingProfile, ImportType importType, boolean multiThreaded) throws ReleaseImportException {
-			// Configuration Validation
-			if (loadingProfile.isEffectiveComponentFilter() && (importType == ImportType.DELTA || importType == ImportType.FULL)) {
-				throw new ReleaseImportException("Configuration error. EffectiveComponentFilter can only be used when loading Snapshots, or Snapshots and Delta.");
+			this.multiThreaded = multiThreaded;
+			try {
+				doLoadReleaseFiles(releaseDirPaths, loadingProfile, importType);
+			} finally {
+				close();
+			}
+		}
+
+		private void doLoadReleaseFiles(ReleaseFiles releaseFiles, LoadingProfile loadingProfile, ImportType importType, boolean multiThreaded) throws ReleaseImportException {
+			this.multiThreaded = multiThreaded;
+			doLoadReleaseFiles(releaseFiles, loadingProfile, importType);
+		}
+
+		/**
+		 * Creates a stream of the rows of one component type. Closing the stream closes this run.
+		 */
+		private <T extends ComponentRow> Stream<T> streamRows(List<String> releaseDirPaths, LoadingProfile loadingProfile, ImportType importType,
+				Class<T> rowType) throws ReleaseImportException {
+
+			boolean streaming = false;
+			try {
+				if (loadingProfile.isEffectiveComponentFilter() && (importType == ImportType.DELTA || importType == ImportType.FULL)) {
+					throw new ReleaseImportException("Configuration error. EffectiveComponentFilter can only be used when loading Snapshots, or Snapshots and Delta.");
+				}
+				ReleaseFiles releaseFiles = findFiles(releaseDirPaths, importType, loadingProfile);
+				LatestEffectiveDateComponentFactory effectiveComponentFilter = null;
+				if (loadingProfile.isEffectiveComponentFilter()) {
+					effectiveComponentFilter = createEffectiveComponentFilter(releaseFiles, loadingProfile);
+				}
+				final LatestEffectiveDateComponentFactory effectiveFilter = effectiveComponentFilter;
+				final Function<ComponentFactory, ComponentFactory> filters = componentFactory -> addContentFilters(componentFactory, loadingProfile, effectiveFilter);
+
+				List<RF2RowSpliterator.RowFile> rowFiles = new ArrayList<>();
+				boolean coreComponents = !loadingProfile.isJustRefsets();
+				if (rowType == ConceptRow.class) {
+					if (coreComponents && loadingProfile.isConcepts()) {
+						addRowFiles(rowFiles, releaseFiles.getConceptPaths(), "concepts", sink -> conceptHandler(loadingProfile, filters.apply(sink)));
+					}
+				} else if (rowType == DescriptionRow.class) {
+					if (coreComponents && loadingProfile.isDescriptions()) {
+						addRowFiles(rowFiles, releaseFiles.getDescriptionPaths(), "descriptions", sink -> descriptionHandler(loadingProfile, filters.apply(sink)));
+						if (loadingProfile.isTextDefinitions()) {
+							addRowFiles(rowFiles, releaseFiles.getTextDefinitionPaths(), "descriptions", sink -> descriptionHandler(loadingProfile, filters.apply(sink)));
+						}
+					}
+				} else if (rowType == RelationshipRow.class) {
+					if (coreComponents && loadingProfile.isRelationships()) {
+						addRowFiles(rowFiles, releaseFiles.getRelationshipPaths(), "relationships", sink -> relationshipHandler(loadingProfile, filters.apply(sink)));
+					}
+					if (coreComponents && loadingProfile.isStatedRelationships()) {
+						addRowFiles(rowFiles, releaseFiles.getStatedRelationshipPaths(), "relationships", sink -> relationshipHandler(loadingProfile, filters.apply(sink)));
+					}
+				} else if (rowType == ConcreteRelationshipRow.class) {
+					if (coreComponents && loadingProfile.isRelationships()) {
+						addRowFiles(rowFiles, releaseFiles.getConcreteRelationshipPaths(), "concrete relationships",
+								sink -> concreteRelationshipHandler(loadingProfile, filters.apply(sink)));
+					}
+				} else if (rowType == IdentifierRow.class) {
+					if (coreComponents && loadingProfile.isIdentifiers()) {
+						addRowFiles(rowFiles, releaseFiles.getIdentifierPaths(), IDENTIFIERS_TYPE, sink -> identifierHandler(loadingProfile, filters.apply(sink)));
+					}
+				} else if (rowType == RefsetMemberRow.class) {
+					for (Map.Entry<Path, Boolean> refsetPathEntry : getRefsetPaths(releaseFiles, loadingProfile).entrySet()) {
+						Path refsetPath = refsetPathEntry.getKey();
+						boolean filenamePatternMatch = refsetPathEntry.getValue();
+						addRowFiles(rowFiles, Collections.singletonList(refsetPath), "reference set members",
+								sink -> refsetHandler(refsetPath, loadingProfile, filters.apply(sink), filenamePatternMatch));
+					}
+				} else {
+					throw new IllegalArgumentException("Rows of type " + rowType.getName() + " can not be streamed.");
+				}
+				long splitThreshold = releaseImporter.getFileSplitThresholdBytes();
+				Stream<T> stream = StreamSupport.stream(new RF2RowSpliterator<>(rowType, rowFiles,
+						splitThreshold > 0 ? splitThreshold : RF2RowSpliterator.DEFAULT_MIN_SPLIT_BYTES), false).onClose(this::close);
+				streaming = true;
+				return stream;
+			} catch (IOException e) {
+				throw new ReleaseImportException("Failed to find release files during release import process.", e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ReleaseImportException("Interrupted while preparing the effective component filter.", e);
+			} finally {
+				if (!streaming) {
+					close();
+				}
+			}
+		}
+
+		private void addRowFiles(List<RF2RowSpliterator.RowFile> rowFiles, List<Path> rf2FilePaths, String componentType,
+				Function<ComponentFactory, FileContentHandler> handlerFactory) throws IOException, ReleaseImportException {
+
+			for (Path rf2FilePath : rf2FilePaths) {
+				// Read the header once up front, ranges of the file are parsed with it
+				rowFiles.add(new StreamedRF2File(rf2FilePath, readHeader(rf2FilePath, componentType), handlerFactory));
+			}
+		}
+
+		private void close() {
+			for (RF2Reader reader : streamedReaders) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					logger.debug("Failed to close reader.", e);
+				}
+			}
+			if (releaseVersionSplitter != null) {
+				releaseVersionSplitter.close();
+			}
+			releaseArchives.forEach(ReleaseArchive::close);
+			if (fanOutComponentFactory != null) {
+				fanOutComponentFactory.close();
 			}
+			if (ownExecutorService) {
+				executorService.shutdown();
+			}
+		}
+
+		private static ExecutorService newVirtualThreadExecutor() {
+			try {
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				logger.warn("Virtual threads are not available in Java {}, using platform threads.", System.getProperty("java.version"));
+				return Executors.newCachedThreadPool();
+			}
+		}
 
+		private void doLoadReleaseFiles(List<String> releaseDirPaths, LoadingProfile loadingProfile, ImportType importType) throws ReleaseImportException {
 			// Input Validation
 			ReleaseFiles combinedReleaseFiles;
 			try {
@@ -241,9 +865,22 @@ public class ReleaseImporter {
 			} catch (IOException e) {
 				throw new ReleaseImportException("Failed to find release files during release import process.", e);
 			}
+			doLoadReleaseFiles(combinedReleaseFiles, loadingProfile, importType);
+		}
+
+		private void doLoadReleaseFiles(ReleaseFiles combinedReleaseFiles, LoadingProfile loadingProfile, ImportType importType) throws ReleaseImportException {
+			// Configuration Validation
+			if (loadingProfile.isEffectiveComponentFilter() && (importType == ImportType.DELTA || importType == ImportType.FULL)) {
+				throw new ReleaseImportException("Configuration error. EffectiveComponentFilter can only be used when loading Snapshots, or Snapshots and Delta.");
+			}
 
 			logger.info("Loading {} release files {}", importType, combinedReleaseFiles);
 
+			ComponentFactoryProvider componentFactoryProvider = this.componentFactoryProvider;
+			if (releaseImporter.getFanOutQueueSize() > 0) {
+				componentFactoryProvider = createFanOutComponentFactoryProvider(releaseImporter.getFanOutQueueSize());
+			}
+
 			try {
 				ComponentFactory componentFactory = componentFactoryProvider.getNextComponentFactory();
 
@@ -255,18 +892,7 @@ public class ReleaseImporter {
 				}
 
 				do {
-					// Add content filters by wrapping this component factory
-					if (effectiveComponentFilter != null) {
-						componentFactory = new LatestEffectiveDateFilter(componentFactory, effectiveComponentFilter);
-					}
-					if (!loadingProfile.getModuleIds().isEmpty()) {
-						Set<String> moduleIds = loadingProfile.getModuleIds();
-						componentFactory = new ModuleFilter(componentFactory, moduleIds);
-					}
-					if (!loadingProfile.getModuleEffectiveTimeFilters().isEmpty()) {
-						Map<String, Integer> moduleEffectiveTimeFilters = loadingProfile.getModuleEffectiveTimeFilters();
-						componentFactory = new ModuleEffectiveTimeFilter(componentFactory, moduleEffectiveTimeFilters);
-					}
+					componentFactory = addContentFilters(componentFactory, loadingProfile, effectiveComponentFilter);
 
 					if (componentFactory.getLoadingProfile() != null) {
 						loadingProfile = componentFactory.getLoadingProfile();
@@ -275,23 +901,23 @@ public class ReleaseImporter {
 					componentFactory.loadingComponentsStarting();
 
 					if (importType == ImportType.FULL) {
-						final Set<String> releaseVersions = gatherVersions(combinedReleaseFiles);
-						for (String releaseVersion : releaseVersions) {
+						if (releaseVersionSplitter == null) {
+							releaseVersionSplitter = new ReleaseVersionSplitter(releaseImporter.getFullImportMemoryBufferBytes());
+						}
+						// Read each file once, grouping rows by release version, rather than once per version.
+						// Only the files loaded with this loading profile are kept, and not already kept for an earlier factory.
+						final LoadingProfile versionLoadingProfile = loadingProfile;
+						releaseVersionSplitter.split(combinedReleaseFiles, path -> isLoadedFile(path, importType, versionLoadingProfile), this::openInputStream);
+						for (String releaseVersion : releaseVersionSplitter.getVersions()) {
 							((HistoryAwareComponentFactory) componentFactory).loadingReleaseDeltaStarting(releaseVersion);
 							logger.info("Loading release delta {}", releaseVersion);
-							loadAll(loadingProfile, combinedReleaseFiles, releaseVersion, componentFactory, multiThreaded);
+							loadAll(loadingProfile, releaseVersionSplitter.getReleaseFiles(releaseVersion), releaseVersion, componentFactory, multiThreaded);
 							((HistoryAwareComponentFactory) componentFactory).loadingReleaseDeltaFinished(releaseVersion);
 						}
 					} else {
 						loadAll(loadingProfile, combinedReleaseFiles, null, componentFactory, multiThreaded);
 					}
 
-					if (!loadingExceptions.isEmpty()) {
-						Exception firstException = loadingExceptions.get(0);
-						throw new ReleaseImportException(String.format("Failed to load release files during release import process. " +
-								"%s exceptions caught in threads. First exception: %s", loadingExceptions.size(), firstException.getMessage()), firstException);
-					}
-
 					componentFactory.loadingComponentsCompleted();
 				} while ((componentFactory = componentFactoryProvider.getNextComponentFactory()) != null);
 
@@ -299,58 +925,248 @@ public class ReleaseImporter {
 			} catch (IOException | InterruptedException e) {
 				throw new ReleaseImportException("Failed to load release files during release import process.", e);
 			}
-			executorService.shutdown();
 		}
 
-		private LatestEffectiveDateComponentFactory createEffectiveComponentFilter(ReleaseFiles releaseFiles, LoadingProfile loadingProfile) throws IOException, InterruptedException, ReleaseImportException {
-			logger.info("Gathering effective dates for effective component filtering.");
-			LatestEffectiveDateComponentFactory latestEffectiveDateComponentFactory = new LatestEffectiveDateComponentFactory();
-
-			// Multi-threading disabled to avoid the need to synchronize LatestEffectiveDateComponentFactory.
-			boolean multiThreaded = false;
+		/**
+		 * Add content filters by wrapping the component factory.
+		 * @param effectiveComponentFilter optional
+		 */
+		private ComponentFactory addContentFilters(ComponentFactory componentFactory, LoadingProfile loadingProfile,
+				LatestEffectiveDateComponentFactory effectiveComponentFilter) {
 
+			if (effectiveComponentFilter != null) {
+				componentFactory = new LatestEffectiveDateFilter(componentFactory, effectiveComponentFilter);
+			}
+			if (!loadingProfile.getModuleEffectiveTimeFilters().isEmpty()) {
+				Map<String, Integer> moduleEffectiveTimeFilters = loadingProfile.getModuleEffectiveTimeFilters();
+				componentFactory = new ModuleEffectiveTimeFilter(componentFactory, moduleEffectiveTimeFilters);
+			}
+			// Outermost so that the row handlers can find it and skip rows of other modules before decoding them
+			if (!loadingProfile.getModuleIds().isEmpty()) {
+				Set<String> moduleIds = loadingProfile.getModuleIds();
+				componentFactory = new ModuleFilter(componentFactory, moduleIds);
+			}
+			return componentFactory;
+		}
+
+		private ComponentFactoryProvider createFanOutComponentFactoryProvider(int queueSize) throws ReleaseImportException {
+			List<ComponentFactory> componentFactories = new ArrayList<>();
+			ComponentFactory componentFactory;
+			while ((componentFactory = this.componentFactoryProvider.getNextComponentFactory()) != null) {
+				componentFactories.add(componentFactory);
+			}
+			if (componentFactories.size() < 2) {
+				return new ListComponentFactoryProvider(componentFactories);
+			}
+			LoadingProfile factoryLoadingProfile = null;
+			for (ComponentFactory factory : componentFactories) {
+				if (factory.getLoadingProfile() != null) {
+					if (factoryLoadingProfile != null && factoryLoadingProfile != factory.getLoadingProfile()) {
+						throw new ReleaseImportException("Configuration error. Component factories loaded in one pass must share the same loading profile.");
+					}
+					factoryLoadingProfile = factory.getLoadingProfile();
+				}
+			}
+			logger.info("Loading {} component factories in one pass.", componentFactories.size());
+			fanOutComponentFactory = new FanOutComponentFactory(componentFactories, queueSize);
+			return new ListComponentFactoryProvider(fanOutComponentFactory);
+		}
+
+		private LatestEffectiveDateComponentFactory createEffectiveComponentFilter(ReleaseFiles releaseFiles, LoadingProfile loadingProfile) throws IOException, InterruptedException, ReleaseImportException {
 			// Force loading inactive rows during this phase so we know if the latest state is inactive
 			LoadingProfile effectiveComponentLoadingProfile = loadingProfile
 					.withInactiveComponents()
 					.withInactiveRefsetMembers();
 
+			Path indexFile = null;
+			byte[] indexKey = null;
+			File indexDirectory = releaseImporter.getEffectiveTimeIndexDirectory();
+			if (indexDirectory != null) {
+				indexKey = createEffectiveTimeIndexKey(releaseFiles, effectiveComponentLoadingProfile);
+				indexFile = indexDirectory.toPath().resolve("effective-time-" + HexFormat.of().formatHex(indexKey, 0, 16) + ".idx");
+				LatestEffectiveDateComponentFactory indexedFactory = LatestEffectiveDateComponentFactory.readIndex(indexFile, indexKey);
+				if (indexedFactory != null) {
+					logger.info("Effective time filter read from index {}.", indexFile);
+					return indexedFactory;
+				}
+			}
+
+			logger.info("Gathering effective dates for effective component filtering.");
+			LatestEffectiveDateComponentFactory latestEffectiveDateComponentFactory = new LatestEffectiveDateComponentFactory();
 			loadAll(effectiveComponentLoadingProfile, releaseFiles, null, latestEffectiveDateComponentFactory, multiThreaded);
 			latestEffectiveDateComponentFactory.loadingComponentsCompleted();
 			logger.info("Effective time filter is primed. Ready to read release files again.");
 
+			if (indexFile != null) {
+				try {
+					latestEffectiveDateComponentFactory.writeIndex(indexFile, indexKey);
+				} catch (IOException e) {
+					logger.warn("Failed to write effective time index {}, it will be built again next time.", indexFile, e);
+				}
+			}
+
 			// Wrap component factory to only let effective components through
 			return latestEffectiveDateComponentFactory;
 		}
 
+		/**
+		 * @return A digest of the name, size and checksum of every release file and of the parts of the loading profile that select content.
+		 */
+		private byte[] createEffectiveTimeIndexKey(ReleaseFiles releaseFiles, LoadingProfile loadingProfile) throws IOException {
+			return createReleaseFilesKey(releaseFiles, format("%s %s %s %s %s %s %s %s %s %s", loadingProfile.isConcepts(), loadingProfile.isDescriptions(),
+					loadingProfile.isTextDefinitions(), loadingProfile.isRelationships(), loadingProfile.isStatedRelationships(), loadingProfile.isIdentifiers(),
+					loadingProfile.isJustRefsets(), loadingProfile.isAllRefsets(), new TreeSet<>(loadingProfile.getRefsetIds()),
+					new TreeSet<>(loadingProfile.getIncludedReferenceSetFilenamePatterns())));
+		}
+
+		/**
+		 * @return A digest of the name, size and checksum of every release file and of every loading profile setting.
+		 */
+		private byte[] createComponentStoreImageKey(ReleaseFiles releaseFiles, LoadingProfile loadingProfile) throws IOException {
+			return createReleaseFilesKey(releaseFiles, "image " + loadingProfile.getContentKey());
+		}
+
+		/**
+		 * @param contentKey describes any other settings that change the content loaded from the files
+		 * @return A digest of the name, size and checksum of every release file and of the content key.
+		 */
+		private byte[] createReleaseFilesKey(ReleaseFiles releaseFiles, String contentKey) throws IOException {
+			List<String> fileKeys = new ArrayList<>();
+			for (List<Path> paths : List.of(releaseFiles.getConceptPaths(), releaseFiles.getDescriptionPaths(), releaseFiles.getTextDefinitionPaths(),
+					releaseFiles.getRelationshipPaths(), releaseFiles.getConcreteRelationshipPaths(), releaseFiles.getStatedRelationshipPaths(),
+					releaseFiles.getIdentifierPaths(), releaseFiles.getRefsetPaths())) {
+				for (Path path : paths) {
+					fileKeys.add(format("%s\t%s\t%s", path.getFileName(), getFileSize(path), Long.toHexString(getFileChecksum(path))));
+				}
+			}
+			Collections.sort(fileKeys);
+			try {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				digest.update(contentKey.getBytes(UTF_8));
+				for (String fileKey : fileKeys) {
+					digest.update((byte) '\n');
+					digest.update(fileKey.getBytes(UTF_8));
+				}
+				return digest.digest();
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 not available.", e);
+			}
+		}
+
+		private long getFileSize(Path path) throws IOException {
+			if (path.getFileSystem() == FileSystems.getDefault() && getInMemoryArchive(path) == null) {
+				return Files.size(path);
+			}
+			return -1;
+		}
+
+		/**
+		 * Zip entries already carry a CRC so they are not read. Other files are read in full.
+		 */
+		private long getFileChecksum(Path path) throws IOException {
+			if (path.getFileSystem() != FileSystems.getDefault()) {
+				Object crc = Files.getAttribute(path, "zip:crc");
+				if (crc instanceof Long) {
+					return (Long) crc;
+				}
+			}
+			CRC32C checksum = new CRC32C();
+			if (path.getFileSystem() == FileSystems.getDefault() && getInMemoryArchive(path) == null) {
+				try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+					long size = channel.size();
+					for (long position = 0; position < size; position += Integer.MAX_VALUE) {
+						checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Integer.MAX_VALUE, size - position)));
+					}
+				}
+			} else {
+				long size = 0;
+				try (InputStream inputStream = openInputStream(path)) {
+					byte[] buffer = new byte[64 * 1024];
+					int read;
+					while ((read = inputStream.read(buffer)) != -1) {
+						checksum.update(buffer, 0, read);
+						size += read;
+					}
+				}
+				// Include the size of content that is not a file on disk
+				checksum.update(Long.toString(size).getBytes(UTF_8));
+			}
+			return checksum.getValue();
+		}
+
 		private void loadAll(LoadingProfile loadingProfile, ReleaseFiles releaseFiles, String releaseVersion, ComponentFactory componentFactory, boolean multiThreaded) throws IOException, InterruptedException, ReleaseImportException {
-			List<Callable<String>> coreComponentTasks = new ArrayList<>();
+			List<LoadTask> coreComponentTasks = new ArrayList<>();
 			if (!loadingProfile.isJustRefsets()) {
 				if (loadingProfile.isConcepts()) {
 					loadConcepts(releaseFiles.getConceptPaths(), loadingProfile, releaseVersion, componentFactory);
 				}
 
 				if (loadingProfile.isRelationships()) {
-					coreComponentTasks.add(loadRelationships(releaseFiles.getRelationshipPaths(), loadingProfile, releaseVersion, componentFactory));
-					coreComponentTasks.add(loadConcreteRelationships(releaseFiles.getConcreteRelationshipPaths(), loadingProfile, releaseVersion, componentFactory));
+					coreComponentTasks.add(new LoadTask(loadRelationships(releaseFiles.getRelationshipPaths(), loadingProfile, releaseVersion, componentFactory),
+							getContentSize(releaseFiles.getRelationshipPaths())));
+					coreComponentTasks.add(new LoadTask(loadConcreteRelationships(releaseFiles.getConcreteRelationshipPaths(), loadingProfile, releaseVersion, componentFactory),
+							getContentSize(releaseFiles.getConcreteRelationshipPaths())));
 				}
 				if (loadingProfile.isIdentifiers()) {
-					coreComponentTasks.add(loadIdentifiers(releaseFiles.getIdentifierPaths(), loadingProfile, releaseVersion, componentFactory));
+					coreComponentTasks.add(new LoadTask(loadIdentifiers(releaseFiles.getIdentifierPaths(), loadingProfile, releaseVersion, componentFactory),
+							getContentSize(releaseFiles.getIdentifierPaths())));
 				}
 				if (loadingProfile.isStatedRelationships()) {
 					if (!releaseFiles.getStatedRelationshipPaths().isEmpty()) {
-						coreComponentTasks.add(loadRelationships(releaseFiles.getStatedRelationshipPaths(), loadingProfile, releaseVersion, componentFactory));
+						coreComponentTasks.add(new LoadTask(loadRelationships(releaseFiles.getStatedRelationshipPaths(), loadingProfile, releaseVersion, componentFactory),
+								getContentSize(releaseFiles.getStatedRelationshipPaths())));
 					}
 				}
 				
 				if (loadingProfile.isDescriptions()) {
-					coreComponentTasks.add(loadDescriptions(releaseFiles.getDescriptionPaths(), loadingProfile, releaseVersion, componentFactory));
+					coreComponentTasks.add(new LoadTask(loadDescriptions(releaseFiles.getDescriptionPaths(), loadingProfile, releaseVersion, componentFactory),
+							getContentSize(releaseFiles.getDescriptionPaths())));
 					if (!releaseFiles.getTextDefinitionPaths().isEmpty() && loadingProfile.isTextDefinitions()) {
-						coreComponentTasks.add(loadDescriptions(releaseFiles.getTextDefinitionPaths(), loadingProfile, releaseVersion, componentFactory));
+						coreComponentTasks.add(new LoadTask(loadDescriptions(releaseFiles.getTextDefinitionPaths(), loadingProfile, releaseVersion, componentFactory),
+								getContentSize(releaseFiles.getTextDefinitionPaths())));
 					}
 				}
 			}
 
-			List<Callable<String>> refsetTasks = new ArrayList<>();
+			List<LoadTask> refsetTasks = new ArrayList<>();
+			getRefsetPaths(releaseFiles, loadingProfile).forEach((refsetPath, filenamePatternMatch) ->
+					refsetTasks.add(new LoadTask(loadRefsets(refsetPath, loadingProfile, releaseVersion, componentFactory, filenamePatternMatch), getContentSize(refsetPath))));
+
+			if (releaseImporter.isRefsetsAfterCoreComponents()) {
+				for (LoadTask refsetTask : refsetTasks) {
+					coreComponentTasks.forEach(refsetTask::dependsOn);
+				}
+			}
+			List<LoadTask> tasks = new ArrayList<>(coreComponentTasks);
+			tasks.addAll(refsetTasks);
+
+			try {
+				if (multiThreaded) {
+					runTasks(tasks);
+				} else {
+					// Tasks are listed after the tasks they depend on
+					for (LoadTask task : tasks) {
+						task.callable.call();
+					}
+				}
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (ExecutionException e) {
+				throw loadingFailure(e.getCause());
+			} catch (Exception e) {
+				throw loadingFailure(e);
+			}
+		}
+
+		private ReleaseImportException loadingFailure(Throwable cause) {
+			return new ReleaseImportException(format("Failed to load release files during release import process. %s", cause.getMessage()), cause);
+		}
+
+		/**
+		 * @return The refset files to load, mapped to true if the file was selected by one of the filename patterns of the loading profile.
+		 */
+		private Map<Path, Boolean> getRefsetPaths(ReleaseFiles releaseFiles, LoadingProfile loadingProfile) {
+			Map<Path, Boolean> refsetPaths = new LinkedHashMap<>();
 			Set<String> includedReferenceSetFilenamePatterns = loadingProfile.getIncludedReferenceSetFilenamePatterns();
 			if (loadingProfile.isAllRefsets() || !loadingProfile.getRefsetIds().isEmpty() || !includedReferenceSetFilenamePatterns.isEmpty()) {
 				logger.info("includedReferenceSetPathPatterns: {}", includedReferenceSetFilenamePatterns);
@@ -358,14 +1174,14 @@ public class ReleaseImporter {
 				Set<String> filenamesMatchedByPattern = new HashSet<>();
 				for (Path refsetSnapshot : refsetSnapshots) {
 					if (includedReferenceSetFilenamePatterns.isEmpty()) {
-						refsetTasks.add(loadRefsets(refsetSnapshot, loadingProfile, releaseVersion, componentFactory, false));
+						refsetPaths.put(refsetSnapshot, false);
 					} else {
 						boolean patternMatch = false;
 						String filename = refsetSnapshot.getFileName().toString();
 						for (String pattern : includedReferenceSetFilenamePatterns) {
 							if (filename.matches(pattern)) {
 								logger.debug("refset '{}' matches pattern '{}'", filename, pattern);
-								refsetTasks.add(loadRefsets(refsetSnapshot, loadingProfile, releaseVersion, componentFactory, true));
+								refsetPaths.put(refsetSnapshot, true);
 								filenamesMatchedByPattern.add(filename);
 								patternMatch = true;
 								break;
@@ -382,61 +1198,198 @@ public class ReleaseImporter {
 							includedReferenceSetFilenamePatterns, filenamesMatchedByPattern);
 				}
 			}
+			return refsetPaths;
+		}
 
+		/**
+		 * Runs each task once the tasks it depends on have completed. Ready tasks are submitted largest first, the read permits
+		 * limit how many are read at once. While waiting, this thread runs any submitted task that no executor thread has started.
+		 * The first task to fail stops the others.
+		 */
+		private void runTasks(List<LoadTask> tasks) throws InterruptedException, ExecutionException {
+			BlockingQueue<ImportTask<LoadTask>> completedTasks = new LinkedBlockingQueue<>();
+			List<ImportTask<LoadTask>> futures = new ArrayList<>();
+			List<LoadTask> ready = new ArrayList<>();
+			for (LoadTask task : tasks) {
+				if (task.waitingFor == 0) {
+					ready.add(task);
+				}
+			}
+			int running = 0;
+			boolean completed = false;
 			try {
-				if (multiThreaded) {
-					final List<Future<String>> futures = executorService.invokeAll(coreComponentTasks);
-					// Use Future.get() to trigger exceptions being thrown
-					for (Future<String> future : futures) {
-						future.get();
+				while (true) {
+					ready.sort(Comparator.comparingLong((LoadTask task) -> task.size).reversed());
+					for (LoadTask task : ready) {
+						ImportTask<LoadTask> future = new ImportTask<>(() -> {
+							try {
+								task.callable.call();
+							} catch (Exception | Error e) {
+								// Stop the other tasks straight away, this thread may be running one of them
+								stopped = true;
+								throw e;
+							}
+							return task;
+						}) {
+							@Override
+							protected void done() {
+								completedTasks.add(this);
+							}
+						};
+						futures.add(future);
+						executorService.execute(future);
+						running++;
 					}
-					final List<Future<String>> refsetFutures = executorService.invokeAll(refsetTasks);
-					// Use Future.get() to trigger exceptions being thrown
-					for (Future<String> refsetFuture : refsetFutures) {
-						refsetFuture.get();
+					ready.clear();
+					if (running == 0) {
+						break;
 					}
-				} else {
-					for (Callable<String> coreComponentTask : coreComponentTasks) {
-						coreComponentTask.call();
+					ImportTask<LoadTask> completedTask = completedTasks.poll();
+					if (completedTask == null) {
+						for (ImportTask<LoadTask> future : futures) {
+							if (!future.isDone() && future.runIfNotStarted()) {
+								break;
+							}
+						}
+						completedTask = completedTasks.take();
 					}
-					for (Callable<String> refsetTask : refsetTasks) {
-						refsetTask.call();
+					// Use Future.get() to trigger exceptions being thrown
+					LoadTask done = completedTask.get();
+					running--;
+					for (LoadTask dependent : done.dependents) {
+						if (--dependent.waitingFor == 0) {
+							ready.add(dependent);
+						}
 					}
 				}
-			} catch (InterruptedException e) {
-				throw e;
-			} catch (Exception e) {
-				throw new ReleaseImportException("Failed to load all files.", e);
+				completed = true;
+			} finally {
+				if (!completed) {
+					stopped = true;
+					// Wait for every task to stop so that the component factory gets no more rows once this returns
+					futures.forEach(future -> future.cancel(true));
+					futures.forEach(ImportTask::awaitStopped);
+				}
+			}
+		}
+
+		private long getContentSize(List<Path> rf2FilePaths) {
+			long size = 0;
+			for (Path rf2FilePath : rf2FilePaths) {
+				size += getContentSize(rf2FilePath);
+			}
+			return size;
+		}
+
+		/**
+		 * @return The size of the file in bytes, or zero if it is not known.
+		 */
+		private long getContentSize(Path rf2FilePath) {
+			if (releaseVersionSplitter != null && releaseVersionSplitter.isVersionContent(rf2FilePath)) {
+				return releaseVersionSplitter.size(rf2FilePath);
+			}
+			ReleaseArchive inMemoryArchive = getInMemoryArchive(rf2FilePath);
+			if (inMemoryArchive != null) {
+				return inMemoryArchive.size(rf2FilePath);
+			}
+			try {
+				return Files.size(rf2FilePath);
+			} catch (IOException e) {
+				return 0;
 			}
 		}
 
 		private ReleaseFiles findFiles(List<String> releaseDirPaths, ImportType importType, LoadingProfile loadingProfile) throws IOException {
-			ReleaseFiles combinedReleaseFiles = new ReleaseFiles();
+			// Files of any release zip streams have already been read
+			final List<Path> files = new ArrayList<>();
+			releaseArchives.forEach(releaseArchive -> files.addAll(releaseArchive.getFiles()));
+			for (String releaseDirPath : releaseDirPaths) {
+				final File releaseDir = new File(releaseDirPath);
+				if (ReleaseArchive.isZipFile(releaseDir.toPath())) {
+					// Read zip entries in place rather than extracting them
+					ReleaseArchive releaseArchive = ReleaseArchive.openZip(releaseDir.toPath());
+					releaseArchives.add(releaseArchive);
+					files.addAll(releaseArchive.getFiles());
+					continue;
+				}
+				if (!releaseDir.isDirectory()) {
+					throw new FileNotFoundException("Could not find release directory '" + releaseDirPath + "'");
+				}
 
-			for (String filenamePart : importType.getFilenameParts()) {
-				final ReleaseFiles releaseFiles = new ReleaseFiles();
-				for (String releaseDirPath : releaseDirPaths) {
-					final File releaseDir = new File(releaseDirPath);
-					if (!releaseDir.isDirectory()) {
-						throw new FileNotFoundException("Could not find release directory '" + releaseDirPath + "'");
+				Files.walkFileTree(releaseDir.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+						files.add(file);
+						return FileVisitResult.CONTINUE;
 					}
+				});
+			}
 
-					Files.walkFileTree(releaseDir.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
-						@Override
-						public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-							collectReleaseFile(file, filenamePart, releaseFiles);
-							return FileVisitResult.CONTINUE;
-						}
-					});
+			ReleaseFiles combinedReleaseFiles = new ReleaseFiles();
+			String searchedLocations = releaseDirPaths.isEmpty() ? "in release zip" : "looking recursively in: " + String.join(", ", releaseDirPaths);
+			for (String filenamePart : importType.getFilenameParts()) {
+				final ReleaseFiles releaseFiles = new ReleaseFiles();
+				for (Path file : files) {
+					collectReleaseFile(file, filenamePart, releaseFiles);
 				}
-
-				releaseFiles.assertFullSet(loadingProfile, "looking recursively in: " + String.join(", ", releaseDirPaths));
+				releaseFiles.assertFullSet(loadingProfile, searchedLocations);
 				combinedReleaseFiles.addAll(releaseFiles);
 			}
 
 			return combinedReleaseFiles;
 		}
 
+		/**
+		 * @return true if loading release files of this type with the loading profile would read the file.
+		 */
+		static boolean isLoadedFile(Path file, ImportType importType, LoadingProfile loadingProfile) {
+			ReleaseFiles releaseFiles = new ReleaseFiles();
+			for (String filenamePart : importType.getFilenameParts()) {
+				collectReleaseFile(file, filenamePart, releaseFiles);
+			}
+			if (!releaseFiles.getRefsetPaths().isEmpty()) {
+				Set<String> patterns = loadingProfile.getIncludedReferenceSetFilenamePatterns();
+				if (!patterns.isEmpty()) {
+					return matchesAnyPattern(file.getFileName().toString(), patterns);
+				}
+				return loadingProfile.isAllRefsets() || !loadingProfile.getRefsetIds().isEmpty();
+			}
+			if (loadingProfile.isJustRefsets()) {
+				return false;
+			}
+			return (loadingProfile.isConcepts() && !releaseFiles.getConceptPaths().isEmpty())
+					|| (loadingProfile.isDescriptions() && !releaseFiles.getDescriptionPaths().isEmpty())
+					|| (loadingProfile.isDescriptions() && loadingProfile.isTextDefinitions() && !releaseFiles.getTextDefinitionPaths().isEmpty())
+					|| (loadingProfile.isRelationships() && (!releaseFiles.getRelationshipPaths().isEmpty() || !releaseFiles.getConcreteRelationshipPaths().isEmpty()))
+					|| (loadingProfile.isStatedRelationships() && !releaseFiles.getStatedRelationshipPaths().isEmpty())
+					|| (loadingProfile.isIdentifiers() && !releaseFiles.getIdentifierPaths().isEmpty());
+		}
+
+		/**
+		 * @return true if the release versions of a Full import are gathered from the file, whether or not it is loaded
+		 */
+		static boolean isVersionListingFile(Path file, ImportType importType) {
+			ReleaseFiles releaseFiles = new ReleaseFiles();
+			for (String filenamePart : importType.getFilenameParts()) {
+				collectReleaseFile(file, filenamePart, releaseFiles);
+			}
+			return !releaseFiles.getConceptPaths().isEmpty()
+					|| !releaseFiles.getDescriptionPaths().isEmpty()
+					|| !releaseFiles.getTextDefinitionPaths().isEmpty()
+					|| !releaseFiles.getRelationshipPaths().isEmpty()
+					|| !releaseFiles.getRefsetPaths().isEmpty()
+					|| !releaseFiles.getIdentifierPaths().isEmpty();
+		}
+
+		private static boolean matchesAnyPattern(String filename, Set<String> patterns) {
+			for (String pattern : patterns) {
+				if (filename.matches(pattern)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
 		static void collectReleaseFile(Path file, String fileType, ReleaseFiles releaseFiles) {
 			final String fileName = file.getFileName().toString();
 			if (fileName.endsWith(".txt")) {
@@ -465,177 +1418,337 @@ public class ReleaseImporter {
 		}
 
 		private void loadConcepts(List<Path> rf2Files, final LoadingProfile loadingProfile, final String releaseVersion, ComponentFactory componentFactory) throws IOException, ReleaseImportException {
-			readLines(rf2Files, (ValuesHandler) (values, legacyPublishedFile) -> {
-				if (loadingProfile.isInactiveConcepts() || "1".equals(values[ConceptFieldIndexes.active])) {
-					String conceptId = values[ComponentFieldIndexes.id];
-					componentFactory.newConceptState(conceptId, values[ConceptFieldIndexes.effectiveTime], values[ConceptFieldIndexes.active],
-							values[ConceptFieldIndexes.moduleId], values[ConceptFieldIndexes.definitionStatusId]);
+			readLines(rf2Files, conceptHandler(loadingProfile, componentFactory), "concepts", releaseVersion);
+		}
+
+		private FileContentHandler conceptHandler(final LoadingProfile loadingProfile, ComponentFactory componentFactory) {
+			final ModuleFilter moduleFilter = getModuleFilter(componentFactory);
+			final BatchComponentFactory batchFactory = getBatchComponentFactory(componentFactory);
+			if (batchFactory != null) {
+				return new BatchingHandler<>(ConceptBatch::new, (batch, row) -> {
+					final boolean active = row.isValue(ConceptFieldIndexes.active, "1");
+					if ((loadingProfile.isInactiveConcepts() || active) && isModule(moduleFilter, row, ConceptFieldIndexes.moduleId)) {
+						batch.add(row.getLong(ComponentFieldIndexes.id), row.getInt(ConceptFieldIndexes.effectiveTime), active,
+								row.getLong(ConceptFieldIndexes.moduleId), row.getLong(ConceptFieldIndexes.definitionStatusId));
+					}
+				}, batchFactory::newConceptStates);
+			}
+			final PrimitiveComponentFactory primitiveFactory = getPrimitiveComponentFactory(componentFactory);
+			return (ValuesHandler) (row, legacyPublishedFile) -> {
+				final boolean active = row.isValue(ConceptFieldIndexes.active, "1");
+				if ((loadingProfile.isInactiveConcepts() || active) && isModule(moduleFilter, row, ConceptFieldIndexes.moduleId)) {
+					if (primitiveFactory != null) {
+						primitiveFactory.newConceptState(row.getLong(ComponentFieldIndexes.id), row.getInt(ConceptFieldIndexes.effectiveTime), active,
+								row.getLong(ConceptFieldIndexes.moduleId), row.getLong(ConceptFieldIndexes.definitionStatusId));
+					} else {
+						String conceptId = row.get(ComponentFieldIndexes.id);
+						componentFactory.newConceptState(conceptId, row.get(ConceptFieldIndexes.effectiveTime), row.get(ConceptFieldIndexes.active),
+								row.get(ConceptFieldIndexes.moduleId), row.get(ConceptFieldIndexes.definitionStatusId));
+					}
 				}
-			}, "concepts", releaseVersion);
+			};
 		}
 
 		private Callable<String> loadRelationships(List<Path> rf2Files, final LoadingProfile loadingProfile, String releaseVersion, ComponentFactory componentFactory) {
-			return readLinesCallable(rf2Files, (ValuesHandler) (values, legacyPublishedFile) -> {
-				final boolean active = "1".equals(values[RelationshipFieldIndexes.active]);
-				if (loadingProfile.isInactiveRelationships() || active) {
-					final String characteristicType = values[RelationshipFieldIndexes.characteristicTypeId];
-					boolean inferred = ConceptConstants.INFERRED_RELATIONSHIP.equals(characteristicType);
-					if (inferred || loadingProfile.isStatedRelationships()) {
+			return readLinesCallable(rf2Files, relationshipHandler(loadingProfile, componentFactory), "relationships", releaseVersion);
+		}
+
+		private FileContentHandler relationshipHandler(final LoadingProfile loadingProfile, ComponentFactory componentFactory) {
+			final ModuleFilter moduleFilter = getModuleFilter(componentFactory);
+			final BatchComponentFactory batchFactory = getBatchComponentFactory(componentFactory);
+			if (batchFactory != null) {
+				return new BatchingHandler<>(RelationshipBatch::new, (batch, row) -> {
+					final boolean active = row.isValue(RelationshipFieldIndexes.active, "1");
+					if ((loadingProfile.isInactiveRelationships() || active) && (loadingProfile.isStatedRelationships()
+							|| row.isValue(RelationshipFieldIndexes.characteristicTypeId, ConceptConstants.INFERRED_RELATIONSHIP))
+							&& isModule(moduleFilter, row, RelationshipFieldIndexes.moduleId)) {
+						batch.add(
+								row.getLong(RelationshipFieldIndexes.id),
+								row.getInt(RelationshipFieldIndexes.effectiveTime),
+								active,
+								row.getLong(RelationshipFieldIndexes.moduleId),
+								row.getLong(RelationshipFieldIndexes.sourceId),
+								row.getLong(RelationshipFieldIndexes.destinationId),
+								row.getInt(RelationshipFieldIndexes.relationshipGroup),
+								row.getLong(RelationshipFieldIndexes.typeId),
+								row.getLong(RelationshipFieldIndexes.characteristicTypeId),
+								row.getLong(RelationshipFieldIndexes.modifierId)
+						);
+					}
+				}, batchFactory::newRelationshipStates);
+			}
+			final PrimitiveComponentFactory primitiveFactory = getPrimitiveComponentFactory(componentFactory);
+			return (ValuesHandler) (row, legacyPublishedFile) -> {
+				final boolean active = row.isValue(RelationshipFieldIndexes.active, "1");
+				if ((loadingProfile.isInactiveRelationships() || active) && isModule(moduleFilter, row, RelationshipFieldIndexes.moduleId)) {
+					boolean inferred = row.isValue(RelationshipFieldIndexes.characteristicTypeId, ConceptConstants.INFERRED_RELATIONSHIP);
+					if (primitiveFactory != null) {
+						if (inferred || loadingProfile.isStatedRelationships()) {
+							primitiveFactory.newRelationshipState(
+									row.getLong(RelationshipFieldIndexes.id),
+									row.getInt(RelationshipFieldIndexes.effectiveTime),
+									active,
+									row.getLong(RelationshipFieldIndexes.moduleId),
+									row.getLong(RelationshipFieldIndexes.sourceId),
+									row.getLong(RelationshipFieldIndexes.destinationId),
+									row.getInt(RelationshipFieldIndexes.relationshipGroup),
+									row.getLong(RelationshipFieldIndexes.typeId),
+									row.getLong(RelationshipFieldIndexes.characteristicTypeId),
+									row.getLong(RelationshipFieldIndexes.modifierId)
+							);
+						}
+					} else if (inferred || loadingProfile.isStatedRelationships()) {
 						componentFactory.newRelationshipState(
-								values[RelationshipFieldIndexes.id],
-								values[RelationshipFieldIndexes.effectiveTime],
-								values[RelationshipFieldIndexes.active],
-								values[RelationshipFieldIndexes.moduleId],
-								values[RelationshipFieldIndexes.sourceId],
-								values[RelationshipFieldIndexes.destinationId],
-								values[RelationshipFieldIndexes.relationshipGroup],
-								values[RelationshipFieldIndexes.typeId],
-								values[RelationshipFieldIndexes.characteristicTypeId],
-								values[RelationshipFieldIndexes.modifierId]
+								row.get(RelationshipFieldIndexes.id),
+								row.get(RelationshipFieldIndexes.effectiveTime),
+								row.get(RelationshipFieldIndexes.active),
+								row.get(RelationshipFieldIndexes.moduleId),
+								row.get(RelationshipFieldIndexes.sourceId),
+								row.get(RelationshipFieldIndexes.destinationId),
+								row.get(RelationshipFieldIndexes.relationshipGroup),
+								row.get(RelationshipFieldIndexes.typeId),
+								row.get(RelationshipFieldIndexes.characteristicTypeId),
+								row.get(RelationshipFieldIndexes.modifierId)
 						);
 					}
 				}
-			}, "relationships", releaseVersion);
+			};
 		}
 
 		private Callable<String> loadConcreteRelationships(List<Path> rf2Files, final LoadingProfile loadingProfile, String releaseVersion, ComponentFactory componentFactory) {
-			return readLinesCallable(rf2Files, (ValuesHandler) (values, legacyPublishedFile) -> {
-				final boolean active = "1".equals(values[ConcreteRelationshipFieldIndexes.active]);
-				if (loadingProfile.isInactiveRelationships() || active) {
+			return readLinesCallable(rf2Files, concreteRelationshipHandler(loadingProfile, componentFactory), "concrete relationships", releaseVersion);
+		}
+
+		private FileContentHandler concreteRelationshipHandler(final LoadingProfile loadingProfile, ComponentFactory componentFactory) {
+			final ModuleFilter moduleFilter = getModuleFilter(componentFactory);
+			final PrimitiveComponentFactory primitiveFactory = getPrimitiveComponentFactory(componentFactory);
+			return (ValuesHandler) (row, legacyPublishedFile) -> {
+				final boolean active = row.isValue(ConcreteRelationshipFieldIndexes.active, "1");
+				if (!isModule(moduleFilter, row, ConcreteRelationshipFieldIndexes.moduleId)) {
+					return;
+				}
+				if (primitiveFactory != null && (loadingProfile.isInactiveRelationships() || active)) {
+					primitiveFactory.newConcreteRelationshipState(
+							row.getLong(ConcreteRelationshipFieldIndexes.id),
+							row.getInt(ConcreteRelationshipFieldIndexes.effectiveTime),
+							active,
+							row.getLong(ConcreteRelationshipFieldIndexes.moduleId),
+							row.getLong(ConcreteRelationshipFieldIndexes.sourceId),
+							row.get(ConcreteRelationshipFieldIndexes.value),
+							row.getInt(ConcreteRelationshipFieldIndexes.relationshipGroup),
+							row.getLong(ConcreteRelationshipFieldIndexes.typeId),
+							row.getLong(ConcreteRelationshipFieldIndexes.characteristicTypeId),
+							row.getLong(ConcreteRelationshipFieldIndexes.modifierId)
+					);
+				} else if (loadingProfile.isInactiveRelationships() || active) {
 					componentFactory.newConcreteRelationshipState(
-							values[ConcreteRelationshipFieldIndexes.id],
-							values[ConcreteRelationshipFieldIndexes.effectiveTime],
-							values[ConcreteRelationshipFieldIndexes.active],
-							values[ConcreteRelationshipFieldIndexes.moduleId],
-							values[ConcreteRelationshipFieldIndexes.sourceId],
-							values[ConcreteRelationshipFieldIndexes.value],
-							values[ConcreteRelationshipFieldIndexes.relationshipGroup],
-							values[ConcreteRelationshipFieldIndexes.typeId],
-							values[ConcreteRelationshipFieldIndexes.characteristicTypeId],
-							values[ConcreteRelationshipFieldIndexes.modifierId]
+							row.get(ConcreteRelationshipFieldIndexes.id),
+							row.get(ConcreteRelationshipFieldIndexes.effectiveTime),
+							row.get(ConcreteRelationshipFieldIndexes.active),
+							row.get(ConcreteRelationshipFieldIndexes.moduleId),
+							row.get(ConcreteRelationshipFieldIndexes.sourceId),
+							row.get(ConcreteRelationshipFieldIndexes.value),
+							row.get(ConcreteRelationshipFieldIndexes.relationshipGroup),
+							row.get(ConcreteRelationshipFieldIndexes.typeId),
+							row.get(ConcreteRelationshipFieldIndexes.characteristicTypeId),
+							row.get(ConcreteRelationshipFieldIndexes.modifierId)
 					);
 				}
-			}, "concrete relationships", releaseVersion);
+			};
 		}
 
 		private Callable<String> loadIdentifiers(List<Path> rf2Files, final LoadingProfile loadingProfile, String releaseVersion, ComponentFactory componentFactory) {
-			return readLinesCallable(rf2Files, (ValuesHandler) (values, legacyPublishedFile) -> {
-				final boolean active = "1".equals(values[legacyPublishedFile ? IdentifierFieldIndexes.legacyActive : IdentifierFieldIndexes.active]);
-				if (loadingProfile.isInactiveIdentifiers() || active) {
+			return readLinesCallable(rf2Files, identifierHandler(loadingProfile, componentFactory), "identifiers", releaseVersion);
+		}
+
+		private FileContentHandler identifierHandler(final LoadingProfile loadingProfile, ComponentFactory componentFactory) {
+			final ModuleFilter moduleFilter = getModuleFilter(componentFactory);
+			return (ValuesHandler) (row, legacyPublishedFile) -> {
+				final boolean active = row.isValue(legacyPublishedFile ? IdentifierFieldIndexes.legacyActive : IdentifierFieldIndexes.active, "1");
+				if ((loadingProfile.isInactiveIdentifiers() || active)
+						&& isModule(moduleFilter, row, legacyPublishedFile ? IdentifierFieldIndexes.legacyModuleId : IdentifierFieldIndexes.moduleId)) {
 					componentFactory.newIdentifierState(
-							values[legacyPublishedFile ? IdentifierFieldIndexes.legacyAlternateIdentifier : IdentifierFieldIndexes.alternateIdentifier],
-							values[legacyPublishedFile ? IdentifierFieldIndexes.legacyEffectiveTime : IdentifierFieldIndexes.effectiveTime],
-							values[legacyPublishedFile ? IdentifierFieldIndexes.legacyActive : IdentifierFieldIndexes.active],
-							values[legacyPublishedFile ? IdentifierFieldIndexes.legacyModuleId : IdentifierFieldIndexes.moduleId],
-							values[legacyPublishedFile ? IdentifierFieldIndexes.legacyIdentifierSchemeId : IdentifierFieldIndexes.identifierSchemeId],
-							values[legacyPublishedFile ? IdentifierFieldIndexes.legacyReferencedComponentId : IdentifierFieldIndexes.referencedComponentId]
+							row.get(legacyPublishedFile ? IdentifierFieldIndexes.legacyAlternateIdentifier : IdentifierFieldIndexes.alternateIdentifier),
+							row.get(legacyPublishedFile ? IdentifierFieldIndexes.legacyEffectiveTime : IdentifierFieldIndexes.effectiveTime),
+							row.get(legacyPublishedFile ? IdentifierFieldIndexes.legacyActive : IdentifierFieldIndexes.active),
+							row.get(legacyPublishedFile ? IdentifierFieldIndexes.legacyModuleId : IdentifierFieldIndexes.moduleId),
+							row.get(legacyPublishedFile ? IdentifierFieldIndexes.legacyIdentifierSchemeId : IdentifierFieldIndexes.identifierSchemeId),
+							row.get(legacyPublishedFile ? IdentifierFieldIndexes.legacyReferencedComponentId : IdentifierFieldIndexes.referencedComponentId)
 					);
 				}
-			}, "identifiers", releaseVersion);
+			};
+		}
+
+		private Callable<String> loadDescriptions(List<Path> rf2Files, final LoadingProfile loadingProfile, String releaseVersion, ComponentFactory componentFactory) {
+			return readLinesCallable(rf2Files, descriptionHandler(loadingProfile, componentFactory), "descriptions", releaseVersion);
 		}
 
-		private Callable<String> loadDescriptions(List<Path> rf2File, final LoadingProfile loadingProfile, String releaseVersion, ComponentFactory componentFactory) {
-			return readLinesCallable(rf2File, (ValuesHandler) (values, legacyPublishedFile) -> {
-				if (loadingProfile.isInactiveDescriptions() || "1".equals(values[DescriptionFieldIndexes.active])) {
+		private FileContentHandler descriptionHandler(final LoadingProfile loadingProfile, ComponentFactory componentFactory) {
+			final ModuleFilter moduleFilter = getModuleFilter(componentFactory);
+			final BatchComponentFactory batchFactory = getBatchComponentFactory(componentFactory);
+			if (batchFactory != null) {
+				return new BatchingHandler<>(DescriptionBatch::new, (batch, row) -> {
+					final boolean active = row.isValue(DescriptionFieldIndexes.active, "1");
+					if ((loadingProfile.isInactiveDescriptions() || active) && isModule(moduleFilter, row, DescriptionFieldIndexes.moduleId)) {
+						batch.add(
+								row.getLong(DescriptionFieldIndexes.id),
+								row.getInt(DescriptionFieldIndexes.effectiveTime),
+								active,
+								row.getLong(DescriptionFieldIndexes.moduleId),
+								row.getLong(DescriptionFieldIndexes.conceptId),
+								row.get(DescriptionFieldIndexes.languageCode),
+								row.getLong(DescriptionFieldIndexes.typeId),
+								row.get(DescriptionFieldIndexes.term),
+								row.getLong(DescriptionFieldIndexes.caseSignificanceId)
+						);
+					}
+				}, batchFactory::newDescriptionStates);
+			}
+			final PrimitiveComponentFactory primitiveFactory = getPrimitiveComponentFactory(componentFactory);
+			return (ValuesHandler) (row, legacyPublishedFile) -> {
+				final boolean active = row.isValue(DescriptionFieldIndexes.active, "1");
+				if (!isModule(moduleFilter, row, DescriptionFieldIndexes.moduleId)) {
+					return;
+				}
+				if (primitiveFactory != null && (loadingProfile.isInactiveDescriptions() || active)) {
+					primitiveFactory.newDescriptionState(
+							row.getLong(DescriptionFieldIndexes.id),
+							row.getInt(DescriptionFieldIndexes.effectiveTime),
+							active,
+							row.getLong(DescriptionFieldIndexes.moduleId),
+							row.getLong(DescriptionFieldIndexes.conceptId),
+							row.get(DescriptionFieldIndexes.languageCode),
+							row.getLong(DescriptionFieldIndexes.typeId),
+							row.get(DescriptionFieldIndexes.term),
+							row.getLong(DescriptionFieldIndexes.caseSignificanceId)
+					);
+				} else if (loadingProfile.isInactiveDescriptions() || active) {
 					componentFactory.newDescriptionState(
-							values[DescriptionFieldIndexes.id],
-							values[DescriptionFieldIndexes.effectiveTime],
-							values[DescriptionFieldIndexes.active],
-							values[DescriptionFieldIndexes.moduleId],
-							values[DescriptionFieldIndexes.conceptId],
-							values[DescriptionFieldIndexes.languageCode],
-							values[DescriptionFieldIndexes.typeId],
-							values[DescriptionFieldIndexes.term],
-							values[DescriptionFieldIndexes.caseSignificanceId]
+							row.get(DescriptionFieldIndexes.id),
+							row.get(DescriptionFieldIndexes.effectiveTime),
+							row.get(DescriptionFieldIndexes.active),
+							row.get(DescriptionFieldIndexes.moduleId),
+							row.get(DescriptionFieldIndexes.conceptId),
+							row.get(DescriptionFieldIndexes.languageCode),
+							row.get(DescriptionFieldIndexes.typeId),
+							row.get(DescriptionFieldIndexes.term),
+							row.get(DescriptionFieldIndexes.caseSignificanceId)
 					);
 				}
-			}, "descriptions", releaseVersion);
+			};
 		}
 
 		private Callable<String> loadRefsets(Path rf2File, final LoadingProfile loadingProfile, String releaseVersion,
 				ComponentFactory componentFactory, boolean filenamePatternMatch) {
 
-			return readLinesCallable(Collections.singletonList(rf2File), (FieldNamesAndValuesHandler) (fieldNames, values, legacyPublishedFile) -> {
-				if (loadingProfile.isInactiveRefsetMembers() || "1".equals(values[RefsetFieldIndexes.active])) {
-					final String refsetId = values[RefsetFieldIndexes.refsetId];
-					if (loadingProfile.isAllRefsets() || filenamePatternMatch || loadingProfile.isRefset(refsetId)) {
+			return readLinesCallable(Collections.singletonList(rf2File), refsetHandler(rf2File, loadingProfile, componentFactory, filenamePatternMatch),
+					"reference set members", releaseVersion);
+		}
+
+		private FileContentHandler refsetHandler(Path rf2File, final LoadingProfile loadingProfile, ComponentFactory componentFactory, boolean filenamePatternMatch) {
+			final ModuleFilter moduleFilter = getModuleFilter(componentFactory);
+			final boolean anyRefset = loadingProfile.isAllRefsets() || filenamePatternMatch;
+			final LongSet refsetIdLongs = anyRefset ? null : getRefsetIdLongs(loadingProfile);
+			return (FieldNamesAndValuesHandler) (fieldNames, row, legacyPublishedFile) -> {
+				if ((loadingProfile.isInactiveRefsetMembers() || row.isValue(RefsetFieldIndexes.active, "1"))
+						&& isModule(moduleFilter, row, RefsetFieldIndexes.moduleId)) {
+					if (anyRefset || isRefset(loadingProfile, refsetIdLongs, row)) {
 						componentFactory.newReferenceSetMemberState(
 								rf2File.getFileName().toString(),
 								fieldNames,
-								values[RefsetFieldIndexes.id],
-								values[RefsetFieldIndexes.effectiveTime],
-								values[RefsetFieldIndexes.active],
-								values[RefsetFieldIndexes.moduleId],
-								values[RefsetFieldIndexes.refsetId],
-								values[RefsetFieldIndexes.referencedComponentId],
-								Arrays.copyOfRange(values, RefsetFieldIndexes.referencedComponentId + 1, values.length)
+								row.get(RefsetFieldIndexes.id),
+								row.get(RefsetFieldIndexes.effectiveTime),
+								row.get(RefsetFieldIndexes.active),
+								row.get(RefsetFieldIndexes.moduleId),
+								row.get(RefsetFieldIndexes.refsetId),
+								row.get(RefsetFieldIndexes.referencedComponentId),
+								row.toArray(RefsetFieldIndexes.referencedComponentId + 1)
 						);
 					}
 				}
-			}, "reference set members", releaseVersion);
+			};
 		}
 
-		private Callable<String> readLinesCallable(final List<Path> rf2FilePaths, final FileContentHandler contentHandler, final String componentType, final String releaseVersion) {
-			return () -> {
-				try {
-					readLines(rf2FilePaths, contentHandler, componentType, releaseVersion);
-				} catch (Exception e) {
-					// Refactor opportunity; use futures to handle exceptions instead of capturing them manually.
-					logger.error("Failed to read or process lines.", e);
-					loadingExceptions.add(e);
-				}
-				return null;
-			};
+		/**
+		 * @return The module filter if it wraps the factory, otherwise null.
+		 */
+		private static ModuleFilter getModuleFilter(ComponentFactory componentFactory) {
+			return componentFactory instanceof ModuleFilter moduleFilter ? moduleFilter : null;
 		}
 
-		private Set<String> gatherVersions(ReleaseFiles releaseFiles) throws IOException {
-			logger.info("Gathering list of release versions...");
-			Set<String> versions = new TreeSet<>();
-			gatherVersions(releaseFiles.getConceptPaths(), versions);
-			gatherVersions(releaseFiles.getDescriptionPaths(), versions);
-			gatherVersions(releaseFiles.getTextDefinitionPaths(), versions);
-			gatherVersions(releaseFiles.getRelationshipPaths(), versions);
-			gatherVersions(releaseFiles.getRefsetPaths(), versions);
-			gatherIdentifierVersions(releaseFiles.getIdentifierPaths(), versions);
-			logger.info("Release versions found: {}", versions);
-			return versions;
-		}
-
-		private void gatherVersions(List<Path> filePaths, Set<String> versions) throws IOException {
-			for (Path filePath : filePaths) {
-				try (final BufferedReader reader = Files.newBufferedReader(filePath, UTF_8)) {
-					String line;
-					reader.readLine(); // discard header line
-					Matcher matcher;
-					while ((line = reader.readLine()) != null) {
-						matcher = DATE_EXTRACT_PATTERN.matcher(line);
-						if (matcher.matches()) {
-							versions.add(matcher.group(1));
-						}
+		/**
+		 * Checks the module of a row without decoding any column, so rows the module filter would drop are skipped before the rest is decoded.
+		 */
+		private static boolean isModule(ModuleFilter moduleFilter, RF2Row row, int moduleIdIndex) {
+			if (moduleFilter == null) {
+				return true;
+			}
+			if (row.isEmpty(moduleIdIndex)) {
+				return false;
+			}
+			try {
+				return moduleFilter.isModule(row.getLong(moduleIdIndex));
+			} catch (NumberFormatException e) {
+				// Not an id so not one of the modules, as when module ids were compared as Strings
+				return false;
+			}
+		}
+
+		/**
+		 * @return The refset ids of the profile as longs, or null if any is not a plain number and must be matched as a String.
+		 */
+		private static LongSet getRefsetIdLongs(LoadingProfile loadingProfile) {
+			LongSet refsetIdLongs = new LongOpenHashSet();
+			for (String refsetId : loadingProfile.getRefsetIds()) {
+				try {
+					long refsetIdLong = Long.parseLong(refsetId);
+					if (!Long.toString(refsetIdLong).equals(refsetId)) {
+						return null;
 					}
+					refsetIdLongs.add(refsetIdLong);
+				} catch (NumberFormatException e) {
+					return null;
 				}
 			}
+			return refsetIdLongs;
 		}
 
-		private void gatherIdentifierVersions(List<Path> filePaths, Set<String> versions) throws IOException {
-			for (Path filePath : filePaths) {
-				try (final BufferedReader reader = Files.newBufferedReader(filePath, UTF_8)) {
-					String line;
-					String header = reader.readLine();
-					boolean isLegacyIdentifierFile = false;
-					final String[] fieldNames = header.split("\\t");
-					if (fieldNames[0].equals("identifierSchemeId")) {
-						isLegacyIdentifierFile = true;
-					}
-					Matcher matcher;
-					while ((line = reader.readLine()) != null) {
-						matcher = isLegacyIdentifierFile ? LEGACY_IDENTIFIER_DATE_EXTRACT_PATTERN.matcher(line) : DATE_EXTRACT_PATTERN.matcher(line);
-						if (matcher.matches()) {
-							versions.add(matcher.group(1));
-						}
-					}
+		private static boolean isRefset(LoadingProfile loadingProfile, LongSet refsetIdLongs, RF2Row row) {
+			if (refsetIdLongs != null && !row.isEmpty(RefsetFieldIndexes.refsetId)) {
+				try {
+					return refsetIdLongs.contains(row.getLong(RefsetFieldIndexes.refsetId));
+				} catch (NumberFormatException e) {
+					// Not a number, compare as a String below
 				}
 			}
+			return loadingProfile.isRefset(row.get(RefsetFieldIndexes.refsetId));
+		}
+
+		/**
+		 * @return The factory as a PrimitiveComponentFactory if it prefers primitive callbacks, otherwise null.
+		 */
+		private static PrimitiveComponentFactory getPrimitiveComponentFactory(ComponentFactory componentFactory) {
+			if (componentFactory instanceof PrimitiveComponentFactory primitiveComponentFactory && primitiveComponentFactory.isUsingPrimitiveCallbacks()) {
+				return primitiveComponentFactory;
+			}
+			return null;
+		}
+
+		/**
+		 * @return The factory as a BatchComponentFactory if it accepts batches, otherwise null.
+		 */
+		private static BatchComponentFactory getBatchComponentFactory(ComponentFactory componentFactory) {
+			if (componentFactory instanceof BatchComponentFactory batchComponentFactory && batchComponentFactory.isUsingBatchCallbacks()) {
+				return batchComponentFactory;
+			}
+			return null;
+		}
+
+		private Callable<String> readLinesCallable(final List<Path> rf2FilePaths, final FileContentHandler contentHandler, final String componentType, final String releaseVersion) {
+			return () -> {
+				readLines(rf2FilePaths, contentHandler, componentType, releaseVersion);
+				return null;
+			};
 		}
 
 		private void readLines(List<Path> rf2FilePaths, FileContentHandler contentHandler, String componentType, String releaseVersion) throws IOException, ReleaseImportException {
@@ -645,84 +1758,493 @@ public class ReleaseImporter {
 				logger.info("Reading {} ", componentType);
 			}
 
-			final ValuesHandler valuesHandler = contentHandler instanceof ValuesHandler ? ((ValuesHandler) contentHandler) : null;
-			final FieldNamesAndValuesHandler fieldNamesAndValuesHandler = contentHandler instanceof FieldNamesAndValuesHandler ? ((FieldNamesAndValuesHandler) contentHandler) : null;
-
 			for (Path rf2FilePath : rf2FilePaths) {
-				long linesRead = 0L;
+				long linesRead;
 				Path fileName = rf2FilePath.getFileName();
-				try (final BufferedReader reader = Files.newBufferedReader(rf2FilePath, UTF_8)) {
-					String line;
-					final String header = reader.readLine();
-					final String[] fieldNames = header.split("\\t");
-					final int columns = fieldNames.length;
-					// Allow refsets to have empty values in last columns. "line.split" does not return the empty values so we need a minColumns.
-					final Integer minColumns = fileName.toString().contains("Refset_") ? 6 : null;
-					if (columns < 5) {
-						throw new ReleaseImportException(format("Invalid RF2 content. Less than five tab separated columns found in first line of %s.", fileName));
-					}
-					boolean legacyPublishedFile = false;
-					if (IDENTIFIERS_TYPE.equals(componentType)) {
-						if (!fieldNames[0].equals("alternateIdentifier") && !fieldNames[0].equals("identifierSchemeId")) {
-							throw new ReleaseImportException(format("Invalid RF2 content. 'alternateIdentifier' or 'identifierSchemeId' not found as first value in tab separated first line of %s.", fileName));
-						}
-						if (fieldNames[0].equals("identifierSchemeId")) {
-							legacyPublishedFile = true;
-						}
+				int splitRanges = getSplitRanges(rf2FilePath);
+				if (splitRanges > 1) {
+					linesRead = readLinesInParallel(rf2FilePath, splitRanges, contentHandler, componentType, releaseVersion);
+				} else {
+					try (final RF2Reader reader = openReader(rf2FilePath)) {
+						final RF2FileHeader header = readHeader(reader, fileName, componentType);
+						linesRead = readRows(reader, header, contentHandler, releaseVersion, fileName.toString());
 					}
+				}
+				releaseImport.fileRead();
+				logger.info("{} {} read from {}", linesRead, componentType, fileName.toString());
+			}
+		}
 
-					if (!IDENTIFIERS_TYPE.equals(componentType) && !fieldNames[0].equals("id")) {
-						throw new ReleaseImportException(format("Invalid RF2 content. 'id' not found as first value in tab separated first line of %s.", fileName));
+		/**
+		 * @return The number of byte ranges the file should be split into for parallel parsing, or 1 if it should be read in one go.
+		 */
+		private int getSplitRanges(Path rf2FilePath) throws IOException {
+			long splitThreshold = releaseImporter.getFileSplitThresholdBytes();
+			if (!multiThreaded || splitThreshold <= 0 || (releaseVersionSplitter != null && releaseVersionSplitter.isVersionContent(rf2FilePath))) {
+				return 1;
+			}
+			// Entries of a release zip stream are held in memory and can be split like files on disk
+			if (rf2FilePath.getFileSystem() != FileSystems.getDefault() && getInMemoryArchive(rf2FilePath) == null) {
+				return 1;
+			}
+			long ranges = getContentSize(rf2FilePath) / splitThreshold + 1;
+			// The read permits limit how many ranges of all files are read at once
+			int parallelism = releaseImporter.getParallelism();
+			return (int) Math.min(ranges, parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+		}
+
+		/**
+		 * Parse byte ranges of one file on separate threads, each range aligned on line boundaries.
+		 * All ranges feed the same content handler.
+		 */
+		private long readLinesInParallel(Path rf2FilePath, int splitRanges, FileContentHandler contentHandler, String componentType, String releaseVersion)
+				throws IOException, ReleaseImportException {
+
+			final Path fileName = rf2FilePath.getFileName();
+			final RF2FileHeader header = readHeader(rf2FilePath, componentType);
+			final long[] boundaries = splitIntoLineRanges(rf2FilePath, splitRanges);
+			logger.info("Reading {} in {} parallel ranges", fileName, boundaries.length - 1);
+			List<ImportTask<Long>> futures = new ArrayList<>();
+			for (int i = 0; i < boundaries.length - 1; i++) {
+				final long start = boundaries[i];
+				final long end = boundaries[i + 1];
+				futures.add(ImportTask.submit(executorService, () -> {
+					try (final RF2Reader reader = openReader(rf2FilePath, start, end)) {
+						long rangeLinesRead = readRows(reader, header, contentHandler, releaseVersion, format("%s (bytes %s-%s)", fileName, start, end));
+						releaseImport.splitRangeRead();
+						return rangeLinesRead;
 					}
-					String[] values;
-					while ((line = reader.readLine()) != null) {
-						linesRead++;
-						if (line.isEmpty()) {
-							logger.info("Skipping empty line {} in RF2 file {}.", linesRead + 1, fileName);
-							continue;
-						}
-						values = line.split("\\t");
-						if (values.length != columns) {
-							if (minColumns == null) {
-								throw new ReleaseImportException(format("Invalid RF2 content. Wrong number of columns in line %s of file %s. Expected %s columns, found %s.",
-										linesRead + 1, fileName, columns, values.length));
-							} else if (values.length < minColumns) {
-								throw new ReleaseImportException(format("Invalid RF2 content. Less than minimum number of columns in line %s of file %s. Expected at least %s columns, found %s.",
-										linesRead + 1, fileName, minColumns, values.length));
-							} else {
-								logger.warn(format("Wrong number of columns in line %s of file %s. Expected exactly %s columns, found %s. " +
-												"This could be caused by empty values in last columns of the refset member, will attempt to load.",
-										linesRead + 1, fileName, columns, values.length));
-							}
-						}
-						if (releaseVersion == null
-							|| (IDENTIFIERS_TYPE.equals(componentType) && legacyPublishedFile && releaseVersion.equals(values[IdentifierFieldIndexes.legacyEffectiveTime]))
-							|| releaseVersion.equals(values[ComponentFieldIndexes.effectiveTime])) {
-							if (valuesHandler != null) {
-								valuesHandler.handle(values, legacyPublishedFile);
-							} else if (fieldNamesAndValuesHandler != null) {
-								fieldNamesAndValuesHandler.handle(fieldNames, values, legacyPublishedFile);
-							}
-						}
+				}));
+			}
+			long linesRead = 0;
+			boolean completed = false;
+			try {
+				// Ranges that no executor thread has started are read on this thread
+				for (ImportTask<Long> future : futures) {
+					linesRead += future.join();
+				}
+				completed = true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ReleaseImportException("Interrupted while reading " + fileName, e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof ReleaseImportException) {
+					throw (ReleaseImportException) e.getCause();
+				}
+				throw new ReleaseImportException("Failed to read " + fileName, e.getCause());
+			} finally {
+				if (!completed) {
+					futures.forEach(future -> future.cancel(true));
+					futures.forEach(ImportTask::awaitStopped);
+				}
+			}
+			return linesRead;
+		}
+
+		private RF2FileHeader readHeader(Path rf2FilePath, String componentType) throws IOException, ReleaseImportException {
+			try (RF2Reader reader = openReader(rf2FilePath)) {
+				return readHeader(reader, rf2FilePath.getFileName(), componentType);
+			}
+		}
+
+		private RF2FileHeader readHeader(RF2Reader reader, Path fileName, String componentType) throws IOException, ReleaseImportException {
+			final RF2Row headerRow = reader.nextRow();
+			if (headerRow == null) {
+				throw new ReleaseImportException(format("Invalid RF2 content. No header line found in %s.", fileName));
+			}
+			final String[] fieldNames = headerRow.toArray();
+			final int columns = fieldNames.length;
+			if (columns < 5) {
+				throw new ReleaseImportException(format("Invalid RF2 content. Less than five tab separated columns found in first line of %s.", fileName));
+			}
+			boolean legacyPublishedFile = false;
+			if (IDENTIFIERS_TYPE.equals(componentType)) {
+				if (!fieldNames[0].equals("alternateIdentifier") && !fieldNames[0].equals("identifierSchemeId")) {
+					throw new ReleaseImportException(format("Invalid RF2 content. 'alternateIdentifier' or 'identifierSchemeId' not found as first value in tab separated first line of %s.", fileName));
+				}
+				if (fieldNames[0].equals("identifierSchemeId")) {
+					legacyPublishedFile = true;
+				}
+			}
+
+			if (!IDENTIFIERS_TYPE.equals(componentType) && !fieldNames[0].equals("id")) {
+				throw new ReleaseImportException(format("Invalid RF2 content. 'id' not found as first value in tab separated first line of %s.", fileName));
+			}
+			// Allow refsets to have empty values in last columns. Like "line.split", the row does not count trailing empty values so we need a minColumns.
+			final Integer minColumns = fileName.toString().contains("Refset_") ? 6 : null;
+			return new RF2FileHeader(fieldNames, minColumns, legacyPublishedFile);
+		}
+
+		private long readRows(RF2Reader reader, RF2FileHeader header, FileContentHandler sharedContentHandler, String releaseVersion, String fileName)
+				throws IOException, ReleaseImportException {
+
+			acquireReadPermit(fileName);
+			try {
+				if (stopped || releaseImport.isCancelled()) {
+					throw new ReleaseImportException(format("Stopped before reading %s because %s.", fileName,
+							stopped ? "loading another file failed" : "the import was cancelled"));
+				}
+				return readRowsWithPermit(reader, header, sharedContentHandler, releaseVersion, fileName);
+			} finally {
+				if (readPermits != null) {
+					readPermits.release();
+				}
+			}
+		}
+
+		private void acquireReadPermit(String fileName) throws ReleaseImportException {
+			if (readPermits != null) {
+				try {
+					readPermits.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ReleaseImportException("Interrupted while waiting to read " + fileName, e);
+				}
+			}
+		}
+
+		private long readRowsWithPermit(RF2Reader reader, RF2FileHeader header, FileContentHandler sharedContentHandler, String releaseVersion, String fileName)
+				throws IOException, ReleaseImportException {
+
+			// Each reading task fills a batch of its own
+			final TaskBatchHandler<?> taskBatchHandler = sharedContentHandler instanceof BatchingHandler<?> batchingHandler ? batchingHandler.newTaskHandler() : null;
+			final FileContentHandler contentHandler = taskBatchHandler != null ? taskBatchHandler : sharedContentHandler;
+			if (releaseImporter.getPipelineBatches() <= 0) {
+				long linesRead = readRows(reader, contentHandler, header, null, releaseVersion, fileName);
+				if (taskBatchHandler != null) {
+					taskBatchHandler.flush();
+				}
+				return linesRead;
+			}
+			final String[] fieldNames = header.fieldNames;
+			final boolean legacyPublishedFile = header.legacyPublishedFile;
+			final RowPipeline pipeline = new RowPipeline(fileName, releaseImporter.getPipelineBatches(), contentHandler instanceof ValuesHandler valuesHandler ?
+					row -> valuesHandler.handle(row, legacyPublishedFile) :
+					row -> ((FieldNamesAndValuesHandler) contentHandler).handle(fieldNames, row, legacyPublishedFile),
+					taskBatchHandler != null ? taskBatchHandler::flush : null, executorService);
+			boolean finished = false;
+			try {
+				long linesRead = readRows(reader, contentHandler, header, pipeline, releaseVersion, fileName);
+				pipeline.finish();
+				finished = true;
+				releaseImport.pipelineFinished(pipeline);
+				return linesRead;
+			} finally {
+				if (!finished) {
+					pipeline.abort();
+				}
+			}
+		}
+
+		/**
+		 * @param pipeline if not null rows are added to the pipeline rather than passed to the content handler
+		 */
+		private long readRows(RF2Reader reader, FileContentHandler contentHandler, RF2FileHeader header, RowPipeline pipeline, String releaseVersion, String fileName)
+				throws IOException, ReleaseImportException {
+
+			final ValuesHandler valuesHandler = contentHandler instanceof ValuesHandler ? ((ValuesHandler) contentHandler) : null;
+			final FieldNamesAndValuesHandler fieldNamesAndValuesHandler = contentHandler instanceof FieldNamesAndValuesHandler ? ((FieldNamesAndValuesHandler) contentHandler) : null;
+			final String[] fieldNames = header.fieldNames;
+			final boolean legacyPublishedFile = header.legacyPublishedFile;
+			final int effectiveTimeIndex = legacyPublishedFile ? IdentifierFieldIndexes.legacyEffectiveTime : ComponentFieldIndexes.effectiveTime;
+			long linesRead = 0L;
+			RF2Row row;
+			while ((row = reader.nextRow()) != null) {
+				linesRead++;
+				if ((linesRead & PROGRESS_ROWS_MASK) == 0) {
+					releaseImport.rowsRead(PROGRESS_ROWS_MASK + 1);
+					if (stopped || releaseImport.isCancelled()) {
+						throw new ReleaseImportException(format("Stopped reading %s after %s lines because %s.", fileName, linesRead,
+								stopped ? "loading another file failed" : "the import was cancelled"));
 					}
 				}
-				logger.info("{} {} read from {}", linesRead, componentType, fileName.toString());
+				if (!isValidRow(row, header, linesRead, fileName)) {
+					continue;
+				}
+				if (releaseVersion == null || row.isValue(effectiveTimeIndex, releaseVersion)) {
+					if (pipeline != null) {
+						pipeline.add(row);
+					} else if (valuesHandler != null) {
+						valuesHandler.handle(row, legacyPublishedFile);
+					} else if (fieldNamesAndValuesHandler != null) {
+						fieldNamesAndValuesHandler.handle(fieldNames, row, legacyPublishedFile);
+					}
+				}
+			}
+			releaseImport.rowsRead(linesRead & PROGRESS_ROWS_MASK);
+			return linesRead;
+		}
+
+		/**
+		 * @return false if the row is an empty line that should be skipped.
+		 * @throws ReleaseImportException if the row does not have enough columns.
+		 */
+		private boolean isValidRow(RF2Row row, RF2FileHeader header, long linesRead, String fileName) throws ReleaseImportException {
+			if (row.isEmptyLine()) {
+				logger.info("Skipping empty line {} in RF2 file {}.", linesRead + 1, fileName);
+				return false;
+			}
+			final int columns = header.fieldNames.length;
+			final Integer minColumns = header.minColumns;
+			if (row.size() != columns) {
+				if (minColumns == null) {
+					throw new ReleaseImportException(format("Invalid RF2 content. Wrong number of columns in line %s of file %s. Expected %s columns, found %s.",
+							linesRead + 1, fileName, columns, row.size()));
+				} else if (row.size() < minColumns) {
+					throw new ReleaseImportException(format("Invalid RF2 content. Less than minimum number of columns in line %s of file %s. Expected at least %s columns, found %s.",
+							linesRead + 1, fileName, minColumns, row.size()));
+				} else {
+					logger.warn(format("Wrong number of columns in line %s of file %s. Expected exactly %s columns, found %s. " +
+									"This could be caused by empty values in last columns of the refset member, will attempt to load.",
+							linesRead + 1, fileName, columns, row.size()));
+				}
+			}
+			return true;
+		}
+
+		private RF2Reader openReader(Path rf2FilePath) throws IOException {
+			if (releaseVersionSplitter != null && releaseVersionSplitter.isVersionContent(rf2FilePath)) {
+				return RF2Reader.open(openInputStream(rf2FilePath));
+			}
+			ReleaseArchive inMemoryArchive = getInMemoryArchive(rf2FilePath);
+			if (inMemoryArchive != null) {
+				return RF2Reader.open(inMemoryArchive.getContent(rf2FilePath));
+			}
+			return RF2Reader.open(rf2FilePath);
+		}
+
+		/**
+		 * Opens a line range of a file on the default file system or held in memory, see splitIntoLineRanges.
+		 */
+		private RF2Reader openReader(Path rf2FilePath, long start, long end) throws IOException {
+			ReleaseArchive inMemoryArchive = getInMemoryArchive(rf2FilePath);
+			if (inMemoryArchive != null) {
+				return RF2Reader.open(inMemoryArchive.getContent(rf2FilePath).slice((int) start, (int) (end - start)));
+			}
+			return RF2Reader.open(rf2FilePath, start, end);
+		}
+
+		private long[] splitIntoLineRanges(Path rf2FilePath, int ranges) throws IOException {
+			ReleaseArchive inMemoryArchive = getInMemoryArchive(rf2FilePath);
+			if (inMemoryArchive != null) {
+				return RF2Reader.splitIntoLineRanges(inMemoryArchive.getContent(rf2FilePath), ranges);
+			}
+			return RF2Reader.splitIntoLineRanges(rf2FilePath, ranges);
+		}
+
+		private InputStream openInputStream(Path rf2FilePath) throws IOException {
+			if (releaseVersionSplitter != null && releaseVersionSplitter.isVersionContent(rf2FilePath)) {
+				return releaseVersionSplitter.open(rf2FilePath);
+			}
+			ReleaseArchive inMemoryArchive = getInMemoryArchive(rf2FilePath);
+			if (inMemoryArchive != null) {
+				return inMemoryArchive.open(rf2FilePath);
+			}
+			return Files.newInputStream(rf2FilePath);
+		}
+
+		private ReleaseArchive getInMemoryArchive(Path rf2FilePath) {
+			for (ReleaseArchive releaseArchive : releaseArchives) {
+				if (releaseArchive.isInMemory(rf2FilePath)) {
+					return releaseArchive;
+				}
 			}
+			return null;
 		}
 
 		private String formatAsMB(long bytes) {
 			return NumberFormat.getInstance().format((bytes / 1024) / 1024);
 		}
 
+		/**
+		 * An RF2 file read by a stream of rows.
+		 */
+		private final class StreamedRF2File implements RF2RowSpliterator.RowFile {
+
+			private final Path rf2FilePath;
+			private final RF2FileHeader header;
+			private final Function<ComponentFactory, FileContentHandler> handlerFactory;
+
+			private StreamedRF2File(Path rf2FilePath, RF2FileHeader header, Function<ComponentFactory, FileContentHandler> handlerFactory) {
+				this.rf2FilePath = rf2FilePath;
+				this.header = header;
+				this.handlerFactory = handlerFactory;
+			}
+
+			@Override
+			public String getName() {
+				return rf2FilePath.getFileName().toString();
+			}
+
+			@Override
+			public long size() {
+				return getContentSize(rf2FilePath);
+			}
+
+			@Override
+			public boolean isSplittable() {
+				return rf2FilePath.getFileSystem() == FileSystems.getDefault() && getInMemoryArchive(rf2FilePath) == null;
+			}
+
+			@Override
+			public long getRowsStart() throws IOException {
+				return RF2Reader.findNextLineStart(rf2FilePath, 0);
+			}
+
+			@Override
+			public long findNextLineStart(long position) throws IOException {
+				return RF2Reader.findNextLineStart(rf2FilePath, position);
+			}
+
+			@Override
+			public RF2Reader open() throws IOException, ReleaseImportException {
+				RF2Reader reader = openReader(rf2FilePath);
+				streamedReaders.add(reader);
+				// Skip the header line, it was read when the stream was created
+				reader.nextRow();
+				return reader;
+			}
+
+			@Override
+			public RF2Reader open(long start, long end) throws IOException {
+				RF2Reader reader = openReader(rf2FilePath, start, end);
+				streamedReaders.add(reader);
+				return reader;
+			}
+
+			@Override
+			public void close(RF2Reader reader) throws IOException {
+				streamedReaders.remove(reader);
+				reader.close();
+			}
+
+			@Override
+			public RF2RowSpliterator.RowHandler newRowHandler(Consumer<ComponentRow> rowConsumer) {
+				final FileContentHandler contentHandler = handlerFactory.apply(new ComponentRowFactory() {
+					@Override
+					void accept(ComponentRow row) {
+						rowConsumer.accept(row);
+					}
+				});
+				if (contentHandler instanceof ValuesHandler valuesHandler) {
+					return (row, linesRead, rangeName) -> {
+						if (isValidRow(row, header, linesRead, rangeName)) {
+							valuesHandler.handle(row, header.legacyPublishedFile);
+						}
+					};
+				}
+				final FieldNamesAndValuesHandler fieldNamesAndValuesHandler = (FieldNamesAndValuesHandler) contentHandler;
+				return (row, linesRead, rangeName) -> {
+					if (isValidRow(row, header, linesRead, rangeName)) {
+						fieldNamesAndValuesHandler.handle(header.fieldNames, row, header.legacyPublishedFile);
+					}
+				};
+			}
+		}
+
+		/**
+		 * A file loading task, with the tasks that must wait for it.
+		 */
+		private static final class LoadTask {
+
+			private final Callable<String> callable;
+			private final long size;
+			private final List<LoadTask> dependents = new ArrayList<>();
+			private int waitingFor;
+
+			private LoadTask(Callable<String> callable, long size) {
+				this.callable = callable;
+				this.size = size;
+			}
+
+			private void dependsOn(LoadTask task) {
+				task.dependents.add(this);
+				waitingFor++;
+			}
+		}
+
+		private static final class RF2FileHeader {
+
+			private final String[] fieldNames;
+			private final Integer minColumns;
+			private final boolean legacyPublishedFile;
+
+			private RF2FileHeader(String[] fieldNames, Integer minColumns, boolean legacyPublishedFile) {
+				this.fieldNames = fieldNames;
+				this.minColumns = minColumns;
+				this.legacyPublishedFile = legacyPublishedFile;
+			}
+		}
+
 		private interface FileContentHandler {
 		}
 
 		private interface ValuesHandler extends FileContentHandler {
-			void handle(String[] values, boolean legacyPublishedFile);
+			void handle(RF2Row row, boolean legacyPublishedFile);
 		}
 
 		private interface FieldNamesAndValuesHandler extends FileContentHandler {
-			void handle(String[] fieldNames, String[] values, boolean legacyPublishedFile);
+			void handle(String[] fieldNames, RF2Row row, boolean legacyPublishedFile);
+		}
+
+		/**
+		 * Adds rows to batches, passing each batch on when it is full. The handler is shared by the tasks reading a component type,
+		 * each reading task handles its rows with a handler of its own from newTaskHandler.
+		 */
+		private static final class BatchingHandler<B extends ComponentBatch> implements FileContentHandler {
+
+			private final Supplier<B> batchSupplier;
+			private final BiConsumer<B, RF2Row> rowAdder;
+			private final Consumer<B> batchConsumer;
+
+			private BatchingHandler(Supplier<B> batchSupplier, BiConsumer<B, RF2Row> rowAdder, Consumer<B> batchConsumer) {
+				this.batchSupplier = batchSupplier;
+				this.rowAdder = rowAdder;
+				this.batchConsumer = batchConsumer;
+			}
+
+			private TaskBatchHandler<B> newTaskHandler() {
+				return new TaskBatchHandler<>(batchSupplier.get(), rowAdder, batchConsumer);
+			}
+		}
+
+		/**
+		 * Adds the rows of one reading task to its batch. The task passes on the rows left in the batch by calling flush once it has
+		 * handled the last row.
+		 */
+		private static final class TaskBatchHandler<B extends ComponentBatch> implements ValuesHandler {
+
+			private final B batch;
+			private final BiConsumer<B, RF2Row> rowAdder;
+			private final Consumer<B> batchConsumer;
+
+			private TaskBatchHandler(B batch, BiConsumer<B, RF2Row> rowAdder, Consumer<B> batchConsumer) {
+				this.batch = batch;
+				this.rowAdder = rowAdder;
+				this.batchConsumer = batchConsumer;
+			}
+
+			@Override
+			public void handle(RF2Row row, boolean legacyPublishedFile) {
+				rowAdder.accept(batch, row);
+				if (batch.isFull()) {
+					passOn();
+				}
+			}
+
+			private void flush() {
+				if (batch.size() > 0) {
+					passOn();
+				}
+			}
+
+			private void passOn() {
+				try {
+					batchConsumer.accept(batch);
+				} finally {
+					batch.clear();
+				}
+			}
 		}
 	}
 
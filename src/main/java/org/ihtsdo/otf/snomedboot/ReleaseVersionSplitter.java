@@ -0,0 +1,366 @@
+package org.ihtsdo.otf.snomedboot;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import static java.lang.String.format;
+
+/**
+ * Reads each file of a Full release once and groups the rows by effectiveTime.
+ * Rows are held in memory until the buffer limit is reached, then spilled to disk.
+ * The content of each release version can then be read back, in version order, without re-reading the original files.
+ */
+class ReleaseVersionSplitter implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReleaseVersionSplitter.class);
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final long memoryBufferLimit;
+	private final Map<String, Map<Path, VersionBucket>> versionBuckets = new TreeMap<>();
+	private final Map<Path, VersionBucket> bucketsByPath = new HashMap<>();
+	private final Set<String> versions = new TreeSet<>();
+	private final Set<Path> scannedFiles = new HashSet<>();
+	private final Set<Path> bufferedFiles = new HashSet<>();
+	private FileOpener fileOpener;
+	private Predicate<Path> loadedFiles;
+	private long bytesBuffered;
+	private int sourceFiles;
+	private File spillDir;
+
+	ReleaseVersionSplitter(long memoryBufferLimit) {
+		this.memoryBufferLimit = memoryBufferLimit;
+	}
+
+	/**
+	 * Split the files of the release that will be loaded by effectiveTime.
+	 * Versions are gathered from the same file types that were used to list versions before single pass loading, whether they are loaded or not,
+	 * so the versions do not depend on the loading profile. Calling this again splits any further files that will be loaded, files are only read once.
+	 * @param loadedFiles selects the files whose rows are kept
+	 */
+	void split(ReleaseFiles releaseFiles, Predicate<Path> loadedFiles, FileOpener fileOpener) throws IOException, ReleaseImportException {
+		this.fileOpener = fileOpener;
+		this.loadedFiles = loadedFiles;
+		logger.info("Grouping release rows by version...");
+		split(releaseFiles.getConceptPaths(), ReleaseFiles::addConceptPath, true);
+		split(releaseFiles.getDescriptionPaths(), ReleaseFiles::addDescriptionPath, true);
+		split(releaseFiles.getTextDefinitionPaths(), ReleaseFiles::addTextDefinitionPath, true);
+		split(releaseFiles.getRelationshipPaths(), ReleaseFiles::addRelationshipPath, true);
+		split(releaseFiles.getConcreteRelationshipPaths(), ReleaseFiles::addConcreteRelationshipPath, false);
+		split(releaseFiles.getStatedRelationshipPaths(), ReleaseFiles::addStatedRelationshipPath, false);
+		split(releaseFiles.getIdentifierPaths(), ReleaseFiles::addIdentifierPath, true);
+		split(releaseFiles.getRefsetPaths(), ReleaseFiles::addRefsetPath, true);
+		logger.info("Release versions found: {}", versions);
+	}
+
+	Set<String> getVersions() {
+		return versions;
+	}
+
+	/**
+	 * @return The release files containing only the rows of the given version.
+	 */
+	ReleaseFiles getReleaseFiles(String version) {
+		ReleaseFiles releaseFiles = new ReleaseFiles();
+		for (VersionBucket bucket : versionBuckets.getOrDefault(version, Collections.emptyMap()).values()) {
+			bucket.fileTypeAdder.accept(releaseFiles, bucket.path);
+		}
+		return releaseFiles;
+	}
+
+	boolean isVersionContent(Path path) {
+		return bucketsByPath.containsKey(path);
+	}
+
+	/**
+	 * @return The number of bytes of a version bucket created by this splitter.
+	 */
+	long size(Path path) {
+		VersionBucket bucket = bucketsByPath.get(path);
+		if (bucket == null) {
+			return 0;
+		}
+		return bucket.memorySize() + (bucket.spillFile != null ? bucket.spillFile.length() : 0);
+	}
+
+	/**
+	 * Open the content of a version bucket created by this splitter.
+	 */
+	InputStream open(Path path) throws IOException {
+		VersionBucket bucket = bucketsByPath.get(path);
+		if (bucket == null) {
+			throw new FileNotFoundException("No release version content for " + path);
+		}
+		InputStream memoryStream = bucket.memory != null ? new ByteArrayInputStream(bucket.memory.getBuffer(), 0, bucket.memory.size()) : InputStream.nullInputStream();
+		if (bucket.spillFile != null && bucket.spillFile.isFile()) {
+			return new SequenceInputStream(new BufferedInputStream(new FileInputStream(bucket.spillFile), READ_BUFFER_SIZE), memoryStream);
+		}
+		return memoryStream;
+	}
+
+	@Override
+	public void close() {
+		versionBuckets.clear();
+		bucketsByPath.clear();
+		if (spillDir != null) {
+			try {
+				FileUtils.deleteDirectory(spillDir);
+			} catch (IOException e) {
+				logger.warn("Failed to remove directory {}", spillDir.getAbsolutePath());
+			}
+		}
+	}
+
+	private void split(List<Path> rf2FilePaths, BiConsumer<ReleaseFiles, Path> fileTypeAdder, boolean gatherVersions) throws IOException, ReleaseImportException {
+		for (Path rf2FilePath : rf2FilePaths) {
+			boolean buffer = loadedFiles.test(rf2FilePath) && !bufferedFiles.contains(rf2FilePath);
+			// Versions are gathered from each file once
+			boolean scan = gatherVersions && !scannedFiles.contains(rf2FilePath);
+			if (buffer || scan) {
+				split(rf2FilePath, fileTypeAdder, gatherVersions, buffer);
+				scannedFiles.add(rf2FilePath);
+				if (buffer) {
+					bufferedFiles.add(rf2FilePath);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param buffer keep the rows, otherwise only gather the versions
+	 */
+	private void split(Path rf2FilePath, BiConsumer<ReleaseFiles, Path> fileTypeAdder, boolean gatherVersions, boolean buffer) throws IOException, ReleaseImportException {
+		String fileName = rf2FilePath.getFileName().toString();
+		// Files of the same name in different directories get separate buckets
+		int sourceFile = ++sourceFiles;
+		try (InputStream inputStream = fileOpener.open(rf2FilePath)) {
+			LineReader lineReader = new LineReader(inputStream);
+			byte[] header = lineReader.nextLine();
+			if (header == null) {
+				return;
+			}
+			// Legacy identifier files have effectiveTime in the third column
+			int effectiveTimeColumn = new String(header, 0, lineReader.lineLength(), ReleaseImporter.UTF_8).startsWith("identifierSchemeId") ? 2 : 1;
+			byte[] headerLine = Arrays.copyOf(header, lineReader.length());
+
+			Map<String, VersionBucket> fileBuckets = new HashMap<>();
+			long lineNumber = 1;
+			byte[] line;
+			while ((line = lineReader.nextLine()) != null) {
+				lineNumber++;
+				if ((lineNumber & 0xFFF) == 0 && Thread.currentThread().isInterrupted()) {
+					throw new ReleaseImportException(format("Interrupted while splitting %s by release version.", fileName));
+				}
+				if (lineReader.lineLength() == 0) {
+					// Empty lines are skipped when the version content is read
+					continue;
+				}
+				String version = extractColumn(line, lineReader.lineLength(), effectiveTimeColumn);
+				if (version == null) {
+					throw new ReleaseImportException(format("Invalid RF2 content. Wrong number of columns in line %s of file %s.", lineNumber, fileName));
+				}
+				if (gatherVersions) {
+					versions.add(version);
+				}
+				if (!buffer) {
+					continue;
+				}
+				VersionBucket bucket = fileBuckets.get(version);
+				if (bucket == null) {
+					bucket = createBucket(version, rf2FilePath, sourceFile, fileTypeAdder, headerLine);
+					fileBuckets.put(version, bucket);
+				}
+				bucket.write(line, lineReader.length());
+				bytesBuffered += lineReader.length();
+				if (bytesBuffered > memoryBufferLimit) {
+					spillAll();
+				}
+			}
+		}
+	}
+
+	private VersionBucket createBucket(String version, Path rf2FilePath, int sourceFile, BiConsumer<ReleaseFiles, Path> fileTypeAdder, byte[] headerLine) {
+		// The bucket path keeps the original filename so that filename based rules still apply.
+		Path bucketPath = rf2FilePath.getFileSystem().getPath(version.isEmpty() ? "unpublished" : version, Integer.toString(sourceFile),
+				rf2FilePath.getFileName().toString());
+		VersionBucket bucket = new VersionBucket(bucketPath, fileTypeAdder);
+		bucket.write(headerLine, headerLine.length);
+		bytesBuffered += headerLine.length;
+		versionBuckets.computeIfAbsent(version, v -> new LinkedHashMap<>()).put(bucketPath, bucket);
+		bucketsByPath.put(bucketPath, bucket);
+		return bucket;
+	}
+
+	private void spillAll() throws IOException {
+		if (spillDir == null) {
+			spillDir = Files.createTempDirectory("rf2-version-split").toFile();
+		}
+		logger.info("Release version buffer limit reached, writing buffered rows to {}", spillDir.getAbsolutePath());
+		for (VersionBucket bucket : bucketsByPath.values()) {
+			if (bucket.memorySize() > 0) {
+				if (bucket.spillFile == null) {
+					File versionDir = new File(spillDir, bucket.path.getParent().toString());
+					if (!versionDir.isDirectory() && !versionDir.mkdirs()) {
+						throw new IOException("Failed to create directory " + versionDir.getAbsolutePath());
+					}
+					bucket.spillFile = new File(versionDir, bucket.path.getFileName().toString());
+				}
+				try (OutputStream outputStream = new FileOutputStream(bucket.spillFile, true)) {
+					bucket.memory.writeTo(outputStream);
+				}
+				// Release the grown buffer, most buckets are not written to again
+				bucket.memory = null;
+			}
+		}
+		bytesBuffered = 0;
+	}
+
+	/**
+	 * @return The value of the given tab separated column, or null if the line does not have that many columns.
+	 */
+	private static String extractColumn(byte[] line, int lineLength, int column) {
+		int start = 0;
+		int currentColumn = 0;
+		for (int i = 0; i < lineLength; i++) {
+			if (line[i] == '\t') {
+				if (currentColumn == column) {
+					return new String(line, start, i - start, ReleaseImporter.UTF_8);
+				}
+				currentColumn++;
+				start = i + 1;
+			}
+		}
+		return null;
+	}
+
+	interface FileOpener {
+		InputStream open(Path path) throws IOException;
+	}
+
+	private static final class VersionBucket {
+
+		private final Path path;
+		private final BiConsumer<ReleaseFiles, Path> fileTypeAdder;
+		private ExposedByteArrayOutputStream memory;
+		private File spillFile;
+
+		private VersionBucket(Path path, BiConsumer<ReleaseFiles, Path> fileTypeAdder) {
+			this.path = path;
+			this.fileTypeAdder = fileTypeAdder;
+		}
+
+		private void write(byte[] bytes, int length) {
+			if (memory == null) {
+				memory = new ExposedByteArrayOutputStream();
+			}
+			memory.write(bytes, 0, length);
+		}
+
+		private int memorySize() {
+			return memory != null ? memory.size() : 0;
+		}
+	}
+
+	private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+		private ExposedByteArrayOutputStream() {
+			super(8 * 1024);
+		}
+
+		private byte[] getBuffer() {
+			return buf;
+		}
+	}
+
+	/**
+	 * Reads lines as raw bytes, including the line terminator, without character decoding.
+	 */
+	private static final class LineReader {
+
+		private final InputStream inputStream;
+		private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+		private int readPosition;
+		private int readLimit;
+		private byte[] line = new byte[1024];
+		private int length;
+		private int lineLength;
+
+		private LineReader(InputStream inputStream) {
+			this.inputStream = inputStream;
+		}
+
+		/**
+		 * @return Buffer holding the next line or null at the end of the stream.
+		 * The buffer is reused between calls.
+		 */
+		private byte[] nextLine() throws IOException {
+			length = 0;
+			while (true) {
+				if (readPosition == readLimit) {
+					readLimit = inputStream.read(readBuffer);
+					readPosition = 0;
+					if (readLimit <= 0) {
+						readLimit = 0;
+						if (length == 0) {
+							return null;
+						}
+						setLineLength();
+						return line;
+					}
+				}
+				int start = readPosition;
+				while (readPosition < readLimit && readBuffer[readPosition] != '\n') {
+					readPosition++;
+				}
+				boolean endOfLine = readPosition < readLimit;
+				if (endOfLine) {
+					readPosition++;
+				}
+				append(start, readPosition - start);
+				if (endOfLine) {
+					setLineLength();
+					return line;
+				}
+			}
+		}
+
+		private void append(int start, int count) {
+			if (length + count > line.length) {
+				line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+			}
+			System.arraycopy(readBuffer, start, line, length, count);
+			length += count;
+		}
+
+		private void setLineLength() {
+			lineLength = length;
+			if (lineLength > 0 && line[lineLength - 1] == '\n') {
+				lineLength--;
+			}
+			if (lineLength > 0 && line[lineLength - 1] == '\r') {
+				lineLength--;
+			}
+		}
+
+		/**
+		 * @return Length of the current line including the line terminator.
+		 */
+		private int length() {
+			return length;
+		}
+
+		/**
+		 * @return Length of the current line excluding the line terminator.
+		 */
+		private int lineLength() {
+			return lineLength;
+		}
+	}
+}
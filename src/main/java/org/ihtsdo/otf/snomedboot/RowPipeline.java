@@ -0,0 +1,254 @@
+package org.ihtsdo.otf.snomedboot;
+
+import org.ihtsdo.otf.snomedboot.parser.RF2Row;
+import org.ihtsdo.otf.snomedboot.parser.RF2RowBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Passes the rows of one file from the thread reading and tokenizing the file to a second thread that hands them to the component factory.
+ * Rows are copied into a fixed ring of batches. Filled batches wait in a queue for the handling thread, which empties them and returns them
+ * to the reading thread. When every batch is in use the reading thread waits, so a slow component factory slows reading without holding more
+ * than the ring in memory.
+ *
+ * The time each side spends waiting for the other and the number of filled batches queued show which side is the bottleneck.
+ * A reading thread that waits for empty batches, with the queue mostly full, is held up by the component factory.
+ * A handling thread that waits for filled batches, with the queue mostly empty, is held up by reading.
+ *
+ * If no executor thread has started handling rows by the time the reading thread needs an empty batch, for example because every
+ * thread of a bounded executor is busy, the reading thread handles the rows itself.
+ */
+class RowPipeline {
+
+	static final int BATCH_ROWS = 1024;
+
+	private static final Logger logger = LoggerFactory.getLogger(RowPipeline.class);
+	private static final RF2RowBatch END = new RF2RowBatch(0);
+
+	private final String name;
+	private final int batches;
+	private final Consumer<RF2Row> rowHandler;
+	private final Runnable endHandler;
+	private final BlockingQueue<RF2RowBatch> emptyBatches;
+	private final BlockingQueue<RF2RowBatch> filledBatches;
+	private final ImportTask<Void> handlingTask;
+	private RF2RowBatch batch;
+	private boolean handlingInline;
+	private volatile Throwable handlingFailure;
+	private volatile boolean aborted;
+
+	// Metrics
+	private long rows;
+	private long batchesFilled;
+	private long queuedBatchesTotal;
+	private int queuedBatchesMax;
+	private long readerWaitNanos;
+	private long handlerWaitNanos;
+
+	/**
+	 * @param endHandler optional, run on the handling thread after the last row is handled
+	 */
+	RowPipeline(String name, int batches, Consumer<RF2Row> rowHandler, Runnable endHandler, ExecutorService executorService) {
+		this.name = name;
+		this.batches = batches;
+		this.rowHandler = rowHandler;
+		this.endHandler = endHandler;
+		emptyBatches = new ArrayBlockingQueue<>(batches);
+		// One extra place for the end marker
+		filledBatches = new ArrayBlockingQueue<>(batches + 1);
+		for (int i = 0; i < batches; i++) {
+			emptyBatches.add(new RF2RowBatch(BATCH_ROWS));
+		}
+		handlingTask = ImportTask.submit(executorService, this::handleBatches);
+	}
+
+	/**
+	 * Copies the row into the current batch, waiting for an empty batch if all are in use.
+	 * @throws ReleaseImportException if handling an earlier row failed.
+	 */
+	void add(RF2Row row) throws ReleaseImportException {
+		if (batch == null) {
+			if (handlingFailure != null) {
+				throw new ReleaseImportException("Failed to process rows of " + name, handlingFailure);
+			}
+			batch = emptyBatches.poll();
+			if (batch == null && !handlingInline && handlingTask.preempt()) {
+				handlingInline = true;
+				handleQueuedBatches();
+				batch = emptyBatches.poll();
+			}
+			if (batch == null) {
+				long start = System.nanoTime();
+				try {
+					batch = emptyBatches.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ReleaseImportException("Interrupted while reading " + name, e);
+				}
+				readerWaitNanos += System.nanoTime() - start;
+			}
+		}
+		batch.add(row);
+		rows++;
+		if (batch.isFull()) {
+			publish();
+		}
+	}
+
+	/**
+	 * Hands over any partly filled batch then waits for every row to be handled.
+	 * @throws ReleaseImportException if handling any row failed.
+	 */
+	void finish() throws ReleaseImportException {
+		if (batch != null && batch.size() > 0) {
+			publish();
+		}
+		end();
+		if (handlingFailure != null) {
+			throw new ReleaseImportException("Failed to process rows of " + name, handlingFailure);
+		}
+		logger.info("Pipeline for {}: {} rows in {} batches. Reading waited {} ms for empty batches, handling waited {} ms for filled batches. " +
+						"Filled batches queued: mean {}, max {} of {}.",
+				name, rows, batchesFilled, TimeUnit.NANOSECONDS.toMillis(readerWaitNanos), TimeUnit.NANOSECONDS.toMillis(handlerWaitNanos),
+				String.format("%.1f", getMeanQueuedBatches()), queuedBatchesMax, batches);
+	}
+
+	/**
+	 * Stops handling rows after a reading failure. Rows already queued are dropped.
+	 */
+	void abort() {
+		aborted = true;
+		try {
+			end();
+		} catch (ReleaseImportException e) {
+			logger.debug("Failed to stop pipeline for {}.", name, e);
+		}
+	}
+
+	long getRows() {
+		return rows;
+	}
+
+	long getReaderWaitNanos() {
+		return readerWaitNanos;
+	}
+
+	long getHandlerWaitNanos() {
+		return handlerWaitNanos;
+	}
+
+	/**
+	 * @return The mean number of filled batches waiting to be handled, sampled each time a batch is filled.
+	 */
+	double getMeanQueuedBatches() {
+		return batchesFilled == 0 ? 0 : (double) queuedBatchesTotal / batchesFilled;
+	}
+
+	int getMaxQueuedBatches() {
+		return queuedBatchesMax;
+	}
+
+	long getBatchesFilled() {
+		return batchesFilled;
+	}
+
+	long getQueuedBatchesTotal() {
+		return queuedBatchesTotal;
+	}
+
+	private void publish() throws ReleaseImportException {
+		int queued = filledBatches.size();
+		queuedBatchesTotal += queued;
+		queuedBatchesMax = Math.max(queuedBatchesMax, queued);
+		batchesFilled++;
+		if (handlingInline) {
+			handle(batch);
+		} else {
+			put(batch);
+		}
+		batch = null;
+	}
+
+	private void end() throws ReleaseImportException {
+		if (!handlingInline && handlingTask.preempt()) {
+			handlingInline = true;
+		}
+		if (handlingInline) {
+			handleQueuedBatches();
+			runEndHandler();
+			return;
+		}
+		// There is always room for the end marker. Offer rather than put so that the marker is queued even if this thread was interrupted.
+		filledBatches.offer(END);
+		try {
+			handlingTask.get();
+		} catch (InterruptedException e) {
+			aborted = true;
+			handlingTask.stop();
+			Thread.currentThread().interrupt();
+			throw new ReleaseImportException("Interrupted while processing rows of " + name, e);
+		} catch (ExecutionException e) {
+			throw new ReleaseImportException("Failed to process rows of " + name, e.getCause());
+		}
+	}
+
+	private void put(RF2RowBatch filledBatch) throws ReleaseImportException {
+		try {
+			filledBatches.put(filledBatch);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ReleaseImportException("Interrupted while reading " + name, e);
+		}
+	}
+
+	private Void handleBatches() throws InterruptedException {
+		while (true) {
+			long start = System.nanoTime();
+			RF2RowBatch filledBatch = filledBatches.take();
+			handlerWaitNanos += System.nanoTime() - start;
+			if (filledBatch == END) {
+				runEndHandler();
+				return null;
+			}
+			handle(filledBatch);
+		}
+	}
+
+	/**
+	 * Handles the batches already queued on the reading thread, once no executor thread will.
+	 */
+	private void handleQueuedBatches() {
+		RF2RowBatch filledBatch;
+		while ((filledBatch = filledBatches.poll()) != null) {
+			handle(filledBatch);
+		}
+	}
+
+	private void handle(RF2RowBatch filledBatch) {
+		// After a failure keep returning batches so that reading is never left waiting
+		if (handlingFailure == null && !aborted) {
+			try {
+				for (int i = 0; i < filledBatch.size(); i++) {
+					rowHandler.accept(filledBatch.get(i));
+				}
+			} catch (RuntimeException e) {
+				handlingFailure = e;
+			}
+		}
+		filledBatch.clear();
+		emptyBatches.add(filledBatch);
+	}
+
+	private void runEndHandler() {
+		if (endHandler != null && handlingFailure == null && !aborted) {
+			try {
+				endHandler.run();
+			} catch (RuntimeException e) {
+				handlingFailure = e;
+			}
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package org.ihtsdo.otf.snomedboot;
+
+import java.io.Serial;
+
+/**
+ * Wraps a ReleaseImportException where a checked exception can not be thrown, such as while a stream of rows is consumed.
+ */
+public class UncheckedReleaseImportException extends RuntimeException {
+
+	@Serial
+	private static final long serialVersionUID = 1L;
+
+	public UncheckedReleaseImportException(ReleaseImportException cause) {
+		super(cause.getMessage(), cause);
+	}
+
+	@Override
+	public synchronized ReleaseImportException getCause() {
+		return (ReleaseImportException) super.getCause();
+	}
+}
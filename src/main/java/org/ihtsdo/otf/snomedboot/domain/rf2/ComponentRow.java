@@ -0,0 +1,18 @@
+package org.ihtsdo.otf.snomedboot.domain.rf2;
+
+/**
+ * One row of an RF2 file with its values as read, as published by ReleaseImporter.
+ */
+public interface ComponentRow {
+
+	String effectiveTime();
+
+	String active();
+
+	String moduleId();
+
+	default boolean isActive() {
+		return "1".equals(active());
+	}
+
+}
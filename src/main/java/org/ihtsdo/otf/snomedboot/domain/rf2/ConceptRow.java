@@ -0,0 +1,4 @@
+package org.ihtsdo.otf.snomedboot.domain.rf2;
+
+public record ConceptRow(String id, String effectiveTime, String active, String moduleId, String definitionStatusId) implements ComponentRow {
+}
@@ -0,0 +1,5 @@
+package org.ihtsdo.otf.snomedboot.domain.rf2;
+
+public record DescriptionRow(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode,
+		String typeId, String term, String caseSignificanceId) implements ComponentRow {
+}
@@ -0,0 +1,5 @@
+package org.ihtsdo.otf.snomedboot.domain.rf2;
+
+public record IdentifierRow(String alternateIdentifier, String effectiveTime, String active, String moduleId, String identifierSchemeId,
+		String referencedComponentId) implements ComponentRow {
+}
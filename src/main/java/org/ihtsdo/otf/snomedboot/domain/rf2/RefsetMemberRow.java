@@ -0,0 +1,9 @@
+package org.ihtsdo.otf.snomedboot.domain.rf2;
+
+/**
+ * A reference set member. The field names are those of the file header, shared by every member of the file,
+ * and the other values are those of the columns after referencedComponentId.
+ */
+public record RefsetMemberRow(String filename, String[] fieldNames, String id, String effectiveTime, String active, String moduleId,
+		String refsetId, String referencedComponentId, String[] otherValues) implements ComponentRow {
+}
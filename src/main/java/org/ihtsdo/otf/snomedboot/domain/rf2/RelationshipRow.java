@@ -0,0 +1,5 @@
+package org.ihtsdo.otf.snomedboot.domain.rf2;
+
+public record RelationshipRow(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId,
+		String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) implements ComponentRow {
+}
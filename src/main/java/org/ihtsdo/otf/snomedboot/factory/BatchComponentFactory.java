@@ -0,0 +1,26 @@
+package org.ihtsdo.otf.snomedboot.factory;
+
+/**
+ * Optional extension of PrimitiveComponentFactory that receives concepts, descriptions and relationships in batches of a few thousand rows,
+ * so that the checks of wrapping filters and any locking of the factory are done once per batch rather than once per row.
+ * Concrete relationships are passed to the primitive methods, refset members and identifiers to the String methods, one row at a time.
+ * Batches from different files, or from different ranges of a split file, may be passed concurrently.
+ * A batch is only valid during the call, it is cleared and refilled afterwards. Filters may remove rows from a batch before passing it on.
+ */
+public interface BatchComponentFactory extends PrimitiveComponentFactory {
+
+	/**
+	 * @return true if the importer should call the batch methods of this factory.
+	 * Filters that wrap another factory return false when the wrapped factory does not accept batches.
+	 */
+	default boolean isUsingBatchCallbacks() {
+		return true;
+	}
+
+	void newConceptStates(ConceptBatch batch);
+
+	void newDescriptionStates(DescriptionBatch batch);
+
+	void newRelationshipStates(RelationshipBatch batch);
+
+}
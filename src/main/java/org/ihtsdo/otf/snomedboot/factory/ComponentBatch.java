@@ -0,0 +1,99 @@
+package org.ihtsdo.otf.snomedboot.factory;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Rows of one component type held in columnar arrays, passed to a BatchComponentFactory in one call.
+ * Values are read by row index, which must be less than size. Batches are cleared and refilled by the importer after each call so must not be kept.
+ */
+public abstract class ComponentBatch {
+
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private final long[] ids;
+	private final int[] effectiveTimes;
+	private final boolean[] active;
+	private final long[] moduleIds;
+	private int size;
+
+	protected ComponentBatch(int capacity) {
+		ids = new long[capacity];
+		effectiveTimes = new int[capacity];
+		active = new boolean[capacity];
+		moduleIds = new long[capacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isFull() {
+		return size == ids.length;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Removes the rows that do not match, keeping the order of the others.
+	 */
+	public void retain(IntPredicate rowPredicate) {
+		int kept = 0;
+		for (int row = 0; row < size; row++) {
+			if (rowPredicate.test(row)) {
+				if (kept != row) {
+					move(row, kept);
+				}
+				kept++;
+			}
+		}
+		size = kept;
+	}
+
+	public long getId(int row) {
+		return ids[row];
+	}
+
+	/**
+	 * @return The effectiveTime, or PrimitiveComponentFactory.NO_EFFECTIVE_TIME if blank.
+	 */
+	public int getEffectiveTime(int row) {
+		return effectiveTimes[row];
+	}
+
+	public boolean isActive(int row) {
+		return active[row];
+	}
+
+	public long getModuleId(int row) {
+		return moduleIds[row];
+	}
+
+	/**
+	 * Adds the common columns of a row.
+	 * @return The index of the new row, for subclasses to set their own columns.
+	 * @throws IllegalStateException if the batch is full.
+	 */
+	protected int addRow(long id, int effectiveTime, boolean active, long moduleId) {
+		if (isFull()) {
+			throw new IllegalStateException("Batch is full.");
+		}
+		int row = size++;
+		ids[row] = id;
+		effectiveTimes[row] = effectiveTime;
+		this.active[row] = active;
+		moduleIds[row] = moduleId;
+		return row;
+	}
+
+	/**
+	 * Copies a row to a lower index. Subclasses copy their own columns then call this method.
+	 */
+	protected void move(int from, int to) {
+		ids[to] = ids[from];
+		effectiveTimes[to] = effectiveTimes[from];
+		active[to] = active[from];
+		moduleIds[to] = moduleIds[from];
+	}
+}
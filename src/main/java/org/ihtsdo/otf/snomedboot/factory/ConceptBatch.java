@@ -0,0 +1,30 @@
+package org.ihtsdo.otf.snomedboot.factory;
+
+public final class ConceptBatch extends ComponentBatch {
+
+	private final long[] definitionStatusIds;
+
+	public ConceptBatch() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public ConceptBatch(int capacity) {
+		super(capacity);
+		definitionStatusIds = new long[capacity];
+	}
+
+	public void add(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
+		int row = addRow(conceptId, effectiveTime, active, moduleId);
+		definitionStatusIds[row] = definitionStatusId;
+	}
+
+	public long getDefinitionStatusId(int row) {
+		return definitionStatusIds[row];
+	}
+
+	@Override
+	protected void move(int from, int to) {
+		definitionStatusIds[to] = definitionStatusIds[from];
+		super.move(from, to);
+	}
+}
@@ -0,0 +1,72 @@
+package org.ihtsdo.otf.snomedboot.factory;
+
+import java.util.Arrays;
+
+public final class DescriptionBatch extends ComponentBatch {
+
+	private final long[] conceptIds;
+	private final String[] languageCodes;
+	private final long[] typeIds;
+	private final String[] terms;
+	private final long[] caseSignificanceIds;
+
+	public DescriptionBatch() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public DescriptionBatch(int capacity) {
+		super(capacity);
+		conceptIds = new long[capacity];
+		languageCodes = new String[capacity];
+		typeIds = new long[capacity];
+		terms = new String[capacity];
+		caseSignificanceIds = new long[capacity];
+	}
+
+	public void add(long id, int effectiveTime, boolean active, long moduleId, long conceptId, String languageCode, long typeId, String term, long caseSignificanceId) {
+		int row = addRow(id, effectiveTime, active, moduleId);
+		conceptIds[row] = conceptId;
+		languageCodes[row] = languageCode;
+		typeIds[row] = typeId;
+		terms[row] = term;
+		caseSignificanceIds[row] = caseSignificanceId;
+	}
+
+	public long getConceptId(int row) {
+		return conceptIds[row];
+	}
+
+	public String getLanguageCode(int row) {
+		return languageCodes[row];
+	}
+
+	public long getTypeId(int row) {
+		return typeIds[row];
+	}
+
+	public String getTerm(int row) {
+		return terms[row];
+	}
+
+	public long getCaseSignificanceId(int row) {
+		return caseSignificanceIds[row];
+	}
+
+	@Override
+	public void clear() {
+		// Release the Strings
+		Arrays.fill(languageCodes, 0, size(), null);
+		Arrays.fill(terms, 0, size(), null);
+		super.clear();
+	}
+
+	@Override
+	protected void move(int from, int to) {
+		conceptIds[to] = conceptIds[from];
+		languageCodes[to] = languageCodes[from];
+		typeIds[to] = typeIds[from];
+		terms[to] = terms[from];
+		caseSignificanceIds[to] = caseSignificanceIds[from];
+		super.move(from, to);
+	}
+}
@@ -8,6 +8,14 @@ public class FactoryUtils {
 		return ACTIVE.equals(active);
 	}
 
+	public static String formatActive(boolean active) {
+		return active ? ACTIVE : "0";
+	}
+
+	public static String formatEffectiveTime(int effectiveTime) {
+		return effectiveTime == PrimitiveComponentFactory.NO_EFFECTIVE_TIME ? "" : Integer.toString(effectiveTime);
+	}
+
 	public static boolean isConceptId(String componentId) {
 		if (componentId != null) {
 			final int length = componentId.length();
@@ -19,6 +19,12 @@ public interface HighLevelComponentFactory extends ComponentFactory {
 	void addStatedConceptAttribute(String sourceId, String typeId, String valueId);
 
 	void addConceptReferencedInRefsetId(String refsetId, String conceptId);
+
+	/**
+	 * Called for inactive refset members that reference a concept.
+	 */
+	default void removeConceptReferencedInRefsetId(String refsetId, String conceptId) {
+	}
 	
 	void addInferredConceptChild(String sourceId, String destinationId);
 	
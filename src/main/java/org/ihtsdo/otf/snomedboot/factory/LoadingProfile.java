@@ -56,6 +56,34 @@ public class LoadingProfile {
 	private Set<String> moduleIds = new HashSet<>();
 	private Map<String, Integer> moduleEffectiveTimeFilters = new HashMap<>();
 
+	/**
+	 * @return The value of every field above in a stable order, so that profiles loading different content have different keys.
+	 * New fields must be added here too.
+	 */
+	public String getContentKey() {
+		return String.join(" ",
+				"effectiveComponentFilter=" + effectiveComponentFilter,
+				"inferredAttributeMapOnConcept=" + inferredAttributeMapOnConcept,
+				"statedAttributeMapOnConcept=" + statedAttributeMapOnConcept,
+				"concepts=" + concepts,
+				"descriptions=" + descriptions,
+				"textDefinitions=" + textDefinitions,
+				"relationships=" + relationships,
+				"identifiers=" + identifiers,
+				"statedRelationships=" + statedRelationships,
+				"inactiveConcepts=" + inactiveConcepts,
+				"inactiveDescriptions=" + inactiveDescriptions,
+				"inactiveRelationships=" + inactiveRelationships,
+				"inactiveIdentifiers=" + inactiveIdentifiers,
+				"inactiveRefsetMembers=" + inactiveRefsetMembers,
+				"allRefsets=" + allRefsets,
+				"justRefsets=" + justRefsets,
+				"refsetIds=" + new TreeSet<>(refsetIds),
+				"includedReferenceSetFilenamePatterns=" + new TreeSet<>(includedReferenceSetFilenamePatterns),
+				"moduleIds=" + new TreeSet<>(moduleIds),
+				"moduleEffectiveTimeFilters=" + new TreeMap<>(moduleEffectiveTimeFilters));
+	}
+
 	public LoadingProfile withEffectiveComponentFilter() {
 		return this.cloneObject().setEffectiveComponentFilter(true);
 	}
@@ -444,6 +472,7 @@ public class LoadingProfile {
 				.setInactiveConcepts(this.inactiveConcepts)
 				.setInactiveDescriptions(this.inactiveDescriptions)
 				.setInactiveRelationships(this.inactiveRelationships)
+				.setInactiveIdentifiers(this.inactiveIdentifiers)
 				.setInactiveRefsetMembers(this.inactiveRefsetMembers)
 				.setAllRefsets(this.allRefsets)
 				.setJustRefsets(this.justRefsets)
@@ -0,0 +1,31 @@
+package org.ihtsdo.otf.snomedboot.factory;
+
+/**
+ * Optional extension of ComponentFactory that receives core components with identifiers, effectiveTimes and flags already parsed,
+ * so no intermediate Strings are created for those columns. Refset members and identifiers are still passed as Strings.
+ * A blank effectiveTime, as found in unpublished content, is passed as NO_EFFECTIVE_TIME.
+ * When a factory implements this interface the importer calls these methods instead of the String methods for core components.
+ */
+public interface PrimitiveComponentFactory extends ComponentFactory {
+
+	int NO_EFFECTIVE_TIME = 0;
+
+	/**
+	 * @return true if the importer should call the primitive methods of this factory.
+	 * Filters that wrap another factory return false when the wrapped factory only accepts Strings.
+	 */
+	default boolean isUsingPrimitiveCallbacks() {
+		return true;
+	}
+
+	void newConceptState(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId);
+
+	void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, String languageCode, long typeId, String term, long caseSignificanceId);
+
+	void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId,
+							  long destinationId, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId);
+
+	void newConcreteRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId,
+							  String value, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId);
+
+}
@@ -0,0 +1,72 @@
+package org.ihtsdo.otf.snomedboot.factory;
+
+public final class RelationshipBatch extends ComponentBatch {
+
+	private final long[] sourceIds;
+	private final long[] destinationIds;
+	private final int[] relationshipGroups;
+	private final long[] typeIds;
+	private final long[] characteristicTypeIds;
+	private final long[] modifierIds;
+
+	public RelationshipBatch() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public RelationshipBatch(int capacity) {
+		super(capacity);
+		sourceIds = new long[capacity];
+		destinationIds = new long[capacity];
+		relationshipGroups = new int[capacity];
+		typeIds = new long[capacity];
+		characteristicTypeIds = new long[capacity];
+		modifierIds = new long[capacity];
+	}
+
+	public void add(long id, int effectiveTime, boolean active, long moduleId, long sourceId, long destinationId, int relationshipGroup,
+			long typeId, long characteristicTypeId, long modifierId) {
+
+		int row = addRow(id, effectiveTime, active, moduleId);
+		sourceIds[row] = sourceId;
+		destinationIds[row] = destinationId;
+		relationshipGroups[row] = relationshipGroup;
+		typeIds[row] = typeId;
+		characteristicTypeIds[row] = characteristicTypeId;
+		modifierIds[row] = modifierId;
+	}
+
+	public long getSourceId(int row) {
+		return sourceIds[row];
+	}
+
+	public long getDestinationId(int row) {
+		return destinationIds[row];
+	}
+
+	public int getRelationshipGroup(int row) {
+		return relationshipGroups[row];
+	}
+
+	public long getTypeId(int row) {
+		return typeIds[row];
+	}
+
+	public long getCharacteristicTypeId(int row) {
+		return characteristicTypeIds[row];
+	}
+
+	public long getModifierId(int row) {
+		return modifierIds[row];
+	}
+
+	@Override
+	protected void move(int from, int to) {
+		sourceIds[to] = sourceIds[from];
+		destinationIds[to] = destinationIds[from];
+		relationshipGroups[to] = relationshipGroups[from];
+		typeIds[to] = typeIds[from];
+		characteristicTypeIds[to] = characteristicTypeIds[from];
+		modifierIds[to] = modifierIds[from];
+		super.move(from, to);
+	}
+}
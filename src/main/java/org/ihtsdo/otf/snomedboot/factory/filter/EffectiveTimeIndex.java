@@ -0,0 +1,221 @@
+package org.ihtsdo.otf.snomedboot.factory.filter;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary file holding the latest effectiveTimes gathered by a LatestEffectiveDateComponentFactory.
+ * Core component and refset member dates are held as sorted arrays which are memory mapped and binary searched,
+ * identifiers and any refset members without a UUID id are few so are read onto the heap.
+ * The file starts with a key that identifies the release files and loading profile it was built from.
+ */
+final class EffectiveTimeIndex {
+
+	private static final int MAGIC = 0x53424549;
+	private static final int FORMAT_VERSION = 1;
+
+	private final MappedByteBuffer buffer;
+	private final int coreCount;
+	private final int coreIdsOffset;
+	private final int coreDatesOffset;
+	private final int memberCount;
+	private final int memberMostSignificantBitsOffset;
+	private final int memberLeastSignificantBitsOffset;
+	private final int memberDatesOffset;
+	private final Map<String, Integer> otherRefsetMemberDates = new HashMap<>();
+	private final Map<Long, Map<String, Integer>> identifierDates = new HashMap<>();
+
+	private EffectiveTimeIndex(MappedByteBuffer buffer, int start) throws IOException {
+		this.buffer = buffer;
+		int position = start;
+		coreCount = buffer.getInt(position);
+		coreIdsOffset = position + 4;
+		coreDatesOffset = coreIdsOffset + coreCount * 8;
+		position = coreDatesOffset + coreCount * 4;
+		memberCount = buffer.getInt(position);
+		memberMostSignificantBitsOffset = position + 4;
+		memberLeastSignificantBitsOffset = memberMostSignificantBitsOffset + memberCount * 8;
+		memberDatesOffset = memberLeastSignificantBitsOffset + memberCount * 8;
+		position = memberDatesOffset + memberCount * 4;
+
+		DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer, position));
+		int otherMemberCount = in.readInt();
+		for (int i = 0; i < otherMemberCount; i++) {
+			otherRefsetMemberDates.put(in.readUTF(), in.readInt());
+		}
+		int schemeCount = in.readInt();
+		for (int i = 0; i < schemeCount; i++) {
+			Map<String, Integer> dates = identifierDates.computeIfAbsent(in.readLong(), schemeId -> new HashMap<>());
+			int identifierCount = in.readInt();
+			for (int j = 0; j < identifierCount; j++) {
+				dates.put(in.readUTF(), in.readInt());
+			}
+		}
+	}
+
+	/**
+	 * @return The index or null if the file does not exist or was built from different content.
+	 */
+	static EffectiveTimeIndex open(Path file, byte[] key) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				return null;
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.limit() < 12 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION || buffer.getInt(8) != key.length
+					|| buffer.limit() < 12 + key.length) {
+				return null;
+			}
+			byte[] fileKey = new byte[key.length];
+			buffer.get(12, fileKey);
+			if (!Arrays.equals(key, fileKey)) {
+				return null;
+			}
+			return new EffectiveTimeIndex(buffer, 12 + key.length);
+		}
+	}
+
+	/**
+	 * Writes to a temporary file which is then moved into place so that a partly written index is never read.
+	 * @param coreIds sorted core component ids
+	 * @param memberMostSignificantBits refset member UUIDs, sorted by most then least significant bits
+	 */
+	static void write(Path file, byte[] key, long[] coreIds, int[] coreDates,
+			long[] memberMostSignificantBits, long[] memberLeastSignificantBits, int[] memberDates,
+			Map<String, Integer> otherRefsetMemberDates, Map<Long, Map<String, Integer>> identifierDates) throws IOException {
+
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		Path tempFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 1024 * 1024))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeInt(key.length);
+				out.write(key);
+				out.writeInt(coreIds.length);
+				for (long id : coreIds) {
+					out.writeLong(id);
+				}
+				for (int date : coreDates) {
+					out.writeInt(date);
+				}
+				out.writeInt(memberMostSignificantBits.length);
+				for (long bits : memberMostSignificantBits) {
+					out.writeLong(bits);
+				}
+				for (long bits : memberLeastSignificantBits) {
+					out.writeLong(bits);
+				}
+				for (int date : memberDates) {
+					out.writeInt(date);
+				}
+				out.writeInt(otherRefsetMemberDates.size());
+				for (Map.Entry<String, Integer> entry : otherRefsetMemberDates.entrySet()) {
+					out.writeUTF(entry.getKey());
+					out.writeInt(entry.getValue());
+				}
+				out.writeInt(identifierDates.size());
+				for (Map.Entry<Long, Map<String, Integer>> scheme : identifierDates.entrySet()) {
+					out.writeLong(scheme.getKey());
+					out.writeInt(scheme.getValue().size());
+					for (Map.Entry<String, Integer> entry : scheme.getValue().entrySet()) {
+						out.writeUTF(entry.getKey());
+						out.writeInt(entry.getValue());
+					}
+				}
+			}
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	/**
+	 * @return The latest effectiveTime of the component or Integer.MIN_VALUE if it is not in the index.
+	 */
+	int getCoreComponentEffectiveTime(long id) {
+		int low = 0;
+		int high = coreCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long midId = buffer.getLong(coreIdsOffset + mid * 8);
+			if (midId < id) {
+				low = mid + 1;
+			} else if (midId > id) {
+				high = mid - 1;
+			} else {
+				return buffer.getInt(coreDatesOffset + mid * 4);
+			}
+		}
+		return Integer.MIN_VALUE;
+	}
+
+	/**
+	 * @return The latest effectiveTime of a refset member with more than one row or zero if it is not in the index.
+	 */
+	int getRefsetMemberEffectiveTime(long mostSignificantBits, long leastSignificantBits) {
+		int low = 0;
+		int high = memberCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int comparison = compareUuid(buffer.getLong(memberMostSignificantBitsOffset + mid * 8), buffer.getLong(memberLeastSignificantBitsOffset + mid * 8),
+					mostSignificantBits, leastSignificantBits);
+			if (comparison < 0) {
+				low = mid + 1;
+			} else if (comparison > 0) {
+				high = mid - 1;
+			} else {
+				return buffer.getInt(memberDatesOffset + mid * 4);
+			}
+		}
+		return 0;
+	}
+
+	Map<String, Integer> getOtherRefsetMemberDates() {
+		return otherRefsetMemberDates;
+	}
+
+	Map<Long, Map<String, Integer>> getIdentifierDates() {
+		return identifierDates;
+	}
+
+	static int compareUuid(long mostSignificantBitsA, long leastSignificantBitsA, long mostSignificantBitsB, long leastSignificantBitsB) {
+		int comparison = Long.compare(mostSignificantBitsA, mostSignificantBitsB);
+		return comparison != 0 ? comparison : Long.compare(leastSignificantBitsA, leastSignificantBitsB);
+	}
+
+	private static final class ByteBufferInputStream extends InputStream {
+
+		private final MappedByteBuffer buffer;
+		private int position;
+
+		private ByteBufferInputStream(MappedByteBuffer buffer, int position) {
+			this.buffer = buffer;
+			this.position = position;
+		}
+
+		@Override
+		public int read() {
+			return position < buffer.limit() ? buffer.get(position++) & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (position >= buffer.limit()) {
+				return -1;
+			}
+			int count = Math.min(length, buffer.limit() - position);
+			buffer.get(position, bytes, offset, count);
+			position += count;
+			return count;
+		}
+	}
+}
@@ -3,105 +3,278 @@ package org.ihtsdo.otf.snomedboot.factory.filter;
 import com.google.common.base.Strings;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import org.ihtsdo.otf.snomedboot.factory.ImpotentComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.PrimitiveComponentFactory;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.lang.Long.parseLong;
 
-public class LatestEffectiveDateComponentFactory extends ImpotentComponentFactory {
+/**
+ * Gathers the latest effectiveTime of every component so that only the version in effect is loaded.
+ * Writes are striped so that the release can be read on many threads.
+ * The is*VersionInEffect methods do not lock, they must only be called once loading is completed.
+ * The gathered dates can be written to an index file which later runs can read, memory mapped, instead of reading the release again.
+ */
+public class LatestEffectiveDateComponentFactory extends ImpotentComponentFactory implements PrimitiveComponentFactory {
 
 	public static final int FAR_FUTURE = 30000101;
-	private final Map<Long, Integer> latestCoreComponentEffectiveDates = new Long2IntOpenHashMap();
-	private final Map<String, Integer> latestRefsetMemberEffectiveDates = new HashMap<>();
-	private final Set<String> refsetMembersWithMoreThanOneRow = new HashSet<>();
-	private final Map<String, Integer> latestIdentifierEffectiveDates = new HashMap<>();
+	private static final int STRIPES = 64;
+	private static final int STRIPE_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(STRIPES);
+
+	private final Long2IntOpenHashMap[] latestCoreComponentEffectiveDates = new Long2IntOpenHashMap[STRIPES];
+	// Refset member ids are UUIDs, held as two longs rather than as Strings
+	private final PackedUuidIntMap[] latestRefsetMemberEffectiveDates = new PackedUuidIntMap[STRIPES];
+	// Fallback for any refset member id that is not a UUID
+	private final Map<String, Integer> latestOtherRefsetMemberEffectiveDates = new ConcurrentHashMap<>();
+	private final Set<String> otherRefsetMembersWithMoreThanOneRow = ConcurrentHashMap.newKeySet();
+	// Alternate identifiers by identifierSchemeId
+	private final Map<Long, Map<String, Integer>> latestIdentifierEffectiveDates;
+	// Dates read from an index file, when set no dates are gathered
+	private final EffectiveTimeIndex persistedIndex;
+
+	public LatestEffectiveDateComponentFactory() {
+		for (int i = 0; i < STRIPES; i++) {
+			latestCoreComponentEffectiveDates[i] = new Long2IntOpenHashMap();
+			latestCoreComponentEffectiveDates[i].defaultReturnValue(Integer.MIN_VALUE);
+			latestRefsetMemberEffectiveDates[i] = new PackedUuidIntMap();
+		}
+		latestIdentifierEffectiveDates = new ConcurrentHashMap<>();
+		persistedIndex = null;
+	}
+
+	private LatestEffectiveDateComponentFactory(EffectiveTimeIndex persistedIndex) {
+		this.persistedIndex = persistedIndex;
+		latestOtherRefsetMemberEffectiveDates.putAll(persistedIndex.getOtherRefsetMemberDates());
+		latestIdentifierEffectiveDates = persistedIndex.getIdentifierDates();
+	}
+
+	/**
+	 * Reads the dates from an index file written by {@link #writeIndex(Path, byte[])}.
+	 * @param key identifies the content the index must have been built from.
+	 * @return A primed factory or null if the file does not exist or was built from different content.
+	 */
+	public static LatestEffectiveDateComponentFactory readIndex(Path indexFile, byte[] key) throws IOException {
+		EffectiveTimeIndex index = EffectiveTimeIndex.open(indexFile, key);
+		return index != null ? new LatestEffectiveDateComponentFactory(index) : null;
+	}
+
+	/**
+	 * Writes the gathered dates to an index file. Must be called after loading is completed.
+	 * @param key identifies the content that was loaded, it is checked when the index is read.
+	 */
+	public void writeIndex(Path indexFile, byte[] key) throws IOException {
+		if (persistedIndex != null) {
+			throw new IllegalStateException("Dates were read from an index file, there is nothing to write.");
+		}
+		int coreCount = 0;
+		for (Long2IntOpenHashMap stripe : latestCoreComponentEffectiveDates) {
+			coreCount += stripe.size();
+		}
+		long[] coreIds = new long[coreCount];
+		int i = 0;
+		for (Long2IntOpenHashMap stripe : latestCoreComponentEffectiveDates) {
+			for (long id : stripe.keySet()) {
+				coreIds[i++] = id;
+			}
+		}
+		Arrays.sort(coreIds);
+		int[] coreDates = new int[coreCount];
+		for (i = 0; i < coreCount; i++) {
+			coreDates[i] = latestCoreComponentEffectiveDates[stripe(Long.hashCode(coreIds[i]))].get(coreIds[i]);
+		}
+
+		List<long[]> members = new ArrayList<>();
+		for (PackedUuidIntMap stripe : latestRefsetMemberEffectiveDates) {
+			stripe.forEach((mostSignificantBits, leastSignificantBits, date) -> members.add(new long[] {mostSignificantBits, leastSignificantBits, date}));
+		}
+		members.sort((a, b) -> EffectiveTimeIndex.compareUuid(a[0], a[1], b[0], b[1]));
+		long[] memberMostSignificantBits = new long[members.size()];
+		long[] memberLeastSignificantBits = new long[members.size()];
+		int[] memberDates = new int[members.size()];
+		for (i = 0; i < members.size(); i++) {
+			memberMostSignificantBits[i] = members.get(i)[0];
+			memberLeastSignificantBits[i] = members.get(i)[1];
+			memberDates[i] = (int) members.get(i)[2];
+		}
+
+		EffectiveTimeIndex.write(indexFile, key, coreIds, coreDates, memberMostSignificantBits, memberLeastSignificantBits, memberDates,
+				latestOtherRefsetMemberEffectiveDates, latestIdentifierEffectiveDates);
+		LoggerFactory.getLogger(getClass()).info("Effective time index written to {}", indexFile);
+	}
 
 	@Override
 	public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
+		storeLatestDate(parseLong(conceptId), parseInt(effectiveTime));
+	}
+
+	@Override
+	public void newConceptState(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
 		storeLatestDate(conceptId, effectiveTime);
 	}
 
 	@Override
-	public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode, String typeId, String term, String caseSignificanceId) {
+	public void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, String languageCode, long typeId, String term, long caseSignificanceId) {
 		storeLatestDate(id, effectiveTime);
 	}
 
 	@Override
-	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+	public void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, long destinationId, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
 		storeLatestDate(id, effectiveTime);
 	}
 
 	@Override
-	public void newConcreteRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String value, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+	public void newConcreteRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, String value, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
 		storeLatestDate(id, effectiveTime);
 	}
 
+	@Override
+	public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode, String typeId, String term, String caseSignificanceId) {
+		storeLatestDate(parseLong(id), parseInt(effectiveTime));
+	}
+
+	@Override
+	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+		storeLatestDate(parseLong(id), parseInt(effectiveTime));
+	}
+
+	@Override
+	public void newConcreteRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String value, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+		storeLatestDate(parseLong(id), parseInt(effectiveTime));
+	}
+
 	@Override
 	public void newReferenceSetMemberState(String filename, String[] fieldNames, String id, String effectiveTime, String active, String moduleId, String refsetId, String referencedComponentId, String... otherValues) {
-		storeLatestDateMember(id, effectiveTime);
+		storeLatestDateMember(id, parseInt(effectiveTime));
 	}
 
 	@Override
 	public void newIdentifierState(String alternateIdentifier, String effectiveTime, String active, String moduleId, String identifierSchemeId, String referencedComponentId) {
-		storeLatestDateIdentifier(alternateIdentifier + "-" + identifierSchemeId, effectiveTime);
+		latestIdentifierEffectiveDates.computeIfAbsent(parseLong(identifierSchemeId), schemeId -> new ConcurrentHashMap<>())
+				.merge(alternateIdentifier, parseInt(effectiveTime), Math::max);
 	}
 
 	@Override
 	public void loadingComponentsCompleted() {
-		// Remove redundant entries to save memory (millions of strings)
-		List<String> refsetMembersWithOnlyOneRow = latestRefsetMemberEffectiveDates.keySet().stream()
-				.filter(id -> !refsetMembersWithMoreThanOneRow.contains(id))
-				.toList();
-		for (String id : refsetMembersWithOnlyOneRow) {
-			latestRefsetMemberEffectiveDates.remove(id);
+		if (persistedIndex != null) {
+			return;
+		}
+		// Only members with more than one row need filtering, drop the rest to save memory
+		int refsetMembersRequiringFiltering = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			latestRefsetMemberEffectiveDates[i] = latestRefsetMemberEffectiveDates[i].retainStoredMoreThanOnce();
+			refsetMembersRequiringFiltering += latestRefsetMemberEffectiveDates[i].size();
 		}
-		LoggerFactory.getLogger(getClass()).info("{} refset members require effective time filtering", latestRefsetMemberEffectiveDates.size());
+		latestOtherRefsetMemberEffectiveDates.keySet().retainAll(otherRefsetMembersWithMoreThanOneRow);
+		refsetMembersRequiringFiltering += latestOtherRefsetMemberEffectiveDates.size();
+		LoggerFactory.getLogger(getClass()).info("{} refset members require effective time filtering", refsetMembersRequiringFiltering);
 	}
 
-	private synchronized void storeLatestDate(String componentId, String effectiveTime) {
-		long id = parseLong(componentId);
-		int newDate = parseInt(effectiveTime);
-		if (newDateGreater(newDate, latestCoreComponentEffectiveDates.get(id))) {
-			latestCoreComponentEffectiveDates.put(id, newDate);
+	private void storeLatestDate(long id, int effectiveTime) {
+		int newDate = effectiveTime == NO_EFFECTIVE_TIME ? FAR_FUTURE : effectiveTime;
+		Long2IntOpenHashMap stripe = latestCoreComponentEffectiveDates[stripe(Long.hashCode(id))];
+		synchronized (stripe) {
+			if (newDate > stripe.get(id)) {
+				stripe.put(id, newDate);
+			}
 		}
 	}
 
-	private synchronized void storeLatestDateMember(String id, String effectiveTime) {
-		int newDate = parseInt(effectiveTime);
-		if (latestRefsetMemberEffectiveDates.get(id) != null) {
-			refsetMembersWithMoreThanOneRow.add(id);
+	private void storeLatestDateMember(String id, int newDate) {
+		if (isUuid(id)) {
+			long msb = parseUuidBits(id, 0, 18);
+			long lsb = parseUuidBits(id, 19, 36);
+			PackedUuidIntMap stripe = latestRefsetMemberEffectiveDates[stripe(PackedUuidIntMap.hash(msb, lsb))];
+			synchronized (stripe) {
+				stripe.putIfGreater(msb, lsb, newDate);
+			}
+		} else {
+			latestOtherRefsetMemberEffectiveDates.merge(id, newDate, (existingDate, date) -> {
+				otherRefsetMembersWithMoreThanOneRow.add(id);
+				return Math.max(existingDate, date);
+			});
 		}
-		if (newDateGreater(newDate, latestRefsetMemberEffectiveDates.get(id))) {
-			latestRefsetMemberEffectiveDates.put(id, newDate);
+	}
+
+	private int parseInt(String effectiveTime) {
+		return Strings.isNullOrEmpty(effectiveTime) ? FAR_FUTURE : Integer.parseInt(effectiveTime);
+	}
+
+	private static int stripe(int hash) {
+		return (hash * 0x9E3779B9) >>> STRIPE_SHIFT;
+	}
+
+	/**
+	 * Only lower case UUIDs, as used in RF2, are packed. Other ids are held as Strings so that ids are still matched exactly,
+	 * an upper case id does not match the same UUID in lower case.
+	 */
+	private static boolean isUuid(String id) {
+		if (id.length() != 36) {
+			return false;
+		}
+		for (int i = 0; i < 36; i++) {
+			char c = id.charAt(i);
+			if (i == 8 || i == 13 || i == 18 || i == 23) {
+				if (c != '-') {
+					return false;
+				}
+			} else if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+				return false;
+			}
 		}
+		return true;
 	}
 
-	private synchronized void storeLatestDateIdentifier(String id, String effectiveTime) {
-		int newDate = parseInt(effectiveTime);
-		if (newDateGreater(newDate, latestIdentifierEffectiveDates.get(id))) {
-			latestIdentifierEffectiveDates.put(id, newDate);
+	private static long parseUuidBits(String uuid, int start, int end) {
+		long bits = 0;
+		for (int i = start; i < end; i++) {
+			char c = uuid.charAt(i);
+			if (c != '-') {
+				bits = (bits << 4) | Character.digit(c, 16);
+			}
 		}
+		return bits;
 	}
 
-	private int parseInt(String effectiveTime) {
-		return Strings.isNullOrEmpty(effectiveTime) ? FAR_FUTURE : Integer.parseInt(effectiveTime);
+	public boolean isCoreComponentVersionInEffect(String componentId, String effectiveTime) {
+		return isCoreComponentVersionInEffect(parseLong(componentId), parseInt(effectiveTime));
 	}
 
-	private boolean newDateGreater(int newDate, Integer existingDate) {
-		return existingDate == null || newDate > existingDate;
+	public boolean isCoreComponentVersionInEffect(long componentId, int effectiveTime) {
+		int date = effectiveTime == NO_EFFECTIVE_TIME ? FAR_FUTURE : effectiveTime;
+		if (persistedIndex != null) {
+			return persistedIndex.getCoreComponentEffectiveTime(componentId) == date;
+		}
+		return latestCoreComponentEffectiveDates[stripe(Long.hashCode(componentId))].get(componentId) == date;
 	}
 
-	public synchronized boolean isCoreComponentVersionInEffect(String componentId, String effectiveTime) {
-		return latestCoreComponentEffectiveDates.getOrDefault(parseLong(componentId), Integer.MIN_VALUE).equals(parseInt(effectiveTime));
+	public boolean isIdentifierVersionInEffect(String alternateIdentifier, String identifierSchemeId, String effectiveTime) {
+		Map<String, Integer> schemeDates = latestIdentifierEffectiveDates.get(parseLong(identifierSchemeId));
+		return schemeDates != null && schemeDates.getOrDefault(alternateIdentifier, Integer.MIN_VALUE) == parseInt(effectiveTime);
 	}
 
-	public synchronized boolean isIdentifierVersionInEffect(String componentId, String effectiveTime) {
-		return latestIdentifierEffectiveDates.getOrDefault(componentId, Integer.MIN_VALUE).equals(parseInt(effectiveTime));
+	/**
+	 * @deprecated Use {@link #isIdentifierVersionInEffect(String, String, String)}
+	 */
+	@Deprecated
+	public boolean isIdentifierVersionInEffect(String componentId, String effectiveTime) {
+		int separator = componentId.lastIndexOf('-');
+		return isIdentifierVersionInEffect(componentId.substring(0, separator), componentId.substring(separator + 1), effectiveTime);
 	}
 
-	public synchronized boolean isReferenceSetMemberVersionInEffect(String memberId, String effectiveTime) {
-		return !latestRefsetMemberEffectiveDates.containsKey(memberId) ||
-				latestRefsetMemberEffectiveDates.getOrDefault(memberId, Integer.MIN_VALUE).equals(parseInt(effectiveTime));
+	public boolean isReferenceSetMemberVersionInEffect(String memberId, String effectiveTime) {
+		int latestDate;
+		if (isUuid(memberId)) {
+			long msb = parseUuidBits(memberId, 0, 18);
+			long lsb = parseUuidBits(memberId, 19, 36);
+			latestDate = persistedIndex != null ? persistedIndex.getRefsetMemberEffectiveTime(msb, lsb) :
+					latestRefsetMemberEffectiveDates[stripe(PackedUuidIntMap.hash(msb, lsb))].get(msb, lsb);
+		} else {
+			latestDate = latestOtherRefsetMemberEffectiveDates.getOrDefault(memberId, 0);
+		}
+		return latestDate == 0 || latestDate == parseInt(effectiveTime);
 	}
 }
@@ -1,20 +1,41 @@
 package org.ihtsdo.otf.snomedboot.factory.filter;
 
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.ihtsdo.otf.snomedboot.factory.BatchComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.ComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.ConceptBatch;
+import org.ihtsdo.otf.snomedboot.factory.DescriptionBatch;
 import org.ihtsdo.otf.snomedboot.factory.ImpotentComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
+import org.ihtsdo.otf.snomedboot.factory.PrimitiveComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.RelationshipBatch;
+import org.ihtsdo.otf.snomedboot.factory.implementation.BatchComponentFactoryAdapter;
+import org.ihtsdo.otf.snomedboot.factory.implementation.PrimitiveComponentFactoryAdapter;
 
-public class LatestEffectiveDateFilter extends ImpotentComponentFactory {
+public class LatestEffectiveDateFilter extends ImpotentComponentFactory implements BatchComponentFactory {
 
 	private final ComponentFactory delegateComponentFactory;
+	private final PrimitiveComponentFactory primitiveDelegateComponentFactory;
+	private final BatchComponentFactory batchDelegateComponentFactory;
 	private final LatestEffectiveDateComponentFactory effectiveDateHolder;
 
 	public LatestEffectiveDateFilter(ComponentFactory delegateComponentFactory, LatestEffectiveDateComponentFactory effectiveDateHolder) {
 		this.delegateComponentFactory = delegateComponentFactory;
+		this.primitiveDelegateComponentFactory = PrimitiveComponentFactoryAdapter.of(delegateComponentFactory);
+		this.batchDelegateComponentFactory = BatchComponentFactoryAdapter.of(delegateComponentFactory);
 		this.effectiveDateHolder = effectiveDateHolder;
 	}
 
+	@Override
+	public boolean isUsingPrimitiveCallbacks() {
+		return primitiveDelegateComponentFactory.isUsingPrimitiveCallbacks();
+	}
+
+	@Override
+	public boolean isUsingBatchCallbacks() {
+		return batchDelegateComponentFactory.isUsingBatchCallbacks();
+	}
+
 	@Override
 	public LoadingProfile getLoadingProfile() {
 		return delegateComponentFactory.getLoadingProfile();
@@ -42,6 +63,13 @@ public class LatestEffectiveDateFilter extends ImpotentComponentFactory {
 		}
 	}
 
+	@Override
+	public void newConceptState(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
+		if (effectiveDateHolder.isCoreComponentVersionInEffect(conceptId, effectiveTime)) {
+			primitiveDelegateComponentFactory.newConceptState(conceptId, effectiveTime, active, moduleId, definitionStatusId);
+		}
+	}
+
 	@Override
 	public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode, String typeId, String term, String caseSignificanceId) {
 		if (effectiveDateHolder.isCoreComponentVersionInEffect(id, effectiveTime)) {
@@ -49,6 +77,13 @@ public class LatestEffectiveDateFilter extends ImpotentComponentFactory {
 		}
 	}
 
+	@Override
+	public void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, String languageCode, long typeId, String term, long caseSignificanceId) {
+		if (effectiveDateHolder.isCoreComponentVersionInEffect(id, effectiveTime)) {
+			primitiveDelegateComponentFactory.newDescriptionState(id, effectiveTime, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
+		}
+	}
+
 	@Override
 	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
 		if (effectiveDateHolder.isCoreComponentVersionInEffect(id, effectiveTime)) {
@@ -56,6 +91,13 @@ public class LatestEffectiveDateFilter extends ImpotentComponentFactory {
 		}
 	}
 
+	@Override
+	public void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, long destinationId, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		if (effectiveDateHolder.isCoreComponentVersionInEffect(id, effectiveTime)) {
+			primitiveDelegateComponentFactory.newRelationshipState(id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId);
+		}
+	}
+
 	@Override
 	public void newConcreteRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String value, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
 		if (effectiveDateHolder.isCoreComponentVersionInEffect(id, effectiveTime)) {
@@ -63,6 +105,13 @@ public class LatestEffectiveDateFilter extends ImpotentComponentFactory {
 		}
 	}
 
+	@Override
+	public void newConcreteRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, String value, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		if (effectiveDateHolder.isCoreComponentVersionInEffect(id, effectiveTime)) {
+			primitiveDelegateComponentFactory.newConcreteRelationshipState(id, effectiveTime, active, moduleId, sourceId, value, relationshipGroup, typeId, characteristicTypeId, modifierId);
+		}
+	}
+
 	@Override
 	public void newReferenceSetMemberState(String filename, String[] fieldNames, String id, String effectiveTime, String active, String moduleId, String refsetId, String referencedComponentId, String... otherValues) {
 		if (effectiveDateHolder.isReferenceSetMemberVersionInEffect(id, effectiveTime)) {
@@ -72,8 +121,32 @@ public class LatestEffectiveDateFilter extends ImpotentComponentFactory {
 
 	@Override
 	public void newIdentifierState(String alternateIdentifier, String effectiveTime, String active, String moduleId, String identifierSchemeId, String referencedComponentId) {
-		if (effectiveDateHolder.isIdentifierVersionInEffect(alternateIdentifier + "-" + identifierSchemeId, effectiveTime)) {
+		if (effectiveDateHolder.isIdentifierVersionInEffect(alternateIdentifier, identifierSchemeId, effectiveTime)) {
 			delegateComponentFactory.newIdentifierState(alternateIdentifier, effectiveTime, active, moduleId, identifierSchemeId, referencedComponentId);
 		}
 	}
+
+	@Override
+	public void newConceptStates(ConceptBatch batch) {
+		batch.retain(row -> effectiveDateHolder.isCoreComponentVersionInEffect(batch.getId(row), batch.getEffectiveTime(row)));
+		if (batch.size() > 0) {
+			batchDelegateComponentFactory.newConceptStates(batch);
+		}
+	}
+
+	@Override
+	public void newDescriptionStates(DescriptionBatch batch) {
+		batch.retain(row -> effectiveDateHolder.isCoreComponentVersionInEffect(batch.getId(row), batch.getEffectiveTime(row)));
+		if (batch.size() > 0) {
+			batchDelegateComponentFactory.newDescriptionStates(batch);
+		}
+	}
+
+	@Override
+	public void newRelationshipStates(RelationshipBatch batch) {
+		batch.retain(row -> effectiveDateHolder.isCoreComponentVersionInEffect(batch.getId(row), batch.getEffectiveTime(row)));
+		if (batch.size() > 0) {
+			batchDelegateComponentFactory.newRelationshipStates(batch);
+		}
+	}
 }
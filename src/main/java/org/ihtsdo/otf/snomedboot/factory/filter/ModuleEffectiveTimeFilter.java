@@ -2,20 +2,51 @@ package org.ihtsdo.otf.snomedboot.factory.filter;
 
 import com.google.common.base.Strings;
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.ihtsdo.otf.snomedboot.factory.BatchComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.ComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.ConceptBatch;
+import org.ihtsdo.otf.snomedboot.factory.DescriptionBatch;
 import org.ihtsdo.otf.snomedboot.factory.ImpotentComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
+import org.ihtsdo.otf.snomedboot.factory.PrimitiveComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.RelationshipBatch;
+import org.ihtsdo.otf.snomedboot.factory.implementation.BatchComponentFactoryAdapter;
+import org.ihtsdo.otf.snomedboot.factory.implementation.PrimitiveComponentFactoryAdapter;
 
+import java.util.HashMap;
 import java.util.Map;
 
-public class ModuleEffectiveTimeFilter extends ImpotentComponentFactory {
+public class ModuleEffectiveTimeFilter extends ImpotentComponentFactory implements BatchComponentFactory {
 
 	private final ComponentFactory delegateComponentFactory;
+	private final PrimitiveComponentFactory primitiveDelegateComponentFactory;
+	private final BatchComponentFactory batchDelegateComponentFactory;
 	private final Map<String, Integer> moduleEffectiveTimesAlreadyImported;
+	private final Map<Long, Integer> moduleEffectiveTimesAlreadyImportedByLongId;
 
 	public ModuleEffectiveTimeFilter(ComponentFactory delegateComponentFactory, Map<String, Integer> moduleEffectiveTimesAlreadyImported) {
 		this.delegateComponentFactory = delegateComponentFactory;
+		this.primitiveDelegateComponentFactory = PrimitiveComponentFactoryAdapter.of(delegateComponentFactory);
+		this.batchDelegateComponentFactory = BatchComponentFactoryAdapter.of(delegateComponentFactory);
 		this.moduleEffectiveTimesAlreadyImported = moduleEffectiveTimesAlreadyImported;
+		moduleEffectiveTimesAlreadyImportedByLongId = new HashMap<>();
+		moduleEffectiveTimesAlreadyImported.forEach((moduleId, effectiveTime) -> {
+			try {
+				moduleEffectiveTimesAlreadyImportedByLongId.put(Long.parseLong(moduleId), effectiveTime);
+			} catch (NumberFormatException e) {
+				// Can not match the moduleId of any row
+			}
+		});
+	}
+
+	@Override
+	public boolean isUsingPrimitiveCallbacks() {
+		return primitiveDelegateComponentFactory.isUsingPrimitiveCallbacks();
+	}
+
+	@Override
+	public boolean isUsingBatchCallbacks() {
+		return batchDelegateComponentFactory.isUsingBatchCallbacks();
 	}
 
 	private boolean isImportRow(String moduleId, String effectiveTime) {
@@ -26,6 +57,14 @@ public class ModuleEffectiveTimeFilter extends ImpotentComponentFactory {
 		return Integer.parseInt(effectiveTime) > existingEffectiveTime;
 	}
 
+	private boolean isImportRow(long moduleId, int effectiveTime) {
+		Integer existingEffectiveTime = moduleEffectiveTimesAlreadyImportedByLongId.get(moduleId);
+		if (effectiveTime == NO_EFFECTIVE_TIME || existingEffectiveTime == null) {
+			return true;
+		}
+		return effectiveTime > existingEffectiveTime;
+	}
+
 	@Override
 	public LoadingProfile getLoadingProfile() {
 		return delegateComponentFactory.getLoadingProfile();
@@ -53,6 +92,13 @@ public class ModuleEffectiveTimeFilter extends ImpotentComponentFactory {
 		}
 	}
 
+	@Override
+	public void newConceptState(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
+		if (isImportRow(moduleId, effectiveTime)) {
+			primitiveDelegateComponentFactory.newConceptState(conceptId, effectiveTime, active, moduleId, definitionStatusId);
+		}
+	}
+
 	@Override
 	public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode, String typeId, String term, String caseSignificanceId) {
 		if (isImportRow(moduleId, effectiveTime)) {
@@ -60,6 +106,13 @@ public class ModuleEffectiveTimeFilter extends ImpotentComponentFactory {
 		}
 	}
 
+	@Override
+	public void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, String languageCode, long typeId, String term, long caseSignificanceId) {
+		if (isImportRow(moduleId, effectiveTime)) {
+			primitiveDelegateComponentFactory.newDescriptionState(id, effectiveTime, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
+		}
+	}
+
 	@Override
 	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
 		if (isImportRow(moduleId, effectiveTime)) {
@@ -67,6 +120,13 @@ public class ModuleEffectiveTimeFilter extends ImpotentComponentFactory {
 		}
 	}
 
+	@Override
+	public void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, long destinationId, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		if (isImportRow(moduleId, effectiveTime)) {
+			primitiveDelegateComponentFactory.newRelationshipState(id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId);
+		}
+	}
+
 	@Override
 	public void newConcreteRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String value, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
 		if (isImportRow(moduleId, effectiveTime)) {
@@ -81,10 +141,41 @@ public class ModuleEffectiveTimeFilter extends ImpotentComponentFactory {
 		}
 	}
 
+	@Override
+	public void newConcreteRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, String value, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		if (isImportRow(moduleId, effectiveTime)) {
+			primitiveDelegateComponentFactory.newConcreteRelationshipState(id, effectiveTime, active, moduleId, sourceId, value, relationshipGroup, typeId, characteristicTypeId, modifierId);
+		}
+	}
+
 	@Override
 	public void newReferenceSetMemberState(String filename, String[] fieldNames, String id, String effectiveTime, String active, String moduleId, String refsetId, String referencedComponentId, String... otherValues) {
 		if (isImportRow(moduleId, effectiveTime)) {
 			delegateComponentFactory.newReferenceSetMemberState(filename, fieldNames, id, effectiveTime, active, moduleId, refsetId, referencedComponentId, otherValues);
 		}
 	}
+
+	@Override
+	public void newConceptStates(ConceptBatch batch) {
+		batch.retain(row -> isImportRow(batch.getModuleId(row), batch.getEffectiveTime(row)));
+		if (batch.size() > 0) {
+			batchDelegateComponentFactory.newConceptStates(batch);
+		}
+	}
+
+	@Override
+	public void newDescriptionStates(DescriptionBatch batch) {
+		batch.retain(row -> isImportRow(batch.getModuleId(row), batch.getEffectiveTime(row)));
+		if (batch.size() > 0) {
+			batchDelegateComponentFactory.newDescriptionStates(batch);
+		}
+	}
+
+	@Override
+	public void newRelationshipStates(RelationshipBatch batch) {
+		batch.retain(row -> isImportRow(batch.getModuleId(row), batch.getEffectiveTime(row)));
+		if (batch.size() > 0) {
+			batchDelegateComponentFactory.newRelationshipStates(batch);
+		}
+	}
 }
@@ -1,23 +1,53 @@
 package org.ihtsdo.otf.snomedboot.factory.filter;
 
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.ihtsdo.otf.snomedboot.factory.BatchComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.ComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.ConceptBatch;
+import org.ihtsdo.otf.snomedboot.factory.DescriptionBatch;
 import org.ihtsdo.otf.snomedboot.factory.ImpotentComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
+import org.ihtsdo.otf.snomedboot.factory.PrimitiveComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.RelationshipBatch;
+import org.ihtsdo.otf.snomedboot.factory.implementation.BatchComponentFactoryAdapter;
+import org.ihtsdo.otf.snomedboot.factory.implementation.PrimitiveComponentFactoryAdapter;
 
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import static java.lang.Long.parseLong;
 
-public class ModuleFilter extends ImpotentComponentFactory {
+public class ModuleFilter extends ImpotentComponentFactory implements BatchComponentFactory {
 
 	private final ComponentFactory delegateComponentFactory;
-	private final Set<Long> moduleIdLongs;
+	private final PrimitiveComponentFactory primitiveDelegateComponentFactory;
+	private final BatchComponentFactory batchDelegateComponentFactory;
+	private final LongSet moduleIdLongs;
 
 	public ModuleFilter(ComponentFactory delegateComponentFactory, Set<String> moduleIds) {
 		this.delegateComponentFactory = delegateComponentFactory;
-		moduleIdLongs = moduleIds.stream().map(Long::parseLong).collect(Collectors.toSet());
+		this.primitiveDelegateComponentFactory = PrimitiveComponentFactoryAdapter.of(delegateComponentFactory);
+		this.batchDelegateComponentFactory = BatchComponentFactoryAdapter.of(delegateComponentFactory);
+		moduleIdLongs = new LongOpenHashSet();
+		moduleIds.forEach(moduleId -> moduleIdLongs.add(parseLong(moduleId)));
+	}
+
+	/**
+	 * Lets the release importer skip rows of other modules before decoding the rest of their columns.
+	 */
+	public boolean isModule(long moduleId) {
+		return moduleIdLongs.contains(moduleId);
+	}
+
+	@Override
+	public boolean isUsingPrimitiveCallbacks() {
+		return primitiveDelegateComponentFactory.isUsingPrimitiveCallbacks();
+	}
+
+	@Override
+	public boolean isUsingBatchCallbacks() {
+		return batchDelegateComponentFactory.isUsingBatchCallbacks();
 	}
 
 	@Override
@@ -47,6 +77,13 @@ public class ModuleFilter extends ImpotentComponentFactory {
 		}
 	}
 
+	@Override
+	public void newConceptState(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
+		if (moduleIdLongs.contains(moduleId)) {
+			primitiveDelegateComponentFactory.newConceptState(conceptId, effectiveTime, active, moduleId, definitionStatusId);
+		}
+	}
+
 	@Override
 	public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode, String typeId, String term, String caseSignificanceId) {
 		if (moduleIdLongs.contains(parseLong(moduleId))) {
@@ -54,6 +91,13 @@ public class ModuleFilter extends ImpotentComponentFactory {
 		}
 	}
 
+	@Override
+	public void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, String languageCode, long typeId, String term, long caseSignificanceId) {
+		if (moduleIdLongs.contains(moduleId)) {
+			primitiveDelegateComponentFactory.newDescriptionState(id, effectiveTime, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
+		}
+	}
+
 	@Override
 	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
 		if (moduleIdLongs.contains(parseLong(moduleId))) {
@@ -61,6 +105,13 @@ public class ModuleFilter extends ImpotentComponentFactory {
 		}
 	}
 
+	@Override
+	public void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, long destinationId, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		if (moduleIdLongs.contains(moduleId)) {
+			primitiveDelegateComponentFactory.newRelationshipState(id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId);
+		}
+	}
+
 	@Override
 	public void newConcreteRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String value, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
 		if (moduleIdLongs.contains(parseLong(moduleId))) {
@@ -68,6 +119,13 @@ public class ModuleFilter extends ImpotentComponentFactory {
 		}
 	}
 
+	@Override
+	public void newConcreteRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, String value, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		if (moduleIdLongs.contains(moduleId)) {
+			primitiveDelegateComponentFactory.newConcreteRelationshipState(id, effectiveTime, active, moduleId, sourceId, value, relationshipGroup, typeId, characteristicTypeId, modifierId);
+		}
+	}
+
 	@Override
 	public void newIdentifierState(String alternateIdentifier, String effectiveTime, String active, String moduleId, String identifierSchemeId, String referencedComponentId) {
 		if (moduleIdLongs.contains(parseLong(moduleId))) {
@@ -81,4 +139,28 @@ public class ModuleFilter extends ImpotentComponentFactory {
 			delegateComponentFactory.newReferenceSetMemberState(filename, fieldNames, id, effectiveTime, active, moduleId, refsetId, referencedComponentId, otherValues);
 		}
 	}
+
+	@Override
+	public void newConceptStates(ConceptBatch batch) {
+		batch.retain(row -> moduleIdLongs.contains(batch.getModuleId(row)));
+		if (batch.size() > 0) {
+			batchDelegateComponentFactory.newConceptStates(batch);
+		}
+	}
+
+	@Override
+	public void newDescriptionStates(DescriptionBatch batch) {
+		batch.retain(row -> moduleIdLongs.contains(batch.getModuleId(row)));
+		if (batch.size() > 0) {
+			batchDelegateComponentFactory.newDescriptionStates(batch);
+		}
+	}
+
+	@Override
+	public void newRelationshipStates(RelationshipBatch batch) {
+		batch.retain(row -> moduleIdLongs.contains(batch.getModuleId(row)));
+		if (batch.size() > 0) {
+			batchDelegateComponentFactory.newRelationshipStates(batch);
+		}
+	}
 }
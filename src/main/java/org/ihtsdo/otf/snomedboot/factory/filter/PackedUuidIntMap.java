@@ -0,0 +1,135 @@
+package org.ihtsdo.otf.snomedboot.factory.filter;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from a UUID, held as two longs, to a positive int value.
+ * Each entry also records whether the key was stored more than once.
+ * Not thread safe.
+ */
+final class PackedUuidIntMap {
+
+	private static final int NO_VALUE = 0;
+
+	private long[] mostSignificantBits;
+	private long[] leastSignificantBits;
+	private int[] values;
+	private boolean[] storedMoreThanOnce;
+	private int size;
+	private int mask;
+
+	PackedUuidIntMap() {
+		this(16);
+	}
+
+	private PackedUuidIntMap(int capacity) {
+		int tableSize = Integer.highestOneBit(Math.max(16, capacity * 2 - 1)) << 1;
+		mostSignificantBits = new long[tableSize];
+		leastSignificantBits = new long[tableSize];
+		values = new int[tableSize];
+		storedMoreThanOnce = new boolean[tableSize];
+		mask = tableSize - 1;
+	}
+
+	/**
+	 * Store the value if it is greater than the value already held for the key.
+	 * @param value must be greater than zero.
+	 */
+	void putIfGreater(long msb, long lsb, int value) {
+		int slot = findSlot(msb, lsb);
+		if (values[slot] == NO_VALUE) {
+			mostSignificantBits[slot] = msb;
+			leastSignificantBits[slot] = lsb;
+			values[slot] = value;
+			if (++size * 2 > values.length) {
+				rehash(values.length * 2);
+			}
+		} else {
+			storedMoreThanOnce[slot] = true;
+			if (value > values[slot]) {
+				values[slot] = value;
+			}
+		}
+	}
+
+	/**
+	 * @return The value for the key or zero if the key is not held.
+	 */
+	int get(long msb, long lsb) {
+		return values[findSlot(msb, lsb)];
+	}
+
+	boolean containsKey(long msb, long lsb) {
+		return values[findSlot(msb, lsb)] != NO_VALUE;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void forEach(Consumer consumer) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != NO_VALUE) {
+				consumer.accept(mostSignificantBits[i], leastSignificantBits[i], values[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return A new map holding only the keys that were stored more than once.
+	 */
+	PackedUuidIntMap retainStoredMoreThanOnce() {
+		int retained = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != NO_VALUE && storedMoreThanOnce[i]) {
+				retained++;
+			}
+		}
+		PackedUuidIntMap map = new PackedUuidIntMap(retained);
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != NO_VALUE && storedMoreThanOnce[i]) {
+				map.putIfGreater(mostSignificantBits[i], leastSignificantBits[i], values[i]);
+			}
+		}
+		Arrays.fill(map.storedMoreThanOnce, true);
+		return map;
+	}
+
+	private int findSlot(long msb, long lsb) {
+		int slot = hash(msb, lsb) & mask;
+		while (values[slot] != NO_VALUE && (mostSignificantBits[slot] != msb || leastSignificantBits[slot] != lsb)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash(int tableSize) {
+		long[] oldMostSignificantBits = mostSignificantBits;
+		long[] oldLeastSignificantBits = leastSignificantBits;
+		int[] oldValues = values;
+		boolean[] oldStoredMoreThanOnce = storedMoreThanOnce;
+		mostSignificantBits = new long[tableSize];
+		leastSignificantBits = new long[tableSize];
+		values = new int[tableSize];
+		storedMoreThanOnce = new boolean[tableSize];
+		mask = tableSize - 1;
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != NO_VALUE) {
+				int slot = findSlot(oldMostSignificantBits[i], oldLeastSignificantBits[i]);
+				mostSignificantBits[slot] = oldMostSignificantBits[i];
+				leastSignificantBits[slot] = oldLeastSignificantBits[i];
+				values[slot] = oldValues[i];
+				storedMoreThanOnce[slot] = oldStoredMoreThanOnce[i];
+			}
+		}
+	}
+
+	interface Consumer {
+		void accept(long mostSignificantBits, long leastSignificantBits, int value);
+	}
+
+	static int hash(long msb, long lsb) {
+		long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
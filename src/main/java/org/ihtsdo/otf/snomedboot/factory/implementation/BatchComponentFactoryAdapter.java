@@ -0,0 +1,139 @@
+package org.ihtsdo.otf.snomedboot.factory.implementation;
+
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.ihtsdo.otf.snomedboot.factory.BatchComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.ComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.ConceptBatch;
+import org.ihtsdo.otf.snomedboot.factory.DescriptionBatch;
+import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
+import org.ihtsdo.otf.snomedboot.factory.PrimitiveComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.RelationshipBatch;
+
+/**
+ * Passes each row of a batch to a factory that does not accept batches, using the primitive methods where the factory accepts them.
+ */
+public class BatchComponentFactoryAdapter implements BatchComponentFactory {
+
+	private final ComponentFactory delegateComponentFactory;
+	private final PrimitiveComponentFactory primitiveDelegateComponentFactory;
+
+	private BatchComponentFactoryAdapter(ComponentFactory delegateComponentFactory) {
+		this.delegateComponentFactory = delegateComponentFactory;
+		primitiveDelegateComponentFactory = PrimitiveComponentFactoryAdapter.of(delegateComponentFactory);
+	}
+
+	/**
+	 * @return The given factory if it accepts batches, otherwise an adapter that passes the rows of each batch one at a time.
+	 */
+	public static BatchComponentFactory of(ComponentFactory componentFactory) {
+		if (componentFactory instanceof BatchComponentFactory) {
+			return (BatchComponentFactory) componentFactory;
+		}
+		return new BatchComponentFactoryAdapter(componentFactory);
+	}
+
+	@Override
+	public boolean isUsingBatchCallbacks() {
+		return false;
+	}
+
+	@Override
+	public boolean isUsingPrimitiveCallbacks() {
+		return primitiveDelegateComponentFactory.isUsingPrimitiveCallbacks();
+	}
+
+	@Override
+	public void newConceptStates(ConceptBatch batch) {
+		for (int row = 0; row < batch.size(); row++) {
+			primitiveDelegateComponentFactory.newConceptState(batch.getId(row), batch.getEffectiveTime(row), batch.isActive(row), batch.getModuleId(row),
+					batch.getDefinitionStatusId(row));
+		}
+	}
+
+	@Override
+	public void newDescriptionStates(DescriptionBatch batch) {
+		for (int row = 0; row < batch.size(); row++) {
+			primitiveDelegateComponentFactory.newDescriptionState(batch.getId(row), batch.getEffectiveTime(row), batch.isActive(row), batch.getModuleId(row),
+					batch.getConceptId(row), batch.getLanguageCode(row), batch.getTypeId(row), batch.getTerm(row), batch.getCaseSignificanceId(row));
+		}
+	}
+
+	@Override
+	public void newRelationshipStates(RelationshipBatch batch) {
+		for (int row = 0; row < batch.size(); row++) {
+			primitiveDelegateComponentFactory.newRelationshipState(batch.getId(row), batch.getEffectiveTime(row), batch.isActive(row), batch.getModuleId(row),
+					batch.getSourceId(row), batch.getDestinationId(row), batch.getRelationshipGroup(row), batch.getTypeId(row),
+					batch.getCharacteristicTypeId(row), batch.getModifierId(row));
+		}
+	}
+
+	@Override
+	public LoadingProfile getLoadingProfile() {
+		return delegateComponentFactory.getLoadingProfile();
+	}
+
+	@Override
+	public void preprocessingContent() {
+		delegateComponentFactory.preprocessingContent();
+	}
+
+	@Override
+	public void loadingComponentsStarting() {
+		delegateComponentFactory.loadingComponentsStarting();
+	}
+
+	@Override
+	public void loadingComponentsCompleted() throws ReleaseImportException {
+		delegateComponentFactory.loadingComponentsCompleted();
+	}
+
+	@Override
+	public void newConceptState(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
+		primitiveDelegateComponentFactory.newConceptState(conceptId, effectiveTime, active, moduleId, definitionStatusId);
+	}
+
+	@Override
+	public void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, String languageCode, long typeId, String term, long caseSignificanceId) {
+		primitiveDelegateComponentFactory.newDescriptionState(id, effectiveTime, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
+	}
+
+	@Override
+	public void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, long destinationId, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		primitiveDelegateComponentFactory.newRelationshipState(id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId);
+	}
+
+	@Override
+	public void newConcreteRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, String value, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		primitiveDelegateComponentFactory.newConcreteRelationshipState(id, effectiveTime, active, moduleId, sourceId, value, relationshipGroup, typeId, characteristicTypeId, modifierId);
+	}
+
+	@Override
+	public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
+		delegateComponentFactory.newConceptState(conceptId, effectiveTime, active, moduleId, definitionStatusId);
+	}
+
+	@Override
+	public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode, String typeId, String term, String caseSignificanceId) {
+		delegateComponentFactory.newDescriptionState(id, effectiveTime, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
+	}
+
+	@Override
+	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+		delegateComponentFactory.newRelationshipState(id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId);
+	}
+
+	@Override
+	public void newConcreteRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String value, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+		delegateComponentFactory.newConcreteRelationshipState(id, effectiveTime, active, moduleId, sourceId, value, relationshipGroup, typeId, characteristicTypeId, modifierId);
+	}
+
+	@Override
+	public void newReferenceSetMemberState(String filename, String[] fieldNames, String id, String effectiveTime, String active, String moduleId, String refsetId, String referencedComponentId, String... otherValues) {
+		delegateComponentFactory.newReferenceSetMemberState(filename, fieldNames, id, effectiveTime, active, moduleId, refsetId, referencedComponentId, otherValues);
+	}
+
+	@Override
+	public void newIdentifierState(String alternateIdentifier, String effectiveTime, String active, String moduleId, String identifierSchemeId, String referencedComponentId) {
+		delegateComponentFactory.newIdentifierState(alternateIdentifier, effectiveTime, active, moduleId, identifierSchemeId, referencedComponentId);
+	}
+}
@@ -0,0 +1,260 @@
+package org.ihtsdo.otf.snomedboot.factory.implementation;
+
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.ihtsdo.otf.snomedboot.factory.ComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.HistoryAwareComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Passes every callback to several component factories so that the release files are read once rather than once per factory.
+ * Each factory has its own consumer thread and a bounded queue of callbacks. Callbacks reach each factory in the order they were made,
+ * from that one thread, so the factories need not be thread safe. A factory that falls behind fills its queue which blocks the reading
+ * threads until it catches up, the other factories carry on consuming what is already queued.
+ *
+ * If a factory throws, the remaining callbacks for that factory are dropped so that reading is never blocked by it,
+ * and the exception is thrown from loadingComponentsCompleted once every factory has finished.
+ * Calls to loadingReleaseDeltaStarting and loadingReleaseDeltaFinished are only passed to factories that are history aware.
+ */
+public class FanOutComponentFactory implements HistoryAwareComponentFactory, AutoCloseable {
+
+	public static final int DEFAULT_QUEUE_SIZE = 10_000;
+
+	private final List<ComponentFactory> componentFactories;
+	private final int queueSize;
+	private volatile List<FactoryConsumer> consumers;
+
+	public FanOutComponentFactory(List<ComponentFactory> componentFactories) {
+		this(componentFactories, DEFAULT_QUEUE_SIZE);
+	}
+
+	public FanOutComponentFactory(List<ComponentFactory> componentFactories, int queueSize) {
+		if (componentFactories.isEmpty()) {
+			throw new IllegalArgumentException("At least one component factory is required.");
+		}
+		if (queueSize < 1) {
+			throw new IllegalArgumentException("Queue size must be at least 1.");
+		}
+		this.componentFactories = new ArrayList<>(componentFactories);
+		this.queueSize = queueSize;
+	}
+
+	public List<ComponentFactory> getComponentFactories() {
+		return componentFactories;
+	}
+
+	/**
+	 * @return The loading profile of the first factory that has one, or null.
+	 */
+	@Override
+	public LoadingProfile getLoadingProfile() {
+		for (ComponentFactory componentFactory : componentFactories) {
+			if (componentFactory.getLoadingProfile() != null) {
+				return componentFactory.getLoadingProfile();
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void preprocessingContent() {
+		for (ComponentFactory componentFactory : componentFactories) {
+			componentFactory.preprocessingContent();
+		}
+	}
+
+	@Override
+	public synchronized void loadingComponentsStarting() {
+		if (consumers != null) {
+			throw new IllegalStateException("Loading components has already started.");
+		}
+		consumers = new ArrayList<>();
+		for (int i = 0; i < componentFactories.size(); i++) {
+			FactoryConsumer consumer = new FactoryConsumer(componentFactories.get(i), queueSize);
+			Thread thread = new Thread(consumer, "component-factory-fan-out-" + i);
+			thread.setDaemon(true);
+			consumer.thread = thread;
+			consumers.add(consumer);
+			thread.start();
+		}
+		dispatch(ComponentFactory::loadingComponentsStarting);
+	}
+
+	/**
+	 * Waits for every factory to consume its queue and complete.
+	 * @throws ReleaseImportException if any factory threw, including the exceptions of the other factories as suppressed exceptions.
+	 */
+	@Override
+	public void loadingComponentsCompleted() throws ReleaseImportException {
+		List<FactoryConsumer> started = getConsumers();
+		for (FactoryConsumer consumer : started) {
+			consumer.put(FactoryConsumer.END);
+		}
+		ReleaseImportException exception = null;
+		try {
+			for (FactoryConsumer consumer : started) {
+				consumer.thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ReleaseImportException("Interrupted while waiting for component factories to complete.", e);
+		} finally {
+			consumers = null;
+		}
+		for (FactoryConsumer consumer : started) {
+			if (consumer.failure != null) {
+				if (exception == null) {
+					exception = consumer.failure instanceof ReleaseImportException releaseImportException ? releaseImportException :
+							new ReleaseImportException("Component factory " + consumer.componentFactory.getClass().getName() + " failed.", consumer.failure);
+				} else {
+					exception.addSuppressed(consumer.failure);
+				}
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * Stops the consumer threads if loading was abandoned before loadingComponentsCompleted.
+	 */
+	@Override
+	public synchronized void close() {
+		if (consumers != null) {
+			consumers.forEach(consumer -> consumer.thread.interrupt());
+			consumers = null;
+		}
+	}
+
+	@Override
+	public void loadingReleaseDeltaStarting(String releaseVersion) {
+		dispatch(componentFactory -> {
+			if (componentFactory instanceof HistoryAwareComponentFactory historyAwareComponentFactory) {
+				historyAwareComponentFactory.loadingReleaseDeltaStarting(releaseVersion);
+			}
+		});
+	}
+
+	@Override
+	public void loadingReleaseDeltaFinished(String releaseVersion) {
+		dispatch(componentFactory -> {
+			if (componentFactory instanceof HistoryAwareComponentFactory historyAwareComponentFactory) {
+				historyAwareComponentFactory.loadingReleaseDeltaFinished(releaseVersion);
+			}
+		});
+	}
+
+	@Override
+	public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
+		dispatch(componentFactory -> componentFactory.newConceptState(conceptId, effectiveTime, active, moduleId, definitionStatusId));
+	}
+
+	@Override
+	public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode,
+			String typeId, String term, String caseSignificanceId) {
+
+		dispatch(componentFactory -> componentFactory.newDescriptionState(id, effectiveTime, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId));
+	}
+
+	@Override
+	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId,
+			String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+
+		dispatch(componentFactory -> componentFactory.newRelationshipState(id, effectiveTime, active, moduleId, sourceId, destinationId,
+				relationshipGroup, typeId, characteristicTypeId, modifierId));
+	}
+
+	@Override
+	public void newConcreteRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String value,
+			String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+
+		dispatch(componentFactory -> componentFactory.newConcreteRelationshipState(id, effectiveTime, active, moduleId, sourceId, value,
+				relationshipGroup, typeId, characteristicTypeId, modifierId));
+	}
+
+	@Override
+	public void newReferenceSetMemberState(String filename, String[] fieldNames, String id, String effectiveTime, String active, String moduleId,
+			String refsetId, String referencedComponentId, String... otherValues) {
+
+		dispatch(componentFactory -> componentFactory.newReferenceSetMemberState(filename, fieldNames, id, effectiveTime, active, moduleId,
+				refsetId, referencedComponentId, otherValues));
+	}
+
+	@Override
+	public void newIdentifierState(String alternateIdentifier, String effectiveTime, String active, String moduleId, String identifierSchemeId,
+			String referencedComponentId) {
+
+		dispatch(componentFactory -> componentFactory.newIdentifierState(alternateIdentifier, effectiveTime, active, moduleId, identifierSchemeId,
+				referencedComponentId));
+	}
+
+	/**
+	 * Queues one callback, shared by all factories, blocking while any queue is full.
+	 */
+	private void dispatch(Consumer<ComponentFactory> callback) {
+		for (FactoryConsumer consumer : getConsumers()) {
+			consumer.put(callback);
+		}
+	}
+
+	private List<FactoryConsumer> getConsumers() {
+		List<FactoryConsumer> consumers = this.consumers;
+		if (consumers == null) {
+			throw new IllegalStateException("Callback made outside of loadingComponentsStarting and loadingComponentsCompleted.");
+		}
+		return consumers;
+	}
+
+	private static final class FactoryConsumer implements Runnable {
+
+		private static final Consumer<ComponentFactory> END = componentFactory -> {};
+
+		private final ComponentFactory componentFactory;
+		private final BlockingQueue<Consumer<ComponentFactory>> queue;
+		private Thread thread;
+		private volatile Throwable failure;
+
+		private FactoryConsumer(ComponentFactory componentFactory, int queueSize) {
+			this.componentFactory = componentFactory;
+			queue = new ArrayBlockingQueue<>(queueSize);
+		}
+
+		private void put(Consumer<ComponentFactory> callback) {
+			try {
+				queue.put(callback);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while queueing a component for " + componentFactory.getClass().getName() + ".", e);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				Consumer<ComponentFactory> callback;
+				while ((callback = queue.take()) != END) {
+					if (failure == null) {
+						try {
+							callback.accept(componentFactory);
+						} catch (RuntimeException | Error e) {
+							failure = e;
+						}
+					}
+				}
+				if (failure == null) {
+					componentFactory.loadingComponentsCompleted();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ReleaseImportException | RuntimeException e) {
+				failure = e;
+			}
+		}
+	}
+}
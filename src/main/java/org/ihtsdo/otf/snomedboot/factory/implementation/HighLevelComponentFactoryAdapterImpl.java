@@ -4,16 +4,31 @@ import org.ihtsdo.otf.snomedboot.ReleaseImportException;
 import org.ihtsdo.otf.snomedboot.domain.ConceptConstants;
 import org.ihtsdo.otf.snomedboot.factory.*;
 
-public class HighLevelComponentFactoryAdapterImpl implements ComponentFactory {
+/**
+ * Passes rows to the delegate factory and the parents, children, attributes and FSNs they give to the high level factory.
+ * Primitive callbacks are used when the delegate accepts them, ids are only formatted for the high level callbacks they reach.
+ */
+public class HighLevelComponentFactoryAdapterImpl implements PrimitiveComponentFactory {
+
+	private static final long FSN = Long.parseLong(ConceptConstants.FSN);
+	private static final long IS_A = Long.parseLong(ConceptConstants.isA);
+	private static final long INFERRED_RELATIONSHIP = Long.parseLong(ConceptConstants.INFERRED_RELATIONSHIP);
 
 	private final LoadingProfile loadingProfile;
 	private final HighLevelComponentFactory highLevelFactory;
 	private final ComponentFactory delegateComponentFactory;
+	private final PrimitiveComponentFactory primitiveDelegateComponentFactory;
 
 	public HighLevelComponentFactoryAdapterImpl(final LoadingProfile loadingProfile, HighLevelComponentFactory highLevelComponentFactory, ComponentFactory delegateComponentFactory) {
 		this.loadingProfile = loadingProfile;
 		this.highLevelFactory = highLevelComponentFactory;
 		this.delegateComponentFactory = delegateComponentFactory;
+		this.primitiveDelegateComponentFactory = PrimitiveComponentFactoryAdapter.of(delegateComponentFactory);
+	}
+
+	@Override
+	public boolean isUsingPrimitiveCallbacks() {
+		return primitiveDelegateComponentFactory.isUsingPrimitiveCallbacks();
 	}
 
 	@Override
@@ -51,16 +66,56 @@ public class HighLevelComponentFactoryAdapterImpl implements ComponentFactory {
 
 	@Override
 	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
-		boolean inferred = ConceptConstants.INFERRED_RELATIONSHIP.equals(characteristicTypeId);
-		if (isActive(active)) {
-			if (!inferred && loadingProfile.isStatedAttributeMapOnConcept()) {
-				highLevelFactory.addStatedConceptAttribute(sourceId, typeId, destinationId);
-			} else if (inferred && loadingProfile.isInferredAttributeMapOnConcept()) {
+		addRelationshipToHighLevelFactory(isActive(active), ConceptConstants.INFERRED_RELATIONSHIP.equals(characteristicTypeId),
+				typeId.equals(ConceptConstants.isA), sourceId, destinationId, typeId);
+		delegateComponentFactory.newRelationshipState(id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId);
+	}
+
+	@Override
+	public void newConceptState(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
+		primitiveDelegateComponentFactory.newConceptState(conceptId, effectiveTime, active, moduleId, definitionStatusId);
+	}
+
+	@Override
+	public void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, String languageCode, long typeId, String term, long caseSignificanceId) {
+		if (active && typeId == FSN) {
+			highLevelFactory.addConceptFSN(Long.toString(conceptId), term);
+		}
+		primitiveDelegateComponentFactory.newDescriptionState(id, effectiveTime, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
+	}
+
+	@Override
+	public void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, long destinationId, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		boolean inferred = characteristicTypeId == INFERRED_RELATIONSHIP;
+		boolean isA = typeId == IS_A;
+		if (isA || (active && isAttributeMapOnConcept(inferred))) {
+			addRelationshipToHighLevelFactory(active, inferred, isA, Long.toString(sourceId), Long.toString(destinationId), Long.toString(typeId));
+		}
+		primitiveDelegateComponentFactory.newRelationshipState(id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId);
+	}
+
+	@Override
+	public void newConcreteRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, String value, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		if (active && loadingProfile.isInferredAttributeMapOnConcept()) {
+			highLevelFactory.addInferredConceptConcreteAttribute(Long.toString(sourceId), Long.toString(typeId), value);
+		}
+		primitiveDelegateComponentFactory.newConcreteRelationshipState(id, effectiveTime, active, moduleId, sourceId, value, relationshipGroup, typeId, characteristicTypeId, modifierId);
+	}
+
+	private boolean isAttributeMapOnConcept(boolean inferred) {
+		return inferred ? loadingProfile.isInferredAttributeMapOnConcept() : loadingProfile.isStatedAttributeMapOnConcept();
+	}
+
+	private void addRelationshipToHighLevelFactory(boolean active, boolean inferred, boolean isA, String sourceId, String destinationId, String typeId) {
+		if (active && isAttributeMapOnConcept(inferred)) {
+			if (inferred) {
 				highLevelFactory.addInferredConceptAttribute(sourceId, typeId, destinationId);
+			} else {
+				highLevelFactory.addStatedConceptAttribute(sourceId, typeId, destinationId);
 			}
 		}
-		if (typeId.equals(ConceptConstants.isA)) {
-			if (isActive(active)) {
+		if (isA) {
+			if (active) {
 				if (inferred) {
 					highLevelFactory.addInferredConceptParent(sourceId, destinationId);
 					highLevelFactory.addInferredConceptChild(sourceId, destinationId);
@@ -78,7 +133,6 @@ public class HighLevelComponentFactoryAdapterImpl implements ComponentFactory {
 				}
 			}
 		}
-		delegateComponentFactory.newRelationshipState(id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId);
 	}
 
 	@Override
@@ -91,8 +145,12 @@ public class HighLevelComponentFactoryAdapterImpl implements ComponentFactory {
 
 	@Override
 	public void newReferenceSetMemberState(String filename, String[] fieldNames, String id, String effectiveTime, String active, String moduleId, String refsetId, String referencedComponentId, String... otherValues) {
-		if (isActive(active) && FactoryUtils.isConceptId(referencedComponentId)) {
-			highLevelFactory.addConceptReferencedInRefsetId(refsetId, referencedComponentId);
+		if (FactoryUtils.isConceptId(referencedComponentId)) {
+			if (isActive(active)) {
+				highLevelFactory.addConceptReferencedInRefsetId(refsetId, referencedComponentId);
+			} else {
+				highLevelFactory.removeConceptReferencedInRefsetId(refsetId, referencedComponentId);
+			}
 		}
 		delegateComponentFactory.newReferenceSetMemberState(filename, fieldNames, id, effectiveTime, active, moduleId, refsetId, referencedComponentId, otherValues);
 	}
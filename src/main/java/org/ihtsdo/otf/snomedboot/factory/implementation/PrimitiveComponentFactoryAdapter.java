@@ -0,0 +1,112 @@
+package org.ihtsdo.otf.snomedboot.factory.implementation;
+
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.ihtsdo.otf.snomedboot.factory.ComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
+import org.ihtsdo.otf.snomedboot.factory.PrimitiveComponentFactory;
+
+import static org.ihtsdo.otf.snomedboot.factory.FactoryUtils.formatActive;
+import static org.ihtsdo.otf.snomedboot.factory.FactoryUtils.formatEffectiveTime;
+
+/**
+ * Passes primitive callbacks to a factory that only implements the String based ComponentFactory methods.
+ */
+public class PrimitiveComponentFactoryAdapter implements PrimitiveComponentFactory {
+
+	private final ComponentFactory delegateComponentFactory;
+
+	private PrimitiveComponentFactoryAdapter(ComponentFactory delegateComponentFactory) {
+		this.delegateComponentFactory = delegateComponentFactory;
+	}
+
+	/**
+	 * @return The given factory if it accepts primitive callbacks, otherwise an adapter that converts values back to Strings.
+	 */
+	public static PrimitiveComponentFactory of(ComponentFactory componentFactory) {
+		if (componentFactory instanceof PrimitiveComponentFactory) {
+			return (PrimitiveComponentFactory) componentFactory;
+		}
+		return new PrimitiveComponentFactoryAdapter(componentFactory);
+	}
+
+	@Override
+	public boolean isUsingPrimitiveCallbacks() {
+		return false;
+	}
+
+	@Override
+	public LoadingProfile getLoadingProfile() {
+		return delegateComponentFactory.getLoadingProfile();
+	}
+
+	@Override
+	public void preprocessingContent() {
+		delegateComponentFactory.preprocessingContent();
+	}
+
+	@Override
+	public void loadingComponentsStarting() {
+		delegateComponentFactory.loadingComponentsStarting();
+	}
+
+	@Override
+	public void loadingComponentsCompleted() throws ReleaseImportException {
+		delegateComponentFactory.loadingComponentsCompleted();
+	}
+
+	@Override
+	public void newConceptState(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
+		delegateComponentFactory.newConceptState(Long.toString(conceptId), formatEffectiveTime(effectiveTime), formatActive(active),
+				Long.toString(moduleId), Long.toString(definitionStatusId));
+	}
+
+	@Override
+	public void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, String languageCode, long typeId, String term, long caseSignificanceId) {
+		delegateComponentFactory.newDescriptionState(Long.toString(id), formatEffectiveTime(effectiveTime), formatActive(active),
+				Long.toString(moduleId), Long.toString(conceptId), languageCode, Long.toString(typeId), term, Long.toString(caseSignificanceId));
+	}
+
+	@Override
+	public void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, long destinationId, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		delegateComponentFactory.newRelationshipState(Long.toString(id), formatEffectiveTime(effectiveTime), formatActive(active),
+				Long.toString(moduleId), Long.toString(sourceId), Long.toString(destinationId), Integer.toString(relationshipGroup),
+				Long.toString(typeId), Long.toString(characteristicTypeId), Long.toString(modifierId));
+	}
+
+	@Override
+	public void newConcreteRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, String value, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		delegateComponentFactory.newConcreteRelationshipState(Long.toString(id), formatEffectiveTime(effectiveTime), formatActive(active),
+				Long.toString(moduleId), Long.toString(sourceId), value, Integer.toString(relationshipGroup),
+				Long.toString(typeId), Long.toString(characteristicTypeId), Long.toString(modifierId));
+	}
+
+	@Override
+	public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
+		delegateComponentFactory.newConceptState(conceptId, effectiveTime, active, moduleId, definitionStatusId);
+	}
+
+	@Override
+	public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode, String typeId, String term, String caseSignificanceId) {
+		delegateComponentFactory.newDescriptionState(id, effectiveTime, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
+	}
+
+	@Override
+	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+		delegateComponentFactory.newRelationshipState(id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId);
+	}
+
+	@Override
+	public void newConcreteRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String value, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+		delegateComponentFactory.newConcreteRelationshipState(id, effectiveTime, active, moduleId, sourceId, value, relationshipGroup, typeId, characteristicTypeId, modifierId);
+	}
+
+	@Override
+	public void newReferenceSetMemberState(String filename, String[] fieldNames, String id, String effectiveTime, String active, String moduleId, String refsetId, String referencedComponentId, String... otherValues) {
+		delegateComponentFactory.newReferenceSetMemberState(filename, fieldNames, id, effectiveTime, active, moduleId, refsetId, referencedComponentId, otherValues);
+	}
+
+	@Override
+	public void newIdentifierState(String alternateIdentifier, String effectiveTime, String active, String moduleId, String identifierSchemeId, String referencedComponentId) {
+		delegateComponentFactory.newIdentifierState(alternateIdentifier, effectiveTime, active, moduleId, identifierSchemeId, referencedComponentId);
+	}
+}
@@ -0,0 +1,143 @@
+package org.ihtsdo.otf.snomedboot.factory.implementation.standard;
+
+import it.unimi.dsi.fastutil.longs.AbstractLongSet;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.ihtsdo.otf.snomedboot.domain.Concept;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the ancestors of concepts by walking the is-a hierarchy iteratively, so deep hierarchies can not overflow the stack.
+ * The ancestors of every concept walked are remembered, so concepts reached by several paths, and concepts that share ancestors
+ * with a concept collected earlier, are only walked once. Reuse one collector across concepts while the hierarchy is unchanged.
+ * Safe for use by multiple threads.
+ */
+final class AncestorCollector {
+
+	private final Map<ConceptImpl, long[]> inferredAncestors = new ConcurrentHashMap<>();
+	private final Map<ConceptImpl, long[]> statedAncestors = new ConcurrentHashMap<>();
+
+	/**
+	 * @return The sorted ancestor ids of the concept
+	 * @throws IllegalStateException if an active relationship is found pointing to an inactive parent concept
+	 * or if an ancestor loop is found.
+	 */
+	long[] collectAncestorIds(ConceptImpl concept, boolean inferred) throws IllegalStateException {
+		Map<ConceptImpl, long[]> memo = inferred ? inferredAncestors : statedAncestors;
+		long[] ancestors = memo.get(concept);
+		if (ancestors != null) {
+			return ancestors;
+		}
+
+		// The current path, kept as a list for the loop message and as a set for fast loop checks
+		List<Long> path = new ArrayList<>();
+		LongOpenHashSet onPath = new LongOpenHashSet();
+		Deque<Frame> frames = new ArrayDeque<>();
+		frames.push(new Frame(concept, inferred));
+		path.add(concept.getId());
+		onPath.add(concept.getId().longValue());
+		while (true) {
+			Frame frame = frames.peek();
+			if (frame.parents.hasNext()) {
+				ConceptImpl parent = (ConceptImpl) frame.parents.next();
+				if (!parent.isActive()) {
+					throw new IllegalStateException("Is-a relationship points to inactive parent concept: " + frame.concept.getId() + " -> " + parent.getId());
+				}
+				final Long parentId = parent.getId();
+				if (onPath.contains(parentId.longValue())) {
+					path.add(parentId);
+					throw new IllegalStateException("Ancestor loop detected: " + path);
+				}
+				frame.ancestors.add(parentId.longValue());
+				long[] parentAncestors = memo.get(parent);
+				if (parentAncestors != null) {
+					for (long ancestor : parentAncestors) {
+						frame.ancestors.add(ancestor);
+					}
+				} else {
+					frames.push(new Frame(parent, inferred));
+					path.add(parentId);
+					onPath.add(parentId.longValue());
+				}
+			} else {
+				frames.pop();
+				long[] frameAncestors = frame.ancestors.toLongArray();
+				Arrays.sort(frameAncestors);
+				memo.put(frame.concept, frameAncestors);
+				path.remove(path.size() - 1);
+				onPath.remove(frame.concept.getId().longValue());
+				Frame child = frames.peek();
+				if (child == null) {
+					return frameAncestors;
+				}
+				for (long ancestor : frameAncestors) {
+					child.ancestors.add(ancestor);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return An immutable set of the ancestor ids of the concept
+	 * @throws IllegalStateException see collectAncestorIds
+	 */
+	Set<Long> getAncestorIds(ConceptImpl concept, boolean inferred) throws IllegalStateException {
+		return new SortedIdSet(collectAncestorIds(concept, inferred));
+	}
+
+	private static final class Frame {
+
+		private final ConceptImpl concept;
+		private final Iterator<Concept> parents;
+		private final LongOpenHashSet ancestors = new LongOpenHashSet();
+
+		private Frame(ConceptImpl concept, boolean inferred) {
+			this.concept = concept;
+			this.parents = (inferred ? concept.getInferredParents() : concept.getStatedParents()).iterator();
+		}
+	}
+
+	/**
+	 * Immutable set over sorted ids.
+	 */
+	private static final class SortedIdSet extends AbstractLongSet {
+
+		private final long[] ids;
+
+		private SortedIdSet(long[] ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		public boolean contains(long id) {
+			return Arrays.binarySearch(ids, id) >= 0;
+		}
+
+		@Override
+		public int size() {
+			return ids.length;
+		}
+
+		@Override
+		public LongIterator iterator() {
+			return new LongIterator() {
+				private int next;
+
+				@Override
+				public boolean hasNext() {
+					return next < ids.length;
+				}
+
+				@Override
+				public long nextLong() {
+					if (next >= ids.length) {
+						throw new NoSuchElementException();
+					}
+					return ids[next++];
+				}
+			};
+		}
+	}
+}
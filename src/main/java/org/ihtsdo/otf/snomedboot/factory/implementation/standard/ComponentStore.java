@@ -1,15 +1,35 @@
 package org.ihtsdo.otf.snomedboot.factory.implementation.standard;
 
+import com.google.common.collect.Iterators;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
+/**
+ * Concepts held by id. Safe to populate from the multiple threads of a multi-threaded import.
+ * Concepts are spread over shards by id, each shard having its own lock, so that loading threads rarely contend.
+ * Changes to a single concept are synchronized by the concept itself, see ConceptImpl.
+ * The map returned by getConcepts supports concurrent lookups while loading. Iterate it once loading has completed.
+ */
 public class ComponentStore {
 
+	private static final int SHARD_BITS = 6;
+	private static final int SHARD_COUNT = 1 << SHARD_BITS;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private final Long2ObjectOpenHashMap<ConceptImpl>[] shards = new Long2ObjectOpenHashMap[SHARD_COUNT];
 	private final Map<Long, ConceptImpl> concepts;
+	private volatile HierarchyIndex hierarchyIndex;
+	private volatile AncestorCollector ancestorCollector;
 
 	public ComponentStore() {
-		concepts = new Long2ObjectOpenHashMap<>();
+		for (int i = 0; i < SHARD_COUNT; i++) {
+			shards[i] = new Long2ObjectOpenHashMap<>();
+		}
+		concepts = new ConceptMap();
 	}
 
 	public Map<Long, ConceptImpl> getConcepts() {
@@ -17,7 +37,237 @@ public class ComponentStore {
 	}
 
 	public ConceptImpl addConcept(ConceptImpl concept) {
-		concepts.put(concept.getId(), concept);
+		Long2ObjectOpenHashMap<ConceptImpl> shard = getShard(concept.getId());
+		synchronized (shard) {
+			shard.put(concept.getId().longValue(), concept);
+		}
 		return concept;
 	}
+
+	/**
+	 * @return The concept with this id, created without state if it has not been added yet.
+	 */
+	public ConceptImpl getOrCreateConcept(long id) {
+		Long2ObjectOpenHashMap<ConceptImpl> shard = getShard(id);
+		synchronized (shard) {
+			ConceptImpl concept = shard.get(id);
+			if (concept == null) {
+				concept = new ConceptImpl(id);
+				shard.put(id, concept);
+			}
+			return concept;
+		}
+	}
+
+	/**
+	 * Precompute the transitive closure of the inferred and stated hierarchies.
+	 * Ancestor and descendant lookups on the concepts then return precomputed immutable sets rather than walking the hierarchy.
+	 * Call once loading has completed. The index must be cleared before the hierarchy is changed again.
+	 */
+	public void buildHierarchyIndex() {
+		clearHierarchyIndex();
+		hierarchyIndex = HierarchyIndex.build(concepts.values(), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Computes the ancestors, and optionally the descendants, of every concept in one pass on the common fork-join pool.
+	 * @see #materialiseHierarchy(boolean, boolean, ForkJoinPool)
+	 */
+	public HierarchyClosure materialiseHierarchy(boolean inferred, boolean includeDescendants) {
+		return materialiseHierarchy(inferred, includeDescendants, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Computes the ancestors, and optionally the descendants, of every concept in one pass, for consumers that need them all.
+	 * Concepts are processed in topological order, in parallel on the given pool, reusing the results of their parents.
+	 * The closure of the hierarchy index is returned if one has been built. Call once loading has completed.
+	 * @return An immutable closure that can be handed to other threads
+	 */
+	public HierarchyClosure materialiseHierarchy(boolean inferred, boolean includeDescendants, ForkJoinPool pool) {
+		HierarchyIndex index = hierarchyIndex;
+		if (index != null) {
+			return index.getClosure(inferred);
+		}
+		return HierarchyClosure.build(new ConceptPositions(concepts.values()), inferred, includeDescendants, pool);
+	}
+
+	/**
+	 * Discard the hierarchy index and any ancestors remembered by getAncestorIds. Call before changing the hierarchy.
+	 */
+	public void clearHierarchyIndex() {
+		ancestorCollector = null;
+		if (hierarchyIndex != null) {
+			hierarchyIndex = null;
+			for (ConceptImpl concept : concepts.values()) {
+				concept.setHierarchyIndex(null, 0);
+			}
+		}
+	}
+
+	/**
+	 * Tests if ancestorId is an ancestor of conceptId, a concept is not subsumed by itself.
+	 * With a hierarchy index this answers without allocating, using interval labels and falling back to a binary search
+	 * of the ancestor closure for concepts with multiple inheritance. Without an index the ancestors of the concept are collected
+	 * and remembered, see getAncestorIds.
+	 * @return false if either concept is not in the store
+	 * @throws IllegalStateException if collecting the ancestors of the concept throws, see ConceptImpl
+	 */
+	public boolean isSubsumedBy(long conceptId, long ancestorId, boolean inferred) throws IllegalStateException {
+		HierarchyIndex index = hierarchyIndex;
+		if (index != null) {
+			int position = index.getPosition(conceptId);
+			int ancestorPosition = index.getPosition(ancestorId);
+			if (position == -1 || ancestorPosition == -1) {
+				return false;
+			}
+			int result = index.isSubsumedBy(position, ancestorPosition, inferred);
+			if (result != HierarchyIndex.UNKNOWN) {
+				return result == HierarchyIndex.SUBSUMED;
+			}
+		}
+		ConceptImpl concept = concepts.get(conceptId);
+		if (concept == null) {
+			return false;
+		}
+		return Arrays.binarySearch(getAncestorCollector().collectAncestorIds(concept, inferred), ancestorId) >= 0;
+	}
+
+	/**
+	 * The ancestors of the concept, from the hierarchy index if built. Otherwise the ancestors are collected and remembered,
+	 * so that later calls for this concept or any concept sharing its ancestors reuse them until clearHierarchyIndex is called.
+	 * @return An immutable set of ancestor ids or null if the concept is not in the store
+	 * @throws IllegalStateException if an active relationship is found pointing to an inactive parent concept
+	 * or if an ancestor loop is found.
+	 */
+	public Set<Long> getAncestorIds(long conceptId, boolean inferred) throws IllegalStateException {
+		ConceptImpl concept = concepts.get(conceptId);
+		if (concept == null) {
+			return null;
+		}
+		HierarchyIndex index = hierarchyIndex;
+		if (index != null) {
+			Set<Long> ancestorIds = index.getAncestorIds(index.getPosition(conceptId), inferred);
+			if (ancestorIds != null) {
+				return ancestorIds;
+			}
+		}
+		return getAncestorCollector().getAncestorIds(concept, inferred);
+	}
+
+	private AncestorCollector getAncestorCollector() {
+		AncestorCollector collector = ancestorCollector;
+		if (collector == null) {
+			collector = new AncestorCollector();
+			ancestorCollector = collector;
+		}
+		return collector;
+	}
+
+	/**
+	 * Writes the content of the store to a binary image file that readImage can load much faster than the release files.
+	 * Call once loading has completed.
+	 * @param key identifies the content of the store, for example a digest of the release files it was loaded from.
+	 * The image is only read back with the same key.
+	 * @throws IOException if writing fails or a concept refers to a concept that is not in the store
+	 */
+	public void writeImage(Path file, byte[] key) throws IOException {
+		ComponentStoreImage.write(this, file, key);
+	}
+
+	/**
+	 * Adds the concepts of an image written by writeImage to the store. The image is memory mapped where possible.
+	 * The hierarchy index is not held in the image, build it again if required.
+	 * @return false, leaving the store unchanged, if the file does not exist, was written with a different key or by a different version
+	 * of this library.
+	 */
+	public boolean readImage(Path file, byte[] key) throws IOException {
+		return ComponentStoreImage.read(this, file, key);
+	}
+
+	public boolean isHierarchyIndexed() {
+		return hierarchyIndex != null;
+	}
+
+	private Long2ObjectOpenHashMap<ConceptImpl> getShard(long id) {
+		// Spread the id bits because SCTIDs end with a partition id and check digit
+		return shards[(int) ((id * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - SHARD_BITS))];
+	}
+
+	private final class ConceptMap extends AbstractMap<Long, ConceptImpl> {
+
+		@Override
+		public ConceptImpl get(Object key) {
+			if (!(key instanceof Long)) {
+				return null;
+			}
+			long id = (Long) key;
+			Long2ObjectOpenHashMap<ConceptImpl> shard = getShard(id);
+			synchronized (shard) {
+				return shard.get(id);
+			}
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public ConceptImpl put(Long key, ConceptImpl value) {
+			if (!key.equals(value.getId())) {
+				throw new IllegalArgumentException("Concept " + value.getId() + " can not be stored against id " + key);
+			}
+			Long2ObjectOpenHashMap<ConceptImpl> shard = getShard(key);
+			synchronized (shard) {
+				return shard.put(key.longValue(), value);
+			}
+		}
+
+		@Override
+		public ConceptImpl remove(Object key) {
+			if (!(key instanceof Long)) {
+				return null;
+			}
+			long id = (Long) key;
+			Long2ObjectOpenHashMap<ConceptImpl> shard = getShard(id);
+			synchronized (shard) {
+				return shard.remove(id);
+			}
+		}
+
+		@Override
+		public int size() {
+			int size = 0;
+			for (Long2ObjectOpenHashMap<ConceptImpl> shard : shards) {
+				synchronized (shard) {
+					size += shard.size();
+				}
+			}
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			for (Long2ObjectOpenHashMap<ConceptImpl> shard : shards) {
+				synchronized (shard) {
+					shard.clear();
+				}
+			}
+		}
+
+		@Override
+		public Set<Entry<Long, ConceptImpl>> entrySet() {
+			return new AbstractSet<>() {
+				@Override
+				public Iterator<Entry<Long, ConceptImpl>> iterator() {
+					return Iterators.concat(Iterators.transform(Arrays.asList(shards).iterator(), shard -> shard.long2ObjectEntrySet().iterator()));
+				}
+
+				@Override
+				public int size() {
+					return ConceptMap.this.size();
+				}
+			};
+		}
+	}
 }
@@ -1,31 +1,96 @@
 package org.ihtsdo.otf.snomedboot.factory.implementation.standard;
 
+import org.ihtsdo.otf.snomedboot.domain.ConceptConstants;
+import org.ihtsdo.otf.snomedboot.domain.ConcreteRelationship;
+import org.ihtsdo.otf.snomedboot.domain.Relationship;
 import org.ihtsdo.otf.snomedboot.factory.FactoryUtils;
 import org.ihtsdo.otf.snomedboot.factory.HighLevelComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.ImpotentComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
+import org.ihtsdo.otf.snomedboot.factory.PrimitiveComponentFactory;
 
-public class ComponentStoreComponentFactoryImpl extends ImpotentComponentFactory implements HighLevelComponentFactory {
+import java.util.Objects;
+
+import static org.ihtsdo.otf.snomedboot.factory.FactoryUtils.formatActive;
+import static org.ihtsdo.otf.snomedboot.factory.FactoryUtils.formatEffectiveTime;
+
+/**
+ * Populates a ComponentStore. Safe to use with a multi-threaded import.
+ *
+ * After setUpdating, loading updates the concepts already in the store, for example when applying a Delta to a store read from an image.
+ * Rows replace the state of the concept or the component with the same id rather than adding another. Attribute map values and parents
+ * are removed when the last active relationship giving them is inactivated, refset membership is removed by inactive refset members.
+ * While updating, parents and children are maintained as each relationship is stored, under the locks of its source and destination
+ * concepts taken in concept id order, so the remove parent and child methods do nothing. Rows of a Delta read in parallel can then not
+ * leave a parent removed that an active relationship still gives, and is-a rows in both directions between two concepts can not deadlock.
+ */
+public class ComponentStoreComponentFactoryImpl extends ImpotentComponentFactory implements HighLevelComponentFactory, PrimitiveComponentFactory {
 
 	private final ComponentStore componentStore;
+	private boolean buildHierarchyIndex;
+	private boolean updating;
+	private boolean inferredAttributeMap;
+	private boolean statedAttributeMap;
 
 	public ComponentStoreComponentFactoryImpl(ComponentStore componentStore) {
 		this.componentStore = componentStore;
 	}
 
+	/**
+	 * Build the store hierarchy index when loading completes, see ComponentStore.buildHierarchyIndex.
+	 */
+	public ComponentStoreComponentFactoryImpl setBuildHierarchyIndex(boolean buildHierarchyIndex) {
+		this.buildHierarchyIndex = buildHierarchyIndex;
+		return this;
+	}
+
+	/**
+	 * Update the concepts already in the store with the loaded rows, see the class comment. Not safe to change while loading.
+	 * @param loadingProfile Profile of the update, its attribute map options are maintained as relationships are stored.
+	 * Null to add the loaded components to the store, the default.
+	 */
+	public ComponentStoreComponentFactoryImpl setUpdating(LoadingProfile loadingProfile) {
+		this.updating = loadingProfile != null;
+		this.inferredAttributeMap = updating && loadingProfile.isInferredAttributeMapOnConcept();
+		this.statedAttributeMap = updating && loadingProfile.isStatedAttributeMapOnConcept();
+		return this;
+	}
+
+	public ComponentStore getComponentStore() {
+		return componentStore;
+	}
+
+	@Override
+	public void loadingComponentsStarting() {
+		// The hierarchy may change
+		componentStore.clearHierarchyIndex();
+	}
+
+	@Override
+	public void loadingComponentsCompleted() {
+		if (buildHierarchyIndex) {
+			componentStore.buildHierarchyIndex();
+		}
+	}
+
 	@Override
 	public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
-		componentStore.addConcept(new ConceptImpl(conceptId, effectiveTime, FactoryUtils.parseActive(active), moduleId, definitionStatusId));
+		if (updating) {
+			getConceptForReference(conceptId).setState(effectiveTime, FactoryUtils.parseActive(active), moduleId, definitionStatusId);
+		} else {
+			componentStore.addConcept(new ConceptImpl(conceptId, effectiveTime, FactoryUtils.parseActive(active), moduleId, definitionStatusId));
+		}
 	}
 
 	@Override
 	public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode, String typeId, String term, String caseSignificanceId) {
-		getConceptForReference(conceptId).addDescription(new DescriptionImpl(id, FactoryUtils.parseActive(active), term, conceptId));
+		addDescription(getConceptForReference(conceptId), new DescriptionImpl(id, FactoryUtils.parseActive(active), term, conceptId));
 	}
 
 	@Override
 	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId,
 									 String destinationId, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
-		getConceptForReference(sourceId).addRelationship(new RelationshipImpl(id, effectiveTime, active, moduleId, sourceId,
+		addRelationship(getConceptForReference(sourceId), new RelationshipImpl(id, effectiveTime, active, moduleId, sourceId,
 				destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId));
 	}
 
@@ -33,10 +98,150 @@ public class ComponentStoreComponentFactoryImpl extends ImpotentComponentFactory
 	public void newConcreteRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String value, String relationshipGroup,
 			String typeId, String characteristicTypeId, String modifierId) {
 
-		getConceptForReference(sourceId).addConcreteRelationship(new ConcreteRelationshipImpl(id, effectiveTime, active, moduleId, sourceId,
+		addConcreteRelationship(getConceptForReference(sourceId), new ConcreteRelationshipImpl(id, effectiveTime, active, moduleId, sourceId,
 				value, relationshipGroup, typeId, characteristicTypeId, modifierId));
 	}
 
+	@Override
+	public void newConceptState(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
+		if (updating) {
+			getConceptForReference(conceptId).setState(effectiveTime, active, moduleId, definitionStatusId);
+		} else {
+			componentStore.addConcept(new ConceptImpl(conceptId, effectiveTime, active, moduleId, definitionStatusId));
+		}
+	}
+
+	@Override
+	public void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, String languageCode, long typeId, String term, long caseSignificanceId) {
+		addDescription(getConceptForReference(conceptId), new DescriptionImpl(id, active, term, conceptId));
+	}
+
+	@Override
+	public void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId,
+									 long destinationId, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		addRelationship(getConceptForReference(sourceId), new RelationshipImpl(Long.toString(id), formatEffectiveTime(effectiveTime), formatActive(active),
+				Long.toString(moduleId), Long.toString(sourceId), Long.toString(destinationId), Integer.toString(relationshipGroup),
+				Long.toString(typeId), Long.toString(characteristicTypeId), Long.toString(modifierId)));
+	}
+
+	@Override
+	public void newConcreteRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, String value, int relationshipGroup,
+			long typeId, long characteristicTypeId, long modifierId) {
+
+		addConcreteRelationship(getConceptForReference(sourceId), new ConcreteRelationshipImpl(Long.toString(id), formatEffectiveTime(effectiveTime),
+				formatActive(active), Long.toString(moduleId), Long.toString(sourceId), value, Integer.toString(relationshipGroup),
+				Long.toString(typeId), Long.toString(characteristicTypeId), Long.toString(modifierId)));
+	}
+
+	private void addDescription(ConceptImpl concept, DescriptionImpl description) {
+		if (updating) {
+			concept.putDescription(description);
+		} else {
+			concept.addDescription(description);
+		}
+	}
+
+	private void addRelationship(ConceptImpl concept, RelationshipImpl relationship) {
+		if (!updating) {
+			concept.addRelationship(relationship);
+			return;
+		}
+		if (!ConceptConstants.isA.equals(relationship.getTypeId())) {
+			synchronized (concept) {
+				storeRelationship(concept, relationship, null);
+			}
+			return;
+		}
+		ConceptImpl parent = getConceptForReference(relationship.getDestinationId());
+		// Locks are taken in concept id order so that rows X -> Y and Y -> X on other threads can not deadlock
+		ConceptImpl first = concept.getId() <= parent.getId() ? concept : parent;
+		ConceptImpl second = first == concept ? parent : concept;
+		synchronized (first) {
+			synchronized (second) {
+				storeRelationship(concept, relationship, parent);
+			}
+		}
+	}
+
+	/**
+	 * Called holding the locks of the concept and of the parent, which is null if the relationship is not an is-a relationship.
+	 */
+	private void storeRelationship(ConceptImpl concept, RelationshipImpl relationship, ConceptImpl parent) {
+		Relationship replaced = concept.putRelationship(relationship);
+		if (replaced != null && isActive(replaced.getActive())
+				&& !hasActiveRelationship(concept, replaced.getTypeId(), replaced.getDestinationId(), replaced.getCharacteristicTypeId())) {
+			// The last relationship giving this attribute was inactivated
+			if (ConceptConstants.INFERRED_RELATIONSHIP.equals(replaced.getCharacteristicTypeId())) {
+				concept.removeInferredAttribute(replaced.getTypeId(), replaced.getDestinationId());
+			} else {
+				concept.removeStatedAttribute(replaced.getTypeId(), replaced.getDestinationId());
+			}
+		}
+		boolean inferred = ConceptConstants.INFERRED_RELATIONSHIP.equals(relationship.getCharacteristicTypeId());
+		boolean active = isActive(relationship.getActive());
+		if (active && (inferred ? inferredAttributeMap : statedAttributeMap)) {
+			// Added again in case a row of another thread removed it after this row was given to the high level factory
+			if (inferred) {
+				concept.addInferredAttribute(relationship.getTypeId(), relationship.getDestinationId());
+			} else {
+				concept.addStatedAttribute(relationship.getTypeId(), relationship.getDestinationId());
+			}
+		}
+		if (parent != null) {
+			if (active || hasActiveRelationship(concept, relationship.getTypeId(), relationship.getDestinationId(), relationship.getCharacteristicTypeId())) {
+				if (inferred) {
+					concept.addInferredParent(parent);
+					parent.addInferredChild(concept);
+				} else {
+					concept.addStatedParent(parent);
+					parent.addStatedChild(concept);
+				}
+			} else {
+				// No active is-a relationship to the parent remains
+				if (inferred) {
+					concept.removeInferredParent(parent);
+					parent.removeInferredChild(concept);
+				} else {
+					concept.removeStatedParent(parent);
+					parent.removeStatedChild(concept);
+				}
+			}
+		}
+	}
+
+	private void addConcreteRelationship(ConceptImpl concept, ConcreteRelationshipImpl relationship) {
+		if (!updating) {
+			concept.addConcreteRelationship(relationship);
+			return;
+		}
+		synchronized (concept) {
+			ConcreteRelationship replaced = concept.putConcreteRelationship(relationship);
+			if (replaced != null && isActive(replaced.getActive()) && concept.getConcreteRelationships().stream()
+					.noneMatch(other -> isActive(other.getActive()) && Objects.equals(other.getTypeId(), replaced.getTypeId())
+							&& Objects.equals(other.getValue(), replaced.getValue()))) {
+				concept.removeInferredConcreteAttribute(replaced.getTypeId(), replaced.getValue());
+			}
+		}
+	}
+
+	/**
+	 * @return True if the concept has an active relationship of this type to the destination with the same inferred or stated characteristic
+	 */
+	private boolean hasActiveRelationship(ConceptImpl concept, String typeId, String destinationId, String characteristicTypeId) {
+		boolean inferred = ConceptConstants.INFERRED_RELATIONSHIP.equals(characteristicTypeId);
+		for (Relationship relationship : concept.getRelationships()) {
+			if (isActive(relationship.getActive()) && inferred == ConceptConstants.INFERRED_RELATIONSHIP.equals(relationship.getCharacteristicTypeId())
+					&& Objects.equals(relationship.getTypeId(), typeId) && Objects.equals(relationship.getDestinationId(), destinationId)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isActive(String active) {
+		return "1".equals(active);
+	}
+
 	@Override
 	public void addConceptFSN(String conceptId, String term) {
 		getConceptForReference(conceptId).setFsn(term);
@@ -54,14 +259,30 @@ public class ComponentStoreComponentFactoryImpl extends ImpotentComponentFactory
 
 	@Override
 	public void removeInferredConceptParent(String sourceId, String parentId) {
+		if (updating) {
+			// Removed when the inactive relationship is stored
+			return;
+		}
 		getConceptForReference(sourceId).removeInferredParent(getConceptForReference(parentId));
 	}
 
 	@Override
 	public void removeStatedConceptParent(String sourceId, String parentId) {
+		if (updating) {
+			// Removed when the inactive relationship is stored
+			return;
+		}
 		getConceptForReference(sourceId).removeStatedParent(getConceptForReference(parentId));
 	}
 	
+	@Override
+	public void removeConceptReferencedInRefsetId(String refsetId, String conceptId) {
+		// Another member may make the concept a member while loading a snapshot, so membership is only removed when updating
+		if (updating) {
+			getConceptForReference(conceptId).removeMemberOfRefsetId(Long.parseLong(refsetId));
+		}
+	}
+
 	@Override
 	public void addInferredConceptChild(String sourceId, String destinationId) {
 		getConceptForReference(destinationId).addInferredChild(getConceptForReference(sourceId));
@@ -74,11 +295,17 @@ public class ComponentStoreComponentFactoryImpl extends ImpotentComponentFactory
 
 	@Override
 	public void removeInferredConceptChild(String sourceId, String destinationId) {
+		if (updating) {
+			return;
+		}
 		getConceptForReference(destinationId).removeInferredChild(getConceptForReference(sourceId));
 	}
 
 	@Override
 	public void removeStatedConceptChild(String sourceId, String destinationId) {
+		if (updating) {
+			return;
+		}
 		getConceptForReference(destinationId).removeStatedChild(getConceptForReference(sourceId));
 	}
 
@@ -103,13 +330,11 @@ public class ComponentStoreComponentFactoryImpl extends ImpotentComponentFactory
 	}
 
 	private ConceptImpl getConceptForReference(String id) {
-		ConceptImpl concept = componentStore.getConcepts().get(Long.parseLong(id));
-		if (concept == null) {
-			// Could throw exception here depending on implementation
-			concept = new ConceptImpl(id);
-			componentStore.addConcept(concept);
-		}
-		return concept;
+		return getConceptForReference(Long.parseLong(id));
+	}
 
+	private ConceptImpl getConceptForReference(long id) {
+		// Could throw exception here if the concept does not exist, depending on implementation
+		return componentStore.getOrCreateConcept(id);
 	}
 }
@@ -0,0 +1,434 @@
+package org.ihtsdo.otf.snomedboot.factory.implementation.standard;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.ihtsdo.otf.snomedboot.domain.Concept;
+import org.ihtsdo.otf.snomedboot.domain.ConcreteRelationship;
+import org.ihtsdo.otf.snomedboot.domain.Description;
+import org.ihtsdo.otf.snomedboot.domain.Relationship;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Binary image of the content of a ComponentStore.
+ * Every distinct string is written once to a string table and referenced by number, so strings repeated across components,
+ * like module and type ids, are shared again when the image is read. Concepts refer to each other by their number in the image.
+ * The image is memory mapped to read it when it fits in a single mapping, otherwise it is read through a buffer.
+ * The file starts with a key that identifies the content it was built from.
+ */
+final class ComponentStoreImage {
+
+	private static final int MAGIC = 0x53424349;
+	// Version 2 images always hold the hierarchy, attributes and FSNs set by the high level adapter
+	private static final int FORMAT_VERSION = 2;
+	private static final int NULL = -1;
+
+	private static final int DESCRIPTION_ID = 1;
+	private static final int DESCRIPTION_ACTIVE = 2;
+	private static final int DESCRIPTION_CONCEPT_ID = 4;
+
+	private ComponentStoreImage() {
+	}
+
+	/**
+	 * Writes to a temporary file which is then moved into place so that a partly written image is never read.
+	 * @throws IOException if writing fails or a concept refers to a concept that is not in the store
+	 */
+	static void write(ComponentStore componentStore, Path file, byte[] key) throws IOException {
+		// Concepts are numbered by their position in id order
+		ConceptPositions positions = new ConceptPositions(componentStore.getConcepts().values());
+		ConceptImpl[] concepts = new ConceptImpl[positions.size()];
+		for (int i = 0; i < concepts.length; i++) {
+			concepts[i] = positions.getConcept(i);
+		}
+		StringTable strings = new StringTable(concepts);
+
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try (ImageOutput out = new ImageOutput(FileChannel.open(tempFile, StandardOpenOption.WRITE))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeInt(key.length);
+				out.write(key);
+
+				out.writeInt(strings.values.size());
+				for (String value : strings.values) {
+					byte[] bytes = value.getBytes(UTF_8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+
+				out.writeInt(concepts.length);
+				for (ConceptImpl concept : concepts) {
+					out.writeLong(concept.getId());
+					out.writeInt(concept.getEffectiveTimeInt());
+					out.writeBoolean(concept.isActive());
+					out.writeLong(concept.getModuleIdLong());
+					out.writeLong(concept.getDefinitionStatusIdLong());
+					out.writeInt(strings.get(concept.getFsn()));
+				}
+				for (ConceptImpl concept : concepts) {
+					writeAttributes(concept.getInferredAttributes(), strings, out);
+					writeAttributes(concept.getInferredConcreteAttributes(), strings, out);
+					writeAttributes(concept.getStatedAttributes(), strings, out);
+					writeConcepts(concept, concept.getInferredParents(), positions, out);
+					writeConcepts(concept, concept.getStatedParents(), positions, out);
+					writeConcepts(concept, concept.getInferredChildren(), positions, out);
+					writeConcepts(concept, concept.getStatedChildren(), positions, out);
+
+					Set<Long> memberOfRefsetIds = concept.getMemberOfRefsetIds();
+					out.writeInt(memberOfRefsetIds.size());
+					for (Long refsetId : memberOfRefsetIds) {
+						out.writeLong(refsetId);
+					}
+
+					List<Relationship> relationships = concept.getRelationships();
+					out.writeInt(relationships.size());
+					for (Relationship relationship : relationships) {
+						for (String value : relationshipValues(relationship)) {
+							out.writeInt(strings.get(value));
+						}
+					}
+
+					List<ConcreteRelationship> concreteRelationships = concept.getConcreteRelationships();
+					out.writeInt(concreteRelationships.size());
+					for (ConcreteRelationship relationship : concreteRelationships) {
+						for (String value : concreteRelationshipValues(relationship)) {
+							out.writeInt(strings.get(value));
+						}
+					}
+
+					List<Description> descriptions = concept.getDescriptions();
+					out.writeInt(descriptions.size());
+					for (Description description : descriptions) {
+						Long id = description.getId();
+						Long conceptId = description.getConceptId();
+						out.writeByte((id != null ? DESCRIPTION_ID : 0) | (description.isActive() ? DESCRIPTION_ACTIVE : 0)
+								| (conceptId != null ? DESCRIPTION_CONCEPT_ID : 0));
+						out.writeLong(id != null ? id : 0);
+						out.writeInt(strings.get(description.getTerm()));
+						out.writeLong(conceptId != null ? conceptId : 0);
+					}
+				}
+			}
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	/**
+	 * Adds the concepts of the image to the store.
+	 * @return false, leaving the store unchanged, if the file does not exist or was built from different content.
+	 */
+	static boolean read(ComponentStore componentStore, Path file, byte[] key) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ImageInput in = new ImageInput(channel);
+			if (!in.hasRemaining(12) || in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != key.length
+					|| !in.hasRemaining(key.length) || !Arrays.equals(key, in.readBytes(key.length))) {
+				return false;
+			}
+
+			String[] strings = new String[in.readInt()];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = new String(in.readBytes(in.readInt()), UTF_8);
+			}
+
+			ConceptImpl[] concepts = new ConceptImpl[in.readInt()];
+			for (int i = 0; i < concepts.length; i++) {
+				concepts[i] = new ConceptImpl(in.readLong(), in.readInt(), in.readBoolean(), in.readLong(), in.readLong());
+				concepts[i].setFsn(string(strings, in.readInt()));
+			}
+			for (ConceptImpl concept : concepts) {
+				for (int count = in.readInt(); count > 0; count--) {
+					String type = string(strings, in.readInt());
+					for (int values = in.readInt(); values > 0; values--) {
+						concept.addInferredAttribute(type, string(strings, in.readInt()));
+					}
+				}
+				for (int count = in.readInt(); count > 0; count--) {
+					String type = string(strings, in.readInt());
+					for (int values = in.readInt(); values > 0; values--) {
+						concept.addInferredConcreteAttribute(type, string(strings, in.readInt()));
+					}
+				}
+				for (int count = in.readInt(); count > 0; count--) {
+					String type = string(strings, in.readInt());
+					for (int values = in.readInt(); values > 0; values--) {
+						concept.addStatedAttribute(type, string(strings, in.readInt()));
+					}
+				}
+				for (int count = in.readInt(); count > 0; count--) {
+					concept.addInferredParent(concepts[in.readInt()]);
+				}
+				for (int count = in.readInt(); count > 0; count--) {
+					concept.addStatedParent(concepts[in.readInt()]);
+				}
+				for (int count = in.readInt(); count > 0; count--) {
+					concept.addInferredChild(concepts[in.readInt()]);
+				}
+				for (int count = in.readInt(); count > 0; count--) {
+					concept.addStatedChild(concepts[in.readInt()]);
+				}
+				for (int count = in.readInt(); count > 0; count--) {
+					concept.addMemberOfRefsetId(in.readLong());
+				}
+				for (int count = in.readInt(); count > 0; count--) {
+					concept.addRelationship(new RelationshipImpl(string(strings, in.readInt()), string(strings, in.readInt()), string(strings, in.readInt()),
+							string(strings, in.readInt()), string(strings, in.readInt()), string(strings, in.readInt()), string(strings, in.readInt()),
+							string(strings, in.readInt()), string(strings, in.readInt()), string(strings, in.readInt())));
+				}
+				for (int count = in.readInt(); count > 0; count--) {
+					concept.addConcreteRelationship(new ConcreteRelationshipImpl(string(strings, in.readInt()), string(strings, in.readInt()),
+							string(strings, in.readInt()), string(strings, in.readInt()), string(strings, in.readInt()), string(strings, in.readInt()),
+							string(strings, in.readInt()), string(strings, in.readInt()), string(strings, in.readInt()), string(strings, in.readInt())));
+				}
+				for (int count = in.readInt(); count > 0; count--) {
+					int flags = in.readByte();
+					long id = in.readLong();
+					String term = string(strings, in.readInt());
+					long conceptId = in.readLong();
+					concept.addDescription((flags & DESCRIPTION_ID) != 0
+							? new DescriptionImpl(id, (flags & DESCRIPTION_ACTIVE) != 0, term, conceptId)
+							: new DescriptionImpl(term, (flags & DESCRIPTION_ACTIVE) != 0, (flags & DESCRIPTION_CONCEPT_ID) != 0 ? conceptId : null));
+				}
+			}
+			for (ConceptImpl concept : concepts) {
+				componentStore.addConcept(concept);
+			}
+			return true;
+		} catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+			throw new IOException("Component store image " + file + " is corrupt.", e);
+		}
+	}
+
+	private static void writeAttributes(Map<String, Set<String>> attributes, StringTable strings, ImageOutput out) throws IOException {
+		out.writeInt(attributes.size());
+		for (Map.Entry<String, Set<String>> entry : attributes.entrySet()) {
+			out.writeInt(strings.get(entry.getKey()));
+			out.writeInt(entry.getValue().size());
+			for (String value : entry.getValue()) {
+				out.writeInt(strings.get(value));
+			}
+		}
+	}
+
+	private static void writeConcepts(ConceptImpl concept, Set<Concept> related, ConceptPositions positions, ImageOutput out) throws IOException {
+		out.writeInt(related.size());
+		for (Concept relatedConcept : related) {
+			int number = positions.getPosition(relatedConcept.getId());
+			if (number == NULL) {
+				throw new IOException("Concept " + concept.getId() + " refers to concept " + relatedConcept.getId() + " which is not in the store.");
+			}
+			out.writeInt(number);
+		}
+	}
+
+	private static String[] relationshipValues(Relationship relationship) {
+		return new String[] {relationship.getId(), relationship.getEffectiveTime(), relationship.getActive(), relationship.getModuleId(),
+				relationship.getSourceId(), relationship.getDestinationId(), relationship.getRelationshipGroup(), relationship.getTypeId(),
+				relationship.getCharacteristicTypeId(), relationship.getModifierId()};
+	}
+
+	private static String[] concreteRelationshipValues(ConcreteRelationship relationship) {
+		return new String[] {relationship.getId(), relationship.getEffectiveTime(), relationship.getActive(), relationship.getModuleId(),
+				relationship.getSourceId(), relationship.getValue(), relationship.getRelationshipGroup(), relationship.getTypeId(),
+				relationship.getCharacteristicTypeId(), relationship.getModifierId()};
+	}
+
+	private static String string(String[] strings, int number) {
+		return number == NULL ? null : strings[number];
+	}
+
+	/**
+	 * Numbers every distinct string held by the concepts.
+	 */
+	private static final class StringTable {
+
+		private final Object2IntOpenHashMap<String> numbers = new Object2IntOpenHashMap<>();
+		private final List<String> values = new ArrayList<>();
+
+		private StringTable(ConceptImpl[] concepts) {
+			numbers.defaultReturnValue(NULL);
+			for (ConceptImpl concept : concepts) {
+				add(concept.getFsn());
+				for (Map<String, Set<String>> attributes : List.of(concept.getInferredAttributes(), concept.getInferredConcreteAttributes(), concept.getStatedAttributes())) {
+					for (Map.Entry<String, Set<String>> entry : attributes.entrySet()) {
+						add(entry.getKey());
+						entry.getValue().forEach(this::add);
+					}
+				}
+				for (Relationship relationship : concept.getRelationships()) {
+					for (String value : relationshipValues(relationship)) {
+						add(value);
+					}
+				}
+				for (ConcreteRelationship relationship : concept.getConcreteRelationships()) {
+					for (String value : concreteRelationshipValues(relationship)) {
+						add(value);
+					}
+				}
+				for (Description description : concept.getDescriptions()) {
+					add(description.getTerm());
+				}
+			}
+		}
+
+		private void add(String value) {
+			if (value != null && numbers.putIfAbsent(value, values.size()) == NULL) {
+				values.add(value);
+			}
+		}
+
+		private int get(String value) {
+			return value == null ? NULL : numbers.getInt(value);
+		}
+	}
+
+	/**
+	 * Writes the image through a buffer.
+	 */
+	private static final class ImageOutput implements Closeable {
+
+		private final FileChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocate(ImageInput.BUFFER_SIZE);
+
+		private ImageOutput(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		private void reserve(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+				if (buffer.capacity() < bytes) {
+					buffer = ByteBuffer.allocate(bytes);
+				}
+			}
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		private void writeInt(int value) throws IOException {
+			reserve(Integer.BYTES);
+			buffer.putInt(value);
+		}
+
+		private void writeLong(long value) throws IOException {
+			reserve(Long.BYTES);
+			buffer.putLong(value);
+		}
+
+		private void writeByte(int value) throws IOException {
+			reserve(Byte.BYTES);
+			buffer.put((byte) value);
+		}
+
+		private void writeBoolean(boolean value) throws IOException {
+			writeByte(value ? 1 : 0);
+		}
+
+		private void write(byte[] bytes) throws IOException {
+			reserve(bytes.length);
+			buffer.put(bytes);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads the image from a memory mapping of the whole file, or through a buffer when the file is too large to map at once.
+	 */
+	private static final class ImageInput {
+
+		private static final int BUFFER_SIZE = 1024 * 1024;
+
+		private final FileChannel channel;
+		private final boolean mapped;
+		private ByteBuffer buffer;
+
+		private ImageInput(FileChannel channel) throws IOException {
+			this.channel = channel;
+			long size = channel.size();
+			mapped = size <= Integer.MAX_VALUE;
+			if (mapped) {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			} else {
+				buffer = ByteBuffer.allocate(BUFFER_SIZE);
+				buffer.flip();
+			}
+		}
+
+		private boolean hasRemaining(int bytes) throws IOException {
+			if (buffer.remaining() < bytes && !mapped) {
+				fill(bytes);
+			}
+			return buffer.remaining() >= bytes;
+		}
+
+		private void require(int bytes) throws IOException {
+			if (!hasRemaining(bytes)) {
+				throw new EOFException("Component store image ends unexpectedly.");
+			}
+		}
+
+		private void fill(int bytes) throws IOException {
+			if (buffer.capacity() < bytes) {
+				buffer = ByteBuffer.allocate(bytes).put(buffer).flip();
+			}
+			buffer.compact();
+			while (buffer.position() < bytes && channel.read(buffer) != -1) {
+				// Read until enough bytes are buffered or the file ends
+			}
+			buffer.flip();
+		}
+
+		private int readInt() throws IOException {
+			require(Integer.BYTES);
+			return buffer.getInt();
+		}
+
+		private long readLong() throws IOException {
+			require(Long.BYTES);
+			return buffer.getLong();
+		}
+
+		private byte readByte() throws IOException {
+			require(Byte.BYTES);
+			return buffer.get();
+		}
+
+		private boolean readBoolean() throws IOException {
+			return readByte() != 0;
+		}
+
+		private byte[] readBytes(int length) throws IOException {
+			require(length);
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			return bytes;
+		}
+	}
+}
@@ -1,48 +1,70 @@
 package org.ihtsdo.otf.snomedboot.factory.implementation.standard;
 
+import com.google.common.collect.Maps;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import org.ihtsdo.otf.snomedboot.domain.Concept;
 import org.ihtsdo.otf.snomedboot.domain.ConcreteRelationship;
 import org.ihtsdo.otf.snomedboot.domain.Description;
 import org.ihtsdo.otf.snomedboot.domain.Relationship;
+import org.ihtsdo.otf.snomedboot.factory.FactoryUtils;
+import org.ihtsdo.otf.snomedboot.factory.PrimitiveComponentFactory;
 
 import java.util.*;
 
+/**
+ * Methods that add to or remove from a concept are synchronized so that a concept can be populated by several loading threads.
+ * Read the concept once loading has completed.
+ *
+ * The concept is held compactly because a store may hold every concept of a release. Ids and dates are held as primitives
+ * and formatted when requested. Collections are only created when the first value is added.
+ *
+ * Collection getters return unmodifiable views, whether or not a value has been added, use the add and remove methods to change them.
+ */
 public class ConceptImpl implements Concept {
 
-	private final Long id;
-	private String effectiveTime;
+	// Concept created from a reference, before or without a concept row
+	private static final int NO_STATE = -1;
+
+	private final long id;
+	private int effectiveTime = NO_STATE;
 	private boolean active;
-	private String moduleId;
-	private String definitionStatusId;
+	private long moduleId;
+	private long definitionStatusId;
 	private String fsn;
-	private final Map<String, Set<String>> inferredAttributes;
-	private final Map<String, Set<String>> inferredConcreteAttributes;
-	private final Map<String, Set<String>> statedAttributes;
-	private final Set<Concept> inferredParents;
-	private final Set<Concept> statedParents;
-	private final Set<Concept> inferredChildren;
-	private final Set<Concept> statedChildren;
-	private final Set<Long> memberOfRefsetIds;
-	private final List<Relationship> relationships;
-	private final List<ConcreteRelationship> concreteRelationships;
-	private final List<Description> descriptions;
+	private Map<String, Set<String>> inferredAttributes;
+	private Map<String, Set<String>> inferredConcreteAttributes;
+	private Map<String, Set<String>> statedAttributes;
+	private Set<Concept> inferredParents;
+	private Set<Concept> statedParents;
+	private Set<Concept> inferredChildren;
+	private Set<Concept> statedChildren;
+	private LongSet memberOfRefsetIds;
+	private List<Relationship> relationships;
+	private List<ConcreteRelationship> concreteRelationships;
+	private List<Description> descriptions;
+	private HierarchyIndex hierarchyIndex;
+	private int hierarchyIndexPosition;
 
 	public ConceptImpl(String id) {
-		this.id = Long.parseLong(id);
-		inferredAttributes = new HashMap<>();
-		inferredConcreteAttributes = new HashMap<>();
-		statedAttributes = new HashMap<>();
-		inferredParents = new HashSet<>();
-		statedParents = new HashSet<>();
-		inferredChildren = new HashSet<>();
-		statedChildren = new HashSet<>();
-		memberOfRefsetIds = new HashSet<>();
-		relationships = new ArrayList<>();
-		concreteRelationships = new ArrayList<>();
-		descriptions = new ArrayList<>();
+		this(Long.parseLong(id));
+	}
+
+	public ConceptImpl(long id) {
+		this.id = id;
 	}
 
 	public ConceptImpl(String conceptId, String effectiveTime, boolean active, String moduleId, String definitionStatusId) {
+		this(Long.parseLong(conceptId), effectiveTime, active, moduleId, definitionStatusId);
+	}
+
+	public ConceptImpl(long conceptId, String effectiveTime, boolean active, String moduleId, String definitionStatusId) {
+		this(conceptId, parseEffectiveTime(effectiveTime), active, parseId(moduleId), parseId(definitionStatusId));
+	}
+
+	public ConceptImpl(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
 		this(conceptId);
 		this.effectiveTime = effectiveTime;
 		this.active = active;
@@ -50,85 +72,152 @@ public class ConceptImpl implements Concept {
 		this.definitionStatusId = definitionStatusId;
 	}
 
-	public void addMemberOfRefsetId(Long refsetId) {
-		memberOfRefsetIds.add(refsetId);
+	/**
+	 * Replace the state of the concept, keeping its components and hierarchy.
+	 */
+	public synchronized void setState(int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
+		this.effectiveTime = effectiveTime;
+		this.active = active;
+		this.moduleId = moduleId;
+		this.definitionStatusId = definitionStatusId;
+	}
+
+	public synchronized void setState(String effectiveTime, boolean active, String moduleId, String definitionStatusId) {
+		setState(parseEffectiveTime(effectiveTime), active, parseId(moduleId), parseId(definitionStatusId));
+	}
+
+	public synchronized void addMemberOfRefsetId(Long refsetId) {
+		if (memberOfRefsetIds == null) {
+			memberOfRefsetIds = new LongOpenHashSet(2);
+		}
+		memberOfRefsetIds.add(refsetId.longValue());
+	}
+
+	public synchronized void removeMemberOfRefsetId(Long refsetId) {
+		if (memberOfRefsetIds != null) {
+			memberOfRefsetIds.remove(refsetId.longValue());
+		}
 	}
 
 	@Override
 	public Set<Long> getMemberOfRefsetIds() {
-		return memberOfRefsetIds;
+		return memberOfRefsetIds != null ? LongSets.unmodifiable(memberOfRefsetIds) : LongSets.EMPTY_SET;
 	}
 
 	/**
-	 * @return A set of all inferred ancestors
+	 * @return A set of all inferred ancestors, immutable if the store has a hierarchy index
 	 * @throws IllegalStateException if an active relationship is found pointing to an inactive parent concept
 	 * or if an ancestor loop is found.
 	 */
 	@Override
 	public Set<Long> getInferredAncestorIds() throws IllegalStateException {
-		final Stack<Long> stack = new Stack<>();
-		stack.push(id);
-		return collectParentIds(this, new HashSet<>(), stack, true);
+		HierarchyIndex index = hierarchyIndex;
+		if (index != null) {
+			Set<Long> ancestorIds = index.getAncestorIds(hierarchyIndexPosition, true);
+			if (ancestorIds != null) {
+				return ancestorIds;
+			}
+		}
+		return collectIds(true, true);
 	}
 
 	/**
-	 * @return A set of all stated ancestors
+	 * @return A set of all stated ancestors, immutable if the store has a hierarchy index
 	 * @throws IllegalStateException if an active relationship is found pointing to an inactive parent concept
 	 * or if an ancestor loop is found.
 	 */
 	@Override
 	public Set<Long> getStatedAncestorIds() throws IllegalStateException {
-		final Stack<Long> stack = new Stack<>();
-		stack.push(id);
-		return collectParentIds(this, new HashSet<>(), stack, false);
-	}
-
-	private Set<Long> collectParentIds(ConceptImpl concept, Set<Long> ancestors, Stack<Long> stack, boolean inferred) {
-		for (Concept parentInt : inferred ? concept.inferredParents : concept.statedParents) {
-			ConceptImpl parent = (ConceptImpl) parentInt;
-			if (!parent.isActive()) {
-				throw new IllegalStateException("Is-a relationship points to inactive parent concept: " + concept.getId() + " -> " + parent.getId());
+		HierarchyIndex index = hierarchyIndex;
+		if (index != null) {
+			Set<Long> ancestorIds = index.getAncestorIds(hierarchyIndexPosition, false);
+			if (ancestorIds != null) {
+				return ancestorIds;
 			}
-			final Long parentId = parent.id;
-			if (stack.contains(parentId)) {
-				stack.push(parentId);
-				throw new IllegalStateException("Ancestor loop detected: " + stack.toString());
-			}
-			ancestors.add(parentId);
-			stack.push(parentId);
-			collectParentIds(parent, ancestors, stack, inferred);
-			stack.pop();
 		}
-		return ancestors;
+		return collectIds(true, false);
 	}
-	
+
 	/**
-	 * @return A set of all inferred descendants
+	 * @return A set of all inferred descendants, immutable if the store has a hierarchy index
 	 */
 	@Override
 	public Set<Long> getInferredDescendantIds() throws IllegalStateException {
-		return collectChildIds(this, new HashSet<>(),true);
+		HierarchyIndex index = hierarchyIndex;
+		if (index != null) {
+			Set<Long> descendantIds = index.getDescendantIds(hierarchyIndexPosition, true);
+			if (descendantIds != null) {
+				return descendantIds;
+			}
+		}
+		return collectIds(false, true);
 	}
 
 	/**
-	 * @return A set of all stated ancestors
+	 * @return A set of all stated descendants, immutable if the store has a hierarchy index
 	 */
 	@Override
 	public Set<Long> getStatedDescendantIds() throws IllegalStateException {
-		return collectChildIds(this, new HashSet<>(),  false);
-	}
-	
-	private Set<Long> collectChildIds(ConceptImpl concept, Set<Long> descendants, boolean inferred) {
-		for (Concept childInt : inferred ? concept.inferredChildren : concept.statedChildren) {
-			ConceptImpl child = (ConceptImpl) childInt;
-			if (!child.isActive()) {
-				throw new IllegalStateException("Is-a relationship points to inactive child concept: " + concept.getId() + " -> " + child.getId());
+		HierarchyIndex index = hierarchyIndex;
+		if (index != null) {
+			Set<Long> descendantIds = index.getDescendantIds(hierarchyIndexPosition, false);
+			if (descendantIds != null) {
+				return descendantIds;
+			}
+		}
+		return collectIds(false, false);
+	}
+
+	/**
+	 * Iterative depth first walk, so deep hierarchies can not overflow the stack.
+	 * Each concept is walked once however many paths lead to it.
+	 * @param ancestors walk up to the parents rather than down to the children
+	 * @throws IllegalStateException if an active relationship is found pointing to an inactive concept or if a loop is found.
+	 */
+	private Set<Long> collectIds(boolean ancestors, boolean inferred) {
+		LongOpenHashSet ids = new LongOpenHashSet();
+		List<Long> path = new ArrayList<>();
+		LongOpenHashSet onPath = new LongOpenHashSet();
+		Deque<ConceptImpl> concepts = new ArrayDeque<>();
+		Deque<Iterator<Concept>> edges = new ArrayDeque<>();
+		concepts.push(this);
+		edges.push(getHierarchyEdges(ancestors, inferred).iterator());
+		path.add(id);
+		onPath.add(id);
+		while (!concepts.isEmpty()) {
+			ConceptImpl concept = concepts.peek();
+			Iterator<Concept> conceptEdges = edges.peek();
+			if (!conceptEdges.hasNext()) {
+				concepts.pop();
+				edges.pop();
+				path.remove(path.size() - 1);
+				onPath.remove(concept.id);
+				continue;
+			}
+			ConceptImpl next = (ConceptImpl) conceptEdges.next();
+			if (!next.isActive()) {
+				throw new IllegalStateException("Is-a relationship points to inactive " + (ancestors ? "parent" : "child") + " concept: "
+						+ concept.getId() + " -> " + next.getId());
+			}
+			if (onPath.contains(next.id)) {
+				path.add(next.id);
+				throw new IllegalStateException((ancestors ? "Ancestor" : "Descendant") + " loop detected: " + path);
+			}
+			if (ids.add(next.id)) {
+				concepts.push(next);
+				edges.push(next.getHierarchyEdges(ancestors, inferred).iterator());
+				path.add(next.id);
+				onPath.add(next.id);
 			}
-			final Long childId = child.id;
-			descendants.add(childId);
-			collectChildIds(child, descendants, inferred);
 		}
-		return descendants;
+		return ids;
+	}
+
+	private Set<Concept> getHierarchyEdges(boolean parents, boolean inferred) {
+		if (parents) {
+			return inferred ? getInferredParents() : getStatedParents();
+		}
+		return inferred ? getInferredChildren() : getStatedChildren();
 	}
 
 	@Override
@@ -136,44 +225,68 @@ public class ConceptImpl implements Concept {
 		return active;
 	}
 
-	public void addInferredParent(Concept parentConcept) {
+	public synchronized void addInferredParent(Concept parentConcept) {
+		if (inferredParents == null) {
+			inferredParents = new ObjectOpenHashSet<>(2);
+		}
 		inferredParents.add(parentConcept);
 	}
 
-	public void removeInferredParent(Concept parentConcept) {
-		inferredParents.remove(parentConcept);
+	public synchronized void removeInferredParent(Concept parentConcept) {
+		if (inferredParents != null) {
+			inferredParents.remove(parentConcept);
+		}
 	}
-	
+
 	public Set<Concept> getInferredParents() {
-		return inferredParents;
+		return inferredParents != null ? Collections.unmodifiableSet(inferredParents) : Collections.emptySet();
 	}
 
-	public void addStatedParent(Concept parentConcept) {
+	public synchronized void addStatedParent(Concept parentConcept) {
+		if (statedParents == null) {
+			statedParents = new ObjectOpenHashSet<>(2);
+		}
 		statedParents.add(parentConcept);
 	}
 
-	public void removeStatedParent(Concept parentConcept) {
-		statedParents.remove(parentConcept);
+	public synchronized void removeStatedParent(Concept parentConcept) {
+		if (statedParents != null) {
+			statedParents.remove(parentConcept);
+		}
 	}
-	
+
 	public Set<Concept> getStatedParents() {
-		return statedParents;
+		return statedParents != null ? Collections.unmodifiableSet(statedParents) : Collections.emptySet();
 	}
-	
-	public void addInferredChild(Concept childConcept) {
+
+	public synchronized void addInferredChild(Concept childConcept) {
+		if (inferredChildren == null) {
+			inferredChildren = new ObjectOpenHashSet<>(2);
+		}
 		inferredChildren.add(childConcept);
 	}
 
-	public void removeInferredChild(Concept childConcept) {
-		inferredChildren.remove(childConcept);
+	public synchronized void removeInferredChild(Concept childConcept) {
+		if (inferredChildren != null) {
+			inferredChildren.remove(childConcept);
+		}
 	}
 
-	public void addStatedChild(Concept childConcept) {
+	public synchronized void addStatedChild(Concept childConcept) {
+		if (statedChildren == null) {
+			statedChildren = new ObjectOpenHashSet<>(2);
+		}
 		statedChildren.add(childConcept);
 	}
 
-	public void removeStatedChild(Concept childConcept) {
-		statedChildren.remove(childConcept);
+	public synchronized void removeStatedChild(Concept childConcept) {
+		if (statedChildren != null) {
+			statedChildren.remove(childConcept);
+		}
+	}
+
+	public Set<Concept> getStatedChildren() {
+		return statedChildren != null ? Collections.unmodifiableSet(statedChildren) : Collections.emptySet();
 	}
 
 	@Override
@@ -183,20 +296,20 @@ public class ConceptImpl implements Concept {
 
 	@Override
 	public String getEffectiveTime() {
-		return effectiveTime;
+		return effectiveTime == NO_STATE ? null : FactoryUtils.formatEffectiveTime(effectiveTime);
 	}
 
 	@Override
 	public String getModuleId() {
-		return moduleId;
+		return moduleId == 0 ? null : Long.toString(moduleId);
 	}
 
 	@Override
 	public String getDefinitionStatusId() {
-		return definitionStatusId;
+		return definitionStatusId == 0 ? null : Long.toString(definitionStatusId);
 	}
 
-	public void setFsn(String fsn) {
+	public synchronized void setFsn(String fsn) {
 		this.fsn = fsn;
 	}
 
@@ -206,64 +319,182 @@ public class ConceptImpl implements Concept {
 	}
 
 	public Set<Concept> getInferredChildren() {
-		return inferredChildren;
+		return inferredChildren != null ? Collections.unmodifiableSet(inferredChildren) : Collections.emptySet();
 	}
 
 	@Override
 	public Map<String, Set<String>> getInferredAttributes() {
-		return inferredAttributes;
+		return unmodifiableAttributes(inferredAttributes);
 	}
 
-	public void addInferredAttribute(String type, String value) {
+	public synchronized void addInferredAttribute(String type, String value) {
+		if (inferredAttributes == null) {
+			inferredAttributes = new HashMap<>();
+		}
 		inferredAttributes.computeIfAbsent(type, t -> new HashSet<>()).add(value);
 	}
 
+	public synchronized void removeInferredAttribute(String type, String value) {
+		removeAttribute(inferredAttributes, type, value);
+	}
+
 	@Override
 	public Map<String, Set<String>> getInferredConcreteAttributes() {
-		return inferredConcreteAttributes;
+		return unmodifiableAttributes(inferredConcreteAttributes);
 	}
 
-	public void addInferredConcreteAttribute(String type, String value) {
+	public synchronized void addInferredConcreteAttribute(String type, String value) {
+		if (inferredConcreteAttributes == null) {
+			inferredConcreteAttributes = new HashMap<>();
+		}
 		inferredConcreteAttributes.computeIfAbsent(type, t -> new HashSet<>()).add(value);
 	}
 
+	public synchronized void removeInferredConcreteAttribute(String type, String value) {
+		removeAttribute(inferredConcreteAttributes, type, value);
+	}
+
 	@Override
 	public Map<String, Set<String>> getStatedAttributes() {
-		return statedAttributes;
+		return unmodifiableAttributes(statedAttributes);
 	}
 
-	public void addStatedAttribute(String type, String value) {
+	public synchronized void addStatedAttribute(String type, String value) {
+		if (statedAttributes == null) {
+			statedAttributes = new HashMap<>();
+		}
 		statedAttributes.computeIfAbsent(type, t -> new HashSet<>()).add(value);
 	}
 
-	public void addRelationship(Relationship relationship) {
+	public synchronized void removeStatedAttribute(String type, String value) {
+		removeAttribute(statedAttributes, type, value);
+	}
+
+	private static Map<String, Set<String>> unmodifiableAttributes(Map<String, Set<String>> attributes) {
+		return attributes != null ? Collections.unmodifiableMap(Maps.transformValues(attributes, Collections::unmodifiableSet)) : Collections.emptyMap();
+	}
+
+	private static void removeAttribute(Map<String, Set<String>> attributes, String type, String value) {
+		if (attributes != null) {
+			Set<String> values = attributes.get(type);
+			if (values != null && values.remove(value) && values.isEmpty()) {
+				attributes.remove(type);
+			}
+		}
+	}
+
+	public synchronized void addRelationship(Relationship relationship) {
+		if (relationships == null) {
+			relationships = new ArrayList<>(4);
+		}
 		relationships.add(relationship);
 	}
 
-	public void addConcreteRelationship(ConcreteRelationship relationship) {
+	/**
+	 * Add the relationship, replacing any relationship with the same id.
+	 * @return The relationship replaced or null
+	 */
+	public synchronized Relationship putRelationship(Relationship relationship) {
+		if (relationships != null) {
+			for (int i = 0; i < relationships.size(); i++) {
+				if (Objects.equals(relationships.get(i).getId(), relationship.getId())) {
+					return relationships.set(i, relationship);
+				}
+			}
+		}
+		addRelationship(relationship);
+		return null;
+	}
+
+	public synchronized void addConcreteRelationship(ConcreteRelationship relationship) {
+		if (concreteRelationships == null) {
+			concreteRelationships = new ArrayList<>(4);
+		}
 		concreteRelationships.add(relationship);
 	}
 
+	/**
+	 * Add the relationship, replacing any concrete relationship with the same id.
+	 * @return The relationship replaced or null
+	 */
+	public synchronized ConcreteRelationship putConcreteRelationship(ConcreteRelationship relationship) {
+		if (concreteRelationships != null) {
+			for (int i = 0; i < concreteRelationships.size(); i++) {
+				if (Objects.equals(concreteRelationships.get(i).getId(), relationship.getId())) {
+					return concreteRelationships.set(i, relationship);
+				}
+			}
+		}
+		addConcreteRelationship(relationship);
+		return null;
+	}
+
 	@Override
 	public List<Relationship> getRelationships() {
-		return relationships;
+		return relationships != null ? Collections.unmodifiableList(relationships) : Collections.emptyList();
 	}
 
 	public List<ConcreteRelationship> getConcreteRelationships() {
-		return concreteRelationships;
+		return concreteRelationships != null ? Collections.unmodifiableList(concreteRelationships) : Collections.emptyList();
 	}
 
-	public void addDescription(Description description) {
+	public synchronized void addDescription(Description description) {
+		if (descriptions == null) {
+			descriptions = new ArrayList<>(4);
+		}
 		descriptions.add(description);
 	}
 
+	/**
+	 * Add the description, replacing any description with the same id.
+	 */
+	public synchronized void putDescription(Description description) {
+		if (descriptions != null) {
+			for (int i = 0; i < descriptions.size(); i++) {
+				if (Objects.equals(descriptions.get(i).getId(), description.getId())) {
+					descriptions.set(i, description);
+					return;
+				}
+			}
+		}
+		addDescription(description);
+	}
+
 	@Override
 	public List<Description> getDescriptions() {
-		return descriptions;
+		return descriptions != null ? Collections.unmodifiableList(descriptions) : Collections.emptyList();
+	}
+
+	int getEffectiveTimeInt() {
+		return effectiveTime;
+	}
+
+	long getModuleIdLong() {
+		return moduleId;
+	}
+
+	long getDefinitionStatusIdLong() {
+		return definitionStatusId;
+	}
+
+	void setHierarchyIndex(HierarchyIndex hierarchyIndex, int position) {
+		this.hierarchyIndex = hierarchyIndex;
+		this.hierarchyIndexPosition = position;
 	}
 
 	@Override
 	public String toString() {
 		return id + " | " + fsn + " | ";
 	}
+
+	private static int parseEffectiveTime(String effectiveTime) {
+		if (effectiveTime == null) {
+			return NO_STATE;
+		}
+		return effectiveTime.isEmpty() ? PrimitiveComponentFactory.NO_EFFECTIVE_TIME : Integer.parseInt(effectiveTime);
+	}
+
+	private static long parseId(String id) {
+		return id == null ? 0 : Long.parseLong(id);
+	}
 }
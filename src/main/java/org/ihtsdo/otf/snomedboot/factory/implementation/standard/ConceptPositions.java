@@ -0,0 +1,119 @@
+package org.ihtsdo.otf.snomedboot.factory.implementation.standard;
+
+import it.unimi.dsi.fastutil.longs.AbstractLongSet;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+
+import java.util.*;
+
+/**
+ * Numbers concepts by their position in the sorted concept ids, so that sets of concepts can be held as sorted int arrays.
+ * Immutable.
+ */
+final class ConceptPositions {
+
+	private final ConceptImpl[] concepts;
+	private final long[] ids;
+	// Open addressing table from id to position + 1, zero marks an empty slot
+	private final long[] tableIds;
+	private final int[] table;
+
+	ConceptPositions(Collection<ConceptImpl> conceptCollection) {
+		concepts = conceptCollection.toArray(new ConceptImpl[0]);
+		Arrays.sort(concepts, Comparator.comparingLong(ConceptImpl::getId));
+		ids = new long[concepts.length];
+		for (int i = 0; i < concepts.length; i++) {
+			ids[i] = concepts[i].getId();
+		}
+		int tableSize = Integer.highestOneBit(Math.max(16, concepts.length * 2 - 1)) << 1;
+		tableIds = new long[tableSize];
+		table = new int[tableSize];
+		for (int i = 0; i < ids.length; i++) {
+			int slot = slot(ids[i]);
+			while (table[slot] != 0) {
+				slot = (slot + 1) & (tableSize - 1);
+			}
+			tableIds[slot] = ids[i];
+			table[slot] = i + 1;
+		}
+	}
+
+	int size() {
+		return ids.length;
+	}
+
+	ConceptImpl getConcept(int position) {
+		return concepts[position];
+	}
+
+	long getId(int position) {
+		return ids[position];
+	}
+
+	/**
+	 * @return The position of the concept or -1 if it is not held.
+	 */
+	int getPosition(long conceptId) {
+		int slot = slot(conceptId);
+		int mask = table.length - 1;
+		while (table[slot] != 0) {
+			if (tableIds[slot] == conceptId) {
+				return table[slot] - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param positions sorted positions
+	 * @return An immutable set of the ids at the positions
+	 */
+	Set<Long> toIdSet(int[] positions) {
+		return new IdSet(positions);
+	}
+
+	private int slot(long conceptId) {
+		long h = conceptId * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & (table.length - 1);
+	}
+
+	private final class IdSet extends AbstractLongSet {
+
+		private final int[] positions;
+
+		private IdSet(int[] positions) {
+			this.positions = positions;
+		}
+
+		@Override
+		public boolean contains(long id) {
+			int position = getPosition(id);
+			return position != -1 && Arrays.binarySearch(positions, position) >= 0;
+		}
+
+		@Override
+		public int size() {
+			return positions.length;
+		}
+
+		@Override
+		public LongIterator iterator() {
+			return new LongIterator() {
+				private int next;
+
+				@Override
+				public boolean hasNext() {
+					return next < positions.length;
+				}
+
+				@Override
+				public long nextLong() {
+					if (next >= positions.length) {
+						throw new NoSuchElementException();
+					}
+					return ids[positions[next++]];
+				}
+			};
+		}
+	}
+}
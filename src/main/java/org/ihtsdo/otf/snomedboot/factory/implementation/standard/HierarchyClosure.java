@@ -0,0 +1,277 @@
+package org.ihtsdo.otf.snomedboot.factory.implementation.standard;
+
+import org.ihtsdo.otf.snomedboot.domain.Concept;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ancestors, and optionally descendants, of every concept of a ComponentStore in the inferred or stated hierarchy.
+ * Immutable once built so it can be handed to other threads. Sets of concepts are held as sorted int arrays of concept positions.
+ *
+ * Concepts are grouped into levels, a concept being one level above the highest concept it points at. Levels are computed
+ * in order, the concepts of each level in parallel on a fork-join pool, each concept taking the union of the already computed
+ * sets of the concepts it points at.
+ *
+ * A concept whose hierarchy walk would throw, because of a loop or an is-a relationship to an inactive concept, has no sets.
+ */
+public final class HierarchyClosure {
+
+	private static final int PARALLEL_THRESHOLD = 512;
+
+	private final ConceptPositions positions;
+	private final boolean inferred;
+	private final int[][] parents;
+	private final int[][] ancestors;
+	private final int[][] descendants;
+
+	private HierarchyClosure(ConceptPositions positions, boolean inferred, boolean includeDescendants, ForkJoinPool pool) {
+		this.positions = positions;
+		this.inferred = inferred;
+		boolean[] invalid = new boolean[positions.size()];
+		parents = buildEdges(positions, true, inferred, invalid);
+		ancestors = buildClosure(parents, invalid, pool);
+		if (includeDescendants) {
+			invalid = new boolean[positions.size()];
+			descendants = buildClosure(buildEdges(positions, false, inferred, invalid), invalid, pool);
+		} else {
+			descendants = null;
+		}
+	}
+
+	static HierarchyClosure build(ConceptPositions positions, boolean inferred, boolean includeDescendants, ForkJoinPool pool) {
+		return new HierarchyClosure(positions, inferred, includeDescendants, pool);
+	}
+
+	public boolean isInferred() {
+		return inferred;
+	}
+
+	public boolean isDescendantsIncluded() {
+		return descendants != null;
+	}
+
+	/**
+	 * @return The number of concepts
+	 */
+	public int size() {
+		return positions.size();
+	}
+
+	/**
+	 * @return An immutable set of the ancestor ids of the concept, null if the concept is not held or walking its ancestors throws.
+	 */
+	public Set<Long> getAncestorIds(long conceptId) {
+		int position = positions.getPosition(conceptId);
+		return position != -1 && ancestors[position] != null ? positions.toIdSet(ancestors[position]) : null;
+	}
+
+	/**
+	 * @return An immutable set of the descendant ids of the concept, null if the concept is not held or walking its descendants throws.
+	 * @throws IllegalStateException if descendants were not included
+	 */
+	public Set<Long> getDescendantIds(long conceptId) throws IllegalStateException {
+		if (descendants == null) {
+			throw new IllegalStateException("Descendants were not included in this hierarchy closure.");
+		}
+		int position = positions.getPosition(conceptId);
+		return position != -1 && descendants[position] != null ? positions.toIdSet(descendants[position]) : null;
+	}
+
+	ConceptPositions getPositions() {
+		return positions;
+	}
+
+	int[][] getParentPositions() {
+		return parents;
+	}
+
+	int[] getAncestorPositions(int position) {
+		return ancestors[position];
+	}
+
+	int[] getDescendantPositions(int position) {
+		return descendants != null ? descendants[position] : null;
+	}
+
+	/**
+	 * @param invalid set for concepts with an edge to an inactive concept
+	 * @return The positions of the concepts each concept points at
+	 */
+	private static int[][] buildEdges(ConceptPositions positions, boolean parents, boolean inferred, boolean[] invalid) {
+		int count = positions.size();
+		int[][] edges = new int[count][];
+		for (int i = 0; i < count; i++) {
+			ConceptImpl concept = positions.getConcept(i);
+			Set<Concept> targets = parents ? (inferred ? concept.getInferredParents() : concept.getStatedParents())
+					: (inferred ? concept.getInferredChildren() : concept.getStatedChildren());
+			int[] targetPositions = new int[targets.size()];
+			int t = 0;
+			for (Concept target : targets) {
+				int targetPosition = positions.getPosition(target.getId());
+				if (targetPosition == -1 || !target.isActive()) {
+					invalid[i] = true;
+				} else {
+					targetPositions[t++] = targetPosition;
+				}
+			}
+			edges[i] = t == targetPositions.length ? targetPositions : Arrays.copyOf(targetPositions, t);
+		}
+		return edges;
+	}
+
+	/**
+	 * Finds the level of every concept with a depth first walk, finishing concepts in post order so that every target
+	 * is finished first. Concepts in or reaching a loop or an invalid concept are marked invalid.
+	 * The closures are then computed level by level.
+	 * @param invalid concepts already known to throw when walked, concepts that reach them or a loop are added
+	 */
+	private static int[][] buildClosure(int[][] edges, boolean[] invalid, ForkJoinPool pool) {
+		int count = edges.length;
+		int[] level = new int[count];
+		int maxLevel = 0;
+		// 0 = not visited, 1 = on the current path, 2 = finished
+		byte[] state = new byte[count];
+		int[] stack = new int[count];
+		int[] nextEdge = new int[count];
+		for (int root = 0; root < count; root++) {
+			if (state[root] != 0) {
+				continue;
+			}
+			int depth = 0;
+			stack[depth++] = root;
+			state[root] = 1;
+			while (depth > 0) {
+				int node = stack[depth - 1];
+				if (nextEdge[node] < edges[node].length) {
+					int target = edges[node][nextEdge[node]++];
+					if (state[target] == 0) {
+						state[target] = 1;
+						stack[depth++] = target;
+					} else if (state[target] == 1) {
+						// Loop
+						invalid[node] = true;
+					}
+					continue;
+				}
+
+				depth--;
+				state[node] = 2;
+				int nodeLevel = 0;
+				for (int target : edges[node]) {
+					if (invalid[target]) {
+						invalid[node] = true;
+						break;
+					}
+					nodeLevel = Math.max(nodeLevel, level[target] + 1);
+				}
+				level[node] = nodeLevel;
+				if (!invalid[node]) {
+					maxLevel = Math.max(maxLevel, nodeLevel);
+				}
+			}
+		}
+
+		// Group valid concepts by level
+		int[] levelStart = new int[maxLevel + 2];
+		for (int node = 0; node < count; node++) {
+			if (!invalid[node]) {
+				levelStart[level[node] + 1]++;
+			}
+		}
+		for (int i = 0; i <= maxLevel; i++) {
+			levelStart[i + 1] += levelStart[i];
+		}
+		int[] nodesByLevel = new int[levelStart[maxLevel + 1]];
+		int[] fill = Arrays.copyOf(levelStart, maxLevel + 1);
+		for (int node = 0; node < count; node++) {
+			if (!invalid[node]) {
+				nodesByLevel[fill[level[node]]++] = node;
+			}
+		}
+
+		int[][] closures = new int[count][];
+		ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(count));
+		for (int i = 0; i <= maxLevel; i++) {
+			ClosureTask task = new ClosureTask(edges, closures, nodesByLevel, levelStart[i], levelStart[i + 1], scratch);
+			if (levelStart[i + 1] - levelStart[i] <= PARALLEL_THRESHOLD) {
+				task.compute();
+			} else {
+				pool.invoke(task);
+			}
+		}
+		return closures;
+	}
+
+	private static final class Scratch {
+
+		// Stamped with node + 1 so it never needs clearing
+		private final int[] seen;
+		private int[] buffer = new int[16];
+
+		private Scratch(int count) {
+			seen = new int[count];
+		}
+	}
+
+	private static final class ClosureTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[][] edges;
+		private final int[][] closures;
+		private final int[] nodes;
+		private final int from;
+		private final int to;
+		private final ThreadLocal<Scratch> scratch;
+
+		private ClosureTask(int[][] edges, int[][] closures, int[] nodes, int from, int to, ThreadLocal<Scratch> scratch) {
+			this.edges = edges;
+			this.closures = closures;
+			this.nodes = nodes;
+			this.from = from;
+			this.to = to;
+			this.scratch = scratch;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > PARALLEL_THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ClosureTask(edges, closures, nodes, from, middle, scratch),
+						new ClosureTask(edges, closures, nodes, middle, to, scratch));
+				return;
+			}
+			Scratch threadScratch = scratch.get();
+			int[] seen = threadScratch.seen;
+			for (int i = from; i < to; i++) {
+				int node = nodes[i];
+				int stamp = node + 1;
+				int size = 0;
+				int[] buffer = threadScratch.buffer;
+				for (int target : edges[node]) {
+					int[] targetClosure = closures[target];
+					if (buffer.length < size + targetClosure.length + 1) {
+						buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + targetClosure.length + 1));
+					}
+					if (seen[target] != stamp) {
+						seen[target] = stamp;
+						buffer[size++] = target;
+					}
+					for (int member : targetClosure) {
+						if (seen[member] != stamp) {
+							seen[member] = stamp;
+							buffer[size++] = member;
+						}
+					}
+				}
+				threadScratch.buffer = buffer;
+				int[] closure = Arrays.copyOf(buffer, size);
+				Arrays.sort(closure);
+				closures[node] = closure;
+			}
+		}
+	}
+}
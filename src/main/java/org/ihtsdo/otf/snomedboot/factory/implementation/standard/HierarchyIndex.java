@@ -0,0 +1,170 @@
+package org.ihtsdo.otf.snomedboot.factory.implementation.standard;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Transitive closure of the inferred and stated is-a hierarchies of a ComponentStore, built once loading has completed.
+ * The closures are built as HierarchyClosures, the concepts return them as immutable sets of ids.
+ * A concept whose hierarchy walk would throw, because of an ancestor loop or an is-a relationship to an inactive concept,
+ * has no closure in the index so the concept falls back to the walk and throws as before.
+ *
+ * Subsumption tests use pre-order interval labels of a spanning tree of each hierarchy. A concept is a descendant of every concept
+ * whose interval holds its pre-order number. Because of multiple inheritance the spanning tree does not hold every ancestor,
+ * so when the interval test fails and the concept has ancestors outside of its tree path the ancestor closure is searched.
+ */
+final class HierarchyIndex {
+
+	static final int NOT_SUBSUMED = 0;
+	static final int SUBSUMED = 1;
+	static final int UNKNOWN = -1;
+
+	private final ConceptPositions positions;
+	private final HierarchyClosure inferred;
+	private final HierarchyClosure stated;
+	private final IntervalLabels inferredLabels;
+	private final IntervalLabels statedLabels;
+
+	private HierarchyIndex(ConceptPositions positions, ForkJoinPool pool) {
+		this.positions = positions;
+		inferred = HierarchyClosure.build(positions, true, true, pool);
+		stated = HierarchyClosure.build(positions, false, true, pool);
+		inferredLabels = new IntervalLabels(inferred.getParentPositions());
+		statedLabels = new IntervalLabels(stated.getParentPositions());
+	}
+
+	static HierarchyIndex build(Collection<ConceptImpl> concepts, ForkJoinPool pool) {
+		ConceptPositions positions = new ConceptPositions(concepts);
+		HierarchyIndex index = new HierarchyIndex(positions, pool);
+		for (int position = 0; position < positions.size(); position++) {
+			positions.getConcept(position).setHierarchyIndex(index, position);
+		}
+		return index;
+	}
+
+	int size() {
+		return positions.size();
+	}
+
+	/**
+	 * @return The position of the concept or -1 if it is not in the index.
+	 */
+	int getPosition(long conceptId) {
+		return positions.getPosition(conceptId);
+	}
+
+	HierarchyClosure getClosure(boolean inferred) {
+		return inferred ? this.inferred : stated;
+	}
+
+	/**
+	 * @return The ancestor ids or null if walking the hierarchy from this concept throws.
+	 */
+	Set<Long> getAncestorIds(int position, boolean inferred) {
+		return toIdSet(getClosure(inferred).getAncestorPositions(position));
+	}
+
+	/**
+	 * @return The descendant ids or null if walking the hierarchy from this concept throws.
+	 */
+	Set<Long> getDescendantIds(int position, boolean inferred) {
+		return toIdSet(getClosure(inferred).getDescendantPositions(position));
+	}
+
+	/**
+	 * Allocation free subsumption test.
+	 * @return SUBSUMED or NOT_SUBSUMED, or UNKNOWN if walking the hierarchy from this concept throws.
+	 */
+	int isSubsumedBy(int position, int ancestorPosition, boolean inferred) {
+		int[] ancestors = getClosure(inferred).getAncestorPositions(position);
+		if (ancestors == null) {
+			return UNKNOWN;
+		}
+		IntervalLabels labels = inferred ? inferredLabels : statedLabels;
+		if (labels.isTreeAncestor(position, ancestorPosition)) {
+			return SUBSUMED;
+		}
+		if (labels.depth[position] == ancestors.length) {
+			// Every ancestor is on the tree path
+			return NOT_SUBSUMED;
+		}
+		return Arrays.binarySearch(ancestors, ancestorPosition) >= 0 ? SUBSUMED : NOT_SUBSUMED;
+	}
+
+	private Set<Long> toIdSet(int[] positions) {
+		return positions != null ? this.positions.toIdSet(positions) : null;
+	}
+
+	/**
+	 * Pre-order labels of a spanning forest of the hierarchy, walked from the concepts without parents.
+	 */
+	private static final class IntervalLabels {
+
+		private final int[] preOrder;
+		private final int[] lastDescendantPreOrder;
+		private final int[] depth;
+
+		private IntervalLabels(int[][] parents) {
+			int count = parents.length;
+			preOrder = new int[count];
+			lastDescendantPreOrder = new int[count];
+			depth = new int[count];
+			Arrays.fill(preOrder, -1);
+
+			// Invert the parent edges into compact child lists
+			int[] childStart = new int[count + 1];
+			for (int[] nodeParents : parents) {
+				for (int parent : nodeParents) {
+					childStart[parent + 1]++;
+				}
+			}
+			for (int i = 0; i < count; i++) {
+				childStart[i + 1] += childStart[i];
+			}
+			int[] children = new int[childStart[count]];
+			int[] fill = Arrays.copyOf(childStart, count);
+			for (int child = 0; child < count; child++) {
+				for (int parent : parents[child]) {
+					children[fill[parent]++] = child;
+				}
+			}
+
+			int counter = 0;
+			int[] stack = new int[count];
+			int[] nextChild = new int[count];
+			for (int root = 0; root < count; root++) {
+				if (parents[root].length != 0) {
+					continue;
+				}
+				int top = 0;
+				stack[top++] = root;
+				preOrder[root] = counter++;
+				nextChild[root] = childStart[root];
+				while (top > 0) {
+					int node = stack[top - 1];
+					if (nextChild[node] < childStart[node + 1]) {
+						int child = children[nextChild[node]++];
+						if (preOrder[child] == -1) {
+							preOrder[child] = counter++;
+							depth[child] = depth[node] + 1;
+							nextChild[child] = childStart[child];
+							stack[top++] = child;
+						}
+					} else {
+						lastDescendantPreOrder[node] = counter - 1;
+						top--;
+					}
+				}
+			}
+		}
+
+		private boolean isTreeAncestor(int position, int ancestorPosition) {
+			int pre = preOrder[position];
+			int ancestorPre = preOrder[ancestorPosition];
+			return pre != -1 && ancestorPre != -1 && position != ancestorPosition
+					&& ancestorPre <= pre && pre <= lastDescendantPreOrder[ancestorPosition];
+		}
+	}
+}
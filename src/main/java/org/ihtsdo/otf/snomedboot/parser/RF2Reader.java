@@ -0,0 +1,306 @@
+package org.ihtsdo.otf.snomedboot.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of an RF2 file as RF2Row objects without splitting or decoding the whole line.
+ * Files on the default file system are memory mapped in regions, content held in memory is read in place, other sources are read in chunks.
+ * The same RF2Row instance is returned for every line.
+ */
+public final class RF2Reader implements Closeable {
+
+	static final int MAX_MAPPED_REGION_SIZE = 256 * 1024 * 1024;
+	private static final int STREAM_CHUNK_SIZE = 1024 * 1024;
+
+	private final SegmentSource segmentSource;
+	private final RF2Row row = new RF2Row();
+	private ByteBuffer segment;
+	private long lineNumber;
+
+	RF2Reader(SegmentSource segmentSource) {
+		this.segmentSource = segmentSource;
+	}
+
+	/**
+	 * Opens a file, using memory mapping if the file is on the default file system.
+	 */
+	public static RF2Reader open(Path path) throws IOException {
+		if (path.getFileSystem() == FileSystems.getDefault()) {
+			return new RF2Reader(new MappedFileSegmentSource(path, MAX_MAPPED_REGION_SIZE));
+		}
+		return open(Files.newInputStream(path));
+	}
+
+	/**
+	 * Memory maps a byte range of a file. The range must start at the beginning of a line.
+	 * @param end exclusive end of the range.
+	 */
+	public static RF2Reader open(Path path, long start, long end) throws IOException {
+		return new RF2Reader(new MappedFileSegmentSource(path, start, end, MAX_MAPPED_REGION_SIZE));
+	}
+
+	/**
+	 * Divides a file into byte ranges of roughly equal size that start and end on line boundaries.
+	 * The first range starts after the header line.
+	 * @return The range boundaries, the first being the start of the first range and the last being the end of the file.
+	 */
+	public static long[] splitIntoLineRanges(Path path, int ranges) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return splitIntoLineRanges(channel.size(), ranges, position -> findNextLineStart(channel, position));
+		}
+	}
+
+	/**
+	 * Divides content held in memory into line ranges as splitIntoLineRanges does a file.
+	 * Positions are relative to the position of the buffer.
+	 */
+	public static long[] splitIntoLineRanges(ByteBuffer content, int ranges) throws IOException {
+		ByteBuffer buffer = content.slice();
+		return splitIntoLineRanges(buffer.limit(), ranges, position -> findNextLineStart(buffer, position));
+	}
+
+	private static long[] splitIntoLineRanges(long size, int ranges, LineStartFinder lineStartFinder) throws IOException {
+		long dataStart = lineStartFinder.findNextLineStart(0);
+		long rangeSize = Math.max(1, (size - dataStart) / ranges);
+		long[] boundaries = new long[ranges + 1];
+		boundaries[0] = dataStart;
+		int count = 1;
+		for (int i = 1; i < ranges; i++) {
+			long boundary = lineStartFinder.findNextLineStart(Math.max(dataStart + i * rangeSize, boundaries[count - 1]));
+			if (boundary >= size) {
+				break;
+			}
+			if (boundary > boundaries[count - 1]) {
+				boundaries[count++] = boundary;
+			}
+		}
+		boundaries[count++] = size;
+		return Arrays.copyOf(boundaries, count);
+	}
+
+	/**
+	 * @return The position of the start of the first line after the position, or the size of the file if there is none.
+	 */
+	public static long findNextLineStart(Path path, long position) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return findNextLineStart(channel, position);
+		}
+	}
+
+	private static long findNextLineStart(ByteBuffer buffer, long position) {
+		for (int i = (int) position; i < buffer.limit(); i++) {
+			if (buffer.get(i) == '\n') {
+				return i + 1;
+			}
+		}
+		return buffer.limit();
+	}
+
+	private static long findNextLineStart(FileChannel channel, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+		long size = channel.size();
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Reads the content of a stream in chunks. The stream is closed when the reader is closed.
+	 */
+	public static RF2Reader open(InputStream inputStream) {
+		return new RF2Reader(new StreamSegmentSource(inputStream, STREAM_CHUNK_SIZE));
+	}
+
+	/**
+	 * Reads content held in memory, from the position to the limit of the buffer, without copying it.
+	 * The content must start at the beginning of a line.
+	 */
+	public static RF2Reader open(ByteBuffer content) {
+		return new RF2Reader(new BufferSegmentSource(content.slice()));
+	}
+
+	/**
+	 * @return The next row or null at the end of the file. Empty lines are returned as rows where isEmptyLine is true.
+	 */
+	public RF2Row nextRow() throws IOException {
+		if (segment == null || !segment.hasRemaining()) {
+			segment = segmentSource.nextSegment();
+			if (segment == null) {
+				return null;
+			}
+		}
+		int newline = row.parse(segment, segment.position(), segment.limit());
+		segment.position(Math.min(newline + 1, segment.limit()));
+		lineNumber++;
+		return row;
+	}
+
+	/**
+	 * @return One based number of the line last returned by nextRow.
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		segmentSource.close();
+	}
+
+	/**
+	 * Supplies the content as buffers that always end at a line boundary, or at the end of the content.
+	 */
+	interface SegmentSource extends Closeable {
+		ByteBuffer nextSegment() throws IOException;
+	}
+
+	private interface LineStartFinder {
+		long findNextLineStart(long position) throws IOException;
+	}
+
+	static final class BufferSegmentSource implements SegmentSource {
+
+		private ByteBuffer content;
+
+		BufferSegmentSource(ByteBuffer content) {
+			this.content = content;
+		}
+
+		@Override
+		public ByteBuffer nextSegment() {
+			// The whole content is one segment
+			ByteBuffer segment = content;
+			content = null;
+			return segment != null && segment.hasRemaining() ? segment : null;
+		}
+
+		@Override
+		public void close() {
+			content = null;
+		}
+	}
+
+	static final class MappedFileSegmentSource implements SegmentSource {
+
+		private final FileChannel channel;
+		private final long size;
+		private final int maxRegionSize;
+		private long position;
+
+		MappedFileSegmentSource(Path path, int maxRegionSize) throws IOException {
+			this(path, 0, -1, maxRegionSize);
+		}
+
+		/**
+		 * Maps a byte range of a file. The range must start at the beginning of a line.
+		 * @param end exclusive end of the range or -1 for the end of the file.
+		 */
+		MappedFileSegmentSource(Path path, long start, long end, int maxRegionSize) throws IOException {
+			this.channel = FileChannel.open(path, StandardOpenOption.READ);
+			this.size = end == -1 ? channel.size() : end;
+			this.position = start;
+			this.maxRegionSize = maxRegionSize;
+		}
+
+		@Override
+		public ByteBuffer nextSegment() throws IOException {
+			if (position >= size) {
+				return null;
+			}
+			long regionSize = Math.min(maxRegionSize, size - position);
+			ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+			int regionEnd = (int) regionSize;
+			if (position + regionSize < size) {
+				// Lines must not span regions, end this region after the last complete line
+				while (regionEnd > 0 && region.get(regionEnd - 1) != '\n') {
+					regionEnd--;
+				}
+				if (regionEnd == 0) {
+					throw new IOException("RF2 line longer than " + maxRegionSize + " bytes found at position " + position);
+				}
+				region.limit(regionEnd);
+			}
+			position += regionEnd;
+			return region;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	static final class StreamSegmentSource implements SegmentSource {
+
+		private final InputStream inputStream;
+		private byte[] buffer;
+		private int carryStart;
+		private int carryEnd;
+		private boolean endOfStream;
+
+		StreamSegmentSource(InputStream inputStream, int chunkSize) {
+			this.inputStream = inputStream;
+			this.buffer = new byte[chunkSize];
+		}
+
+		@Override
+		public ByteBuffer nextSegment() throws IOException {
+			if (endOfStream) {
+				return null;
+			}
+			// Move any partial line from the previous chunk to the start of the buffer
+			int length = carryEnd - carryStart;
+			System.arraycopy(buffer, carryStart, buffer, 0, length);
+			while (true) {
+				if (length == buffer.length) {
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+				int read = inputStream.read(buffer, length, buffer.length - length);
+				if (read == -1) {
+					endOfStream = true;
+					carryStart = carryEnd = 0;
+					return length == 0 ? null : ByteBuffer.wrap(buffer, 0, length);
+				}
+				int searchFrom = length;
+				length += read;
+				int lastNewline = -1;
+				for (int i = length - 1; i >= searchFrom; i--) {
+					if (buffer[i] == '\n') {
+						lastNewline = i;
+						break;
+					}
+				}
+				if (lastNewline != -1) {
+					carryStart = lastNewline + 1;
+					carryEnd = length;
+					return ByteBuffer.wrap(buffer, 0, carryStart).slice();
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			inputStream.close();
+		}
+	}
+}
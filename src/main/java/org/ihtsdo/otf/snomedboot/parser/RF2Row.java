@@ -0,0 +1,245 @@
+package org.ihtsdo.otf.snomedboot.parser;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A single line of an RF2 file, held as column boundaries over the underlying bytes.
+ * Column values are only decoded into Strings when they are requested.
+ * Instances are reused by the RF2Reader so must not be kept between rows.
+ */
+public final class RF2Row {
+
+	private ByteBuffer buffer;
+	private int[] columnStarts = new int[16];
+	private int[] columnEnds = new int[16];
+	private String[] decoded = new String[16];
+	private int columnCount;
+	private boolean emptyLine;
+	private byte[] scratch = new byte[256];
+
+	RF2Row() {
+	}
+
+	/**
+	 * Number of columns in this row. Like String.split, trailing empty columns are not counted.
+	 */
+	public int size() {
+		return columnCount;
+	}
+
+	public boolean isEmptyLine() {
+		return emptyLine;
+	}
+
+	/**
+	 * @return Decoded value of the column. The String is created on first access and cached for this row.
+	 */
+	public String get(int column) {
+		checkColumn(column);
+		String value = decoded[column];
+		if (value == null) {
+			value = decode(columnStarts[column], columnEnds[column] - columnStarts[column]);
+			decoded[column] = value;
+		}
+		return value;
+	}
+
+	/**
+	 * Compares the raw bytes of a column with an ASCII value without creating a String.
+	 */
+	public boolean isValue(int column, String asciiValue) {
+		checkColumn(column);
+		int start = columnStarts[column];
+		int length = columnEnds[column] - start;
+		if (length != asciiValue.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (buffer.get(start + i) != asciiValue.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a column of decimal digits, such as an SCTID, without creating a String.
+	 * @throws NumberFormatException if the column is not a valid long.
+	 */
+	public long getLong(int column) {
+		checkColumn(column);
+		int start = columnStarts[column];
+		int length = columnEnds[column] - start;
+		if (length == 0 || length > 18) {
+			// Let Long.parseLong report empty values and handle values that may overflow
+			return Long.parseLong(get(column));
+		}
+		long value = 0;
+		for (int i = start; i < start + length; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return Long.parseLong(get(column));
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Parses a column of decimal digits without creating a String. An empty column, like a blank effectiveTime, is returned as zero.
+	 * @throws NumberFormatException if the column is not a valid int.
+	 */
+	public int getInt(int column) {
+		checkColumn(column);
+		int start = columnStarts[column];
+		int length = columnEnds[column] - start;
+		if (length == 0) {
+			return 0;
+		}
+		if (length > 9) {
+			return Integer.parseInt(get(column));
+		}
+		int value = 0;
+		for (int i = start; i < start + length; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return Integer.parseInt(get(column));
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	public boolean isEmpty(int column) {
+		checkColumn(column);
+		return columnStarts[column] == columnEnds[column];
+	}
+
+	/**
+	 * @return All column values, as returned by String.split on the line.
+	 */
+	public String[] toArray() {
+		return toArray(0);
+	}
+
+	/**
+	 * @return The values of the columns from the given index to the end of the row.
+	 */
+	public String[] toArray(int fromColumn) {
+		if (fromColumn >= columnCount) {
+			return new String[0];
+		}
+		String[] values = new String[columnCount - fromColumn];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = get(fromColumn + i);
+		}
+		return values;
+	}
+
+	@Override
+	public String toString() {
+		return String.join("\t", toArray());
+	}
+
+	/**
+	 * Sets the row to the line starting at the given index, splitting columns in the same pass that finds the end of the line.
+	 * @return Index of the line terminator, or limit if the line is not terminated.
+	 */
+	int parse(ByteBuffer buffer, int start, int limit) {
+		this.buffer = buffer;
+		Arrays.fill(decoded, 0, columnCount, null);
+		columnCount = 0;
+		int lastNonEmptyColumn = -1;
+		int columnStart = start;
+		int i = start;
+		for (; i < limit; i++) {
+			byte b = buffer.get(i);
+			if (b == '\t') {
+				if (i > columnStart) {
+					lastNonEmptyColumn = columnCount;
+				}
+				addColumn(columnStart, i);
+				columnStart = i + 1;
+			} else if (b == '\n') {
+				break;
+			}
+		}
+		int end = i;
+		if (end > columnStart && buffer.get(end - 1) == '\r') {
+			end--;
+		}
+		if (end > columnStart) {
+			lastNonEmptyColumn = columnCount;
+		}
+		emptyLine = end == start;
+		addColumn(columnStart, end);
+		// Match String.split behaviour which drops trailing empty values
+		columnCount = lastNonEmptyColumn + 1;
+		return i;
+	}
+
+	/**
+	 * Sets the row to columns already found in the buffer, such as a row held in an RF2RowBatch.
+	 */
+	void set(ByteBuffer buffer, int[] starts, int[] ends, int from, int count) {
+		this.buffer = buffer;
+		Arrays.fill(decoded, 0, columnCount, null);
+		if (columnStarts.length < count) {
+			int newLength = Math.max(count, columnStarts.length * 2);
+			columnStarts = new int[newLength];
+			columnEnds = new int[newLength];
+			decoded = new String[newLength];
+		}
+		System.arraycopy(starts, from, columnStarts, 0, count);
+		System.arraycopy(ends, from, columnEnds, 0, count);
+		columnCount = count;
+		emptyLine = false;
+	}
+
+	int getColumnStart(int column) {
+		return columnStarts[column];
+	}
+
+	int getColumnEnd(int column) {
+		return columnEnds[column];
+	}
+
+	void copyBytes(int start, byte[] destination, int destinationOffset, int length) {
+		buffer.get(start, destination, destinationOffset, length);
+	}
+
+	private void addColumn(int start, int end) {
+		if (columnCount == columnStarts.length) {
+			int newLength = columnStarts.length * 2;
+			columnStarts = Arrays.copyOf(columnStarts, newLength);
+			columnEnds = Arrays.copyOf(columnEnds, newLength);
+			decoded = Arrays.copyOf(decoded, newLength);
+		}
+		columnStarts[columnCount] = start;
+		columnEnds[columnCount] = end;
+		columnCount++;
+	}
+
+	private String decode(int start, int length) {
+		if (length == 0) {
+			return "";
+		}
+		if (buffer.hasArray()) {
+			return new String(buffer.array(), buffer.arrayOffset() + start, length, UTF_8);
+		}
+		if (scratch.length < length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		buffer.get(start, scratch, 0, length);
+		return new String(scratch, 0, length, UTF_8);
+	}
+
+	private void checkColumn(int column) {
+		if (column < 0 || column >= columnCount) {
+			throw new ArrayIndexOutOfBoundsException("Index " + column + " out of bounds for length " + columnCount);
+		}
+	}
+}
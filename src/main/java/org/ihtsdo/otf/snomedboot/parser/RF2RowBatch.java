@@ -0,0 +1,87 @@
+package org.ihtsdo.otf.snomedboot.parser;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Copies of several rows, held as the bytes of the rows and their column boundaries, so they can be handed to another thread.
+ * Like the rows of an RF2Reader the row returned by get is reused, and batches are cleared and refilled rather than discarded.
+ */
+public final class RF2RowBatch {
+
+	private static final int INITIAL_BYTES = 64 * 1024;
+	private static final int MAX_BYTES = 1024 * 1024;
+
+	private final int rowCapacity;
+	private final int[] rowColumns;
+	private final RF2Row row = new RF2Row();
+	private byte[] bytes;
+	private ByteBuffer buffer;
+	private int byteCount;
+	private int[] columnStarts;
+	private int[] columnEnds;
+	private int columnCount;
+	private int size;
+
+	public RF2RowBatch(int rowCapacity) {
+		this.rowCapacity = rowCapacity;
+		rowColumns = new int[rowCapacity + 1];
+		bytes = new byte[INITIAL_BYTES];
+		buffer = ByteBuffer.wrap(bytes);
+		columnStarts = new int[rowCapacity * 8];
+		columnEnds = new int[rowCapacity * 8];
+	}
+
+	/**
+	 * Copies the row into this batch.
+	 */
+	public void add(RF2Row source) {
+		int columns = source.size();
+		int start = columns > 0 ? source.getColumnStart(0) : 0;
+		int length = columns > 0 ? source.getColumnEnd(columns - 1) - start : 0;
+		if (bytes.length < byteCount + length) {
+			bytes = Arrays.copyOf(bytes, Math.max(byteCount + length, bytes.length * 2));
+			buffer = ByteBuffer.wrap(bytes);
+		}
+		if (columnStarts.length < columnCount + columns) {
+			int newLength = Math.max(columnCount + columns, columnStarts.length * 2);
+			columnStarts = Arrays.copyOf(columnStarts, newLength);
+			columnEnds = Arrays.copyOf(columnEnds, newLength);
+		}
+		source.copyBytes(start, bytes, byteCount, length);
+		int shift = byteCount - start;
+		for (int column = 0; column < columns; column++) {
+			columnStarts[columnCount] = source.getColumnStart(column) + shift;
+			columnEnds[columnCount] = source.getColumnEnd(column) + shift;
+			columnCount++;
+		}
+		byteCount += length;
+		size++;
+		rowColumns[size] = columnCount;
+	}
+
+	/**
+	 * @return The row at the index. The same row object is returned for every index so it must not be kept.
+	 */
+	public RF2Row get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+		}
+		row.set(buffer, columnStarts, columnEnds, rowColumns[index], rowColumns[index + 1] - rowColumns[index]);
+		return row;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isFull() {
+		return size == rowCapacity || byteCount >= MAX_BYTES;
+	}
+
+	public void clear() {
+		size = 0;
+		byteCount = 0;
+		columnCount = 0;
+	}
+}
@@ -0,0 +1,70 @@
+package org.ihtsdo.otf.snomedboot;
+
+import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
+import org.ihtsdo.otf.snomedboot.factory.implementation.HighLevelComponentFactoryAdapterImpl;
+import org.ihtsdo.otf.snomedboot.factory.implementation.standard.ComponentStore;
+import org.ihtsdo.otf.snomedboot.factory.implementation.standard.ComponentStoreComponentFactoryImpl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Compares the time to load the same release into a ComponentStore with each executor mode of the ReleaseImporter.
+ * The bounded modes load on a fixed thread pool of the given size, shared by every round, with the parallelism set to match.
+ * Virtual thread modes are skipped before Java 21, where the importer would fall back to platform threads.
+ * Not run as a test. Arguments: release directory or zip path, optionally the number of rounds and the bounded parallelism.
+ */
+public class ExecutorModeBenchmark {
+
+	public static void main(String[] args) throws ReleaseImportException {
+		if (args.length == 0) {
+			System.out.println("Usage: ExecutorModeBenchmark <release directory or zip> [rounds] [bounded parallelism]");
+			return;
+		}
+		String releasePath = args[0];
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int boundedParallelism = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+		boolean virtualThreads = Runtime.version().feature() >= 21;
+		if (!virtualThreads) {
+			System.out.printf("Virtual threads need Java 21 or later, skipping the virtual thread modes on Java %s.%n", Runtime.version().feature());
+		}
+		ExecutorService boundedExecutor = Executors.newFixedThreadPool(boundedParallelism);
+		try {
+			Map<String, Supplier<ReleaseImporter>> modes = new LinkedHashMap<>();
+			modes.put("platform threads", ReleaseImporter::new);
+			if (virtualThreads) {
+				modes.put("virtual threads", () -> new ReleaseImporter().setVirtualThreads(true));
+			}
+			modes.put("fixed pool of " + boundedParallelism, () -> new ReleaseImporter().setExecutorService(boundedExecutor).setParallelism(boundedParallelism));
+			if (virtualThreads) {
+				modes.put("virtual threads bounded to " + boundedParallelism, () -> new ReleaseImporter().setVirtualThreads(true).setParallelism(boundedParallelism));
+			}
+
+			// Warm up
+			load(new ReleaseImporter(), releasePath);
+
+			for (int round = 1; round <= rounds; round++) {
+				for (Map.Entry<String, Supplier<ReleaseImporter>> mode : modes.entrySet()) {
+					long start = System.nanoTime();
+					int concepts = load(mode.getValue().get(), releasePath);
+					System.out.printf("Round %s, %s: %s concepts in %s ms%n", round, mode.getKey(), concepts, (System.nanoTime() - start) / 1_000_000);
+				}
+			}
+		} finally {
+			boundedExecutor.shutdown();
+		}
+	}
+
+	private static int load(ReleaseImporter releaseImporter, String releasePath) throws ReleaseImportException {
+		LoadingProfile loadingProfile = LoadingProfile.light;
+		ComponentStore componentStore = new ComponentStore();
+		ComponentStoreComponentFactoryImpl componentFactory = new ComponentStoreComponentFactoryImpl(componentStore);
+		releaseImporter.loadSnapshotReleaseFiles(releasePath, loadingProfile,
+				new HighLevelComponentFactoryAdapterImpl(loadingProfile, componentFactory, componentFactory), true);
+		return componentStore.getConcepts().size();
+	}
+}
@@ -1,17 +1,55 @@
 package org.ihtsdo.otf.snomedboot;
 
 import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
 import org.ihtsdo.otf.snomedboot.domain.ConceptConstants;
+import org.ihtsdo.otf.snomedboot.domain.rf2.ComponentRow;
+import org.ihtsdo.otf.snomedboot.domain.rf2.ConceptRow;
+import org.ihtsdo.otf.snomedboot.domain.rf2.DescriptionRow;
+import org.ihtsdo.otf.snomedboot.domain.rf2.RefsetMemberRow;
 import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
+import org.ihtsdo.otf.snomedboot.factory.TestBatchComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.TestComponentFactory;
+import org.ihtsdo.otf.snomedboot.factory.implementation.ListComponentFactoryProvider;
+import org.ihtsdo.otf.snomedboot.parser.RF2Reader;
 import org.junit.Test;
 import org.snomed.otf.snomedboot.testutil.ZipUtil;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.CRC32;
+import java.util.zip.ZipOutputStream;
 
 import static org.junit.Assert.*;
 
@@ -110,6 +148,414 @@ public class ReleaseImporterTest {
 				10, conceptLines.size());
 	}
 
+	@Test
+	public void testUnzipReleaseEntriesInParallel() throws IOException, ReleaseImportException {
+		Map<String, byte[]> snapshotEntries = new LinkedHashMap<>();
+		File releaseZip = File.createTempFile("release-unzip-test", ".zip");
+		try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(releaseZip))) {
+			zipOutputStream.putNextEntry(new ZipEntry("Release/Snapshot/Terminology/"));
+			for (int i = 0; i < 8; i++) {
+				// Entries of different sizes so that they finish unzipping in a different order than they started
+				String fileName = "sct2_Concept_Snapshot_INT_2018013" + i + ".txt";
+				StringBuilder content = new StringBuilder("id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId\r\n");
+				for (int row = 0; row < (i % 2 == 0 ? 50_000 : 10) * (i + 1); row++) {
+					content.append(row).append(i).append("\t2018013").append(i).append("\t1\t900000000000207008\t900000000000074008\r\n");
+				}
+				byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+				snapshotEntries.put(fileName, bytes);
+				zipOutputStream.putNextEntry(new ZipEntry("Release/Snapshot/Terminology/" + fileName));
+				zipOutputStream.write(bytes);
+			}
+			zipOutputStream.putNextEntry(new ZipEntry("Release/Full/Terminology/sct2_Concept_Full_INT_20180131.txt"));
+			zipOutputStream.write("id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId\r\n".getBytes(StandardCharsets.UTF_8));
+		}
+
+		try {
+			File releaseDir = new ReleaseImporter().setParallelism(4).unzipRelease(new FileInputStream(releaseZip), ReleaseImporter.ImportType.SNAPSHOT);
+			try {
+				// Only the extracted entries are left, the copy of the zip is removed
+				Set<String> fileNames = Stream.of(releaseDir.list()).collect(Collectors.toSet());
+				assertEquals(snapshotEntries.keySet(), fileNames);
+				for (Map.Entry<String, byte[]> entry : snapshotEntries.entrySet()) {
+					assertArrayEquals(entry.getKey(), entry.getValue(), Files.readAllBytes(new File(releaseDir, entry.getKey()).toPath()));
+				}
+			} finally {
+				FileUtils.deleteDirectory(releaseDir);
+			}
+
+			// The temp directory is removed when there is nothing to extract
+			Set<String> tempDirsBefore = listUnzipTempDirs();
+			try {
+				new ReleaseImporter().unzipRelease(new FileInputStream(releaseZip), ReleaseImporter.ImportType.DELTA);
+				fail("Zip has no Delta files");
+			} catch (IllegalStateException e) {
+				// Expected
+			}
+			assertEquals(tempDirsBefore, listUnzipTempDirs());
+		} finally {
+			assertTrue(releaseZip.delete());
+		}
+	}
+
+	private static Set<String> listUnzipTempDirs() {
+		String[] tempFiles = new File(System.getProperty("java.io.tmpdir")).list((dir, name) -> name.startsWith("temp-rf2-unzip"));
+		return tempFiles == null ? Collections.emptySet() : Sets.newHashSet(tempFiles);
+	}
+
+	@Test
+	public void testLoadSnapshotSplittingLargeFiles() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File releaseDir = new ReleaseImporter().unzipRelease(new FileInputStream(baseRF2SnapshotZip), ReleaseImporter.ImportType.SNAPSHOT);
+		try {
+			TestComponentFactory wholeFiles = new TestComponentFactory();
+			ReleaseImport wholeImport = new ReleaseImporter()
+					.loadSnapshotReleaseFilesAsync(releaseDir.getAbsolutePath(), LoadingProfile.complete, wholeFiles, true);
+			wholeImport.getFuture().get();
+			assertEquals(0, wholeImport.getSplitRangesRead());
+
+			TestComponentFactory splitFiles = new TestComponentFactory();
+			// Parallelism set so that files are split on a host with one processor
+			ReleaseImport splitImport = new ReleaseImporter().setFileSplitThresholdBytes(200).setParallelism(4)
+					.loadSnapshotReleaseFilesAsync(releaseDir.getAbsolutePath(), LoadingProfile.complete, splitFiles, true);
+			splitImport.getFuture().get();
+			assertTrue("Files are read in more than one range", splitImport.getSplitRangesRead() > 1);
+
+			assertEquals(11, splitFiles.getConceptLines().size());
+			assertEquals(Sets.newHashSet(wholeFiles.getConceptLines()), Sets.newHashSet(splitFiles.getConceptLines()));
+			assertEquals(Sets.newHashSet(wholeFiles.getDescriptionLines()), Sets.newHashSet(splitFiles.getDescriptionLines()));
+			assertEquals(Sets.newHashSet(wholeFiles.getRelationshipLines()), Sets.newHashSet(splitFiles.getRelationshipLines()));
+			assertEquals(wholeFiles.getRelationshipLines().size(), splitFiles.getRelationshipLines().size());
+
+			// Entries of a release zip stream are held in memory and split in the same way, so rows of the one concept file are passed
+			// on more than one thread at once
+			AtomicInteger inConceptState = new AtomicInteger();
+			AtomicInteger maxInConceptState = new AtomicInteger();
+			TestComponentFactory splitEntries = new TestComponentFactory() {
+				@Override
+				public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
+					maxInConceptState.accumulateAndGet(inConceptState.incrementAndGet(), Math::max);
+					try {
+						long end = System.currentTimeMillis() + 2000;
+						while (maxInConceptState.get() < 2 && System.currentTimeMillis() < end) {
+							sleepUninterrupted(10, true);
+						}
+						super.newConceptState(conceptId, effectiveTime, active, moduleId, definitionStatusId);
+					} finally {
+						inConceptState.decrementAndGet();
+					}
+				}
+			};
+			new ReleaseImporter().setFileSplitThresholdBytes(200).setParallelism(4)
+					.loadSnapshotReleaseFiles(new FileInputStream(baseRF2SnapshotZip), LoadingProfile.complete, splitEntries, true);
+			assertTrue("Concept rows are read in more than one range", maxInConceptState.get() > 1);
+			assertEquals(Sets.newHashSet(wholeFiles.getConceptLines()), Sets.newHashSet(splitEntries.getConceptLines()));
+			assertEquals(Sets.newHashSet(wholeFiles.getDescriptionLines()), Sets.newHashSet(splitEntries.getDescriptionLines()));
+			assertEquals(wholeFiles.getRelationshipLines().size(), splitEntries.getRelationshipLines().size());
+			assertEquals(Sets.newHashSet(wholeFiles.getRelationshipLines()), Sets.newHashSet(splitEntries.getRelationshipLines()));
+		} finally {
+			FileUtils.deleteDirectory(releaseDir);
+		}
+	}
+
+	@Test
+	public void testLoadWithBoundedExecutor() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File releaseDir = new ReleaseImporter().unzipRelease(new FileInputStream(baseRF2SnapshotZip), ReleaseImporter.ImportType.SNAPSHOT);
+		// One thread, which split range and pipeline tasks must not wait for while they hold it
+		ExecutorService executorService = Executors.newFixedThreadPool(1);
+		try {
+			TestComponentFactory direct = new TestComponentFactory();
+			new ReleaseImporter().loadSnapshotReleaseFiles(releaseDir.getAbsolutePath(), LoadingProfile.complete, direct, false);
+
+			TestComponentFactory bounded = new TestComponentFactory();
+			ReleaseImport releaseImport = new ReleaseImporter().setExecutorService(executorService).setFileSplitThresholdBytes(200)
+					.setParallelism(2).setPipelineBatches(1)
+					.loadSnapshotReleaseFilesAsync(releaseDir.getAbsolutePath(), LoadingProfile.complete, bounded, true);
+			releaseImport.getFuture().get(30, TimeUnit.SECONDS);
+			assertTrue(releaseImport.getSplitRangesRead() > 1);
+			assertEquals(Sets.newHashSet(direct.getConceptLines()), Sets.newHashSet(bounded.getConceptLines()));
+			assertEquals(Sets.newHashSet(direct.getDescriptionLines()), Sets.newHashSet(bounded.getDescriptionLines()));
+			assertEquals(direct.getRelationshipLines().size(), bounded.getRelationshipLines().size());
+			assertEquals(Sets.newHashSet(direct.getRefsetMemberLines()), Sets.newHashSet(bounded.getRefsetMemberLines()));
+		} finally {
+			executorService.shutdown();
+			FileUtils.deleteDirectory(releaseDir);
+		}
+	}
+
+	@Test
+	public void testParallelismLimitsReadingAcrossFiles() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File releaseDir = new ReleaseImporter().unzipRelease(new FileInputStream(baseRF2SnapshotZip), ReleaseImporter.ImportType.SNAPSHOT);
+		try {
+			AtomicInteger reading = new AtomicInteger();
+			AtomicInteger maxReading = new AtomicInteger();
+			TestComponentFactory componentFactory = new TestComponentFactory() {
+				@Override
+				public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode,
+						String typeId, String term, String caseSignificanceId) {
+					read(() -> super.newDescriptionState(id, effectiveTime, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId));
+				}
+
+				@Override
+				public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId,
+						String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+					read(() -> super.newRelationshipState(id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId,
+							characteristicTypeId, modifierId));
+				}
+
+				private void read(Runnable row) {
+					maxReading.accumulateAndGet(reading.incrementAndGet(), Math::max);
+					try {
+						Thread.sleep(2);
+						row.run();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						reading.decrementAndGet();
+					}
+				}
+			};
+			// Files are split into two ranges, and two files are ready at once, but no more than two ranges are read at once
+			ReleaseImport releaseImport = new ReleaseImporter().setFileSplitThresholdBytes(200).setParallelism(2)
+					.loadSnapshotReleaseFilesAsync(releaseDir.getAbsolutePath(), LoadingProfile.complete, componentFactory, true);
+			releaseImport.getFuture().get(30, TimeUnit.SECONDS);
+			assertTrue(releaseImport.getSplitRangesRead() > 1);
+			assertTrue(maxReading.get() > 0);
+			assertTrue("At most two ranges read at once, found " + maxReading.get(), maxReading.get() <= 2);
+		} finally {
+			FileUtils.deleteDirectory(releaseDir);
+		}
+	}
+
+	@Test
+	public void testLoadRefsetsAlongsideCoreComponents() throws IOException, ReleaseImportException {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+
+		TestComponentFactory afterCoreComponents = new TestComponentFactory();
+		new ReleaseImporter().loadSnapshotReleaseFiles(baseRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, afterCoreComponents, true);
+
+		TestComponentFactory alongsideCoreComponents = new TestComponentFactory();
+		new ReleaseImporter().setRefsetsAfterCoreComponents(false)
+				.loadSnapshotReleaseFiles(baseRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, alongsideCoreComponents, true);
+
+		assertFalse(afterCoreComponents.getRefsetMemberLines().isEmpty());
+		assertEquals(Sets.newHashSet(afterCoreComponents.getRefsetMemberLines()), Sets.newHashSet(alongsideCoreComponents.getRefsetMemberLines()));
+		assertEquals(Sets.newHashSet(afterCoreComponents.getDescriptionLines()), Sets.newHashSet(alongsideCoreComponents.getDescriptionLines()));
+		assertEquals(Sets.newHashSet(afterCoreComponents.getRelationshipLines()), Sets.newHashSet(alongsideCoreComponents.getRelationshipLines()));
+
+		// Caller supplied executor, one file at a time
+		ExecutorService executorService = Executors.newCachedThreadPool();
+		try {
+			TestComponentFactory supplied = new TestComponentFactory();
+			new ReleaseImporter().setExecutorService(executorService).setParallelism(1)
+					.loadSnapshotReleaseFiles(baseRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, supplied, true);
+			assertFalse("The importer does not shut down a supplied executor", executorService.isShutdown());
+			assertEquals(Sets.newHashSet(afterCoreComponents.getRefsetMemberLines()), Sets.newHashSet(supplied.getRefsetMemberLines()));
+			assertEquals(Sets.newHashSet(afterCoreComponents.getDescriptionLines()), Sets.newHashSet(supplied.getDescriptionLines()));
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void testLoadSnapshotPipelined() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+
+		TestComponentFactory direct = new TestComponentFactory();
+		new ReleaseImporter().loadSnapshotReleaseFiles(baseRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, direct, true);
+
+		TestComponentFactory pipelined = new TestComponentFactory();
+		new ReleaseImporter().setPipelineBatches(2).setFileSplitThresholdBytes(200)
+				.loadSnapshotReleaseFiles(baseRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, pipelined, true);
+
+		assertEquals(11, pipelined.getConceptLines().size());
+		assertEquals(Sets.newHashSet(direct.getConceptLines()), Sets.newHashSet(pipelined.getConceptLines()));
+		assertEquals(Sets.newHashSet(direct.getDescriptionLines()), Sets.newHashSet(pipelined.getDescriptionLines()));
+		assertEquals(Sets.newHashSet(direct.getRelationshipLines()), Sets.newHashSet(pipelined.getRelationshipLines()));
+		assertEquals(Sets.newHashSet(direct.getRefsetMemberLines()), Sets.newHashSet(pipelined.getRefsetMemberLines()));
+		assertEquals(direct.getIdentifierLines(), pipelined.getIdentifierLines());
+
+		// Pipeline metrics are totalled by an asynchronous load
+		ReleaseImport releaseImport = new ReleaseImporter().setPipelineBatches(2)
+				.loadSnapshotReleaseFilesAsync(baseRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, new TestComponentFactory(), true);
+		releaseImport.getFuture().get(30, TimeUnit.SECONDS);
+		assertTrue(releaseImport.getPipelineRows() > 0);
+		assertTrue(releaseImport.getPipelineRows() <= releaseImport.getRowsRead());
+		assertTrue(releaseImport.getPipelineMaxQueuedBatches() <= 2);
+		assertTrue(releaseImport.getPipelineMeanQueuedBatches() <= releaseImport.getPipelineMaxQueuedBatches());
+		assertTrue(releaseImport.getPipelineReaderWaitMillis() >= 0);
+		assertTrue(releaseImport.getPipelineHandlerWaitMillis() >= 0);
+	}
+
+	@Test
+	public void testLoadSnapshotFromZipWithoutExtracting() throws IOException, ReleaseImportException {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+
+		TestComponentFactory fromStream = new TestComponentFactory();
+		new ReleaseImporter().loadSnapshotReleaseFiles(new FileInputStream(baseRF2SnapshotZip), LoadingProfile.complete, fromStream, true);
+
+		TestComponentFactory fromZipPath = new TestComponentFactory();
+		new ReleaseImporter().loadSnapshotReleaseFiles(baseRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, fromZipPath, true);
+
+		TestComponentFactory fromSpooledStream = new TestComponentFactory();
+		new ReleaseImporter().setSpoolReleaseZipToTempFile(true)
+				.loadSnapshotReleaseFiles(new FileInputStream(baseRF2SnapshotZip), LoadingProfile.complete, fromSpooledStream, true);
+
+		// Entries that do not fit in the memory buffer are not written to temp files unless the stream is spooled
+		try {
+			new ReleaseImporter().setReleaseZipMemoryBufferBytes(100)
+					.loadSnapshotReleaseFiles(new FileInputStream(baseRF2SnapshotZip), LoadingProfile.complete, new TestComponentFactory(), true);
+			fail("Entries over the memory buffer should fail the load");
+		} catch (ReleaseImportException e) {
+			assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("setSpoolReleaseZipToTempFile(true)"));
+		}
+		TestComponentFactory fromSpooledStreamOverMemoryLimit = new TestComponentFactory();
+		new ReleaseImporter().setReleaseZipMemoryBufferBytes(100).setSpoolReleaseZipToTempFile(true)
+				.loadSnapshotReleaseFiles(new FileInputStream(baseRF2SnapshotZip), LoadingProfile.complete, fromSpooledStreamOverMemoryLimit, true);
+
+		assertEquals(11, fromStream.getConceptLines().size());
+		for (TestComponentFactory factory : List.of(fromZipPath, fromSpooledStream, fromSpooledStreamOverMemoryLimit)) {
+			assertEquals(Sets.newHashSet(fromStream.getConceptLines()), Sets.newHashSet(factory.getConceptLines()));
+			assertEquals(Sets.newHashSet(fromStream.getDescriptionLines()), Sets.newHashSet(factory.getDescriptionLines()));
+			assertEquals(Sets.newHashSet(fromStream.getRelationshipLines()), Sets.newHashSet(factory.getRelationshipLines()));
+		}
+
+		// Only the entries the loading profile loads are read from a stream
+		LoadingProfile conceptsOnly = LoadingProfile.light.withoutDescriptions().withoutRelationships().withoutIdentifiers().withoutAnyRefsets();
+		try (ReleaseArchive archive = ReleaseArchive.read(new FileInputStream(baseRF2SnapshotZip),
+				path -> ReleaseImporter.ImportRun.isLoadedFile(path, ReleaseImporter.ImportType.SNAPSHOT, conceptsOnly), Long.MAX_VALUE, false)) {
+			assertEquals(1, archive.getFiles().size());
+			assertTrue(archive.getFiles().get(0).getFileName().toString().startsWith("sct2_Concept_Snapshot"));
+		}
+
+		// Entries whose size is recorded before their content are read into arrays of that size
+		byte[] conceptFile = "id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId\n138875005\t20020131\t1\t900000000000207008\t900000000000074008\n"
+				.getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream storedZip = new ByteArrayOutputStream();
+		try (ZipOutputStream zipOutputStream = new ZipOutputStream(storedZip)) {
+			ZipEntry entry = new ZipEntry("Snapshot/Terminology/sct2_Concept_Snapshot_INT_20210131.txt");
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(conceptFile.length);
+			CRC32 crc = new CRC32();
+			crc.update(conceptFile);
+			entry.setCrc(crc.getValue());
+			zipOutputStream.putNextEntry(entry);
+			zipOutputStream.write(conceptFile);
+		}
+		try (ReleaseArchive archive = ReleaseArchive.read(new ByteArrayInputStream(storedZip.toByteArray()), path -> true, conceptFile.length, false)) {
+			Path entryPath = archive.getFiles().get(0);
+			assertEquals(conceptFile.length, archive.size(entryPath));
+			assertEquals(conceptFile.length, archive.getContent(entryPath).capacity());
+		}
+
+		// The same zip can be opened by overlapping imports
+		try (ReleaseArchive first = ReleaseArchive.openZip(baseRF2SnapshotZip.toPath());
+			 ReleaseArchive second = ReleaseArchive.openZip(baseRF2SnapshotZip.toPath())) {
+			assertEquals(first.getFiles().size(), second.getFiles().size());
+		}
+	}
+
+	@Test
+	public void testLoadEffectiveSnapshotUsingEffectiveTimeIndex() throws IOException, ReleaseImportException {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File extensionRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Extension_snapshot");
+		File indexDirectory = Files.createTempDirectory("effective-time-index").toFile();
+		try {
+			ReleaseImporter releaseImporter = new ReleaseImporter().setEffectiveTimeIndexDirectory(indexDirectory);
+
+			TestComponentFactory primed = new TestComponentFactory();
+			releaseImporter.loadEffectiveSnapshotReleaseFileStreams(Sets.newHashSet(new FileInputStream(baseRF2SnapshotZip), new FileInputStream(extensionRF2SnapshotZip)), LoadingProfile.complete, primed, true);
+			File[] indexFiles = indexDirectory.listFiles();
+			assertNotNull(indexFiles);
+			assertEquals(1, indexFiles.length);
+
+			TestComponentFactory fromIndex = new TestComponentFactory();
+			releaseImporter.loadEffectiveSnapshotReleaseFileStreams(Sets.newHashSet(new FileInputStream(baseRF2SnapshotZip), new FileInputStream(extensionRF2SnapshotZip)), LoadingProfile.complete, fromIndex, true);
+
+			assertEquals(12, fromIndex.getConceptLines().size());
+			assertEquals(Sets.newHashSet(primed.getConceptLines()), Sets.newHashSet(fromIndex.getConceptLines()));
+			assertEquals(Sets.newHashSet(primed.getDescriptionLines()), Sets.newHashSet(fromIndex.getDescriptionLines()));
+			assertEquals(Sets.newHashSet(primed.getRelationshipLines()), Sets.newHashSet(fromIndex.getRelationshipLines()));
+			assertEquals(Sets.newHashSet(primed.getRefsetMemberLines()), Sets.newHashSet(fromIndex.getRefsetMemberLines()));
+			assertEquals(Sets.newHashSet(primed.getIdentifierLines()), Sets.newHashSet(fromIndex.getIdentifierLines()));
+
+			// A different loading profile does not reuse the index
+			releaseImporter.loadEffectiveSnapshotReleaseFileStreams(Sets.newHashSet(new FileInputStream(baseRF2SnapshotZip), new FileInputStream(extensionRF2SnapshotZip)), LoadingProfile.light, new TestComponentFactory(), true);
+			assertEquals(2, indexDirectory.listFiles().length);
+		} finally {
+			FileUtils.deleteDirectory(indexDirectory);
+		}
+	}
+
+	@Test
+	public void testLoadEffectiveSnapshotInBatches() throws IOException, ReleaseImportException {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File extensionRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Extension_snapshot");
+		Set<String> releasePaths = Sets.newHashSet(baseRF2SnapshotZip.getAbsolutePath(), extensionRF2SnapshotZip.getAbsolutePath());
+
+		TestComponentFactory rows = new TestComponentFactory();
+		new ReleaseImporter().loadEffectiveSnapshotReleaseFiles(releasePaths, LoadingProfile.complete, rows, true);
+
+		TestBatchComponentFactory batches = new TestBatchComponentFactory();
+		new ReleaseImporter().loadEffectiveSnapshotReleaseFiles(releasePaths, LoadingProfile.complete, batches, true);
+
+		TestBatchComponentFactory pipelinedBatches = new TestBatchComponentFactory();
+		new ReleaseImporter().setPipelineBatches(2)
+				.loadEffectiveSnapshotReleaseFiles(releasePaths, LoadingProfile.complete, pipelinedBatches, true);
+
+		assertEquals(12, rows.getConceptLines().size());
+		for (TestBatchComponentFactory factory : List.of(batches, pipelinedBatches)) {
+			assertEquals(rows.getConceptLines().size(), factory.getConceptLines().size());
+			assertEquals(Sets.newHashSet(rows.getConceptLines()), Sets.newHashSet(factory.getConceptLines()));
+			assertEquals(Sets.newHashSet(rows.getDescriptionLines()), Sets.newHashSet(factory.getDescriptionLines()));
+			assertEquals(Sets.newHashSet(rows.getRelationshipLines()), Sets.newHashSet(factory.getRelationshipLines()));
+			assertEquals(Sets.newHashSet(rows.getConcreteRelationshipLines()), Sets.newHashSet(factory.getConcreteRelationshipLines()));
+			assertTrue(factory.getBatches() > 0);
+			assertTrue(factory.getBatches() < factory.getConceptLines().size() + factory.getDescriptionLines().size());
+		}
+	}
+
+	@Test
+	public void testLoadFactoriesInOnePass() throws IOException, ReleaseImportException {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File extensionRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Extension_snapshot");
+		Set<String> releasePaths = Sets.newHashSet(baseRF2SnapshotZip.getAbsolutePath(), extensionRF2SnapshotZip.getAbsolutePath());
+
+		TestComponentFactory separately = new TestComponentFactory();
+		new ReleaseImporter().loadEffectiveSnapshotReleaseFiles(releasePaths, LoadingProfile.complete, separately, true);
+
+		TestComponentFactory first = new TestComponentFactory();
+		TestComponentFactory second = new TestComponentFactory();
+		ReleaseImporter releaseImporter = new ReleaseImporter().setFanOutQueueSize(1);
+		releaseImporter.loadEffectiveSnapshotReleaseFiles(releasePaths, LoadingProfile.complete, new ListComponentFactoryProvider(List.of(first, second)), true);
+
+		assertEquals(12, separately.getConceptLines().size());
+		for (TestComponentFactory factory : List.of(first, second)) {
+			assertEquals(separately.getConceptLines().size(), factory.getConceptLines().size());
+			assertEquals(Sets.newHashSet(separately.getConceptLines()), Sets.newHashSet(factory.getConceptLines()));
+			assertEquals(Sets.newHashSet(separately.getDescriptionLines()), Sets.newHashSet(factory.getDescriptionLines()));
+			assertEquals(Sets.newHashSet(separately.getRelationshipLines()), Sets.newHashSet(factory.getRelationshipLines()));
+			assertEquals(Sets.newHashSet(separately.getRefsetMemberLines()), Sets.newHashSet(factory.getRefsetMemberLines()));
+		}
+
+		// A failing factory does not stop the others
+		TestComponentFactory alongsideFailure = new TestComponentFactory();
+		TestComponentFactory failing = new TestComponentFactory() {
+			@Override
+			public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode, String typeId, String term, String caseSignificanceId) {
+				throw new IllegalStateException("Failing factory");
+			}
+		};
+		try {
+			releaseImporter.loadEffectiveSnapshotReleaseFiles(releasePaths, LoadingProfile.complete, new ListComponentFactoryProvider(List.of(failing, alongsideFailure)), true);
+			fail("Expected ReleaseImportException");
+		} catch (ReleaseImportException e) {
+			assertEquals("Failing factory", e.getCause().getMessage());
+		}
+		assertEquals(Sets.newHashSet(separately.getDescriptionLines()), Sets.newHashSet(alongsideFailure.getDescriptionLines()));
+	}
+
 	@Test
 	public void testLoadFull() throws IOException, ReleaseImportException {
 		File baseRF2FullZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_full");
@@ -126,6 +572,141 @@ public class ReleaseImporterTest {
 		assertEquals(1, testComponentFactory.getIdentifierLines().size());
 	}
 
+	@Test
+	public void testLoadFullVersionCallbackOrder() throws IOException, ReleaseImportException {
+		File baseRF2FullDir = new File("src/test/resources/SnomedCT_MiniRF2_Base_full");
+		File baseRF2FullZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines(baseRF2FullDir.getPath());
+		String terminologyDir = "src/test/resources/SnomedCT_MiniRF2_Base_full/Snapshot/Terminology/";
+		List<String> expectedConceptLines = readFullRows(new File(terminologyDir + "sct2_Concept_Full_INT_20180131.txt"));
+		List<String> expectedDescriptionLines = readFullRows(new File(terminologyDir + "sct2_Description_Full-en_INT_20180131.txt"));
+		expectedDescriptionLines.addAll(readFullRows(new File(terminologyDir + "sct2_TextDefinition_Full-en_INT_20180131.txt")));
+		String expectedVersions = "[20020131, 20030731, 20170131, 20180131, 20180731]";
+
+		// Rows held in memory
+		VersionRecordingComponentFactory inMemory = new VersionRecordingComponentFactory();
+		new ReleaseImporter().loadFullReleaseFiles(new FileInputStream(baseRF2FullZip), LoadingProfile.complete, inMemory, true);
+		inMemory.assertRowsWithinTheirVersion();
+		assertEquals(expectedVersions, inMemory.getVersionsLoaded().toString());
+		assertEquals(Sets.newHashSet(expectedConceptLines), Sets.newHashSet(inMemory.getConceptLines()));
+		assertEquals(Sets.newHashSet(expectedDescriptionLines), Sets.newHashSet(inMemory.getDescriptionLines()));
+
+		// Rows written to disk
+		VersionRecordingComponentFactory spilled = new VersionRecordingComponentFactory();
+		new ReleaseImporter().setFullImportMemoryBufferBytes(0)
+				.loadFullReleaseFiles(new FileInputStream(baseRF2FullZip), LoadingProfile.complete, spilled, true);
+		spilled.assertRowsWithinTheirVersion();
+		assertEquals(inMemory.getEvents(), spilled.getEvents());
+
+		// Files that are not loaded still contribute their versions
+		VersionRecordingComponentFactory conceptsOnly = new VersionRecordingComponentFactory();
+		new ReleaseImporter().loadFullReleaseFiles(new FileInputStream(baseRF2FullZip),
+				LoadingProfile.light.withoutDescriptions().withoutRelationships().withoutIdentifiers().withoutAnyRefsets(), conceptsOnly, true);
+		conceptsOnly.assertRowsWithinTheirVersion();
+		assertEquals(expectedVersions, conceptsOnly.getVersionsLoaded().toString());
+		assertEquals(Sets.newHashSet(expectedConceptLines), Sets.newHashSet(conceptsOnly.getConceptLines()));
+		assertTrue(conceptsOnly.getDescriptionLines().isEmpty());
+	}
+
+	@Test
+	public void testLoadFullWithSameFileNameInTwoDirectories() throws IOException, ReleaseImportException {
+		File baseRF2FullZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_full");
+		ReleaseImporter releaseImporter = new ReleaseImporter();
+		File releaseDir = releaseImporter.unzipRelease(new FileInputStream(baseRF2FullZip), ReleaseImporter.ImportType.FULL);
+		try {
+			File conceptFile = new File(releaseDir, "sct2_Concept_Full_INT_20180131.txt");
+			List<String> lines = Files.readAllLines(conceptFile.toPath());
+			assertTrue(conceptFile.delete());
+			// Rows of the same versions split between two files of the same name
+			List<String> rows = lines.subList(1, lines.size());
+			int half = rows.size() / 2;
+			writeLines(new File(releaseDir, "a/sct2_Concept_Full_INT_20180131.txt"), lines.get(0), rows.subList(0, half));
+			writeLines(new File(releaseDir, "b/sct2_Concept_Full_INT_20180131.txt"), lines.get(0), rows.subList(half, rows.size()));
+
+			VersionRecordingComponentFactory componentFactory = new VersionRecordingComponentFactory();
+			releaseImporter.loadFullReleaseFiles(releaseDir.getAbsolutePath(), LoadingProfile.complete, componentFactory, true);
+			componentFactory.assertRowsWithinTheirVersion();
+			assertEquals(11, componentFactory.getConceptLines().size());
+		} finally {
+			FileUtils.deleteDirectory(releaseDir);
+		}
+	}
+
+	private static List<String> readFullRows(File rf2File) throws IOException {
+		return Files.readAllLines(rf2File.toPath()).stream()
+				.filter(line -> !line.isEmpty() && !line.startsWith("#") && !line.startsWith("id\t"))
+				.map(line -> String.join("|", Arrays.asList(line.split("\t")).subList(0, 4)))
+				.collect(Collectors.toList());
+	}
+
+	private static void writeLines(File file, String header, List<String> rows) throws IOException {
+		List<String> lines = new ArrayList<>();
+		lines.add(header);
+		lines.addAll(rows);
+		FileUtils.writeLines(file, "UTF-8", lines, "\r\n");
+	}
+
+	/**
+	 * Records each version callback and the effectiveTime of each concept and description row, in order.
+	 */
+	private static class VersionRecordingComponentFactory extends TestComponentFactory {
+
+		private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public void loadingReleaseDeltaStarting(String releaseVersion) {
+			super.loadingReleaseDeltaStarting(releaseVersion);
+			events.add("start " + releaseVersion);
+		}
+
+		@Override
+		public void loadingReleaseDeltaFinished(String releaseVersion) {
+			events.add("finish " + releaseVersion);
+		}
+
+		@Override
+		public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
+			super.newConceptState(conceptId, effectiveTime, active, moduleId, definitionStatusId);
+			events.add("row " + effectiveTime);
+		}
+
+		@Override
+		public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode, String typeId, String term, String caseSignificanceId) {
+			super.newDescriptionState(id, effectiveTime, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
+			events.add("row " + effectiveTime);
+		}
+
+		/**
+		 * Versions must be started and finished one at a time, in order, with each row between the callbacks of its own version,
+		 * as when each version was loaded separately.
+		 */
+		void assertRowsWithinTheirVersion() {
+			String openVersion = null;
+			String lastVersion = "";
+			for (String event : events) {
+				String[] parts = event.split(" ", 2);
+				switch (parts[0]) {
+					case "start":
+						assertNull("Version started before " + openVersion + " finished", openVersion);
+						assertTrue("Versions in order", parts[1].compareTo(lastVersion) > 0);
+						openVersion = parts[1];
+						break;
+					case "finish":
+						assertEquals(openVersion, parts[1]);
+						lastVersion = openVersion;
+						openVersion = null;
+						break;
+					default:
+						assertEquals("Row loaded within its own version", openVersion, parts[1]);
+				}
+			}
+			assertNull(openVersion);
+		}
+
+		List<String> getEvents() {
+			return events;
+		}
+	}
+
 	@Test
 	public void testCollectReleaseFile() {
 		ReleaseFiles releaseFiles = new ReleaseFiles();
@@ -260,6 +841,500 @@ public class ReleaseImporterTest {
 		}
 	}
 
+	@Test
+	public void testLoadAsync() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		ReleaseImporter releaseImporter = new ReleaseImporter();
+
+		TestComponentFactory blocking = new TestComponentFactory();
+		releaseImporter.loadSnapshotReleaseFiles(baseRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, blocking, true);
+
+		TestComponentFactory asynchronous = new TestComponentFactory();
+		ReleaseImport releaseImport = releaseImporter.loadSnapshotReleaseFilesAsync(baseRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, asynchronous, true);
+		releaseImport.getFuture().get(30, TimeUnit.SECONDS);
+		assertEquals(Sets.newHashSet(blocking.getConceptLines()), Sets.newHashSet(asynchronous.getConceptLines()));
+		assertEquals(Sets.newHashSet(blocking.getDescriptionLines()), Sets.newHashSet(asynchronous.getDescriptionLines()));
+		assertEquals(Sets.newHashSet(blocking.getRefsetMemberLines()), Sets.newHashSet(asynchronous.getRefsetMemberLines()));
+		assertTrue(releaseImport.getFilesRead() > 0);
+		assertTrue(releaseImport.getRowsRead() >= blocking.getConceptLines().size() + blocking.getDescriptionLines().size());
+
+		// Cancel while the component factory is busy
+		CountDownLatch conceptReceived = new CountDownLatch(1);
+		TestComponentFactory slow = new TestComponentFactory() {
+			@Override
+			public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
+				conceptReceived.countDown();
+				try {
+					Thread.sleep(30_000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted", e);
+				}
+			}
+		};
+		releaseImport = releaseImporter.loadSnapshotReleaseFilesAsync(baseRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, slow, true);
+		assertTrue(conceptReceived.await(30, TimeUnit.SECONDS));
+		assertTrue(releaseImport.cancel());
+		assertTrue(releaseImport.awaitTermination(5, TimeUnit.SECONDS));
+		assertTrue(releaseImport.isCancelled());
+		assertTrue(releaseImport.getFuture().isCancelled());
+		assertTrue(slow.getDescriptionLines().isEmpty());
+
+		// Failure
+		File invalidRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_invalid_description_rf2");
+		releaseImport = releaseImporter.loadSnapshotReleaseFilesAsync(invalidRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, new TestComponentFactory(), true);
+		try {
+			releaseImport.getFuture().get(30, TimeUnit.SECONDS);
+			fail("Should throw exception because of bad file content.");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ReleaseImportException);
+		}
+	}
+
+	@Test
+	public void testLoadAsyncCompletesAfterEveryTaskStops() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		AtomicInteger inFactory = new AtomicInteger();
+
+		// Cancelled while a description task is in the component factory, and slow to leave once interrupted
+		CountDownLatch descriptionReceived = new CountDownLatch(1);
+		TestComponentFactory slowToStop = new TestComponentFactory() {
+			@Override
+			public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode,
+					String typeId, String term, String caseSignificanceId) {
+				inFactory.incrementAndGet();
+				try {
+					descriptionReceived.countDown();
+					if (sleepUninterrupted(30_000, true)) {
+						throw new IllegalStateException("Interrupted");
+					}
+				} finally {
+					inFactory.decrementAndGet();
+				}
+			}
+		};
+		ReleaseImport releaseImport = new ReleaseImporter()
+				.loadSnapshotReleaseFilesAsync(baseRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, slowToStop, true);
+		assertTrue(descriptionReceived.await(30, TimeUnit.SECONDS));
+		assertTrue(releaseImport.cancel());
+		try {
+			releaseImport.getFuture().get(30, TimeUnit.SECONDS);
+			fail("Should be cancelled.");
+		} catch (CancellationException e) {
+			// Expected
+		}
+		assertEquals(0, inFactory.get());
+		assertTrue(releaseImport.getFuture().isCancelled());
+		assertFalse(releaseImport.cancel());
+
+		// One task fails while another is in the component factory
+		CountDownLatch descriptionEntered = new CountDownLatch(1);
+		CountDownLatch relationshipFailed = new CountDownLatch(1);
+		TestComponentFactory failing = new TestComponentFactory() {
+			@Override
+			public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode,
+					String typeId, String term, String caseSignificanceId) {
+				inFactory.incrementAndGet();
+				try {
+					descriptionEntered.countDown();
+					awaitQuietly(relationshipFailed);
+					sleepUninterrupted(500, false);
+				} finally {
+					inFactory.decrementAndGet();
+				}
+			}
+
+			@Override
+			public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId,
+					String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+				awaitQuietly(descriptionEntered);
+				relationshipFailed.countDown();
+				throw new IllegalStateException("Relationship rejected");
+			}
+		};
+		releaseImport = new ReleaseImporter()
+				.loadSnapshotReleaseFilesAsync(baseRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, failing, true);
+		try {
+			releaseImport.getFuture().get(30, TimeUnit.SECONDS);
+			fail("Should fail.");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ReleaseImportException);
+		}
+		assertEquals(0, inFactory.get());
+	}
+
+	@Test
+	public void testLoadAsyncOnSuppliedExecutor() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		ExecutorService executorService = Executors.newFixedThreadPool(2, runnable -> new Thread(runnable, "supplied-executor"));
+		try {
+			AtomicReference<String> importThread = new AtomicReference<>();
+			TestComponentFactory componentFactory = new TestComponentFactory() {
+				@Override
+				public void loadingComponentsStarting() {
+					importThread.set(Thread.currentThread().getName());
+					super.loadingComponentsStarting();
+				}
+			};
+			ReleaseImport releaseImport = new ReleaseImporter().setExecutorService(executorService)
+					.loadSnapshotReleaseFilesAsync(baseRF2SnapshotZip.getAbsolutePath(), LoadingProfile.complete, componentFactory, true);
+			releaseImport.getFuture().get(30, TimeUnit.SECONDS);
+			assertEquals("supplied-executor", importThread.get());
+			assertEquals(11, componentFactory.getConceptLines().size());
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	/**
+	 * Sleeps for the given time, or if stopOnInterrupt for a short time after being interrupted.
+	 * @return true if interrupted, the interrupt is restored.
+	 */
+	private static boolean sleepUninterrupted(long millis, boolean stopOnInterrupt) {
+		long end = System.currentTimeMillis() + millis;
+		boolean interrupted = false;
+		while (System.currentTimeMillis() < end) {
+			try {
+				Thread.sleep(Math.max(1, end - System.currentTimeMillis()));
+			} catch (InterruptedException e) {
+				interrupted = true;
+				if (stopOnInterrupt) {
+					end = Math.min(end, System.currentTimeMillis() + 500);
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return interrupted;
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testPublishEffectiveSnapshot() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File extensionRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Extension_snapshot");
+		Set<String> releasePaths = Sets.newHashSet(baseRF2SnapshotZip.getAbsolutePath(), extensionRF2SnapshotZip.getAbsolutePath());
+
+		TestComponentFactory pushed = new TestComponentFactory();
+		new ReleaseImporter().loadEffectiveSnapshotReleaseFiles(releasePaths, LoadingProfile.complete, pushed, true);
+
+		// Replay the published rows into a component factory
+		TestComponentFactory published = new TestComponentFactory();
+		List<ComponentRow> received = Collections.synchronizedList(new ArrayList<>());
+		CompletableFuture<Void> completed = new CompletableFuture<>();
+		AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+		new ReleaseImporter().publishEffectiveSnapshotReleaseFiles(releasePaths, LoadingProfile.complete, true).subscribe(new Flow.Subscriber<>() {
+			@Override
+			public void onSubscribe(Flow.Subscription s) {
+				subscription.set(s);
+				s.request(1);
+			}
+
+			@Override
+			public void onNext(ComponentRow row) {
+				received.add(row);
+				if (row instanceof ConceptRow concept) {
+					published.newConceptState(concept.id(), concept.effectiveTime(), concept.active(), concept.moduleId(), concept.definitionStatusId());
+				} else if (row instanceof DescriptionRow description) {
+					published.newDescriptionState(description.id(), description.effectiveTime(), description.active(), description.moduleId(),
+							description.conceptId(), description.languageCode(), description.typeId(), description.term(), description.caseSignificanceId());
+				} else if (row instanceof RefsetMemberRow member) {
+					published.newReferenceSetMemberState(member.filename(), member.fieldNames(), member.id(), member.effectiveTime(), member.active(),
+							member.moduleId(), member.refsetId(), member.referencedComponentId(), member.otherValues());
+				}
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				completed.completeExceptionally(throwable);
+			}
+
+			@Override
+			public void onComplete() {
+				completed.complete(null);
+			}
+		});
+
+		// Reading waits for demand
+		Thread.sleep(200);
+		assertEquals(1, received.size());
+		subscription.get().request(Long.MAX_VALUE);
+		completed.get(30, TimeUnit.SECONDS);
+
+		assertEquals(Sets.newHashSet(pushed.getConceptLines()), Sets.newHashSet(published.getConceptLines()));
+		assertEquals(Sets.newHashSet(pushed.getDescriptionLines()), Sets.newHashSet(published.getDescriptionLines()));
+		assertEquals(Sets.newHashSet(pushed.getRefsetMemberLines()), Sets.newHashSet(published.getRefsetMemberLines()));
+	}
+
+	@Test
+	public void testPublishSignalsErrorAfterReadingStops() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		ReleaseImporter releaseImporter = new ReleaseImporter().setFileSplitThresholdBytes(100);
+		File releaseDir = releaseImporter.unzipRelease(new FileInputStream(baseRF2SnapshotZip), ReleaseImporter.ImportType.SNAPSHOT);
+		try {
+			AtomicInteger rowsAfterTermination = new AtomicInteger();
+			AtomicInteger signalsDuringOnNext = new AtomicInteger();
+			AtomicInteger terminalSignals = new AtomicInteger();
+			CompletableFuture<Throwable> error = new CompletableFuture<>();
+			AtomicBoolean inOnNext = new AtomicBoolean();
+			releaseImporter.publishSnapshotReleaseFiles(releaseDir.getAbsolutePath(), LoadingProfile.complete, true).subscribe(new Flow.Subscriber<>() {
+				private Flow.Subscription subscription;
+				private int rows;
+
+				@Override
+				public void onSubscribe(Flow.Subscription s) {
+					subscription = s;
+					s.request(Long.MAX_VALUE);
+				}
+
+				@Override
+				public void onNext(ComponentRow row) {
+					inOnNext.set(true);
+					try {
+						if (terminalSignals.get() > 0) {
+							rowsAfterTermination.incrementAndGet();
+						}
+						if (++rows == 10) {
+							// Not a valid request, the error must not be signalled inside this onNext
+							subscription.request(0);
+						}
+					} finally {
+						inOnNext.set(false);
+					}
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					signal();
+					error.complete(throwable);
+				}
+
+				@Override
+				public void onComplete() {
+					signal();
+					error.complete(null);
+				}
+
+				private void signal() {
+					if (inOnNext.get()) {
+						signalsDuringOnNext.incrementAndGet();
+					}
+					terminalSignals.incrementAndGet();
+				}
+			});
+
+			assertTrue(error.get(30, TimeUnit.SECONDS) instanceof IllegalArgumentException);
+			Thread.sleep(200);
+			assertEquals(0, signalsDuringOnNext.get());
+			assertEquals(0, rowsAfterTermination.get());
+			assertEquals(1, terminalSignals.get());
+
+			// A request that is not positive before the import starts is signalled without reading
+			CompletableFuture<Throwable> earlyError = new CompletableFuture<>();
+			AtomicInteger earlyRows = new AtomicInteger();
+			releaseImporter.publishSnapshotReleaseFiles(releaseDir.getAbsolutePath(), LoadingProfile.complete, false).subscribe(new Flow.Subscriber<>() {
+				@Override
+				public void onSubscribe(Flow.Subscription s) {
+					s.request(-1);
+				}
+
+				@Override
+				public void onNext(ComponentRow row) {
+					earlyRows.incrementAndGet();
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					earlyError.complete(throwable);
+				}
+
+				@Override
+				public void onComplete() {
+					earlyError.complete(null);
+				}
+			});
+			assertTrue(earlyError.get(30, TimeUnit.SECONDS) instanceof IllegalArgumentException);
+			assertEquals(0, earlyRows.get());
+		} finally {
+			FileUtils.deleteDirectory(releaseDir);
+		}
+	}
+
+	@Test
+	public void testLoadFilteredByModuleWithMalformedModuleIds() throws IOException, ReleaseImportException {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		ReleaseImporter releaseImporter = new ReleaseImporter();
+		File releaseDir = releaseImporter.unzipRelease(new FileInputStream(baseRF2SnapshotZip), ReleaseImporter.ImportType.SNAPSHOT);
+		try {
+			File conceptFile = new File(releaseDir, "sct2_Concept_Snapshot_INT_20210131.txt");
+			assertTrue(conceptFile.isFile());
+			FileUtils.writeLines(conceptFile, "UTF-8", List.of(
+					"100005\t20180131\t1\t\t900000000000074008",
+					"101009\t20180131\t1\tmodel\t900000000000074008",
+					"102001\t20180131\t1\t9000000000000120040000\t900000000000074008"), "\r\n", true);
+
+			// Rows with an empty or malformed moduleId are not in the module, rather than failing the import
+			TestComponentFactory modelModule = new TestComponentFactory();
+			releaseImporter.loadSnapshotReleaseFiles(releaseDir.getAbsolutePath(), LoadingProfile.complete.withModuleIds(ConceptConstants.MODEL_MODULE),
+					modelModule, false);
+			assertEquals(6, modelModule.getConceptLines().size());
+		} finally {
+			FileUtils.deleteDirectory(releaseDir);
+		}
+	}
+
+	@Test
+	public void testLoadFilteredByModuleAndRefsetIds() throws IOException, ReleaseImportException {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		ReleaseImporter releaseImporter = new ReleaseImporter();
+
+		TestComponentFactory all = new TestComponentFactory();
+		releaseImporter.loadSnapshotReleaseFiles(new FileInputStream(baseRF2SnapshotZip), LoadingProfile.complete, all, false);
+
+		// Rows of other modules are skipped before they are decoded, the same rows are loaded as when the module filter dropped them
+		TestComponentFactory modelModule = new TestComponentFactory();
+		releaseImporter.loadSnapshotReleaseFiles(new FileInputStream(baseRF2SnapshotZip), LoadingProfile.complete.withModuleIds(ConceptConstants.MODEL_MODULE),
+				modelModule, false);
+		String modelModuleSuffix = "|" + ConceptConstants.MODEL_MODULE;
+		assertEquals(6, modelModule.getConceptLines().size());
+		assertEquals(all.getConceptLines().stream().filter(line -> line.endsWith(modelModuleSuffix)).collect(Collectors.toList()), modelModule.getConceptLines());
+		assertEquals(all.getDescriptionLines().stream().filter(line -> line.endsWith(modelModuleSuffix)).collect(Collectors.toList()), modelModule.getDescriptionLines());
+		assertEquals(all.getRelationshipLines().stream().filter(line -> line.endsWith(modelModuleSuffix)).collect(Collectors.toList()), modelModule.getRelationshipLines());
+		assertEquals(all.getRefsetMemberLines().stream().filter(line -> line.endsWith(modelModuleSuffix)).collect(Collectors.toList()), modelModule.getRefsetMemberLines());
+
+		// Refset ids are matched without decoding the refsetId column
+		TestComponentFactory owlRefset = new TestComponentFactory();
+		releaseImporter.loadSnapshotReleaseFiles(new FileInputStream(baseRF2SnapshotZip), LoadingProfile.light.withRefset("733073007"), owlRefset, false);
+		assertEquals(List.of("c69ad177-9756-4ad1-a8b3-02407ca95b36|20170131|1|900000000000012004"), owlRefset.getRefsetMemberLines());
+
+		TestComponentFactory otherRefsets = new TestComponentFactory();
+		releaseImporter.loadSnapshotReleaseFiles(new FileInputStream(baseRF2SnapshotZip), LoadingProfile.light, otherRefsets, false);
+		assertTrue(otherRefsets.getRefsetMemberLines().isEmpty());
+	}
+
+	@Test
+	public void testStreamSnapshotRows() throws IOException, ReleaseImportException {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		ReleaseImporter releaseImporter = new ReleaseImporter().setFileSplitThresholdBytes(100);
+		File releaseDir = releaseImporter.unzipRelease(new FileInputStream(baseRF2SnapshotZip), ReleaseImporter.ImportType.SNAPSHOT);
+		try {
+			TestComponentFactory pushed = new TestComponentFactory();
+			releaseImporter.loadSnapshotReleaseFiles(releaseDir.getAbsolutePath(), LoadingProfile.complete, pushed, false);
+
+			// Files are split into ranges of at least 100 bytes
+			try (Stream<DescriptionRow> descriptions = releaseImporter.streamReleaseFiles(releaseDir.getAbsolutePath(), ReleaseImporter.ImportType.SNAPSHOT,
+					LoadingProfile.complete, DescriptionRow.class)) {
+
+				assertEquals(Sets.newHashSet(pushed.getDescriptionLines()), descriptions.parallel()
+						.map(row -> String.join("|", row.id(), row.effectiveTime(), row.active(), row.moduleId()))
+						.collect(Collectors.toSet()));
+			}
+			try (Stream<RefsetMemberRow> members = releaseImporter.streamReleaseFiles(baseRF2SnapshotZip.getAbsolutePath(), ReleaseImporter.ImportType.SNAPSHOT,
+					LoadingProfile.complete, RefsetMemberRow.class)) {
+
+				assertEquals(Sets.newHashSet(pushed.getRefsetMemberLines()), members.parallel()
+						.map(row -> String.join("|", row.id(), row.effectiveTime(), row.active(), row.moduleId()))
+						.collect(Collectors.toSet()));
+			}
+
+			// Loading profile filters apply
+			try (Stream<ConceptRow> concepts = releaseImporter.streamReleaseFiles(releaseDir.getAbsolutePath(), ReleaseImporter.ImportType.SNAPSHOT,
+					LoadingProfile.light, ConceptRow.class)) {
+
+				assertTrue(concepts.parallel().allMatch(ConceptRow::isActive));
+			}
+		} finally {
+			FileUtils.deleteDirectory(releaseDir);
+		}
+	}
+
+	@Test
+	public void testStreamClosesEachReaderThroughItsFile() throws IOException {
+		Path conceptFile = Files.createTempFile("sct2_Concept_Snapshot_INT_", ".txt");
+		try {
+			StringBuilder content = new StringBuilder("id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId\n");
+			for (int i = 0; i < 1000; i++) {
+				content.append(i).append("\t20170131\t1\t900000000000207008\t900000000000074008\n");
+			}
+			Files.writeString(conceptFile, content);
+			Set<RF2Reader> openReaders = ConcurrentHashMap.newKeySet();
+			AtomicInteger readersOpened = new AtomicInteger();
+			RF2RowSpliterator.RowFile rowFile = new RF2RowSpliterator.RowFile() {
+				@Override
+				public String getName() {
+					return conceptFile.getFileName().toString();
+				}
+
+				@Override
+				public long size() {
+					return conceptFile.toFile().length();
+				}
+
+				@Override
+				public boolean isSplittable() {
+					return true;
+				}
+
+				@Override
+				public long getRowsStart() throws IOException {
+					return RF2Reader.findNextLineStart(conceptFile, 0);
+				}
+
+				@Override
+				public long findNextLineStart(long position) throws IOException {
+					return RF2Reader.findNextLineStart(conceptFile, position);
+				}
+
+				@Override
+				public RF2Reader open() throws IOException {
+					RF2Reader reader = opened(RF2Reader.open(conceptFile));
+					reader.nextRow();
+					return reader;
+				}
+
+				@Override
+				public RF2Reader open(long start, long end) throws IOException {
+					return opened(RF2Reader.open(conceptFile, start, end));
+				}
+
+				private RF2Reader opened(RF2Reader reader) {
+					readersOpened.incrementAndGet();
+					openReaders.add(reader);
+					return reader;
+				}
+
+				@Override
+				public void close(RF2Reader reader) throws IOException {
+					assertTrue(openReaders.remove(reader));
+					reader.close();
+				}
+
+				@Override
+				public RF2RowSpliterator.RowHandler newRowHandler(Consumer<ComponentRow> rowConsumer) {
+					return (row, linesRead, rangeName) -> rowConsumer.accept(new ConceptRow(row.get(0), row.get(1), row.get(2), row.get(3), row.get(4)));
+				}
+			};
+
+			Set<String> ids = StreamSupport.stream(new RF2RowSpliterator<>(ConceptRow.class, List.of(rowFile), 1000), true)
+					.map(ConceptRow::id)
+					.collect(Collectors.toSet());
+			assertEquals(1000, ids.size());
+			assertTrue(readersOpened.get() > 1);
+			// Every range reader is handed back to its file once read, before the stream is closed
+			assertTrue(openReaders.isEmpty());
+		} finally {
+			Files.delete(conceptFile);
+		}
+	}
+
 	@Test
 	public void testLoadInvalidRF2LoadedInThreads() throws IOException {
 		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_invalid_description_rf2");
@@ -271,8 +1346,8 @@ public class ReleaseImporterTest {
 			releaseImporter.loadSnapshotReleaseFiles(new FileInputStream(baseRF2SnapshotZip), complete, testComponentFactory, true);
 			fail("Should throw exception because of bad file content.");
 		} catch (ReleaseImportException e) {
-			assertEquals("Failed to load release files during release import process. 1 exceptions caught in threads. " +
-					"First exception: Invalid RF2 content. 'id' not found as first value in tab separated first line of sct2_Description_Snapshot-en_INT_20170131.txt.", e.getMessage());
+			assertEquals("Failed to load release files during release import process. " +
+					"Invalid RF2 content. 'id' not found as first value in tab separated first line of sct2_Description_Snapshot-en_INT_20170131.txt.", e.getMessage());
 		}
 	}
 }
@@ -0,0 +1,47 @@
+package org.ihtsdo.otf.snomedboot.factory;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class LoadingProfileTest {
+
+	@Test
+	public void testContentKeyChangesWithEveryField() throws IllegalAccessException {
+		String defaultKey = new LoadingProfile().getContentKey();
+		assertEquals(defaultKey, new LoadingProfile().getContentKey());
+		for (Field field : LoadingProfile.class.getDeclaredFields()) {
+			if (Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+			// Two profiles differing in just this field
+			LoadingProfile profile = new LoadingProfile();
+			field.setAccessible(true);
+			if (field.getType() == boolean.class) {
+				field.setBoolean(profile, true);
+			} else if (field.getType() == Set.class) {
+				field.set(profile, Set.of("123"));
+			} else if (field.getType() == Map.class) {
+				field.set(profile, Map.of("123", 20170131));
+			} else {
+				throw new AssertionError("Unexpected field type " + field);
+			}
+			assertFalse(field.getName(), defaultKey.equals(profile.getContentKey()));
+			// The with methods copy every field
+			assertEquals(field.getName(), profile.getContentKey(), profile.withRefsets().getContentKey());
+		}
+	}
+
+	@Test
+	public void testContentKeyIgnoresSetOrder() {
+		assertEquals(new LoadingProfile().withRefsets("1", "2", "3").withModuleIds("4", "5").getContentKey(),
+				new LoadingProfile().withRefsets("3", "2", "1").withModuleIds("5", "4").getContentKey());
+	}
+
+}
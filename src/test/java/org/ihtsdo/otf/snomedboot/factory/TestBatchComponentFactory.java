@@ -0,0 +1,67 @@
+package org.ihtsdo.otf.snomedboot.factory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.ihtsdo.otf.snomedboot.factory.FactoryUtils.formatActive;
+import static org.ihtsdo.otf.snomedboot.factory.FactoryUtils.formatEffectiveTime;
+
+/**
+ * Records batches as the same lines as TestComponentFactory.
+ */
+public class TestBatchComponentFactory extends TestComponentFactory implements BatchComponentFactory {
+
+	private final AtomicInteger batches = new AtomicInteger();
+
+	@Override
+	public void newConceptStates(ConceptBatch batch) {
+		batches.incrementAndGet();
+		for (int row = 0; row < batch.size(); row++) {
+			newConceptState(batch.getId(row), batch.getEffectiveTime(row), batch.isActive(row), batch.getModuleId(row), batch.getDefinitionStatusId(row));
+		}
+	}
+
+	@Override
+	public void newDescriptionStates(DescriptionBatch batch) {
+		batches.incrementAndGet();
+		for (int row = 0; row < batch.size(); row++) {
+			newDescriptionState(batch.getId(row), batch.getEffectiveTime(row), batch.isActive(row), batch.getModuleId(row), batch.getConceptId(row),
+					batch.getLanguageCode(row), batch.getTypeId(row), batch.getTerm(row), batch.getCaseSignificanceId(row));
+		}
+	}
+
+	@Override
+	public void newRelationshipStates(RelationshipBatch batch) {
+		batches.incrementAndGet();
+		for (int row = 0; row < batch.size(); row++) {
+			newRelationshipState(batch.getId(row), batch.getEffectiveTime(row), batch.isActive(row), batch.getModuleId(row), batch.getSourceId(row),
+					batch.getDestinationId(row), batch.getRelationshipGroup(row), batch.getTypeId(row), batch.getCharacteristicTypeId(row), batch.getModifierId(row));
+		}
+	}
+
+	@Override
+	public void newConceptState(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
+		newConceptState(Long.toString(conceptId), formatEffectiveTime(effectiveTime), formatActive(active), Long.toString(moduleId), Long.toString(definitionStatusId));
+	}
+
+	@Override
+	public void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, String languageCode, long typeId, String term, long caseSignificanceId) {
+		newDescriptionState(Long.toString(id), formatEffectiveTime(effectiveTime), formatActive(active), Long.toString(moduleId), Long.toString(conceptId),
+				languageCode, Long.toString(typeId), term, Long.toString(caseSignificanceId));
+	}
+
+	@Override
+	public void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, long destinationId, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		newRelationshipState(Long.toString(id), formatEffectiveTime(effectiveTime), formatActive(active), Long.toString(moduleId), Long.toString(sourceId),
+				Long.toString(destinationId), Integer.toString(relationshipGroup), Long.toString(typeId), Long.toString(characteristicTypeId), Long.toString(modifierId));
+	}
+
+	@Override
+	public void newConcreteRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, String value, int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+		newConcreteRelationshipState(Long.toString(id), formatEffectiveTime(effectiveTime), formatActive(active), Long.toString(moduleId), Long.toString(sourceId),
+				value, Integer.toString(relationshipGroup), Long.toString(typeId), Long.toString(characteristicTypeId), Long.toString(modifierId));
+	}
+
+	public int getBatches() {
+		return batches.get();
+	}
+}
@@ -1,17 +1,18 @@
 package org.ihtsdo.otf.snomedboot.factory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class TestComponentFactory extends ImpotentHistoryAwareComponentFactory {
 
-	private List<String> conceptLines = new ArrayList<>();
-	private List<String> descriptionLines = new ArrayList<>();
-	private List<String> relationshipLines = new ArrayList<>();
-	private List<String> concreteRelationshipLines = new ArrayList<>();
-	private List<String> identifierLines = new ArrayList<>();
-	private List<String> refsetMemberLines = new ArrayList<>();
-	private List<String> versionsLoaded = new ArrayList<>();
+	private List<String> conceptLines = Collections.synchronizedList(new ArrayList<>());
+	private List<String> descriptionLines = Collections.synchronizedList(new ArrayList<>());
+	private List<String> relationshipLines = Collections.synchronizedList(new ArrayList<>());
+	private List<String> concreteRelationshipLines = Collections.synchronizedList(new ArrayList<>());
+	private List<String> identifierLines = Collections.synchronizedList(new ArrayList<>());
+	private List<String> refsetMemberLines = Collections.synchronizedList(new ArrayList<>());
+	private List<String> versionsLoaded = Collections.synchronizedList(new ArrayList<>());
 
 	@Override
 	public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
@@ -0,0 +1,142 @@
+package org.ihtsdo.otf.snomedboot.factory.filter;
+
+import org.ihtsdo.otf.snomedboot.factory.PrimitiveComponentFactory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class LatestEffectiveDateComponentFactoryTest {
+
+	private static final String MODULE = "900000000000207008";
+	private static final String[] NO_FIELD_NAMES = new String[0];
+
+	@Test
+	public void testCoreComponents() {
+		LatestEffectiveDateComponentFactory factory = new LatestEffectiveDateComponentFactory();
+		factory.newConceptState("138875005", "20020131", "1", MODULE, "900000000000074008");
+		factory.newConceptState("138875005", "20170131", "1", MODULE, "900000000000074008");
+		factory.newConceptState(404684003L, 20170131, true, Long.parseLong(MODULE), 900000000000074008L);
+		factory.newConceptState(404684003L, 20020131, true, Long.parseLong(MODULE), 900000000000074008L);
+		factory.newDescriptionState("517382016", "20020131", "1", MODULE, "138875005", "en", "900000000000013009", "Term", "900000000000448009");
+		// A blank effectiveTime is later than any release
+		factory.newDescriptionState("517382016", "", "1", MODULE, "138875005", "en", "900000000000013009", "Term", "900000000000448009");
+		factory.loadingComponentsCompleted();
+
+		assertTrue(factory.isCoreComponentVersionInEffect("138875005", "20170131"));
+		assertFalse(factory.isCoreComponentVersionInEffect("138875005", "20020131"));
+		assertTrue(factory.isCoreComponentVersionInEffect(404684003L, 20170131));
+		assertFalse(factory.isCoreComponentVersionInEffect(404684003L, 20020131));
+		assertTrue(factory.isCoreComponentVersionInEffect("517382016", ""));
+		assertTrue(factory.isCoreComponentVersionInEffect(517382016L, PrimitiveComponentFactory.NO_EFFECTIVE_TIME));
+		assertFalse(factory.isCoreComponentVersionInEffect("517382016", "20020131"));
+	}
+
+	@Test
+	public void testRefsetMembers() {
+		LatestEffectiveDateComponentFactory factory = new LatestEffectiveDateComponentFactory();
+		String uuid = "c69ad177-9756-4ad1-a8b3-02407ca95b36";
+		String upperCaseUuid = uuid.toUpperCase();
+		String otherId = "member-1";
+		String singleRowUuid = "00000000-0000-0000-0000-000000000001";
+		addMember(factory, uuid, "20020131");
+		addMember(factory, uuid, "20170131");
+		addMember(factory, upperCaseUuid, "20020131");
+		addMember(factory, upperCaseUuid, "20180131");
+		addMember(factory, otherId, "20180131");
+		addMember(factory, otherId, "20020131");
+		addMember(factory, singleRowUuid, "20020131");
+		factory.loadingComponentsCompleted();
+
+		// Packed UUIDs
+		assertTrue(factory.isReferenceSetMemberVersionInEffect(uuid, "20170131"));
+		assertFalse(factory.isReferenceSetMemberVersionInEffect(uuid, "20020131"));
+
+		// Ids are matched exactly, an upper case UUID is held apart from the lower case one
+		assertTrue(factory.isReferenceSetMemberVersionInEffect(upperCaseUuid, "20180131"));
+		assertFalse(factory.isReferenceSetMemberVersionInEffect(upperCaseUuid, "20170131"));
+
+		// Ids that are not UUIDs
+		assertTrue(factory.isReferenceSetMemberVersionInEffect(otherId, "20180131"));
+		assertFalse(factory.isReferenceSetMemberVersionInEffect(otherId, "20020131"));
+
+		// Members with one row are not filtered
+		assertTrue(factory.isReferenceSetMemberVersionInEffect(singleRowUuid, "20020131"));
+		assertTrue(factory.isReferenceSetMemberVersionInEffect("00000000-0000-0000-0000-000000000002", "20020131"));
+	}
+
+	@Test
+	public void testIdentifiers() {
+		LatestEffectiveDateComponentFactory factory = new LatestEffectiveDateComponentFactory();
+		// The same alternate identifier in two schemes, including a separator that joined keys used to be split on
+		factory.newIdentifierState("id-1", "20020131", "1", MODULE, "900000000000002006", "138875005");
+		factory.newIdentifierState("id-1", "20170131", "1", MODULE, "900000000000002006", "138875005");
+		factory.newIdentifierState("id-1", "20180131", "1", MODULE, "900000000000003001", "138875005");
+		factory.loadingComponentsCompleted();
+
+		assertTrue(factory.isIdentifierVersionInEffect("id-1", "900000000000002006", "20170131"));
+		assertFalse(factory.isIdentifierVersionInEffect("id-1", "900000000000002006", "20180131"));
+		assertTrue(factory.isIdentifierVersionInEffect("id-1", "900000000000003001", "20180131"));
+		assertFalse(factory.isIdentifierVersionInEffect("id-1", "900000000000004007", "20180131"));
+		assertFalse(factory.isIdentifierVersionInEffect("id-2", "900000000000002006", "20170131"));
+		assertTrue(factory.isIdentifierVersionInEffect("id-1-900000000000002006", "20170131"));
+		assertFalse(factory.isIdentifierVersionInEffect("id-1-900000000000003001", "20170131"));
+	}
+
+	@Test
+	public void testMultiThreadedPriming() throws Exception {
+		LatestEffectiveDateComponentFactory factory = new LatestEffectiveDateComponentFactory();
+		int components = 5_000;
+		int threads = 8;
+		List<String> memberIds = new ArrayList<>();
+		for (int i = 0; i < components; i++) {
+			memberIds.add(UUID.nameUUIDFromBytes(Integer.toString(i).getBytes()).toString());
+		}
+		// Every thread stores a version of every component, the thread with the highest number has the latest
+		ExecutorService executorService = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int effectiveTime = 20020131 + t;
+				futures.add(executorService.submit(() -> {
+					for (int i = 0; i < components; i++) {
+						factory.newConceptState(100000000L + i, effectiveTime, true, Long.parseLong(MODULE), 900000000000074008L);
+						addMember(factory, memberIds.get(i), Integer.toString(effectiveTime));
+						addMember(factory, "member-" + i, Integer.toString(effectiveTime));
+						factory.newIdentifierState("id-" + i, Integer.toString(effectiveTime), "1", MODULE, "900000000000002006", "138875005");
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executorService.shutdown();
+		}
+		factory.loadingComponentsCompleted();
+
+		String latest = Integer.toString(20020131 + threads - 1);
+		String earlier = Integer.toString(20020131 + threads - 2);
+		for (int i = 0; i < components; i++) {
+			assertTrue(factory.isCoreComponentVersionInEffect(100000000L + i, Integer.parseInt(latest)));
+			assertFalse(factory.isCoreComponentVersionInEffect(100000000L + i, Integer.parseInt(earlier)));
+			assertTrue(factory.isReferenceSetMemberVersionInEffect(memberIds.get(i), latest));
+			assertFalse(factory.isReferenceSetMemberVersionInEffect(memberIds.get(i), earlier));
+			assertTrue(factory.isReferenceSetMemberVersionInEffect("member-" + i, latest));
+			assertFalse(factory.isReferenceSetMemberVersionInEffect("member-" + i, earlier));
+			assertTrue(factory.isIdentifierVersionInEffect("id-" + i, "900000000000002006", latest));
+			assertFalse(factory.isIdentifierVersionInEffect("id-" + i, "900000000000002006", earlier));
+		}
+	}
+
+	private static void addMember(LatestEffectiveDateComponentFactory factory, String id, String effectiveTime) {
+		factory.newReferenceSetMemberState("der2_Refset_SimpleSnapshot_INT_20180131.txt", NO_FIELD_NAMES, id, effectiveTime, "1", MODULE,
+				"723264001", "138875005");
+	}
+}
@@ -0,0 +1,89 @@
+package org.ihtsdo.otf.snomedboot.factory.filter;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class PackedUuidIntMapTest {
+
+	@Test
+	public void testPutIfGreater() {
+		PackedUuidIntMap map = new PackedUuidIntMap();
+		assertEquals(0, map.get(1, 2));
+		assertFalse(map.containsKey(1, 2));
+
+		map.putIfGreater(1, 2, 20170131);
+		map.putIfGreater(1, 2, 20020131);
+		assertEquals(20170131, map.get(1, 2));
+		map.putIfGreater(1, 2, 20180131);
+		assertEquals(20180131, map.get(1, 2));
+		assertTrue(map.containsKey(1, 2));
+		assertEquals(1, map.size());
+
+		// Zero bits are a key like any other
+		map.putIfGreater(0, 0, 20020131);
+		assertEquals(20020131, map.get(0, 0));
+		assertEquals(2, map.size());
+	}
+
+	@Test
+	public void testCollidingKeys() {
+		PackedUuidIntMap map = new PackedUuidIntMap();
+		// The hash combines both halves, so keys with the same xor of their halves share a slot
+		long xor = 0x5DEECE66DL;
+		for (int i = 0; i < 100; i++) {
+			map.putIfGreater(i, i ^ xor, 1000 + i);
+		}
+		for (int i = 0; i < 100; i++) {
+			assertEquals(PackedUuidIntMap.hash(0, xor), PackedUuidIntMap.hash(i, i ^ xor));
+			assertEquals(1000 + i, map.get(i, i ^ xor));
+		}
+		// Swapped halves hash the same but are a different key
+		assertEquals(0, map.get(xor, 0));
+		assertFalse(map.containsKey(1 ^ xor, 1));
+		assertEquals(100, map.size());
+	}
+
+	@Test
+	public void testResize() {
+		PackedUuidIntMap map = new PackedUuidIntMap();
+		Map<UUID, Integer> expected = new HashMap<>();
+		Random random = new Random(1);
+		for (int i = 0; i < 20_000; i++) {
+			UUID uuid = new UUID(random.nextLong(), random.nextLong());
+			int date = 20020131 + random.nextInt(1000);
+			map.putIfGreater(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), date);
+			expected.merge(uuid, date, Math::max);
+		}
+		assertEquals(expected.size(), map.size());
+		for (Map.Entry<UUID, Integer> entry : expected.entrySet()) {
+			assertEquals((int) entry.getValue(), map.get(entry.getKey().getMostSignificantBits(), entry.getKey().getLeastSignificantBits()));
+		}
+		Map<UUID, Integer> iterated = new HashMap<>();
+		map.forEach((mostSignificantBits, leastSignificantBits, value) -> iterated.put(new UUID(mostSignificantBits, leastSignificantBits), value));
+		assertEquals(expected, iterated);
+	}
+
+	@Test
+	public void testRetainStoredMoreThanOnce() {
+		PackedUuidIntMap map = new PackedUuidIntMap();
+		for (int i = 0; i < 1000; i++) {
+			map.putIfGreater(i, -i, 20170131);
+			if (i % 3 == 0) {
+				map.putIfGreater(i, -i, 20180131);
+			}
+		}
+		PackedUuidIntMap retained = map.retainStoredMoreThanOnce();
+		assertEquals(334, retained.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i % 3 == 0 ? 20180131 : 0, retained.get(i, -i));
+		}
+		// Keys of the retained map stay marked as stored more than once
+		assertEquals(334, retained.retainStoredMoreThanOnce().size());
+	}
+}
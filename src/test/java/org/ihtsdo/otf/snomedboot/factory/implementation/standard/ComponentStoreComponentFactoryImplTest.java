@@ -1,9 +1,16 @@
 package org.ihtsdo.otf.snomedboot.factory.implementation.standard;
 
 import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
+import org.ihtsdo.otf.snomedboot.ReleaseImport;
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
 import org.ihtsdo.otf.snomedboot.ReleaseImporter;
+import org.ihtsdo.otf.snomedboot.domain.Concept;
+import org.ihtsdo.otf.snomedboot.domain.ConcreteRelationship;
+import org.ihtsdo.otf.snomedboot.domain.Description;
+import org.ihtsdo.otf.snomedboot.domain.Relationship;
 import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
+import org.ihtsdo.otf.snomedboot.factory.TestComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.implementation.HighLevelComponentFactoryAdapterImpl;
 import org.junit.Test;
 import org.snomed.otf.snomedboot.testutil.ZipUtil;
@@ -11,9 +18,18 @@ import org.snomed.otf.snomedboot.testutil.ZipUtil;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class ComponentStoreComponentFactoryImplTest {
 
@@ -40,4 +56,546 @@ public class ComponentStoreComponentFactoryImplTest {
 		assertEquals("Check transitive closure", Sets.newHashSet(138875005L, 404684003L), disorderOfEndocrineSystem.getInferredAncestorIds());
 	}
 
+	@Test
+	public void testPrimitiveCallbacks() throws IOException, ReleaseImportException {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+
+		ComponentStore componentStore = new ComponentStore();
+		// Without the high level adapter the importer calls the primitive methods of the store factory directly
+		new ReleaseImporter().loadSnapshotReleaseFiles(new FileInputStream(baseRF2SnapshotZip), LoadingProfile.complete,
+				new ComponentStoreComponentFactoryImpl(componentStore), false);
+
+		Map<Long, ConceptImpl> concepts = componentStore.getConcepts();
+		assertEquals(11, concepts.size());
+		ConceptImpl findingSite = concepts.get(363698007L);
+		assertEquals("Finding site (attribute)", findingSite.getDescriptions().get(0).getTerm());
+		assertEquals(Long.valueOf(363698007L), findingSite.getDescriptions().get(0).getConceptId());
+		assertEquals("20170131", findingSite.getEffectiveTime());
+		assertEquals("900000000000012004", findingSite.getModuleId());
+		assertFalse(concepts.get(362969004L).getRelationships().isEmpty());
+	}
+
+	@Test
+	public void testHighLevelAdapterPrimitiveCallbacks() throws ReleaseImportException {
+		ComponentStore componentStore = new ComponentStore();
+		ComponentStoreComponentFactoryImpl factory = new ComponentStoreComponentFactoryImpl(componentStore);
+		LoadingProfile loadingProfile = LoadingProfile.complete.withStatedAttributeMapOnConcept();
+		HighLevelComponentFactoryAdapterImpl adapter = new HighLevelComponentFactoryAdapterImpl(loadingProfile, factory, factory);
+		assertTrue(adapter.isUsingPrimitiveCallbacks());
+		assertFalse(new HighLevelComponentFactoryAdapterImpl(LoadingProfile.complete, factory, new TestComponentFactory()).isUsingPrimitiveCallbacks());
+
+		adapter.loadingComponentsStarting();
+		adapter.newConceptState(404684003L, 20170131, true, 900000000000207008L, 900000000000074008L);
+		adapter.newConceptState(362969004L, 20170131, true, 900000000000207008L, 900000000000074008L);
+		adapter.newDescriptionState(2000001L, 20170131, true, 900000000000207008L, 362969004L, "en", 900000000000003001L,
+				"Disorder of endocrine system (disorder)", 900000000000448009L);
+		adapter.newDescriptionState(2000002L, 20170131, true, 900000000000207008L, 362969004L, "en", 900000000000013009L,
+				"Endocrine disorder", 900000000000448009L);
+		adapter.newRelationshipState(200009001L, 20170131, true, 900000000000207008L, 362969004L, 404684003L, 0, 116680003L,
+				900000000000011006L, 900000000000451002L);
+		adapter.newRelationshipState(200010001L, 20170131, true, 900000000000207008L, 362969004L, 113331007L, 0, 363698007L,
+				900000000000011006L, 900000000000451002L);
+		adapter.newConcreteRelationshipState(200011001L, 20170131, true, 900000000000207008L, 362969004L, "#2", 0, 1142135004L,
+				900000000000011006L, 900000000000451002L);
+		adapter.newRelationshipState(200012001L, 20170131, true, 900000000000207008L, 362969004L, 404684003L, 0, 116680003L,
+				900000000000010007L, 900000000000451002L);
+		adapter.loadingComponentsCompleted();
+
+		ConceptImpl disorder = componentStore.getConcepts().get(362969004L);
+		ConceptImpl finding = componentStore.getConcepts().get(404684003L);
+		assertEquals("Disorder of endocrine system (disorder)", disorder.getFsn());
+		assertEquals(Collections.singleton(finding), disorder.getInferredParents());
+		assertTrue(finding.getInferredChildren().contains(disorder));
+		assertEquals(Collections.singleton(finding), disorder.getStatedParents());
+		assertTrue(finding.getStatedChildren().contains(disorder));
+		assertEquals(Collections.singleton("113331007"), disorder.getInferredAttributes().get("363698007"));
+		assertEquals(Collections.singleton("404684003"), disorder.getStatedAttributes().get("116680003"));
+		assertEquals(Collections.singleton("#2"), disorder.getInferredConcreteAttributes().get("1142135004"));
+		assertEquals(3, disorder.getRelationships().size());
+	}
+
+	@Test
+	public void testMultiThreadedLoadingStress() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		final LoadingProfile loadingProfile = LoadingProfile.complete;
+
+		ComponentStore singleThreadedStore = new ComponentStore();
+		ComponentStoreComponentFactoryImpl singleThreadedFactory = new ComponentStoreComponentFactoryImpl(singleThreadedStore);
+		new ReleaseImporter().loadSnapshotReleaseFiles(new FileInputStream(baseRF2SnapshotZip), loadingProfile,
+				new HighLevelComponentFactoryAdapterImpl(loadingProfile, singleThreadedFactory, singleThreadedFactory), false);
+		Map<Long, String> expected = summarise(singleThreadedStore);
+		assertEquals(12, expected.size());
+
+		// Only files on disk are split
+		File releaseDir = new ReleaseImporter().unzipRelease(new FileInputStream(baseRF2SnapshotZip), ReleaseImporter.ImportType.SNAPSHOT);
+		try {
+			for (int i = 0; i < 50; i++) {
+				ComponentStore componentStore = new ComponentStore();
+				ComponentStoreComponentFactoryImpl componentFactory = new ComponentStoreComponentFactoryImpl(componentStore);
+				// Tiny split threshold so that many tasks add to the same concepts at once,
+				// parallelism set so that files are split on a host with one processor
+				ReleaseImport releaseImport = new ReleaseImporter().setFileSplitThresholdBytes(200).setParallelism(4)
+						.loadSnapshotReleaseFilesAsync(releaseDir.getAbsolutePath(), loadingProfile,
+								new HighLevelComponentFactoryAdapterImpl(loadingProfile, componentFactory, componentFactory), true);
+				releaseImport.getFuture().get();
+				assertTrue("Files are read in more than one range", releaseImport.getSplitRangesRead() > 1);
+				assertEquals(expected, summarise(componentStore));
+			}
+		} finally {
+			FileUtils.deleteDirectory(releaseDir);
+		}
+	}
+
+	@Test
+	public void testConcurrentCallbacksOnSameConcepts() throws Exception {
+		ComponentStore componentStore = new ComponentStore();
+		ComponentStoreComponentFactoryImpl componentFactory = new ComponentStoreComponentFactoryImpl(componentStore);
+		int threads = 8;
+		int conceptCount = 5_000;
+		ExecutorService executorService = Executors.newFixedThreadPool(threads);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				final int thread = t;
+				futures.add(executorService.submit(() -> {
+					start.await();
+					for (long conceptId = 1; conceptId <= conceptCount; conceptId++) {
+						long descriptionId = conceptId * threads + thread;
+						componentFactory.newDescriptionState(descriptionId, 20170131, true, 1, conceptId, "en", 2, "Term " + descriptionId, 3);
+						// Every concept is the parent of the next so parents and children are added to each concept from all threads
+						componentFactory.addInferredConceptParent(Long.toString(conceptId + 1), Long.toString(conceptId));
+						componentFactory.addInferredConceptChild(Long.toString(conceptId + 1), Long.toString(conceptId));
+						componentFactory.addConceptReferencedInRefsetId(Integer.toString(thread), Long.toString(conceptId));
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executorService.shutdown();
+		}
+
+		assertEquals(conceptCount + 1, componentStore.getConcepts().size());
+		for (long conceptId = 1; conceptId <= conceptCount; conceptId++) {
+			ConceptImpl concept = componentStore.getConcepts().get(conceptId);
+			assertEquals(threads, concept.getDescriptions().size());
+			assertEquals(threads, concept.getMemberOfRefsetIds().size());
+			assertEquals(1, concept.getInferredChildren().size());
+			assertEquals(conceptId == 1 ? 0 : 1, concept.getInferredParents().size());
+		}
+	}
+
+	@Test
+	public void testComponentStoreImage() throws IOException, ReleaseImportException {
+		File releaseZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File imageDirectory = Files.createTempDirectory("component-store-image").toFile();
+		try {
+			ReleaseImporter releaseImporter = new ReleaseImporter();
+			LoadingProfile loadingProfile = LoadingProfile.complete;
+			ComponentStore directStore = new ComponentStore();
+			ComponentStoreComponentFactoryImpl directFactory = new ComponentStoreComponentFactoryImpl(directStore);
+			releaseImporter.loadSnapshotReleaseFiles(releaseZip.getPath(), loadingProfile,
+					new HighLevelComponentFactoryAdapterImpl(loadingProfile, directFactory, directFactory), true);
+
+			ComponentStore loadedStore = new ComponentStore();
+			releaseImporter.loadSnapshotReleaseFiles(releaseZip.getPath(), LoadingProfile.complete, new ComponentStoreComponentFactoryImpl(loadedStore),
+					imageDirectory, true);
+			File[] imageFiles = imageDirectory.listFiles();
+			assertNotNull(imageFiles);
+			assertEquals(1, imageFiles.length);
+
+			ComponentStore storeFromImage = new ComponentStore();
+			releaseImporter.loadSnapshotReleaseFiles(releaseZip.getPath(), LoadingProfile.complete,
+					new ComponentStoreComponentFactoryImpl(storeFromImage).setBuildHierarchyIndex(true), imageDirectory, true);
+			assertEquals(summarise(loadedStore), summarise(storeFromImage));
+			assertTrue(storeFromImage.isHierarchyIndexed());
+
+			// The image holds the inferred hierarchy, attributes and FSNs of a load through the high level adapter
+			assertEquals(summarise(directStore), summarise(loadedStore));
+			assertEquals(summarise(directStore), summarise(storeFromImage));
+			for (ConceptImpl directConcept : directStore.getConcepts().values()) {
+				ConceptImpl conceptFromImage = storeFromImage.getConcepts().get(directConcept.getId());
+				assertEquals(directConcept.getFsn(), conceptFromImage.getFsn());
+				assertEquals(ids(directConcept.getInferredParents()), ids(conceptFromImage.getInferredParents()));
+				assertEquals(ids(directConcept.getStatedParents()), ids(conceptFromImage.getStatedParents()));
+				if (directConcept.isActive()) {
+					assertEquals(directConcept.getInferredAncestorIds(), conceptFromImage.getInferredAncestorIds());
+					assertEquals(directConcept.getStatedAncestorIds(), conceptFromImage.getStatedAncestorIds());
+				}
+				assertEquals(directConcept.getInferredAttributes(), conceptFromImage.getInferredAttributes());
+			}
+			ConceptImpl endocrineDisorder = storeFromImage.getConcepts().get(362969004L);
+			assertEquals("Disorder of endocrine system (disorder)", endocrineDisorder.getFsn());
+			assertEquals("[404684003]", ids(endocrineDisorder.getInferredParents()));
+			assertTrue(endocrineDisorder.getInferredAncestorIds().contains(138875005L));
+			assertEquals(Set.of("113331007"), endocrineDisorder.getInferredAttributes().get("363698007"));
+			ConceptImpl findingSite = storeFromImage.getConcepts().get(363698007L);
+			assertEquals("900000000000012004", findingSite.getModuleId());
+			assertEquals("Finding site (attribute)", findingSite.getDescriptions().get(0).getTerm());
+			Relationship relationship = storeFromImage.getConcepts().get(362969004L).getRelationships().get(0);
+			assertEquals(loadedStore.getConcepts().get(362969004L).getRelationships().get(0).getTypeId(), relationship.getTypeId());
+
+			// Changed release files do not use the image
+			Files.write(releaseZip.toPath(), Files.readAllBytes(ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Extension_snapshot").toPath()));
+			ComponentStore changedStore = new ComponentStore();
+			releaseImporter.loadSnapshotReleaseFiles(releaseZip.getPath(), LoadingProfile.complete, new ComponentStoreComponentFactoryImpl(changedStore),
+					imageDirectory, true);
+			assertEquals(2, imageDirectory.listFiles().length);
+			assertFalse(summarise(loadedStore).equals(summarise(changedStore)));
+		} finally {
+			FileUtils.deleteDirectory(imageDirectory);
+		}
+	}
+
+	@Test
+	public void testApplyDeltaToComponentStoreImage() throws IOException, ReleaseImportException {
+		File snapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File imageDirectory = Files.createTempDirectory("component-store-image").toFile();
+		File deltaDirectory = Files.createTempDirectory("delta").toFile();
+		try {
+			Path terminology = Files.createDirectories(deltaDirectory.toPath().resolve("Delta/Terminology"));
+			Files.write(terminology.resolve("sct2_Concept_Delta_INT_20210731.txt"), List.of(
+					"id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId",
+					"73211009\t20210731\t0\t900000000000207008\t900000000000074008"));
+			Files.write(terminology.resolve("sct2_Description_Delta-en_INT_20210731.txt"), List.of(
+					"id\teffectiveTime\tactive\tmoduleId\tconceptId\tlanguageCode\ttypeId\tterm\tcaseSignificanceId",
+					"754737012\t20210731\t1\t900000000000207008\t362969004\ten\t900000000000003001\tEndocrine disorder (disorder)\t900000000000448009"));
+			Files.write(terminology.resolve("sct2_Relationship_Delta_INT_20210731.txt"), List.of(
+					"id\teffectiveTime\tactive\tmoduleId\tsourceId\tdestinationId\trelationshipGroup\ttypeId\tcharacteristicTypeId\tmodifierId",
+					"200009001\t20210731\t0\t900000000000207008\t362969004\t404684003\t0\t116680003\t900000000000011006\t900000000000451002",
+					"200010001\t20210731\t0\t900000000000207008\t362969004\t113331007\t0\t363698007\t900000000000011006\t900000000000451002",
+					"200011001\t20210731\t1\t900000000000207008\t362969004\t138875005\t0\t116680003\t900000000000011006\t900000000000451002"));
+
+			ReleaseImporter releaseImporter = new ReleaseImporter();
+			ComponentStore snapshotStore = new ComponentStore();
+			releaseImporter.loadSnapshotReleaseFiles(snapshotZip.getPath(), LoadingProfile.complete, new ComponentStoreComponentFactoryImpl(snapshotStore),
+					imageDirectory, false);
+			assertEquals(Sets.newHashSet(138875005L, 404684003L), snapshotStore.getConcepts().get(362969004L).getInferredAncestorIds());
+
+			// The delta is applied to the snapshot image
+			ComponentStore updatedStore = new ComponentStore();
+			releaseImporter.loadSnapshotAndDeltaReleaseFiles(snapshotZip.getPath(), deltaDirectory.getPath(), LoadingProfile.complete,
+					new ComponentStoreComponentFactoryImpl(updatedStore), imageDirectory, false);
+			assertEquals(2, imageDirectory.listFiles().length);
+
+			ConceptImpl diabetes = updatedStore.getConcepts().get(73211009L);
+			assertFalse(diabetes.isActive());
+			assertEquals("20210731", diabetes.getEffectiveTime());
+			ConceptImpl disorder = updatedStore.getConcepts().get(362969004L);
+			assertEquals(2, disorder.getDescriptions().size());
+			assertEquals("Endocrine disorder (disorder)", disorder.getFsn());
+			assertEquals(1, disorder.getRelationships().stream().filter(relationship -> relationship.getId().equals("200009001")).count());
+			assertEquals("0", disorder.getRelationships().stream().filter(relationship -> relationship.getId().equals("200009001")).findFirst().get().getActive());
+			assertEquals(Collections.singleton(138875005L), disorder.getInferredAncestorIds());
+			assertFalse(updatedStore.getConcepts().get(404684003L).getInferredChildren().contains(disorder));
+			assertFalse(disorder.getInferredAttributes().containsKey("363698007"));
+
+			// Same content as loading the snapshot and delta from the release files
+			ComponentStore reloadedStore = new ComponentStore();
+			ComponentStoreComponentFactoryImpl reloadedFactory = new ComponentStoreComponentFactoryImpl(reloadedStore);
+			releaseImporter.loadEffectiveSnapshotAndDeltaReleaseFiles(Sets.newHashSet(snapshotZip.getPath(), deltaDirectory.getPath()), LoadingProfile.complete,
+					new HighLevelComponentFactoryAdapterImpl(LoadingProfile.complete, reloadedFactory, reloadedFactory), false);
+			assertEquals(summarise(reloadedStore), summarise(updatedStore));
+
+			// Later loads read the updated image
+			ComponentStore storeFromImage = new ComponentStore();
+			releaseImporter.loadSnapshotAndDeltaReleaseFiles(snapshotZip.getPath(), deltaDirectory.getPath(), LoadingProfile.complete,
+					new ComponentStoreComponentFactoryImpl(storeFromImage), imageDirectory, false);
+			assertEquals(summarise(updatedStore), summarise(storeFromImage));
+			assertEquals(2, imageDirectory.listFiles().length);
+		} finally {
+			FileUtils.deleteDirectory(imageDirectory);
+			FileUtils.deleteDirectory(deltaDirectory);
+		}
+	}
+
+	@Test
+	public void testInactiveIsARowRacingAnActiveRow() {
+		ComponentStore componentStore = new ComponentStore();
+		ComponentStoreComponentFactoryImpl factory = new ComponentStoreComponentFactoryImpl(componentStore);
+		factory.loadingComponentsStarting();
+		factory.newConceptState("404684003", "20170131", "1", "900000000000207008", "900000000000074008");
+		factory.newConceptState("362969004", "20170131", "1", "900000000000207008", "900000000000074008");
+		HighLevelComponentFactoryAdapterImpl adapter = new HighLevelComponentFactoryAdapterImpl(LoadingProfile.complete, factory, factory);
+		adapter.newRelationshipState("200009001", "20170131", "1", "900000000000207008", "362969004", "404684003", "0", "116680003",
+				"900000000000011006", "900000000000451002");
+		adapter.newRelationshipState("200010001", "20170131", "1", "900000000000207008", "362969004", "113331007", "0", "363698007",
+				"900000000000011006", "900000000000451002");
+		factory.loadingComponentsCompleted();
+
+		// A delta read by two threads, one inactivates the relationships while the other adds replacements with new ids.
+		// The second thread has given its rows to the high level factory but not yet stored them when the first stores the inactive rows.
+		factory.setUpdating(LoadingProfile.complete);
+		factory.loadingComponentsStarting();
+		factory.addInferredConceptAttribute("362969004", "363698007", "113331007");
+		factory.addInferredConceptParent("362969004", "404684003");
+		factory.addInferredConceptChild("362969004", "404684003");
+		adapter.newRelationshipState("200009001", "20210731", "0", "900000000000207008", "362969004", "404684003", "0", "116680003",
+				"900000000000011006", "900000000000451002");
+		adapter.newRelationshipState("200010001", "20210731", "0", "900000000000207008", "362969004", "113331007", "0", "363698007",
+				"900000000000011006", "900000000000451002");
+		ConceptImpl disorder = componentStore.getConcepts().get(362969004L);
+		ConceptImpl finding = componentStore.getConcepts().get(404684003L);
+		assertTrue(disorder.getInferredParents().isEmpty());
+		assertFalse(finding.getInferredChildren().contains(disorder));
+		assertFalse(disorder.getInferredAttributes().containsKey("363698007"));
+
+		factory.newRelationshipState("200011001", "20210731", "1", "900000000000207008", "362969004", "404684003", "0", "116680003",
+				"900000000000011006", "900000000000451002");
+		factory.newRelationshipState("200012001", "20210731", "1", "900000000000207008", "362969004", "113331007", "0", "363698007",
+				"900000000000011006", "900000000000451002");
+		factory.loadingComponentsCompleted();
+		assertEquals(Collections.singleton(finding), disorder.getInferredParents());
+		assertTrue(finding.getInferredChildren().contains(disorder));
+		assertEquals(Collections.singleton("113331007"), disorder.getInferredAttributes().get("363698007"));
+	}
+
+	@Test
+	public void testIsARowsInBothDirectionsWhileUpdating() throws Exception {
+		ComponentStore componentStore = new ComponentStore();
+		ComponentStoreComponentFactoryImpl factory = new ComponentStoreComponentFactoryImpl(componentStore);
+		factory.newConceptState("100", "20170131", "1", "1", "1");
+		factory.newConceptState("200", "20170131", "1", "1", "1");
+		factory.setUpdating(LoadingProfile.complete);
+		HighLevelComponentFactoryAdapterImpl adapter = new HighLevelComponentFactoryAdapterImpl(LoadingProfile.complete, factory, factory);
+
+		// An ancestor loop in a delta read by two threads, one stores 100 -> 200 while the other stores 200 -> 100
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (String[] isA : new String[][] {{"100", "200"}, {"200", "100"}}) {
+				futures.add(executorService.submit(() -> {
+					for (int i = 0; i < 20_000; i++) {
+						adapter.newRelationshipState(isA[0] + "01" + (i % 10), "20210731", (i / 10) % 2 == 0 ? "1" : "0", "1", isA[0], isA[1], "0",
+								"116680003", "900000000000011006", "900000000000451002");
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+		ConceptImpl first = componentStore.getConcepts().get(100L);
+		ConceptImpl second = componentStore.getConcepts().get(200L);
+		// The last row of each id is inactive
+		assertTrue(first.getInferredParents().isEmpty());
+		assertTrue(second.getInferredChildren().isEmpty());
+		assertTrue(second.getInferredParents().isEmpty());
+		assertTrue(first.getInferredChildren().isEmpty());
+	}
+
+	@Test
+	public void testLoadIntoStoreWithConceptsAddsUnlessUpdating() {
+		ComponentStore componentStore = new ComponentStore();
+		ComponentStoreComponentFactoryImpl factory = new ComponentStoreComponentFactoryImpl(componentStore);
+		factory.loadingComponentsStarting();
+		factory.newConceptState("404684003", "20170131", "1", "900000000000207008", "900000000000074008");
+		factory.newDescriptionState("2472459014", "20170131", "1", "900000000000207008", "404684003", "en", "900000000000003001",
+				"Clinical finding (finding)", "900000000000448009");
+		factory.addConceptReferencedInRefsetId("723264001", "404684003");
+		factory.loadingComponentsCompleted();
+
+		// A second load is not an update unless asked for
+		factory.loadingComponentsStarting();
+		factory.newDescriptionState("2472459014", "20170131", "1", "900000000000207008", "404684003", "en", "900000000000003001",
+				"Clinical finding (finding)", "900000000000448009");
+		factory.removeConceptReferencedInRefsetId("723264001", "404684003");
+		factory.loadingComponentsCompleted();
+		ConceptImpl finding = componentStore.getConcepts().get(404684003L);
+		assertEquals(2, finding.getDescriptions().size());
+		assertEquals(Collections.singleton(723264001L), finding.getMemberOfRefsetIds());
+
+		factory.setUpdating(LoadingProfile.complete);
+		factory.loadingComponentsStarting();
+		factory.newDescriptionState("2472459014", "20210731", "0", "900000000000207008", "404684003", "en", "900000000000003001",
+				"Clinical finding (finding)", "900000000000448009");
+		factory.removeConceptReferencedInRefsetId("723264001", "404684003");
+		factory.loadingComponentsCompleted();
+		// The row replaces a description with its id rather than adding a third
+		assertEquals(2, finding.getDescriptions().size());
+		assertEquals(1, finding.getDescriptions().stream().filter(description -> !description.isActive()).count());
+		assertTrue(finding.getMemberOfRefsetIds().isEmpty());
+	}
+
+	@Test
+	public void testHierarchyIndex() throws IOException, ReleaseImportException {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		final LoadingProfile loadingProfile = LoadingProfile.complete;
+
+		ComponentStore componentStore = new ComponentStore();
+		ComponentStoreComponentFactoryImpl componentFactory = new ComponentStoreComponentFactoryImpl(componentStore).setBuildHierarchyIndex(true);
+		new ReleaseImporter().loadSnapshotReleaseFiles(new FileInputStream(baseRF2SnapshotZip), loadingProfile,
+				new HighLevelComponentFactoryAdapterImpl(loadingProfile, componentFactory, componentFactory), false);
+		assertTrue(componentStore.isHierarchyIndexed());
+
+		ConceptImpl disorderOfEndocrineSystem = componentStore.getConcepts().get(362969004L);
+		assertEquals(Sets.newHashSet(138875005L, 404684003L), disorderOfEndocrineSystem.getInferredAncestorIds());
+		assertTrue(componentStore.getConcepts().get(138875005L).getInferredDescendantIds().contains(362969004L));
+
+		// Indexed results match walking the hierarchy
+		Map<Long, List<Set<Long>>> indexed = new HashMap<>();
+		for (ConceptImpl concept : componentStore.getConcepts().values()) {
+			indexed.put(concept.getId(), List.of(concept.getInferredAncestorIds(), concept.getStatedAncestorIds(),
+					concept.getInferredDescendantIds(), concept.getStatedDescendantIds()));
+		}
+		componentStore.clearHierarchyIndex();
+		for (ConceptImpl concept : componentStore.getConcepts().values()) {
+			assertEquals(List.of(concept.getInferredAncestorIds(), concept.getStatedAncestorIds(),
+					concept.getInferredDescendantIds(), concept.getStatedDescendantIds()), indexed.get(concept.getId()));
+		}
+	}
+
+	@Test
+	public void testAncestorsOfDeepAndWideHierarchies() {
+		ComponentStore componentStore = new ComponentStore();
+		ComponentStoreComponentFactoryImpl componentFactory = new ComponentStoreComponentFactoryImpl(componentStore);
+
+		// A chain deep enough to overflow a recursive walk
+		int depth = 100_000;
+		for (long conceptId = 1; conceptId <= depth; conceptId++) {
+			componentFactory.newConceptState(conceptId, 20170131, true, 1, 1);
+			if (conceptId > 1) {
+				componentFactory.addInferredConceptParent(Long.toString(conceptId), Long.toString(conceptId - 1));
+				componentFactory.addInferredConceptChild(Long.toString(conceptId), Long.toString(conceptId - 1));
+			}
+		}
+		assertEquals(depth - 1, componentStore.getConcepts().get((long) depth).getInferredAncestorIds().size());
+		assertEquals(depth - 1, componentStore.getConcepts().get(1L).getInferredDescendantIds().size());
+
+		// Two concepts per level, each with both concepts of the level above as parents, giving 2^60 paths to the top
+		for (long level = 1; level <= 60; level++) {
+			for (long conceptId : new long[] {1_000_000 + level * 10, 2_000_000 + level * 10}) {
+				componentFactory.newConceptState(conceptId, 20170131, true, 1, 1);
+				if (level > 1) {
+					componentFactory.addInferredConceptParent(Long.toString(conceptId), Long.toString(1_000_000 + (level - 1) * 10));
+					componentFactory.addInferredConceptParent(Long.toString(conceptId), Long.toString(2_000_000 + (level - 1) * 10));
+				}
+			}
+		}
+		assertEquals(118, componentStore.getConcepts().get(1_000_600L).getInferredAncestorIds().size());
+		assertEquals(118, componentStore.getAncestorIds(2_000_600L, true).size());
+		assertTrue(componentStore.isSubsumedBy(1_000_600L, 2_000_010L, true));
+
+		componentFactory.newConceptState(3_000_000, 20170131, false, 1, 1);
+		componentFactory.addInferredConceptParent("2000010", "3000000");
+		try {
+			componentStore.getConcepts().get(1_000_600L).getInferredAncestorIds();
+			fail("Inactive parent should be detected");
+		} catch (IllegalStateException e) {
+			assertEquals("Is-a relationship points to inactive parent concept: 2000010 -> 3000000", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testMaterialiseHierarchy() {
+		// Wide enough for levels to be computed in parallel
+		ComponentStore componentStore = new ComponentStore();
+		ComponentStoreComponentFactoryImpl componentFactory = new ComponentStoreComponentFactoryImpl(componentStore);
+		Random random = new Random(1);
+		int conceptCount = 20_000;
+		for (long conceptId = 1; conceptId <= conceptCount; conceptId++) {
+			componentFactory.newConceptState(conceptId, 20170131, true, 1, 1);
+			if (conceptId > 1) {
+				for (long parentId : new long[] {conceptId / 3 + 1, random.nextInt((int) conceptId - 1) + 1}) {
+					componentFactory.addInferredConceptParent(Long.toString(conceptId), Long.toString(parentId));
+					componentFactory.addInferredConceptChild(Long.toString(conceptId), Long.toString(parentId));
+				}
+			}
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			HierarchyClosure closure = componentStore.materialiseHierarchy(true, true, pool);
+			assertEquals(conceptCount, closure.size());
+			for (ConceptImpl concept : componentStore.getConcepts().values()) {
+				assertEquals(concept.getInferredAncestorIds(), closure.getAncestorIds(concept.getId()));
+				assertEquals(concept.getInferredDescendantIds(), closure.getDescendantIds(concept.getId()));
+			}
+			assertNull(closure.getAncestorIds(999_999L));
+
+			HierarchyClosure statedClosure = componentStore.materialiseHierarchy(false, false, pool);
+			assertTrue(statedClosure.getAncestorIds(conceptCount).isEmpty());
+			assertFalse(statedClosure.isDescendantsIncluded());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testIsSubsumedBy() {
+		// Diamond with a tail: 200 and 300 under 100, 400 under both, 500 under 400, 600 separate
+		ComponentStore componentStore = new ComponentStore();
+		ComponentStoreComponentFactoryImpl componentFactory = new ComponentStoreComponentFactoryImpl(componentStore);
+		for (String conceptId : List.of("100", "200", "300", "400", "500", "600")) {
+			componentFactory.newConceptState(conceptId, "20170131", "1", "1", "1");
+		}
+		for (String[] isA : new String[][] {{"200", "100"}, {"300", "100"}, {"400", "200"}, {"400", "300"}, {"500", "400"}}) {
+			componentFactory.addInferredConceptParent(isA[0], isA[1]);
+			componentFactory.addInferredConceptChild(isA[0], isA[1]);
+		}
+
+		for (boolean indexed : new boolean[] {false, true}) {
+			if (indexed) {
+				componentStore.buildHierarchyIndex();
+			}
+			for (long conceptId : new long[] {100, 200, 300, 400, 500, 600}) {
+				for (long ancestorId : new long[] {100, 200, 300, 400, 500, 600}) {
+					assertEquals(conceptId + " < " + ancestorId, componentStore.getConcepts().get(conceptId).getInferredAncestorIds().contains(ancestorId),
+							componentStore.isSubsumedBy(conceptId, ancestorId, true));
+				}
+			}
+			assertTrue(componentStore.isSubsumedBy(500, 300, true));
+			assertFalse(componentStore.isSubsumedBy(500, 300, false));
+			assertFalse(componentStore.isSubsumedBy(500, 999, true));
+		}
+	}
+
+	@Test
+	public void testHierarchyIndexWithAncestorLoop() {
+		ComponentStore componentStore = new ComponentStore();
+		ComponentStoreComponentFactoryImpl componentFactory = new ComponentStoreComponentFactoryImpl(componentStore);
+		for (String conceptId : List.of("100", "200", "300", "400")) {
+			componentFactory.newConceptState(conceptId, "20170131", "1", "1", "1");
+		}
+		componentFactory.addInferredConceptParent("200", "100");
+		componentFactory.addInferredConceptParent("300", "200");
+		componentFactory.addInferredConceptParent("200", "300");
+		componentFactory.addInferredConceptParent("400", "100");
+		componentStore.buildHierarchyIndex();
+
+		assertEquals(Sets.newHashSet(100L), componentStore.getConcepts().get(400L).getInferredAncestorIds());
+		try {
+			componentStore.getConcepts().get(300L).getInferredAncestorIds();
+			fail("Loop should be detected");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().startsWith("Ancestor loop detected"));
+		}
+	}
+
+	private Map<Long, String> summarise(ComponentStore componentStore) {
+		Map<Long, String> summary = new HashMap<>();
+		for (ConceptImpl concept : componentStore.getConcepts().values()) {
+			summary.put(concept.getId(), String.join("|",
+					concept.getEffectiveTime() + "", concept.getFsn() + "",
+					ids(concept.getInferredParents()), ids(concept.getStatedParents()),
+					ids(concept.getInferredChildren()), ids(concept.getStatedChildren()),
+					new TreeSet<>(concept.getMemberOfRefsetIds()).toString(),
+					new TreeMap<>(concept.getInferredAttributes()).toString(), new TreeMap<>(concept.getStatedAttributes()).toString(),
+					concept.getDescriptions().stream().map(Description::getId).sorted().collect(Collectors.toList()).toString(),
+					concept.getRelationships().stream().map(Relationship::getId).sorted().collect(Collectors.toList()).toString(),
+					concept.getConcreteRelationships().stream().map(ConcreteRelationship::getId).sorted().collect(Collectors.toList()).toString()));
+		}
+		return summary;
+	}
+
+	private String ids(Set<Concept> concepts) {
+		return concepts.stream().map(Concept::getId).sorted().collect(Collectors.toList()).toString();
+	}
+
 }
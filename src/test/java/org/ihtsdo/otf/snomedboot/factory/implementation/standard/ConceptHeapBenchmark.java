@@ -0,0 +1,83 @@
+package org.ihtsdo.otf.snomedboot.factory.implementation.standard;
+
+import java.util.Random;
+
+/**
+ * Measures the heap held by a ComponentStore of generated concepts, the dataset used to size the compact ConceptImpl.
+ * Each concept has two descriptions and one or two inferred and stated parents, a subset also has attributes and refset membership.
+ * Not run as a test. Run with -XX:+UseSerialGC so that the heap used after collection is stable.
+ * Arguments: optionally the number of concepts.
+ */
+public class ConceptHeapBenchmark {
+
+	private static final long MODULE = 900000000000207008L;
+	private static final long PRIMITIVE = 900000000000074008L;
+	private static final long FSN_TYPE = 900000000000003001L;
+	private static final long SYNONYM_TYPE = 900000000000013009L;
+	private static final long CASE_INSENSITIVE = 900000000000448009L;
+
+	public static void main(String[] args) {
+		int conceptCount = args.length > 0 ? Integer.parseInt(args[0]) : 370_000;
+
+		long before = usedHeapAfterGc();
+		ComponentStore componentStore = populate(conceptCount);
+		long after = usedHeapAfterGc();
+
+		long used = after - before;
+		System.out.printf("%s concepts: %s MB (%s bytes/concept)%n", componentStore.getConcepts().size(), used / (1024 * 1024), used / conceptCount);
+	}
+
+	private static ComponentStore populate(int conceptCount) {
+		ComponentStore componentStore = new ComponentStore();
+		ComponentStoreComponentFactoryImpl factory = new ComponentStoreComponentFactoryImpl(componentStore);
+		Random random = new Random(1);
+		factory.loadingComponentsStarting();
+		for (int i = 0; i < conceptCount; i++) {
+			long conceptId = conceptId(i);
+			factory.newConceptState(conceptId, 20170131, true, MODULE, PRIMITIVE);
+			factory.newDescriptionState(descriptionId(i, 0), 20170131, true, MODULE, conceptId, "en", FSN_TYPE,
+					"Generated concept " + i + " (finding)", CASE_INSENSITIVE);
+			factory.newDescriptionState(descriptionId(i, 1), 20170131, true, MODULE, conceptId, "en", SYNONYM_TYPE,
+					"Generated concept " + i, CASE_INSENSITIVE);
+			if (i == 0) {
+				continue;
+			}
+			String source = Long.toString(conceptId);
+			int parents = 1 + random.nextInt(2);
+			for (int p = 0; p < parents; p++) {
+				String parent = Long.toString(conceptId(random.nextInt(i)));
+				factory.addInferredConceptParent(source, parent);
+				factory.addInferredConceptChild(source, parent);
+				factory.addStatedConceptParent(source, parent);
+				factory.addStatedConceptChild(source, parent);
+			}
+			if (i % 4 == 0) {
+				String value = Long.toString(conceptId(random.nextInt(i)));
+				factory.addInferredConceptAttribute(source, "363698007", value);
+				factory.addStatedConceptAttribute(source, "363698007", value);
+			}
+			if (i % 10 == 0) {
+				factory.addConceptReferencedInRefsetId("723264001", source);
+			}
+		}
+		factory.loadingComponentsCompleted();
+		return componentStore;
+	}
+
+	private static long conceptId(int i) {
+		// Partition identifier 00 and a check digit of zero, the check digit is not validated
+		return (100000L + i) * 1000;
+	}
+
+	private static long descriptionId(int i, int n) {
+		return ((100000L + i) * 10 + n) * 1000 + 110;
+	}
+
+	private static long usedHeapAfterGc() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,162 @@
+package org.ihtsdo.otf.snomedboot.factory.implementation.standard;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ConceptImplTest {
+
+	private static final String[] COLLECTION_FIELDS = {"inferredAttributes", "inferredConcreteAttributes", "statedAttributes", "inferredParents",
+			"statedParents", "inferredChildren", "statedChildren", "memberOfRefsetIds", "relationships", "concreteRelationships", "descriptions"};
+
+	@Test
+	public void testConceptWithoutState() {
+		ConceptImpl concept = new ConceptImpl(138875005L);
+		assertEquals(Long.valueOf(138875005L), concept.getId());
+		assertNull(concept.getEffectiveTime());
+		assertNull(concept.getModuleId());
+		assertNull(concept.getDefinitionStatusId());
+		assertNull(concept.getFsn());
+		assertFalse(concept.isActive());
+
+		assertTrue(concept.getInferredParents().isEmpty());
+		assertTrue(concept.getStatedParents().isEmpty());
+		assertTrue(concept.getInferredChildren().isEmpty());
+		assertTrue(concept.getStatedChildren().isEmpty());
+		assertTrue(concept.getMemberOfRefsetIds().isEmpty());
+		assertTrue(concept.getInferredAttributes().isEmpty());
+		assertTrue(concept.getInferredConcreteAttributes().isEmpty());
+		assertTrue(concept.getStatedAttributes().isEmpty());
+		assertTrue(concept.getRelationships().isEmpty());
+		assertTrue(concept.getConcreteRelationships().isEmpty());
+		assertTrue(concept.getDescriptions().isEmpty());
+		assertTrue(concept.getInferredAncestorIds().isEmpty());
+		assertTrue(concept.getStatedAncestorIds().isEmpty());
+		assertTrue(concept.getInferredDescendantIds().isEmpty());
+		assertTrue(concept.getStatedDescendantIds().isEmpty());
+	}
+
+	@Test
+	public void testCollectionsCreatedOnFirstAdd() throws ReflectiveOperationException {
+		ConceptImpl concept = new ConceptImpl("404684003", "20170131", true, "900000000000207008", "900000000000074008");
+		for (String field : COLLECTION_FIELDS) {
+			assertNull(field + " is created when the first value is added", getField(concept, field));
+		}
+		// Reading does not create a collection
+		readAll(concept);
+		for (String field : COLLECTION_FIELDS) {
+			assertNull(field + " is not created by reading", getField(concept, field));
+		}
+
+		concept.addDescription(new DescriptionImpl(2472459014L, true, "Clinical finding (finding)", 404684003L));
+		concept.addInferredParent(new ConceptImpl(138875005L));
+		assertNotNull(getField(concept, "descriptions"));
+		assertNotNull(getField(concept, "inferredParents"));
+		for (String field : COLLECTION_FIELDS) {
+			if (!field.equals("descriptions") && !field.equals("inferredParents")) {
+				assertNull(field, getField(concept, field));
+			}
+		}
+		assertEquals(1, concept.getDescriptions().size());
+		assertEquals(1, concept.getInferredParents().size());
+
+		// Removing from a collection that was never created does nothing
+		concept.removeStatedParent(new ConceptImpl(138875005L));
+		concept.removeInferredAttribute("363698007", "113331007");
+		concept.removeMemberOfRefsetId(723264001L);
+		assertNull(getField(concept, "statedParents"));
+		assertNull(getField(concept, "inferredAttributes"));
+		assertNull(getField(concept, "memberOfRefsetIds"));
+	}
+
+	@Test
+	public void testGettersAreUnmodifiable() {
+		ConceptImpl parent = new ConceptImpl(138875005L);
+		// Both before any value is added and after
+		for (int i = 0; i < 2; i++) {
+			ConceptImpl concept = new ConceptImpl(404684003L);
+			if (i == 1) {
+				concept.addInferredParent(parent);
+				concept.addStatedParent(parent);
+				concept.addInferredChild(parent);
+				concept.addStatedChild(parent);
+				concept.addMemberOfRefsetId(723264001L);
+				concept.addInferredAttribute("363698007", "113331007");
+				concept.addInferredConcreteAttribute("1142135004", "#250");
+				concept.addStatedAttribute("363698007", "113331007");
+				concept.addRelationship(new RelationshipImpl("113331007", "1", "363698007"));
+				concept.addConcreteRelationship(new ConcreteRelationshipImpl("#250", "1", "1142135004"));
+				concept.addDescription(new DescriptionImpl(2472459014L, true, "Clinical finding (finding)", 404684003L));
+			}
+			assertUnmodifiable(() -> concept.getInferredParents().add(parent));
+			assertUnmodifiable(() -> concept.getStatedParents().add(parent));
+			assertUnmodifiable(() -> concept.getInferredChildren().add(parent));
+			assertUnmodifiable(() -> concept.getStatedChildren().add(parent));
+			assertUnmodifiable(() -> concept.getMemberOfRefsetIds().add(1L));
+			assertUnmodifiable(() -> concept.getInferredAttributes().put("1", null));
+			assertUnmodifiable(() -> concept.getInferredConcreteAttributes().put("1", null));
+			assertUnmodifiable(() -> concept.getStatedAttributes().put("1", null));
+			assertUnmodifiable(() -> concept.getRelationships().add(null));
+			assertUnmodifiable(() -> concept.getConcreteRelationships().add(null));
+			assertUnmodifiable(() -> concept.getDescriptions().add(null));
+			if (i == 1) {
+				// Including the values of attribute maps
+				assertUnmodifiable(() -> concept.getInferredAttributes().get("363698007").add("1"));
+				assertUnmodifiable(() -> concept.getStatedAttributes().get("363698007").clear());
+				assertEquals(1, concept.getInferredAttributes().get("363698007").size());
+			}
+		}
+	}
+
+	@Test
+	public void testGettersReflectLaterChanges() {
+		ConceptImpl concept = new ConceptImpl(404684003L);
+		concept.addInferredAttribute("363698007", "113331007");
+		Map<String, ?> inferredAttributes = concept.getInferredAttributes();
+		concept.addInferredAttribute("116676008", "1");
+		assertEquals(2, inferredAttributes.size());
+		concept.removeInferredAttribute("363698007", "113331007");
+		assertEquals(1, inferredAttributes.size());
+	}
+
+	private static void readAll(ConceptImpl concept) {
+		List<Collection<?>> collections = new ArrayList<>();
+		collections.add(concept.getInferredParents());
+		collections.add(concept.getStatedParents());
+		collections.add(concept.getInferredChildren());
+		collections.add(concept.getStatedChildren());
+		collections.add(concept.getMemberOfRefsetIds());
+		collections.add(concept.getInferredAttributes().keySet());
+		collections.add(concept.getInferredConcreteAttributes().keySet());
+		collections.add(concept.getStatedAttributes().keySet());
+		collections.add(concept.getRelationships());
+		collections.add(concept.getConcreteRelationships());
+		collections.add(concept.getDescriptions());
+		collections.add(concept.getInferredAncestorIds());
+		collections.add(concept.getInferredDescendantIds());
+		for (Collection<?> collection : collections) {
+			assertTrue(collection.isEmpty());
+		}
+	}
+
+	private static Object getField(ConceptImpl concept, String name) throws ReflectiveOperationException {
+		Field field = ConceptImpl.class.getDeclaredField(name);
+		field.setAccessible(true);
+		return field.get(concept);
+	}
+
+	private static void assertUnmodifiable(Runnable change) {
+		try {
+			change.run();
+			fail("Collection should not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package org.ihtsdo.otf.snomedboot.parser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares reading an RF2 relationship file with BufferedReader.readLine and String.split against the RF2Reader.
+ * Each pass checks the active flag and reads one column of each row, as the import does when filtering rows.
+ * Not run as a test. Arguments: optionally an RF2 file to read, otherwise a relationship file of the given number of rows is generated,
+ * and the number of rounds.
+ */
+public class RF2ParseBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		Path file;
+		boolean generated = false;
+		if (args.length > 0 && Files.isRegularFile(Paths.get(args[0]))) {
+			file = Paths.get(args[0]);
+		} else {
+			int rows = args.length > 0 ? Integer.parseInt(args[0]) : 3_000_000;
+			file = generateRelationshipFile(rows);
+			generated = true;
+		}
+		try {
+			// Warm up
+			readLineAndSplit(file);
+			readRF2Rows(file);
+
+			for (int round = 1; round <= rounds; round++) {
+				long gcBefore = gcCount();
+				long start = System.nanoTime();
+				long rows = readLineAndSplit(file);
+				System.out.printf("Round %s, readLine and split: %s active rows in %s ms, %s GC cycles%n",
+						round, rows, (System.nanoTime() - start) / 1_000_000, gcCount() - gcBefore);
+
+				gcBefore = gcCount();
+				start = System.nanoTime();
+				rows = readRF2Rows(file);
+				System.out.printf("Round %s, RF2Reader: %s active rows in %s ms, %s GC cycles%n",
+						round, rows, (System.nanoTime() - start) / 1_000_000, gcCount() - gcBefore);
+			}
+		} finally {
+			if (generated) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	private static long readLineAndSplit(Path file) throws IOException {
+		long activeRows = 0;
+		long checksum = 0;
+		try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+			reader.readLine();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] values = line.split("\\t");
+				if ("1".equals(values[2])) {
+					activeRows++;
+					checksum += values[4].length();
+				}
+			}
+		}
+		return checksum >= 0 ? activeRows : -1;
+	}
+
+	private static long readRF2Rows(Path file) throws IOException {
+		long activeRows = 0;
+		long checksum = 0;
+		try (RF2Reader reader = RF2Reader.open(file)) {
+			reader.nextRow();
+			RF2Row row;
+			while ((row = reader.nextRow()) != null) {
+				if (row.isValue(2, "1")) {
+					activeRows++;
+					checksum += row.get(4).length();
+				}
+			}
+		}
+		return checksum >= 0 ? activeRows : -1;
+	}
+
+	private static Path generateRelationshipFile(int rows) throws IOException {
+		Path file = Files.createTempFile("rf2-parse-benchmark", ".txt");
+		try (BufferedWriter writer = Files.newBufferedWriter(file, UTF_8)) {
+			writer.write("id\teffectiveTime\tactive\tmoduleId\tsourceId\tdestinationId\trelationshipGroup\ttypeId\tcharacteristicTypeId\tmodifierId\r\n");
+			for (int i = 0; i < rows; i++) {
+				writer.write(String.join("\t", (100000000 + i) + "021", "20180131", i % 5 == 0 ? "0" : "1", "900000000000207008",
+						(200000000 + i) + "009", (300000000 + i / 7) + "002", Integer.toString(i % 3), "116680003",
+						"900000000000011006", "900000000000451002"));
+				writer.write("\r\n");
+			}
+		}
+		return file;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+}
@@ -0,0 +1,264 @@
+package org.ihtsdo.otf.snomedboot.parser;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class RF2ReaderTest {
+
+	private static final String CONTENT = "id\teffectiveTime\tactive\tmoduleId\n" +
+			"100005\t20020131\t1\t900000000000207008\n" +
+			"101009\t\t0\t900000000000207008\n" +
+			"102001\t20020131\t1\t900000000000207008\t\t\n" +
+			"\n" +
+			"\t103003\n" +
+			"\t\t\n" +
+			"104006\t20170131\t1\t900000000000207008\tTerm with \u00fcn\u00efc\u00f6d\u00e9\n";
+
+	@Test
+	public void testMappedRegionsEndOnLineBoundaries() throws IOException {
+		Path file = Files.createTempFile("rf2-reader-test", ".txt");
+		try {
+			Files.write(file, CONTENT.getBytes(UTF_8));
+			int longestLine = Arrays.stream(CONTENT.split("\n")).mapToInt(line -> line.getBytes(UTF_8).length + 1).max().orElse(0);
+			// Regions of every size from the longest line upwards, so that regions are trimmed at many different points
+			for (int maxRegionSize = longestLine; maxRegionSize <= CONTENT.length() + 1; maxRegionSize++) {
+				List<String[]> rows = readAll(new RF2Reader(new RF2Reader.MappedFileSegmentSource(file, maxRegionSize)));
+				assertRowsMatchSplit(CONTENT, rows);
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testMappedRegionSmallerThanLine() throws IOException {
+		Path file = Files.createTempFile("rf2-reader-test", ".txt");
+		try {
+			Files.write(file, CONTENT.getBytes(UTF_8));
+			try (RF2Reader reader = new RF2Reader(new RF2Reader.MappedFileSegmentSource(file, 10))) {
+				reader.nextRow();
+				fail("Line longer than the region should not be read");
+			} catch (IOException e) {
+				assertTrue(e.getMessage().startsWith("RF2 line longer than 10 bytes"));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testMappedLineRanges() throws IOException {
+		Path file = Files.createTempFile("rf2-reader-test", ".txt");
+		try {
+			Files.write(file, CONTENT.getBytes(UTF_8));
+			long[] boundaries = RF2Reader.splitIntoLineRanges(file, 3);
+			assertEquals(4, boundaries.length);
+			List<String[]> rows = new ArrayList<>();
+			for (int i = 0; i < boundaries.length - 1; i++) {
+				rows.addAll(readAll(RF2Reader.open(file, boundaries[i], boundaries[i + 1])));
+			}
+			// The first range starts after the header
+			String content = CONTENT.substring(CONTENT.indexOf('\n') + 1);
+			assertRowsMatchSplit(content, rows);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testBufferLineRanges() throws IOException {
+		ByteBuffer content = ByteBuffer.wrap(CONTENT.getBytes(UTF_8)).asReadOnlyBuffer();
+		assertRowsMatchSplit(CONTENT, readAll(RF2Reader.open(content)));
+		for (int ranges = 1; ranges <= 8; ranges++) {
+			long[] boundaries = RF2Reader.splitIntoLineRanges(content, ranges);
+			List<String[]> rows = new ArrayList<>();
+			for (int i = 0; i < boundaries.length - 1; i++) {
+				rows.addAll(readAll(RF2Reader.open(content.slice((int) boundaries[i], (int) (boundaries[i + 1] - boundaries[i])))));
+			}
+			// The first range starts after the header
+			assertRowsMatchSplit(CONTENT.substring(CONTENT.indexOf('\n') + 1), rows);
+		}
+		assertNull(RF2Reader.open(ByteBuffer.allocate(0)).nextRow());
+	}
+
+	@Test
+	public void testStreamChunksSmallerThanLines() throws IOException {
+		// Chunk sizes smaller than a line make the buffer grow and partial lines carry over
+		for (int chunkSize = 1; chunkSize <= CONTENT.length() + 1; chunkSize++) {
+			List<String[]> rows = readAll(new RF2Reader(new RF2Reader.StreamSegmentSource(new ByteArrayInputStream(CONTENT.getBytes(UTF_8)), chunkSize)));
+			assertRowsMatchSplit(CONTENT, rows);
+		}
+	}
+
+	@Test
+	public void testStreamReturnsSmallReads() throws IOException {
+		// A stream that returns fewer bytes than requested, like a zip entry stream
+		byte[] bytes = CONTENT.getBytes(UTF_8);
+		ByteArrayInputStream trickle = new ByteArrayInputStream(bytes) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 3));
+			}
+		};
+		assertRowsMatchSplit(CONTENT, readAll(new RF2Reader(new RF2Reader.StreamSegmentSource(trickle, 16))));
+	}
+
+	@Test
+	public void testCrlfLineEndings() throws IOException {
+		String crlfContent = CONTENT.replace("\n", "\r\n");
+		assertRowsMatchSplit(CONTENT, readAll(RF2Reader.open(new ByteArrayInputStream(crlfContent.getBytes(UTF_8)))));
+
+		Path file = Files.createTempFile("rf2-reader-test", ".txt");
+		try {
+			Files.write(file, crlfContent.getBytes(UTF_8));
+			assertRowsMatchSplit(CONTENT, readAll(RF2Reader.open(file)));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testLastLineWithoutNewline() throws IOException {
+		String content = CONTENT.substring(0, CONTENT.length() - 1);
+		for (int chunkSize = 1; chunkSize <= content.length() + 1; chunkSize++) {
+			assertRowsMatchSplit(content, readAll(new RF2Reader(new RF2Reader.StreamSegmentSource(new ByteArrayInputStream(content.getBytes(UTF_8)), chunkSize))));
+		}
+
+		Path file = Files.createTempFile("rf2-reader-test", ".txt");
+		try {
+			Files.write(file, (content + "\r").getBytes(UTF_8));
+			assertRowsMatchSplit(content, readAll(new RF2Reader(new RF2Reader.MappedFileSegmentSource(file, 64))));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testTrailingEmptyColumnsDroppedLikeSplit() {
+		String[] lines = {"a\tb", "a\t\t", "a\t\tb", "\ta", "\t\t", "a\t", "a", "a\t\r", "\t\t\tb\t"};
+		for (String line : lines) {
+			RF2Row row = parse(line);
+			assertFalse(row.isEmptyLine());
+			String[] expected = line.replace("\r", "").split("\t");
+			assertArrayEquals(line, expected, row.toArray());
+			assertEquals(line, expected.length, row.size());
+		}
+
+		RF2Row row = parse("");
+		assertTrue(row.isEmptyLine());
+		assertEquals(0, row.size());
+	}
+
+	@Test
+	public void testColumnAccess() {
+		RF2Row row = parse("100005\t\t1\t900000000000207008\tterm");
+		assertEquals("100005", row.get(0));
+		assertSame(row.get(0), row.get(0));
+		assertTrue(row.isEmpty(1));
+		assertFalse(row.isEmpty(2));
+		assertTrue(row.isValue(2, "1"));
+		assertFalse(row.isValue(2, "0"));
+		assertFalse(row.isValue(3, "90000000000020700"));
+		assertArrayEquals(new String[]{"900000000000207008", "term"}, row.toArray(3));
+		assertEquals(0, row.toArray(5).length);
+		try {
+			row.get(5);
+			fail();
+		} catch (ArrayIndexOutOfBoundsException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testGetLong() {
+		RF2Row row = parse("100005\t9223372036854775807\t123456789012345678\t-5\t+7\t12a\t\t92233720368547758070");
+		assertEquals(100005L, row.getLong(0));
+		// Values too long for the fast path
+		assertEquals(Long.MAX_VALUE, row.getLong(1));
+		assertEquals(123456789012345678L, row.getLong(2));
+		// Values that are not plain digits fall back to Long.parseLong
+		assertEquals(-5L, row.getLong(3));
+		assertEquals(7L, row.getLong(4));
+		assertNumberFormatException(() -> row.getLong(5));
+		assertNumberFormatException(() -> row.getLong(6));
+		assertNumberFormatException(() -> row.getLong(7));
+	}
+
+	@Test
+	public void testGetInt() {
+		RF2Row row = parse("20020131\t\t2147483647\t-5\t12a\t21474836470\t0001");
+		assertEquals(20020131, row.getInt(0));
+		// An empty effectiveTime is read as zero
+		assertEquals(0, row.getInt(1));
+		assertEquals(Integer.MAX_VALUE, row.getInt(2));
+		assertEquals(-5, row.getInt(3));
+		assertNumberFormatException(() -> row.getInt(4));
+		assertNumberFormatException(() -> row.getInt(5));
+		assertEquals(1, row.getInt(6));
+	}
+
+	@Test
+	public void testDecodeFromDirectBuffer() {
+		byte[] bytes = "104006\tTerm with \u00fcn\u00efc\u00f6d\u00e9\n".getBytes(UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes).flip();
+		RF2Row row = new RF2Row();
+		assertEquals(bytes.length - 1, row.parse(buffer, 0, buffer.limit()));
+		assertEquals("Term with \u00fcn\u00efc\u00f6d\u00e9", row.get(1));
+	}
+
+	private static RF2Row parse(String line) {
+		ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(UTF_8));
+		RF2Row row = new RF2Row();
+		row.parse(buffer, 0, buffer.limit());
+		return row;
+	}
+
+	private static List<String[]> readAll(RF2Reader reader) throws IOException {
+		List<String[]> rows = new ArrayList<>();
+		try (reader) {
+			RF2Row row;
+			while ((row = reader.nextRow()) != null) {
+				rows.add(row.isEmptyLine() ? null : row.toArray());
+				assertEquals(rows.size(), reader.getLineNumber());
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Each line must be read as String.split would split it, empty lines are read as empty rows.
+	 */
+	private static void assertRowsMatchSplit(String content, List<String[]> rows) {
+		String[] lines = content.split("\n", -1);
+		int lineCount = content.endsWith("\n") ? lines.length - 1 : lines.length;
+		assertEquals(lineCount, rows.size());
+		for (int i = 0; i < lineCount; i++) {
+			if (lines[i].isEmpty()) {
+				assertNull(rows.get(i));
+			} else {
+				assertArrayEquals(lines[i].split("\t"), rows.get(i));
+			}
+		}
+	}
+
+	private static void assertNumberFormatException(Runnable runnable) {
+		try {
+			runnable.run();
+			fail("NumberFormatException expected");
+		} catch (NumberFormatException e) {
+			// Expected
+		}
+	}
+}